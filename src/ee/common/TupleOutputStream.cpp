@@ -19,6 +19,7 @@
 #include "TupleSerializer.h"
 #include "tabletuple.h"
 #include <limits>
+#include <cassert>
 
 namespace voltdb {
 
@@ -26,6 +27,8 @@ TupleOutputStream::TupleOutputStream(void *data, std::size_t length) :
     ReferenceSerializeOutput(data, length),
     m_rowCount(0),
     m_rowCountPosition(0),
+    m_blockTagged(false),
+    m_blockIdPosition(0),
     m_totalBytesSerialized(0)
 {
 }
@@ -34,9 +37,13 @@ TupleOutputStream::~TupleOutputStream()
 {
 }
 
-std::size_t TupleOutputStream::startRows(int32_t partitionId)
+std::size_t TupleOutputStream::startRows(int32_t partitionId, bool blockTagged)
 {
     writeInt(partitionId);
+    m_blockTagged = blockTagged;
+    if (blockTagged) {
+        m_blockIdPosition = reserveBytes(8);
+    }
     m_rowCount = 0;
     m_rowCountPosition = reserveBytes(4);
     m_totalBytesSerialized = 0;
@@ -60,6 +67,19 @@ bool TupleOutputStream::canFit(std::size_t nbytes) const
     return (remaining() >= nbytes + sizeof(int32_t));
 }
 
+void TupleOutputStream::setBlockId(int64_t blockId)
+{
+    assert(m_blockTagged);
+    writeLongAt(m_blockIdPosition, blockId);
+}
+
+void TupleOutputStream::writeBlockReference(int64_t blockId)
+{
+    assert(m_blockTagged);
+    writeLong(blockId);
+    m_rowCount++;
+}
+
 void TupleOutputStream::endRows()
 {
     writeIntAt(m_rowCountPosition, m_rowCount);
@@ -48,9 +48,10 @@ public:
     virtual ~TupleOutputStream();
 
     /**
-     * Write the header and save space for the row count.
+     * Write the header and save space for the row count. A block tagged stream
+     * also saves space for the id of the tuple block the rows come from.
      */
-    std::size_t startRows(int32_t partitionId);
+    std::size_t startRows(int32_t partitionId, bool blockTagged = false);
 
     /**
      * Write a tuple and return the number of bytes written.
@@ -63,11 +64,29 @@ public:
      */
     bool canFit(size_t nbytes) const;
 
+    /**
+     * Write the id of the tuple block the rows came from into a block tagged stream.
+     */
+    void setBlockId(int64_t blockId);
+
+    /**
+     * Write the id of a tuple block left out of a block tagged stream. References
+     * are counted in place of rows.
+     */
+    void writeBlockReference(int64_t blockId);
+
     /**
      * Write the row count when finished with an output sequence.
      */
     void endRows();
 
+    /**
+     * Number of rows (or block references) written since startRows().
+     */
+    int32_t getRowCount() const {
+        return m_rowCount;
+    }
+
     /**
      * Access the total bytes serialized counter.
      */
@@ -79,6 +98,8 @@ private:
 
     int32_t     m_rowCount;
     std::size_t m_rowCountPosition;
+    bool        m_blockTagged;
+    std::size_t m_blockIdPosition;
     /** Keep track of bytes written for throttling to yield control. */
     std::size_t m_totalBytesSerialized;
 };
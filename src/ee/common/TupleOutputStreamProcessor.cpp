@@ -66,7 +66,8 @@ void TupleOutputStreamProcessor::open(PersistentTable &table,
                                       std::size_t maxTupleLength,
                                       int32_t partitionId,
                                       StreamPredicateList &predicates,
-                                      std::vector<bool> &predicateDeletes)
+                                      std::vector<bool> &predicateDeletes,
+                                      bool blockTagged)
 {
     m_table = &table;
     m_maxTupleLength = maxTupleLength;
@@ -78,7 +79,7 @@ void TupleOutputStreamProcessor::open(PersistentTable &table,
     m_predicates = &predicates;
     m_predicateDeletes = &predicateDeletes;
     for (TupleOutputStreamProcessor::iterator iter = begin(); iter != end(); ++iter) {
-        iter->startRows(partitionId);
+        iter->startRows(partitionId, blockTagged);
     }
 }
 
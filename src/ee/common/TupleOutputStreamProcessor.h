@@ -48,12 +48,13 @@ public:
     /** Convenience method to create and add a new TupleOutputStream. */
     TupleOutputStream &add(void *data, std::size_t length);
 
-    /** Start serializing. */
+    /** Start serializing. Block tagged streams carry the id of the source tuple block. */
     void open(PersistentTable &table,
               std::size_t maxTupleLength,
               int32_t partitionId,
               StreamPredicateList &predicates,
-              std::vector<bool> &predicateDeletes);
+              std::vector<bool> &predicateDeletes,
+              bool blockTagged = false);
 
     /** Stop serializing. */
     void close();
@@ -196,6 +196,11 @@ public:
         current_ -= bytes;
     }
 
+    /** Number of bytes left to read. */
+    size_t remaining() const {
+        return end_ - current_;
+    }
+
 private:
     template <typename T>
     T readPrimitive() {
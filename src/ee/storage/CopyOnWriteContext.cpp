@@ -60,7 +60,9 @@ CopyOnWriteContext::CopyOnWriteContext(
         TupleSerializer &serializer,
         int32_t partitionId,
         const std::vector<std::string> &predicateStrings,
-        int64_t totalTuples) :
+        int64_t totalTuples,
+        bool blockTagged,
+        int64_t baseEpoch) :
              TableStreamerContext(table, predicateStrings),
              m_backedUpTuples(TableFactory::getCopiedTempTable(table.databaseId(),
                                                                "COW of " + table.name(),
@@ -78,7 +80,14 @@ CopyOnWriteContext::CopyOnWriteContext(
              m_blocksCompacted(0),
              m_serializationBatches(0),
              m_inserts(0),
-             m_updates(0)
+             m_updates(0),
+             m_blockTagged(blockTagged),
+             m_baseEpoch(baseEpoch),
+             m_backedUpBlockId(blockTagged ? table.nextBlockId() : -1),
+             m_scanBlockId(-1),
+             m_scanBlockIncluded(true),
+             m_finishedBackedUpTuples(false),
+             m_unchangedBlockIdsWritten(0)
 {}
 
 /*
@@ -86,6 +95,10 @@ CopyOnWriteContext::CopyOnWriteContext(
  * Return remaining tuple count, 0 if done, or -1 on error.
  */
 int64_t CopyOnWriteContext::serializeMore(TupleOutputStreamProcessor &outputStreams) {
+    if (m_blockTagged) {
+        return serializeMoreBlocks(outputStreams);
+    }
+
     // Don't expect to be re-called after streaming all the tuples.
     if (m_tuplesRemaining == 0) {
         throwFatalException("serializeMore() was called again after streaming completed.")
@@ -164,33 +177,7 @@ int64_t CopyOnWriteContext::serializeMore(TupleOutputStreamProcessor &outputStre
              * persistent table.
              */
             if (m_tuplesRemaining > 0) {
-                char message[1024 * 16];
-                snprintf(message, 1024 * 16,
-                         "serializeMore(): tuple count > 0 after streaming:\n"
-                         "Table name: %s\n"
-                         "Table type: %s\n"
-                         "Original tuple count: %jd\n"
-                         "Active tuple count: %jd\n"
-                         "Remaining tuple count: %jd\n"
-                         "Compacted block count: %jd\n"
-                         "Dirty insert count: %jd\n"
-                         "Dirty update count: %jd\n"
-                         "Partition column: %d\n",
-                         table.name().c_str(),
-                         table.tableType().c_str(),
-                         (intmax_t)m_totalTuples,
-                         (intmax_t)table.activeTupleCount(),
-                         (intmax_t)m_tuplesRemaining,
-                         (intmax_t)m_blocksCompacted,
-                         (intmax_t)m_inserts,
-                         (intmax_t)m_updates,
-                         table.partitionColumn());
-#ifdef DEBUG
-                // Use a format string to prevent overzealous compiler warnings.
-                throwFatalException("%s", message);
-#else
-                LogManager::getThreadLogger(LOGGERID_HOST)->log(LOGLEVEL_ERROR, message);
-#endif
+                reportRemainingTupleMismatch();
             }
             // -1 is used for tests when we don't bother counting. Need to force it to 0 here.
             if (m_tuplesRemaining < 0)  {
@@ -235,6 +222,143 @@ int64_t CopyOnWriteContext::serializeMore(TupleOutputStreamProcessor &outputStre
     return m_tuplesRemaining;
 }
 
+/*
+ * Serialize to a single block tagged output stream. The rows of a call all come from
+ * one table block or all from the backed up tuples. Blocks not written since the base
+ * snapshot are skipped and their ids are written once there are no rows left.
+ * Return remaining tuple count (at least 1 until the block ids are written), 0 if done.
+ */
+int64_t CopyOnWriteContext::serializeMoreBlocks(TupleOutputStreamProcessor &outputStreams) {
+    if (outputStreams.size() != 1) {
+        throwFatalException("serializeMore() expects exactly one output stream for a block tagged "
+                            "snapshot, received %d", (int)outputStreams.size());
+    }
+    outputStreams.open(getTable(), m_maxTupleLength, m_partitionId, getPredicates(),
+                       getPredicateDeleteFlags(), true);
+    TupleOutputStream &outputStream = outputStreams.at(0);
+
+    PersistentTable &table = getTable();
+    TableTuple tuple(table.schema());
+    int64_t blockId = m_backedUpBlockId;
+    bool yield = false;
+    while (!yield) {
+        if (!m_finishedTableScan) {
+            CopyOnWriteIterator *iter = static_cast<CopyOnWriteIterator*>(m_iterator.get());
+            TBPtr block = iter->m_currentBlock;
+            if (block->blockId() != m_scanBlockId) {
+                /*
+                 * Decide as the block is entered and skip it right away. A block that
+                 * wasn't written since the base snapshot has no dirty or pending delete
+                 * tuples either, so there is nothing to clean up in it.
+                 */
+                m_scanBlockId = block->blockId();
+                m_scanBlockIncluded = m_baseEpoch == 0 || block->writeEpoch() >= m_baseEpoch;
+                if (!m_scanBlockIncluded) {
+                    m_unchangedBlockIds.push_back(m_scanBlockId);
+                    if (m_tuplesRemaining > 0) {
+                        m_tuplesRemaining -= block->activeTuples();
+                    }
+                }
+            }
+
+            if (m_scanBlockIncluded && iter->nextInBlock(tuple)) {
+                blockId = m_scanBlockId;
+                if (m_tuplesRemaining > 0) {
+                    m_tuplesRemaining--;
+                }
+                bool deleteTuple = false;
+                yield = outputStreams.writeRow(m_serializer, tuple, deleteTuple);
+                if (tuple.isPendingDelete()) {
+                    assert(!tuple.isPendingDeleteOnUndoRelease());
+                    table.deleteTupleStorage(tuple, iter->m_currentBlock);
+                }
+            } else if (outputStream.getRowCount() > 0) {
+                // The rows of the next block go in the next chunk
+                yield = true;
+            } else if (!iter->nextBlock()) {
+                m_finishedTableScan = true;
+                m_iterator.reset(m_backedUpTuples.get()->makeIterator());
+            }
+        } else if (!m_finishedBackedUpTuples) {
+            if (m_iterator->next(tuple)) {
+                if (m_tuplesRemaining > 0) {
+                    m_tuplesRemaining--;
+                }
+                bool deleteTuple = false;
+                yield = outputStreams.writeRow(m_serializer, tuple, deleteTuple);
+            } else {
+                m_finishedBackedUpTuples = true;
+            }
+        } else if (outputStream.getRowCount() > 0) {
+            // The block references go in chunks of their own
+            yield = true;
+        } else {
+            if (m_unchangedBlockIdsWritten < m_unchangedBlockIds.size()) {
+                blockId = -1;
+                while (m_unchangedBlockIdsWritten < m_unchangedBlockIds.size() &&
+                       outputStream.canFit(sizeof(int64_t))) {
+                    outputStream.writeBlockReference(m_unchangedBlockIds[m_unchangedBlockIdsWritten++]);
+                }
+            }
+            yield = true;
+        }
+    }
+
+    outputStream.setBlockId(blockId);
+    outputStreams.close();
+
+    m_serializationBatches++;
+
+    if (m_finishedBackedUpTuples && m_unchangedBlockIdsWritten == m_unchangedBlockIds.size()) {
+        if (m_tuplesRemaining > 0) {
+            reportRemainingTupleMismatch();
+        }
+        m_tuplesRemaining = 0;
+        return 0;
+    }
+
+    // The sentinel value of -1 is passed in from tests that don't care about the
+    // active tuple count. Also keep going while only block ids are left to write.
+    if (m_tuplesRemaining <= 0) {
+        return std::numeric_limits<int32_t>::max();
+    }
+    return m_tuplesRemaining;
+}
+
+/*
+ * Log (or throw in debug builds) when tuples are left over after streaming completed.
+ */
+void CopyOnWriteContext::reportRemainingTupleMismatch() {
+    PersistentTable &table = getTable();
+    char message[1024 * 16];
+    snprintf(message, 1024 * 16,
+             "serializeMore(): tuple count > 0 after streaming:\n"
+             "Table name: %s\n"
+             "Table type: %s\n"
+             "Original tuple count: %jd\n"
+             "Active tuple count: %jd\n"
+             "Remaining tuple count: %jd\n"
+             "Compacted block count: %jd\n"
+             "Dirty insert count: %jd\n"
+             "Dirty update count: %jd\n"
+             "Partition column: %d\n",
+             table.name().c_str(),
+             table.tableType().c_str(),
+             (intmax_t)m_totalTuples,
+             (intmax_t)table.activeTupleCount(),
+             (intmax_t)m_tuplesRemaining,
+             (intmax_t)m_blocksCompacted,
+             (intmax_t)m_inserts,
+             (intmax_t)m_updates,
+             table.partitionColumn());
+#ifdef DEBUG
+    // Use a format string to prevent overzealous compiler warnings.
+    throwFatalException("%s", message);
+#else
+    LogManager::getThreadLogger(LOGGERID_HOST)->log(LOGLEVEL_ERROR, message);
+#endif
+}
+
 bool CopyOnWriteContext::canSafelyFreeTuple(TableTuple tuple) {
     if (tuple.isDirty() || m_finishedTableScan) {
         return true;
@@ -97,7 +97,16 @@ private:
                        TupleSerializer &serializer,
                        int32_t partitionId,
                        const std::vector<std::string> &predicateStrings,
-                       int64_t totalTuples);
+                       int64_t totalTuples,
+                       bool blockTagged = false,
+                       int64_t baseEpoch = 0);
+
+    /**
+     * serializeMore() for block tagged snapshots.
+     */
+    int64_t serializeMoreBlocks(TupleOutputStreamProcessor &outputStreams);
+
+    void reportRemainingTupleMismatch();
 
     /**
      * Temp table for copies of tuples that were dirtied.
@@ -148,6 +157,29 @@ private:
 
     void checkRemainingTuples(const std::string &label);
 
+    /**
+     * Block tagged snapshots write the rows of each tuple block in chunks of their own,
+     * tagged with the block id, so a delta snapshot can leave out the blocks that weren't
+     * written since the base snapshot was taken (base epoch). The ids of the left out
+     * blocks are written at the end in place of their rows.
+     */
+    const bool m_blockTagged;
+    const int64_t m_baseEpoch;
+
+    /**
+     * Id the backed up tuples are tagged with, not the id of any table block.
+     */
+    const int64_t m_backedUpBlockId;
+
+    /**
+     * Block the table scan is in and whether its rows are written.
+     */
+    int64_t m_scanBlockId;
+    bool m_scanBlockIncluded;
+
+    bool m_finishedBackedUpTuples;
+    std::vector<int64_t> m_unchangedBlockIds;
+    std::size_t m_unchangedBlockIdsWritten;
 };
 
 }
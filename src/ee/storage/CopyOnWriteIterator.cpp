@@ -42,21 +42,17 @@ CopyOnWriteIterator::CopyOnWriteIterator(
  * and mark them as clean so that they can be copied during the next snapshot.
  */
 bool CopyOnWriteIterator::next(TableTuple &out) {
-    assert(m_currentBlock != NULL);
-    while (true) {
-        if (m_blockOffset >= m_currentBlock->unusedTupleBoundry()) {
-            if (m_blockIterator == m_end) {
-                m_table->snapshotFinishedScanningBlock(m_currentBlock, TBPtr());
-                break;
-            }
-            m_table->snapshotFinishedScanningBlock(m_currentBlock, m_blockIterator.data());
-            m_location = m_blockIterator.key();
-            m_currentBlock = m_blockIterator.data();
-            assert(m_currentBlock->address() == m_location);
-            m_blockIterator.data() = TBPtr();
-            m_blockOffset = 0;
-            m_blockIterator++;
+    while (!nextInBlock(out)) {
+        if (!nextBlock()) {
+            return false;
         }
+    }
+    return true;
+}
+
+bool CopyOnWriteIterator::nextInBlock(TableTuple &out) {
+    assert(m_currentBlock != NULL);
+    while (m_blockOffset < m_currentBlock->unusedTupleBoundry()) {
         assert(m_location < m_currentBlock.get()->address() + m_table->m_tableAllocationSize);
         assert(m_location < m_currentBlock.get()->address() + (m_table->m_tupleLength * m_table->m_tuplesPerBlock));
         assert (out.sizeInValues() == m_table->columnCount());
@@ -64,19 +60,31 @@ bool CopyOnWriteIterator::next(TableTuple &out) {
         out.move(m_location);
         const bool active = out.isActive();
         const bool dirty = out.isDirty();
+        out.setDirtyFalse();
+        m_location += m_tupleLength;
         // Return this tuple only when this tuple is not marked as deleted and isn't dirty
         if (active && !dirty) {
-            out.setDirtyFalse();
-            m_location += m_tupleLength;
             return true;
-        } else {
-            out.setDirtyFalse();
-            m_location += m_tupleLength;
         }
     }
     return false;
 }
 
+bool CopyOnWriteIterator::nextBlock() {
+    if (m_blockIterator == m_end) {
+        m_table->snapshotFinishedScanningBlock(m_currentBlock, TBPtr());
+        return false;
+    }
+    m_table->snapshotFinishedScanningBlock(m_currentBlock, m_blockIterator.data());
+    m_location = m_blockIterator.key();
+    m_currentBlock = m_blockIterator.data();
+    assert(m_currentBlock->address() == m_location);
+    m_blockIterator.data() = TBPtr();
+    m_blockOffset = 0;
+    m_blockIterator++;
+    return true;
+}
+
 int64_t CopyOnWriteIterator::countRemaining() const {
     TableTuple out(m_table->schema());
     uint32_t blockOffset = m_blockOffset;
@@ -60,6 +60,18 @@ public:
 
     bool next(TableTuple &out);
 
+    /**
+     * Like next() but doesn't move on to the next block, returns false once the
+     * current block has been scanned.
+     */
+    bool nextInBlock(TableTuple &out);
+
+    /**
+     * Finish the current block and move on to the next one.
+     * Returns false if there are no more blocks.
+     */
+    bool nextBlock();
+
     virtual ~CopyOnWriteIterator() {}
 
     int64_t countRemaining() const;
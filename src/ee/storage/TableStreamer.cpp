@@ -38,7 +38,9 @@ TableStreamer::TableStreamer(TupleSerializer &tupleSerializer,
                    ReferenceSerializeInput &serializeIn) :
     m_tupleSerializer(tupleSerializer),
     m_streamType(streamType),
-    m_partitionId(partitionId)
+    m_partitionId(partitionId),
+    m_snapshotEpoch(0),
+    m_baseEpoch(0)
 {
     // Grab the predicates and delete flag for snapshots or elastic contexts.
     if (streamType == TABLE_STREAM_SNAPSHOT || streamType == TABLE_STREAM_ELASTIC) {
@@ -51,6 +53,12 @@ TableStreamer::TableStreamer(TupleSerializer &tupleSerializer,
             }
         }
     }
+    // Snapshots that write tuple blocks tagged with their ids follow with the
+    // snapshot's epoch and the epoch of the snapshot it is a delta of, if any.
+    if (streamType == TABLE_STREAM_SNAPSHOT && serializeIn.remaining() >= 2 * sizeof(int64_t)) {
+        m_snapshotEpoch = serializeIn.readLong();
+        m_baseEpoch = serializeIn.readLong();
+    }
 }
 
 TableStreamer::~TableStreamer()
@@ -65,10 +73,19 @@ bool TableStreamer::activateStream(PersistentTable &table, CatalogId tableId)
         try {
             switch (m_streamType) {
                 case TABLE_STREAM_SNAPSHOT: {
+                    // A delta only leaves out blocks if the table took part in the base snapshot.
+                    // Otherwise (restart, new table, replicated table written by another site)
+                    // every block is written and the delta stands on its own.
+                    const bool blockTagged = m_snapshotEpoch > 0;
+                    int64_t baseEpoch = 0;
+                    if (blockTagged && table.startBlockSnapshot(m_snapshotEpoch, m_baseEpoch)) {
+                        baseEpoch = m_baseEpoch;
+                    }
                     // Constructor can throw exception when it parses the predicates.
                     CopyOnWriteContext *newContext =
                         new CopyOnWriteContext(table, m_tupleSerializer, m_partitionId,
-                                               m_predicateStrings, table.activeTupleCount());
+                                               m_predicateStrings, table.activeTupleCount(),
+                                               blockTagged, baseEpoch);
                     m_context.reset(newContext);
                     break;
                 }
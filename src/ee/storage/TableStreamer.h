@@ -165,6 +165,10 @@ private:
     /// Predicate strings.
     std::vector<std::string> m_predicateStrings;
 
+    /// Epochs of a block tagged snapshot and of its base, 0 if not block tagged or no base.
+    int64_t m_snapshotEpoch;
+    int64_t m_baseEpoch;
+
     /// Context to keep track of snapshot scans.
     boost::scoped_ptr<TableStreamerContext> m_context;
 };
@@ -37,7 +37,9 @@ TupleBlock::TupleBlock(Table *table, TBBucketPtr bucket) :
         m_lastCompactionOffset(0),
         m_tuplesPerBlockDivNumBuckets(m_tuplesPerBlock / static_cast<double>(TUPLE_BLOCK_NUM_BUCKETS)),
         m_bucket(bucket),
-        m_bucketIndex(0)
+        m_bucketIndex(0),
+        m_blockId(0),
+        m_writeEpoch(0)
 {
 #ifdef MEMCHECK
     m_storage = new char[table->m_tableAllocationSize];
@@ -222,6 +222,29 @@ public:
     inline TBBucketPtr currentBucket() {
         return m_bucket;
     }
+
+    inline int64_t blockId() {
+        return m_blockId;
+    }
+
+    inline void blockId(int64_t blockId) {
+        m_blockId = blockId;
+    }
+
+    /**
+     * Epoch of the last block snapshot that was active when the block was written.
+     * A block that hasn't been written since a snapshot was activated can be left
+     * out of a delta snapshot based on that snapshot.
+     */
+    inline int64_t writeEpoch() {
+        return m_writeEpoch;
+    }
+
+    inline void noteWrite(int64_t epoch) {
+        if (epoch > m_writeEpoch) {
+            m_writeEpoch = epoch;
+        }
+    }
 private:
 #ifdef MEMCHECK
     Table* m_table;
@@ -247,6 +270,8 @@ private:
     TBBucketPtr m_bucket;
     int m_bucketIndex;
 
+    int64_t m_blockId;
+    int64_t m_writeEpoch;
 };
 
 /**
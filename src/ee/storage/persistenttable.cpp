@@ -44,6 +44,7 @@
  */
 
 #include <sstream>
+#include <algorithm>
 #include <cassert>
 #include <cstdio>
 #include <boost/foreach.hpp>
@@ -91,7 +92,9 @@ PersistentTable::PersistentTable(int partitionColumn, int tableAllocationTargetS
     m_partitionColumn(partitionColumn),
     stats_(this),
     m_failedCompactionCount(0),
-    m_invisibleTuplesPendingDeleteCount(0)
+    m_invisibleTuplesPendingDeleteCount(0),
+    m_nextBlockId(0),
+    m_blockWriteEpoch(0)
 {
     for (int ii = 0; ii < TUPLE_BLOCK_NUM_BUCKETS; ii++) {
         m_blocksNotPendingSnapshotLoad.push_back(TBBucketPtr(new TBBucket()));
@@ -152,6 +155,7 @@ void PersistentTable::nextFreeTuple(TableTuple *tuple) {
 
         tuple->move(retval.first);
         ++m_tupleCount;
+        noteBlockWrite(block);
         if (!block->hasFreeTuples()) {
             m_blocksWithSpace.erase(block);
         }
@@ -188,6 +192,7 @@ void PersistentTable::nextFreeTuple(TableTuple *tuple) {
 
     tuple->move(retval.first);
     ++m_tupleCount;
+    noteBlockWrite(block);
     if (block->hasFreeTuples()) {
         m_blocksWithSpace.insert(block);
     }
@@ -293,6 +298,7 @@ void PersistentTable::insertTupleForUndo(char *tuple)
     target.setPendingDeleteOnUndoReleaseFalse();
     m_tuplesPinnedByUndo--;
     --m_invisibleTuplesPendingDeleteCount;
+    noteTupleWrite(tuple);
 
     /*
      * The only thing to do is reinsert the tuple into the indexes. It was never moved,
@@ -359,6 +365,7 @@ bool PersistentTable::updateTupleWithSpecificIndexes(TableTuple &targetTupleToUp
     if (m_tableStreamer != NULL) {
         m_tableStreamer->notifyTupleUpdate(targetTupleToUpdate);
     }
+    noteTupleWrite(targetTupleToUpdate.address());
 
     /**
      * Remove the current tuple from any indexes.
@@ -480,6 +487,7 @@ void PersistentTable::updateTupleForUndo(char* tupleWithUnwantedValues,
     }
     TableTuple targetTupleToUpdate = lookupTuple(matchable);
     TableTuple sourceTupleWithNewValues(sourceTupleDataWithNewValues, m_schema);
+    noteTupleWrite(targetTupleToUpdate.address());
 
     //If the indexes were never updated there is no need to revert them.
     if (revertIndexes) {
@@ -523,6 +531,7 @@ bool PersistentTable::deleteTuple(TableTuple &target, bool fallible) {
 
     // The tempTuple is forever!
     assert(&target != &m_tempTuple);
+    noteTupleWrite(target.address());
 
     // Just like insert, we want to remove this tuple from all of our indexes
     deleteFromAllIndexes(&target);
@@ -916,6 +925,19 @@ TableStats* PersistentTable::getTableStats() {
     return &stats_;
 }
 
+bool PersistentTable::startBlockSnapshot(int64_t epoch, int64_t baseEpoch) {
+    bool baseKnown = baseEpoch > 0 &&
+        std::find(m_blockSnapshotEpochs.begin(), m_blockSnapshotEpochs.end(), baseEpoch) !=
+            m_blockSnapshotEpochs.end();
+    m_blockWriteEpoch = epoch;
+    m_blockSnapshotEpochs.push_back(epoch);
+    // Only the last few snapshots are useful as bases, a chain always builds on the latest
+    while (m_blockSnapshotEpochs.size() > 8) {
+        m_blockSnapshotEpochs.pop_front();
+    }
+    return baseKnown;
+}
+
 /** Prepare table for streaming from serialized data. */
 bool PersistentTable::activateStream(
     TupleSerializer &tupleSerializer,
@@ -1152,6 +1174,8 @@ bool PersistentTable::doCompactionWithinSubset(TBBucketMap *bucketMap) {
         }
 
         std::pair<int, int> bucketChanges = fullest->merge(this, lightest, this);
+        noteBlockWrite(fullest);
+        noteBlockWrite(lightest);
         int tempFullestBucketChange = bucketChanges.first;
         if (tempFullestBucketChange != -1) {
             fullestBucketChange = tempFullestBucketChange;
@@ -48,6 +48,7 @@
 
 #include <string>
 #include <vector>
+#include <deque>
 #include <cassert>
 #include <boost/shared_ptr.hpp>
 #include "common/ids.h"
@@ -277,6 +278,22 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
         return m_data.size();
     }
 
+    /**
+     * Start a snapshot that writes tuple blocks tagged with their ids. Blocks written
+     * from now on are stamped with the epoch. Returns true if baseEpoch belongs to one
+     * of the recent block snapshots of this table, so that blocks not written since
+     * can be left out of this one.
+     */
+    bool startBlockSnapshot(int64_t epoch, int64_t baseEpoch);
+
+    /**
+     * Block ids are never reused within a table. Snapshots also draw ids from here
+     * for the tuples they back up.
+     */
+    int64_t nextBlockId() {
+        return m_nextBlockId++;
+    }
+
     bool canSafelyFreeTuple(TableTuple &tuple) const {
         return m_tableStreamer.get() != NULL && m_tableStreamer->canSafelyFreeTuple(tuple);
     }
@@ -358,6 +375,18 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
     // helper for deleteTupleStorage
     TBPtr findBlock(char *tuple);
 
+    // Stamp a block as written for block snapshots, no-op until the first one starts
+    void noteBlockWrite(TBPtr block) {
+        if (m_blockWriteEpoch != 0) {
+            block->noteWrite(m_blockWriteEpoch);
+        }
+    }
+    void noteTupleWrite(char *tuple) {
+        if (m_blockWriteEpoch != 0) {
+            findBlock(tuple)->noteWrite(m_blockWriteEpoch);
+        }
+    }
+
     /*
      * Implemented by persistent table and called by Table::loadTuplesFrom
      * to do additional processing for views and Export
@@ -410,6 +439,11 @@ class PersistentTable : public Table, public UndoQuantumReleaseInterest,
     TBMap m_data;
     int m_failedCompactionCount;
     int m_invisibleTuplesPendingDeleteCount;
+
+    // Block snapshot bookkeeping, see startBlockSnapshot()
+    int64_t m_nextBlockId;
+    int64_t m_blockWriteEpoch;
+    std::deque<int64_t> m_blockSnapshotEpochs;
 };
 
 inline TableTuple& PersistentTable::getTempTupleInlined(TableTuple &source) {
@@ -450,6 +484,7 @@ inline void PersistentTable::deleteTupleStorage(TableTuple &tuple, TBPtr block)
     if (block.get() == NULL) {
        block = findBlock(tuple.address());
     }
+    noteBlockWrite(block);
 
     bool transitioningToBlockWithSpace = !block->hasFreeTuples();
 
@@ -503,6 +538,7 @@ inline TBPtr PersistentTable::findBlock(char *tuple) {
 
 inline TBPtr PersistentTable::allocateNextBlock() {
     TBPtr block(new (ThreadLocalPool::getExact(sizeof(TupleBlock))->malloc()) TupleBlock(this, m_blocksNotPendingSnapshotLoad[0]));
+    block->blockId(nextBlockId());
     m_data.insert( block->address(), block);
     m_blocksNotPendingSnapshot.insert(block);
     return block;
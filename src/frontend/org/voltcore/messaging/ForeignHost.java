@@ -23,6 +23,10 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -33,27 +37,35 @@ import org.voltcore.network.ReverseDNSPolicy;
 import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.VoltProtocolHandler;
 import org.voltcore.utils.CoreUtils;
-import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.RateLimitedLogger;
+import org.voltcore.utils.SizedDeferredSerialization;
 import org.voltdb.VoltDB;
 
+import com.google.common.primitives.Longs;
+
 public class ForeignHost {
     private static final VoltLogger hostLog = new VoltLogger("HOST");
     private static final RateLimitedLogger rateLimitedLogger = new RateLimitedLogger(10 * 1000, hostLog, Level.WARN);
 
-    private Connection m_connection;
-    final FHInputHandler m_handler;
+    /*
+     * Connections to the host, slot 0 is the connection the host joined on. The other slots are
+     * filled in as auxiliary connections are made and stay null if they never are.
+     * Updated copy on write so send doesn't have to lock.
+     */
+    private volatile Connection m_connections[];
     private final HostMessenger m_hostMessenger;
     private final Integer m_hostId;
     final InetSocketAddress m_listeningAddress;
 
     private boolean m_closing;
     boolean m_isUp;
+    private boolean m_readEnabled = false;
 
-    // hold onto the socket so we can kill it
+    // hold onto the sockets so we can kill them
     private final Socket m_socket;
     private final SocketChannel m_sc;
+    private volatile SocketChannel m_channels[];
 
     // Set the default here for TestMessaging, which currently has no VoltDB instance
     private long m_deadHostTimeout;
@@ -72,6 +84,16 @@ public class ForeignHost {
         @Override
         public void handleMessage(ByteBuffer message, Connection c) throws IOException {
             handleRead(message, c);
+            m_lastMessageMillis.lazySet(EstTime.currentTimeMillis());
+        }
+
+        @Override
+        public void handleMessages(List<ByteBuffer> messages, Connection c) throws IOException {
+            for (int ii = 0; ii < messages.size(); ii++) {
+                handleRead(messages.get(ii), c);
+            }
+            // one liveness update per read is plenty
+            m_lastMessageMillis.lazySet(EstTime.currentTimeMillis());
         }
 
         @Override
@@ -113,8 +135,22 @@ public class ForeignHost {
             InetSocketAddress listeningAddress)
     throws IOException
     {
+        this(host, hostId, socket, deadHostTimeout, listeningAddress, 1);
+    }
+
+    /**
+     * Create a ForeignHost that will carry its traffic over up to connectionCount connections.
+     * Only the given socket is connected, the rest are added with
+     * {@link #addConnection(HostMessenger, int, SocketChannel)} as they are made.
+     */
+    ForeignHost(HostMessenger host, int hostId, SocketChannel socket, int deadHostTimeout,
+            InetSocketAddress listeningAddress, int connectionCount)
+    throws IOException
+    {
+        if (connectionCount < 1) {
+            throw new IllegalArgumentException("Connection count must be > 0, was " + connectionCount);
+        }
         m_hostMessenger = host;
-        m_handler = new FHInputHandler();
         m_hostId = hostId;
         m_closing = false;
         m_isUp = true;
@@ -122,14 +158,105 @@ public class ForeignHost {
         m_socket = socket.socket();
         m_deadHostTimeout = deadHostTimeout;
         m_listeningAddress = listeningAddress;
+        m_connections = new Connection[connectionCount];
+        m_channels = new SocketChannel[connectionCount];
+        m_channels[0] = socket;
     }
 
     public void register(HostMessenger host) throws IOException {
-        m_connection = host.getNetwork().registerChannel( m_sc, m_handler, 0, ReverseDNSPolicy.SYNCHRONOUS);
+        Connection connections[] = m_connections.clone();
+        connections[0] = host.getNetwork().registerChannel(
+                m_sc, new FHInputHandler(), 0, ReverseDNSPolicy.SYNCHRONOUS);
+        m_connections = connections;
+    }
+
+    /**
+     * Add an auxiliary connection to this host in the given slot. Its reads are handled
+     * like those of the primary connection, and losing it fails the whole host.
+     * @return false if the slot is invalid or taken, or this host is closing, in which case
+     * the caller still owns the socket
+     */
+    synchronized boolean addConnection(HostMessenger host, int index, SocketChannel socket) throws IOException {
+        if (m_closing || index < 1 || index >= m_connections.length || m_channels[index] != null) {
+            return false;
+        }
+        Connection connection =
+            host.getNetwork().registerChannel(socket, new FHInputHandler(), 0, ReverseDNSPolicy.SYNCHRONOUS);
+        SocketChannel channels[] = m_channels.clone();
+        channels[index] = socket;
+        m_channels = channels;
+        Connection connections[] = m_connections.clone();
+        connections[index] = connection;
+        m_connections = connections;
+        if (m_readEnabled) {
+            connection.enableReadSelection();
+        }
+        return true;
+    }
+
+    public synchronized void enableRead() {
+        m_readEnabled = true;
+        for (Connection c : m_connections) {
+            if (c != null) {
+                c.enableReadSelection();
+            }
+        }
+    }
+
+    /**
+     * @return The number of connections this host has been configured to use
+     */
+    int getConnectionCount() {
+        return m_connections.length;
+    }
+
+    /**
+     * @return Milliseconds since anything was received from this host, heartbeats
+     * included, or Long.MAX_VALUE if nothing has been received yet
+     */
+    long millisSinceLastMessage() {
+        final long lastMessageMillis = m_lastMessageMillis.get();
+        if (lastMessageMillis == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, EstTime.currentTimeMillis() - lastMessageMillis);
+    }
+
+    /**
+     * @return The number of connections to this host that are established
+     */
+    int getConnectedCount() {
+        int count = 0;
+        for (Connection c : m_connections) {
+            if (c != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Pick the connection slot for a destination. Sites are spread across the connections by
+     * site id so that every message to a site travels over the same connection and stays in
+     * order. Mailboxes with negative site ids (agreement, stats, client interface etc.) always
+     * use the primary connection since they exist while the auxiliary connections are still being
+     * made.
+     */
+    static int connectionIndexFor(long hsId, int connectionCount) {
+        final int siteId = CoreUtils.getSiteIdFromHSId(hsId);
+        if (siteId < 0) {
+            return 0;
+        }
+        return siteId % connectionCount;
     }
 
-    public void enableRead() {
-        m_connection.enableReadSelection();
+    /*
+     * Resolve the connection for a destination. If the auxiliary connection for a site isn't up yet
+     * the primary is used. That only happens while the mesh is forming, before sites exist.
+     */
+    private static Connection connectionFor(Connection connections[], long hsId) {
+        Connection c = connections[connectionIndexFor(hsId, connections.length)];
+        return c != null ? c : connections[0];
     }
 
     synchronized void close()
@@ -137,8 +264,11 @@ public class ForeignHost {
         m_isUp = false;
         if (m_closing) return;
         m_closing = true;
-        if (m_connection != null)
-            m_connection.unregister();
+        for (Connection c : m_connections) {
+            if (c != null) {
+                c.unregister();
+            }
+        }
     }
 
     /**
@@ -147,10 +277,19 @@ public class ForeignHost {
     void killSocket() {
         try {
             m_closing = true;
-            m_socket.setKeepAlive(false);
-            m_socket.setSoLinger(false, 0);
+            for (SocketChannel sc : m_channels) {
+                if (sc == null) {
+                    continue;
+                }
+                sc.socket().setKeepAlive(false);
+                sc.socket().setSoLinger(false, 0);
+            }
             Thread.sleep(25);
-            m_socket.close();
+            for (SocketChannel sc : m_channels) {
+                if (sc != null) {
+                    sc.socket().close();
+                }
+            }
             Thread.sleep(25);
             System.gc();
             Thread.sleep(25);
@@ -178,6 +317,68 @@ public class ForeignHost {
         return m_isUp;
     }
 
+    /**
+     * Frames a message for the wire. The network thread serializes it straight into its pooled
+     * direct buffers, so there is no intermediate heap buffer unless the message is larger
+     * than a pool buffer.
+     */
+    static final class MessageWrite implements SizedDeferredSerialization {
+        private final long m_destinations[];
+        private final VoltMessage m_message;
+        private int m_messageSize = -1;
+
+        MessageWrite(long destinations[], VoltMessage message) {
+            m_destinations = destinations;
+            m_message = message;
+        }
+
+        @Override
+        public int getSerializedSize() {
+            if (m_messageSize < 0) {
+                m_messageSize = m_message.getSerializedSize();
+            }
+            return 4            /* length prefix */
+                 + 8            /* source hsid */
+                 + 4            /* destinationCount */
+                 + 8 * m_destinations.length  /* destination list */
+                 + m_messageSize;
+        }
+
+        @Override
+        public void serialize(ByteBuffer buf) throws IOException {
+            final int len = getSerializedSize();
+            buf.putInt(len - 4);
+            buf.putLong(m_message.m_sourceHSId);
+            buf.putInt(m_destinations.length);
+            for (int ii = 0; ii < m_destinations.length; ii++) {
+                buf.putLong(m_destinations[ii]);
+            }
+            /*
+             * Messages expect to fill a buffer of exactly their size and set its limit,
+             * so hand them a view of their part of the (possibly shared) buffer
+             */
+            final ByteBuffer view = buf.duplicate();
+            view.limit(view.position() + m_messageSize);
+            m_message.flattenToBuffer(view.slice());
+            buf.position(buf.position() + m_messageSize);
+        }
+
+        @Override
+        public ByteBuffer[] serialize() throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(getSerializedSize());
+            serialize(buf);
+            buf.flip();
+            return new ByteBuffer[] { buf };
+        }
+
+        @Override
+        public void cancel() {
+            /*
+             * Can this be removed?
+             */
+        }
+    }
+
     /** Send a message to the network. This public method is re-entrant. */
     void send(
             final long destinations[],
@@ -187,34 +388,12 @@ public class ForeignHost {
             return;
         }
 
-        m_connection.writeStream().enqueue(
-            new DeferredSerialization() {
-                @Override
-                public final ByteBuffer[] serialize() throws IOException{
-                    int len = 4            /* length prefix */
-                            + 8            /* source hsid */
-                            + 4            /* destinationCount */
-                            + 8 * destinations.length  /* destination list */
-                            + message.getSerializedSize();
-                    ByteBuffer buf = ByteBuffer.allocate(len);
-                    buf.putInt(len - 4);
-                    buf.putLong(message.m_sourceHSId);
-                    buf.putInt(destinations.length);
-                    for (int ii = 0; ii < destinations.length; ii++) {
-                        buf.putLong(destinations[ii]);
-                    }
-                    message.flattenToBuffer(buf);
-                    buf.flip();
-                    return new ByteBuffer[] { buf };
-                }
-
-                @Override
-                public final void cancel() {
-                    /*
-                     * Can this be removed?
-                     */
-                }
-            });
+        final Connection connections[] = m_connections;
+        if (connections.length == 1) {
+            connections[0].writeStream().enqueue(new MessageWrite(destinations, message));
+        } else {
+            sendStriped(connections, destinations, message);
+        }
 
         long current_time = EstTime.currentTimeMillis();
         long current_delta = current_time - m_lastMessageMillis.get();
@@ -247,8 +426,41 @@ public class ForeignHost {
     }
 
 
+    /*
+     * Split the destinations by the connection they map to and send one copy of the
+     * message over each of those connections
+     */
+    private static void sendStriped(Connection connections[], long destinations[], VoltMessage message) {
+        final Connection first = connectionFor(connections, destinations[0]);
+        boolean sameConnection = true;
+        for (int ii = 1; ii < destinations.length; ii++) {
+            if (connectionFor(connections, destinations[ii]) != first) {
+                sameConnection = false;
+                break;
+            }
+        }
+        if (sameConnection) {
+            first.writeStream().enqueue(new MessageWrite(destinations, message));
+            return;
+        }
+
+        final Map<Connection, List<Long>> bundles = new HashMap<Connection, List<Long>>();
+        for (long hsId : destinations) {
+            final Connection c = connectionFor(connections, hsId);
+            List<Long> bundle = bundles.get(c);
+            if (bundle == null) {
+                bundle = new ArrayList<Long>();
+                bundles.put(c, bundle);
+            }
+            bundle.add(hsId);
+        }
+        for (Map.Entry<Connection, List<Long>> e : bundles.entrySet()) {
+            e.getKey().writeStream().enqueue(new MessageWrite(Longs.toArray(e.getValue()), message));
+        }
+    }
+
     String hostname() {
-        return m_connection.getHostnameAndIP();
+        return m_connections[0].getHostnameAndIP();
     }
 
     /** Deliver a deserialized message from the network to a local mailbox */
@@ -327,10 +539,6 @@ public class ForeignHost {
         for (int i = 0; i < destCount; i++) {
             deliverMessage( recvDests[i], message);
         }
-
-        //m_lastMessageMillis = System.currentTimeMillis();
-        m_lastMessageMillis.lazySet(EstTime.currentTimeMillis());
-
     }
 
     public void sendPoisonPill(String err) {
@@ -348,7 +556,7 @@ public class ForeignHost {
         message.putInt(errBytes.length);
         message.put(errBytes);
         message.flip();
-        m_connection.writeStream().enqueue(message);
+        m_connections[0].writeStream().enqueue(message);
     }
 
     public void updateDeadHostTimeout(int timeout) {
@@ -85,6 +85,11 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         public long backwardsTimeForgivenessWindow = 1000 * 60 * 60 * 24 * 7;
         public VoltMessageFactory factory = new VoltMessageFactory();
         public int networkThreads =  Math.max(2, CoreUtils.availableProcessors() / 4);
+        /*
+         * Number of connections to open to every other host. Messages are spread across them
+         * by destination site. Should be the same on every host in the cluster.
+         */
+        public int connectionsPerHost = 1;
         public Queue<String> coreBindIds;;
 
         public Config(String coordIp, int coordPort) {
@@ -94,6 +99,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 coordinatorIp = new InetSocketAddress(coordIp, coordPort);
             }
             initNetworkThreads();
+            initConnectionsPerHost();
         }
 
         public Config() {
@@ -124,6 +130,22 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
             }
         }
 
+        private void initConnectionsPerHost() {
+            try {
+                Integer connectionsConfig = Integer.getInteger("connectionsPerHost");
+                if (connectionsConfig != null) {
+                    if (connectionsConfig < 1) {
+                        logger.error("Ignoring connectionsPerHost " + connectionsConfig + ", it must be > 0");
+                    } else {
+                        this.connectionsPerHost = connectionsConfig;
+                        logger.info("Overridden connections per host: " + this.connectionsPerHost);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Error setting connections per host", e);
+            }
+        }
+
         @Override
         public String toString() {
             JSONStringer js = new JSONStringer();
@@ -136,6 +158,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 js.key("deadhosttimeout").value(deadHostTimeout);
                 js.key("backwardstimeforgivenesswindow").value(backwardsTimeForgivenessWindow);
                 js.key("networkThreads").value(networkThreads);
+                js.key("connectionsPerHost").value(connectionsPerHost);
                 js.endObject();
 
                 return js.toString();
@@ -214,6 +237,7 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 m_config.coordinatorIp,
                 m_config.internalInterface,
                 m_config.internalPort,
+                m_config.connectionsPerHost,
                 this);
     }
 
@@ -389,7 +413,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         prepSocketChannel(socket);
         ForeignHost fhost = null;
         try {
-            fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress);
+            fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress,
+                    m_config.connectionsPerHost);
             fhost.register(this);
             putForeignHost(hostId, fhost);
             fhost.enableRead();
@@ -398,6 +423,31 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         }
     }
 
+    /*
+     * Attach an auxiliary connection to the foreign host it came from. Made by whichever
+     * end of the pair joined the mesh later, once the primary connection is established.
+     */
+    @Override
+    public void notifyOfConnection(int hostId, int connectionIndex, SocketChannel socket) {
+        prepSocketChannel(socket);
+        ForeignHost fhost = m_foreignHosts.get(hostId);
+        boolean added = false;
+        try {
+            if (fhost != null) {
+                added = fhost.addConnection(this, connectionIndex, socket);
+            }
+        } catch (java.io.IOException e) {
+            hostLog.warn("Failed to add connection " + connectionIndex + " to host " + hostId, e);
+        }
+        if (!added) {
+            hostLog.warn("Dropping connection " + connectionIndex + " to host " + hostId +
+                    ", the host is unknown, failed or already has that connection");
+            try {
+                socket.close();
+            } catch (java.io.IOException e) {}
+        }
+    }
+
     /*
      * Set all the default options for sockets
      */
@@ -467,7 +517,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
                 /*
                  * Now add the host to the mailbox system
                  */
-                fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress);
+                fhost = new ForeignHost(this, hostId, socket, m_config.deadHostTimeout, listeningAddress,
+                    m_config.connectionsPerHost);
                 fhost.register(this);
                 putForeignHost(hostId, fhost);
                 fhost.enableRead();
@@ -580,7 +631,8 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
             prepSocketChannel(sockets[ii]);
             ForeignHost fhost = null;
             try {
-                fhost = new ForeignHost(this, hosts[ii], sockets[ii], m_config.deadHostTimeout, listeningAddresses[ii]);
+                fhost = new ForeignHost(this, hosts[ii], sockets[ii], m_config.deadHostTimeout, listeningAddresses[ii],
+                        m_config.connectionsPerHost);
                 fhost.register(this);
                 putForeignHost(hosts[ii], fhost);
             } catch (java.io.IOException e) {
@@ -703,6 +755,23 @@ public class HostMessenger implements SocketJoiner.JoinHandler, InterfaceToMesse
         return hostids;
     }
 
+    /**
+     * How long ago something was last received from a host. The agreement site
+     * heartbeats every few milliseconds so this stays small for a live, connected host.
+     * Returns 0 for the local host and Long.MAX_VALUE for a host that isn't connected.
+     */
+    public long getMillisSinceLastMessage(int hostId)
+    {
+        if (hostId == m_localHostId) {
+            return 0;
+        }
+        ForeignHost fhost = m_foreignHosts.get(hostId);
+        if (fhost == null) {
+            return Long.MAX_VALUE;
+        }
+        return fhost.millisSinceLastMessage();
+    }
+
     /**
      * Given a hostid, return the hostname for it
      */
@@ -83,6 +83,12 @@ public class SocketJoiner {
                 int hosts[],
                 SocketChannel sockets[],
                 InetSocketAddress listeningAddresses[]) throws Exception;
+
+        /*
+         * An additional connection to an already joined host has been made, the connection
+         * index distinguishes the connections to the same host
+         */
+        public void notifyOfConnection(int hostId, int connectionIndex, SocketChannel socket);
     }
 
     private static final VoltLogger LOG = new VoltLogger(SocketJoiner.class.getName());
@@ -101,6 +107,7 @@ public class SocketJoiner {
     // from configuration data
     int m_internalPort = 3021;
     String m_internalInterface = "";
+    int m_connectionsPerHost = 1;
     /*
      * The interface we connected to the leader on
      */
@@ -207,13 +214,23 @@ public class SocketJoiner {
             String internalInterface,
             int internalPort,
             JoinHandler jh) {
-        if (internalInterface == null || coordIp == null || jh == null) {
+        this(coordIp, internalInterface, internalPort, 1, jh);
+    }
+
+    public SocketJoiner(
+            InetSocketAddress coordIp,
+            String internalInterface,
+            int internalPort,
+            int connectionsPerHost,
+            JoinHandler jh) {
+        if (internalInterface == null || coordIp == null || jh == null || connectionsPerHost < 1) {
             throw new IllegalArgumentException();
         }
         m_coordIp = coordIp;
         m_joinHandler = jh;
         m_internalInterface = internalInterface;
         m_internalPort = internalPort;
+        m_connectionsPerHost = connectionsPerHost;
     }
 
     /*
@@ -334,6 +351,8 @@ public class SocketJoiner {
                 m_joinHandler.requestJoin( sc, listeningAddress);
             } else if (type.equals("PUBLISH_HOSTID")){
                 m_joinHandler.notifyOfJoin(jsObj.getInt("hostId"), sc, listeningAddress);
+            } else if (type.equals("ADD_CONNECTION")) {
+                m_joinHandler.notifyOfConnection(jsObj.getInt("hostId"), jsObj.getInt("connectionIndex"), sc);
             } else {
                 throw new RuntimeException("Unexpected message type " + type + " from " + remoteAddress);
             }
@@ -484,6 +503,8 @@ public class SocketJoiner {
             int hostIds[] = new int[otherHosts.length()];
             SocketChannel hostSockets[] = new SocketChannel[hostIds.length];
             InetSocketAddress listeningAddresses[] = new InetSocketAddress[hostIds.length];
+            // the leader is reached on the coordinator address, which it may not advertise
+            InetSocketAddress connectAddresses[] = new InetSocketAddress[hostIds.length];
 
             for (int ii = 0; ii < otherHosts.length(); ii++) {
                 JSONObject host = otherHosts.getJSONObject(ii);
@@ -497,6 +518,7 @@ public class SocketJoiner {
                     //Leader already has a socket
                     hostIds[ii] = hostId;
                     listeningAddresses[ii] = hostAddr;
+                    connectAddresses[ii] = m_coordIp;
                     hostSockets[ii] = socket;
                     continue;
                 }
@@ -546,6 +568,7 @@ public class SocketJoiner {
                 hostIds[ii] = hostId;
                 hostSockets[ii] = hostSocket;
                 listeningAddresses[ii] = hostAddr;
+                connectAddresses[ii] = hostAddr;
             }
 
             long maxSkew = Collections.max(skews);
@@ -582,6 +605,18 @@ public class SocketJoiner {
              * It will init the agreement site and then we are done.
              */
             m_joinHandler.notifyOfHosts( m_localHostId, hostIds, hostSockets, listeningAddresses);
+
+            /*
+             * Now that every host knows this one, open the rest of the connections to each host.
+             * This can't happen earlier because the leader doesn't accept connections
+             * until this node's agreement site has joined.
+             */
+            for (int ii = 0; ii < hostIds.length; ii++) {
+                for (int index = 1; index < m_connectionsPerHost; index++) {
+                    m_joinHandler.notifyOfConnection(
+                            hostIds[ii], index, createAuxiliaryConnection(connectAddresses[ii], index));
+                }
+            }
         } catch (ClosedByInterruptException e) {
             //This is how shutdown is done
         } catch (Exception e) {
@@ -590,6 +625,50 @@ public class SocketJoiner {
         }
     }
 
+    /*
+     * Connect to a host that already has this node's primary connection and identify the
+     * new connection as one more to the same host
+     */
+    private SocketChannel createAuxiliaryConnection(InetSocketAddress hostAddr, int connectionIndex)
+    throws Exception {
+        SocketChannel hostSocket = null;
+        while (hostSocket == null) {
+            try {
+                hostSocket = SocketChannel.open(hostAddr);
+            }
+            catch (java.net.ConnectException e) {
+                LOG.warn("Connecting to host failed: " + e.getMessage() + " retrying..");
+                Thread.sleep(250);
+            }
+        }
+        hostSocket.socket().setTcpNoDelay(true);
+        hostSocket.socket().setPerformancePreferences(0, 2, 1);
+
+        /*
+         * The host sends its time first, the skew was already checked over the primary connection
+         */
+        ByteBuffer currentTime = ByteBuffer.allocate(8);
+        while (currentTime.hasRemaining()) {
+            if (hostSocket.read(currentTime) == -1) {
+                throw new EOFException(hostAddr.toString());
+            }
+        }
+
+        JSONObject jsObj = new JSONObject();
+        jsObj.put("type", "ADD_CONNECTION");
+        jsObj.put("hostId", m_localHostId);
+        jsObj.put("connectionIndex", connectionIndex);
+        jsObj.put("port", m_internalPort);
+        byte jsBytes[] = jsObj.toString(4).getBytes("UTF-8");
+        ByteBuffer addConnection = ByteBuffer.allocate(4 + jsBytes.length);
+        addConnection.putInt(jsBytes.length);
+        addConnection.put(jsBytes).flip();
+        while (addConnection.hasRemaining()) {
+            hostSocket.write(addConnection);
+        }
+        return hostSocket;
+    }
+
     public void shutdown() throws InterruptedException {
         if (m_selector != null) {
             try {
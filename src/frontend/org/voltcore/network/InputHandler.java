@@ -38,6 +38,16 @@ public interface InputHandler {
      */
     ByteBuffer retrieveNextMessage(Connection c) throws IOException;
 
+    /**
+     * Retrieve every complete message buffered in the connection's read stream
+     * and handle them as one batch. Invoked once per read instead of looping over
+     * {@link #retrieveNextMessage(Connection)} and {@link #handleMessage(ByteBuffer, Connection)}.
+     *
+     * @param c
+     * @return The number of messages handled
+     */
+    int handleInput(Connection c) throws IOException;
+
     /**
      * Handle the incoming message produced by retrieve next message
      *
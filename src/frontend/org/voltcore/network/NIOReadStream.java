@@ -62,7 +62,18 @@ public class NIOReadStream {
     }
 
     int getInt() {
-        // TODO: Optimize?
+        if (m_totalAvailable < 4) {
+            throw new IllegalStateException("Requested 4 bytes; only have "
+                    + m_totalAvailable + " bytes; call tryRead() first");
+        }
+        final BBContainer first = firstReadBuffer();
+        if (first.b.remaining() >= 4) {
+            // common case, the int doesn't straddle buffers
+            final int output = first.b.getInt();
+            m_totalAvailable -= 4;
+            consumed(first);
+            return output;
+        }
         byte[] intbytes = new byte[4];
         getBytes(intbytes);
         int output = 0;
@@ -74,36 +85,49 @@ public class NIOReadStream {
     }
 
     void getBytes(byte[] output) {
-        if (m_totalAvailable < output.length) {
-            throw new IllegalStateException("Requested " + output.length + " bytes; only have "
+        getBytes(output, 0, output.length);
+    }
+
+    void getBytes(byte[] output, int offset, int length) {
+        if (m_totalAvailable < length) {
+            throw new IllegalStateException("Requested " + length + " bytes; only have "
                     + m_totalAvailable + " bytes; call tryRead() first");
         }
 
         int bytesCopied = 0;
-        while (bytesCopied < output.length) {
-            BBContainer first = m_readBuffers.peekFirst();
-            if (first == null) {
-                // Steal the write buffer
-                m_writeBuffer.b.flip();
-                m_readBuffers.add(m_writeBuffer);
-                first = m_writeBuffer;
-                m_writeBuffer = null;
-            }
+        while (bytesCopied < length) {
+            BBContainer first = firstReadBuffer();
             assert first.b.remaining() > 0;
 
             // Copy bytes from first into output
             int bytesRemaining = first.b.remaining();
-            int bytesToCopy = output.length - bytesCopied;
+            int bytesToCopy = length - bytesCopied;
             if (bytesToCopy > bytesRemaining) bytesToCopy = bytesRemaining;
-            first.b.get(output, bytesCopied, bytesToCopy);
+            first.b.get(output, offset + bytesCopied, bytesToCopy);
             bytesCopied += bytesToCopy;
             m_totalAvailable -= bytesToCopy;
 
-            if (first.b.remaining() == 0) {
-                // read an entire block: move it to the empty buffers list
-                m_readBuffers.poll();
-                first.discard();
-            }
+            consumed(first);
+        }
+    }
+
+    private BBContainer firstReadBuffer() {
+        BBContainer first = m_readBuffers.peekFirst();
+        if (first == null) {
+            // Steal the write buffer
+            m_writeBuffer.b.flip();
+            m_readBuffers.add(m_writeBuffer);
+            first = m_writeBuffer;
+            m_writeBuffer = null;
+        }
+        return first;
+    }
+
+    // Discard the first read buffer once it has been read entirely
+    private void consumed(BBContainer first) {
+        if (first.b.remaining() == 0) {
+            m_readBuffers.poll();
+            first.discard();
         }
     }
 
@@ -160,6 +184,14 @@ public class NIOReadStream {
         return bytesRead;
     }
 
+    /**
+     * @return true if the stream holds buffers from the network's pool, which it only
+     * does while it has unconsumed data
+     */
+    boolean holdsBuffers() {
+        return m_writeBuffer != null || !m_readBuffers.isEmpty();
+    }
+
     void shutdown() {
         for (BBContainer c : m_readBuffers) {
             c.discard();
@@ -27,6 +27,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.EstTime;
+import org.voltcore.utils.SizedDeferredSerialization;
 
 /**
 *
@@ -55,7 +56,16 @@ public class NIOWriteStream implements WriteStream {
 
     private boolean m_isShutdown = false;
 
-    private BBContainer m_currentWriteBuffer = null;
+    /**
+     * Maximum number of pool buffers handed to a single gathering write
+     */
+    private static final int MAX_GATHERING_WRITE_BUFFERS = 16;
+
+    /**
+     * Flipped buffers currently being written to the socket, the first one may be partially written
+     */
+    private final ArrayDeque<BBContainer> m_writingBuffers = new ArrayDeque<BBContainer>();
+    private final ByteBuffer m_gatheringWrite[] = new ByteBuffer[MAX_GATHERING_WRITE_BUFFERS];
 
     /**
      * Contains serialized buffers ready to write to the socket
@@ -82,6 +92,10 @@ public class NIOWriteStream implements WriteStream {
 
     private long m_bytesWritten = 0;
     private long m_messagesWritten = 0;
+    // number of write calls made to the channel
+    private long m_writeCalls = 0;
+    // messages that were serialized into a newly allocated buffer and copied into the pool
+    private long m_allocatingSerializations = 0;
 
     /*
      * Used to provide incremental reads of the amount of
@@ -91,7 +105,13 @@ public class NIOWriteStream implements WriteStream {
      */
     private long m_lastBytesWritten = 0;
     private long m_lastMessagesWritten = 0;
+    private long m_lastWriteCalls = 0;
+    private long m_lastAllocatingSerializations = 0;
 
+    /**
+     * @return bytes written, messages written, write calls made to the channel and messages
+     * that were serialized into a newly allocated buffer instead of straight into the pool
+     */
     long[] getBytesAndMessagesWritten(boolean interval) {
         if (interval) {
             final long bytesWrittenThisTime = m_bytesWritten - m_lastBytesWritten;
@@ -99,9 +119,18 @@ public class NIOWriteStream implements WriteStream {
 
             final long messagesWrittenThisTime = m_messagesWritten - m_lastMessagesWritten;
             m_lastMessagesWritten = m_messagesWritten;
-            return new long[] { bytesWrittenThisTime, messagesWrittenThisTime };
+
+            final long writeCallsThisTime = m_writeCalls - m_lastWriteCalls;
+            m_lastWriteCalls = m_writeCalls;
+
+            final long allocatingSerializationsThisTime =
+                m_allocatingSerializations - m_lastAllocatingSerializations;
+            m_lastAllocatingSerializations = m_allocatingSerializations;
+            return new long[] {
+                    bytesWrittenThisTime, messagesWrittenThisTime,
+                    writeCallsThisTime, allocatingSerializationsThisTime };
         } else {
-            return new long[] {m_bytesWritten, m_messagesWritten};
+            return new long[] {m_bytesWritten, m_messagesWritten, m_writeCalls, m_allocatingSerializations};
         }
     }
 
@@ -134,13 +163,23 @@ public class NIOWriteStream implements WriteStream {
     @Override
     synchronized public int getOutstandingMessageCount()
     {
-        return m_queuedWrites.size() + m_queuedBuffers.size();
+        return m_queuedWrites.size() + m_queuedBuffers.size() + m_writingBuffers.size();
+    }
+
+    /**
+     * @return true if there are serialized writes waiting in buffers from the network's pool.
+     * Queued unserialized writes don't count, they are serialized into whichever pool the
+     * port uses when they are drained.
+     */
+    synchronized boolean holdsPoolBuffers()
+    {
+        return !m_queuedBuffers.isEmpty() || !m_writingBuffers.isEmpty();
     }
 
     @Override
     synchronized public boolean isEmpty()
     {
-        return m_queuedBuffers.isEmpty() && m_queuedWrites.isEmpty() && m_currentWriteBuffer == null;
+        return m_queuedBuffers.isEmpty() && m_queuedWrites.isEmpty() && m_writingBuffers.isEmpty();
     }
 
     /**
@@ -190,12 +229,12 @@ public class NIOWriteStream implements WriteStream {
     private volatile boolean m_hadBackPressure = false;
 
     /**
-     * Does the work of queueing addititional buffers that have been serialized
-     * and choosing between gathering and regular writes to the channel. Also splits up very large
-     * writes of HeapByteBuffers into many smaller writes so Java doesn't allocate a monster DirectByteBuffer
-     * that will never be freed
+     * Does the work of writing the queued buffers to the channel. Up to
+     * MAX_GATHERING_WRITE_BUFFERS pool buffers are handed to the channel in a single gathering write
+     * so a burst of small messages costs one system call instead of one per buffer.
+     * Everything queued is already in pool buffers, so Java never has to copy a large
+     * HeapByteBuffer into a DirectByteBuffer of its own.
      * @param channel
-     * @param additional
      * @return
      * @throws IOException
      */
@@ -203,10 +242,16 @@ public class NIOWriteStream implements WriteStream {
         int bytesWritten = 0;
         long rc = 0;
         do {
+            while (m_writingBuffers.size() < MAX_GATHERING_WRITE_BUFFERS && !m_queuedBuffers.isEmpty()) {
+                final BBContainer c = m_queuedBuffers.poll();
+                c.b.flip();
+                m_writingBuffers.offer(c);
+            }
+
             /*
              * Nothing to write
              */
-            if (m_currentWriteBuffer == null && m_queuedBuffers.isEmpty()) {
+            if (m_writingBuffers.isEmpty()) {
                 if (m_hadBackPressure && m_queuedWrites.size() <= m_maxQueuedWritesBeforeBackpressure) {
                     backpressureEnded();
                 }
@@ -216,26 +261,32 @@ public class NIOWriteStream implements WriteStream {
                 return bytesWritten;
             }
 
-            ByteBuffer buffer = null;
-            if (m_currentWriteBuffer == null) {
-                m_currentWriteBuffer = m_queuedBuffers.poll();
-                buffer = (ByteBuffer) m_currentWriteBuffer.b.flip();
+            rc = 0;
+            if (m_writingBuffers.size() == 1) {
+                rc = channel.write(m_writingBuffers.peek().b);
             } else {
-                buffer = m_currentWriteBuffer.b;
+                int count = 0;
+                for (BBContainer c : m_writingBuffers) {
+                    m_gatheringWrite[count++] = c.b;
+                }
+                rc = channel.write(m_gatheringWrite, 0, count);
+                for (int ii = 0; ii < count; ii++) {
+                    m_gatheringWrite[ii] = null;
+                }
             }
+            m_writeCalls++;
 
-            rc = 0;
-            rc = channel.write(buffer);
-
-            //Discard the buffer back to a pool if no data remains
-            if (buffer.hasRemaining()) {
+            //Discard the buffers back to a pool if no data remains
+            BBContainer c;
+            while ((c = m_writingBuffers.peek()) != null && !c.b.hasRemaining()) {
+                m_writingBuffers.poll();
+                c.discard();
+                m_messagesWritten++;
+            }
+            if (!m_writingBuffers.isEmpty()) {
                 if (!m_hadBackPressure) {
                     backpressureStarted();
                 }
-            } else {
-                m_currentWriteBuffer.discard();
-                m_currentWriteBuffer = null;
-                m_messagesWritten++;
             }
             bytesWritten += rc;
 
@@ -244,8 +295,9 @@ public class NIOWriteStream implements WriteStream {
         //This extra check is necessary because sometimes a buffer with nothing remaining
         //has to be queued in the above loop resulting in rc == 0. Since rc == 0
         //it won't loop around a last time and see that there are no more queued buffers
-        //and thus no backpressure
-        if (m_queuedBuffers.isEmpty() && m_hadBackPressure && m_queuedWrites.size() <= m_maxQueuedWritesBeforeBackpressure) {
+        //and thus no backpressure. A single partially written buffer doesn't count as backpressure.
+        if (m_queuedBuffers.isEmpty() && m_writingBuffers.size() <= 1 &&
+                m_hadBackPressure && m_queuedWrites.size() <= m_maxQueuedWritesBeforeBackpressure) {
             backpressureEnded();
         }
 
@@ -353,7 +405,15 @@ public class NIOWriteStream implements WriteStream {
         DeferredSerialization ds = null;
         int bytesQueued = 0;
         while ((ds = oldlist.poll()) != null) {
+            if (ds instanceof SizedDeferredSerialization) {
+                final int written = serializeIntoPool((SizedDeferredSerialization)ds, pool);
+                if (written >= 0) {
+                    bytesQueued += written;
+                    continue;
+                }
+            }
             ByteBuffer data[] = ds.serialize();
+            m_allocatingSerializations++;
             for (ByteBuffer buf : data) {
                 assert(buf.limit() == buf.capacity());//No sloppy serialization, we can allow it later if necessary
                 buf.clear();
@@ -379,6 +439,32 @@ public class NIOWriteStream implements WriteStream {
         updateQueued(bytesQueued, true);
     }
 
+    /**
+     * Serialize straight into the last queued pool buffer, or a fresh one if it doesn't fit.
+     * @return The number of bytes written or -1 if the message is larger than a pool buffer
+     */
+    private int serializeIntoPool(final SizedDeferredSerialization ds, final NetworkDBBPool pool)
+    throws IOException {
+        final int size = ds.getSerializedSize();
+        BBContainer outCont = m_queuedBuffers.peekLast();
+        if (outCont == null || outCont.b.remaining() < size) {
+            if (outCont != null && outCont.b.capacity() < size) {
+                return -1;
+            }
+            outCont = pool.acquire();
+            outCont.b.clear();
+            if (outCont.b.remaining() < size) {
+                outCont.discard();
+                return -1;
+            }
+            m_queuedBuffers.offer(outCont);
+        }
+        final int start = outCont.b.position();
+        ds.serialize(outCont.b);
+        assert(outCont.b.position() - start == size);
+        return size;
+    }
+
     /**
      * Free the pool resources that are held by this WriteStream. The pool itself is thread local
      * and will be freed when the thread terminates.
@@ -387,10 +473,14 @@ public class NIOWriteStream implements WriteStream {
         int bytesReleased = 0;
         m_isShutdown = true;
         BBContainer c = null;
-        while ((c = m_queuedBuffers.poll()) != null) {
+        while ((c = m_writingBuffers.poll()) != null) {
             bytesReleased += c.b.remaining();
             c.discard();
         }
+        while ((c = m_queuedBuffers.poll()) != null) {
+            bytesReleased += c.b.position();
+            c.discard();
+        }
         updateQueued(-bytesReleased, false);
         DeferredSerialization ds = null;
         while ((ds = m_queuedWrites.poll()) != null) {
@@ -75,8 +75,10 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.EstTime;
 import org.voltcore.utils.EstTimeUpdater;
 import org.voltcore.utils.Pair;
 
@@ -96,6 +98,29 @@ class VoltNetwork implements Runnable
     private final String m_coreBindId;
 
     private final int m_networkId;
+
+    /** How often the load of the ports is sampled */
+    static final long LOAD_SAMPLE_INTERVAL_MS = 1000;
+    /** Bytes of load attributed to reading or writing a message, on top of its size */
+    static final int MESSAGE_LOAD_WEIGHT = 512;
+    /** Migrate only from networks with at least this load (bytes per second) */
+    static final long MIGRATION_MIN_LOAD = 1024 * 1024;
+    /** Migrate only when the load is this many times that of the least loaded network */
+    static final long MIGRATION_IMBALANCE = 2;
+    /** Don't move a port again this soon after it was migrated */
+    static final long MIGRATION_COOLDOWN_MS = 30 * 1000;
+
+    /** The pool this network belongs to, null for a standalone network */
+    private final VoltNetworkPool m_networkPool;
+    /*
+     * Load of all ports in bytes per second as of the last sample, plus the estimated
+     * load of ports placed here since. Read by other threads to balance connections.
+     */
+    private final AtomicLong m_load = new AtomicLong();
+    private volatile int m_portCount = 0;
+    private long m_lastLoadSample = 0;
+    private long m_migratedPorts = 0;
+
     /**
      * Start this VoltNetwork's thread;
      */
@@ -109,6 +134,11 @@ class VoltNetwork implements Runnable
      * and runOnce should be called periodically
      **/
     VoltNetwork(int networkId, String coreBindId) {
+        this(null, networkId, coreBindId);
+    }
+
+    VoltNetwork(VoltNetworkPool networkPool, int networkId, String coreBindId) {
+        m_networkPool = networkPool;
         m_thread = new Thread(this, "Volt Network - " + networkId);
         m_networkId = networkId;
         m_thread.setDaemon(true);
@@ -122,6 +152,7 @@ class VoltNetwork implements Runnable
     }
 
     VoltNetwork( Selector s) {
+        m_networkPool = null;
         m_thread = null;
         m_networkId = 0;
         m_selector = s;
@@ -188,6 +219,7 @@ class VoltNetwork implements Runnable
                     return port;
                 } finally {
                     m_ports.add(port);
+                    m_portCount = m_ports.size();
                 }
             }
         };
@@ -209,6 +241,14 @@ class VoltNetwork implements Runnable
             public void run() {
                 VoltPort port = (VoltPort)c;
                 assert(c != null);
+                /*
+                 * The port migrated to another network after this was queued, it owns the port now.
+                 * The future of the original request completes without waiting for it.
+                 */
+                if (port.network() != VoltNetwork.this && port.network() != null) {
+                    port.network().unregisterChannel(port);
+                    return;
+                }
                 SelectionKey selectionKey = port.getKey();
 
                 try {
@@ -223,6 +263,7 @@ class VoltNetwork implements Runnable
                             selectionKey.cancel();
                         } finally {
                             m_ports.remove(port);
+                            m_portCount = m_ports.size();
                         }
                     }
                 } finally {
@@ -253,6 +294,7 @@ class VoltNetwork implements Runnable
             m_tasks.offer(new Runnable() {
                 @Override
                 public void run() {
+                    if (forwardIfMigrated(port, runFirst)) return;
                     callPort(port);
                 }
             });
@@ -260,6 +302,7 @@ class VoltNetwork implements Runnable
             m_tasks.offer(new Runnable() {
                 @Override
                 public void run() {
+                    if (forwardIfMigrated(port, runFirst)) return;
                     installInterests(port);
                 }
             });
@@ -267,6 +310,137 @@ class VoltNetwork implements Runnable
         m_selector.wakeup();
     }
 
+    /*
+     * Tasks for a port can be queued on its old network while it is migrating,
+     * pass them on to the network that owns it now
+     */
+    private boolean forwardIfMigrated(VoltPort port, boolean runFirst) {
+        final VoltNetwork network = port.network();
+        if (network == null || network == this) {
+            return false;
+        }
+        network.addToChangeList(port, runFirst);
+        return true;
+    }
+
+    /**
+     * Move a port to another network. Must be called from this network's thread while the
+     * port is not running and {@link VoltPort#canMigrate()}. The key is cancelled here and the
+     * channel registered with the target's selector by the target's thread, tasks for
+     * the port that are queued here in the meantime are forwarded.
+     */
+    void migrate(final VoltPort port, final VoltNetwork target) {
+        final SelectionKey oldKey = port.getKey();
+        final SocketChannel channel = (SocketChannel)oldKey.channel();
+        oldKey.attach(null);
+        oldKey.cancel();
+        m_ports.remove(port);
+        m_portCount = m_ports.size();
+        m_migratedPorts++;
+        port.migrating(target, EstTime.currentTimeMillis());
+
+        target.queueTask(new Runnable() {
+            @Override
+            public void run() {
+                target.adopt(port, channel);
+            }
+        });
+    }
+
+    private void adopt(VoltPort port, SocketChannel channel) {
+        try {
+            SelectionKey key = channel.register(m_selector, port.interestOps(), null);
+            port.migrated(key);
+            key.attach(port);
+            m_ports.add(port);
+            m_portCount = m_ports.size();
+        } catch (Exception e) {
+            networkLog.warn("Failed to migrate connection " + port + ", closing it", e);
+            m_ports.add(port);
+            port.die();
+            try {
+                getUnregisterRunnable(port).run();
+            } finally {
+                m_ports.remove(port);
+                m_portCount = m_ports.size();
+            }
+        }
+    }
+
+    long getLoad() {
+        return m_load.get();
+    }
+
+    int getPortCount() {
+        return m_portCount;
+    }
+
+    /**
+     * Account for a port that was just placed here and has no measured load yet
+     */
+    void addEstimatedLoad(long load) {
+        m_load.addAndGet(load);
+    }
+
+    long getMigratedPorts() {
+        return m_migratedPorts;
+    }
+
+    /*
+     * Recompute the load of every port from the IOSTATS counters, then give
+     * the pool a chance to move a port to a less loaded network
+     */
+    private void sampleLoad(long now) {
+        final long elapsed = now - m_lastLoadSample;
+        m_lastLoadSample = now;
+        long load = 0;
+        for (VoltPort port : m_ports) {
+            load += port.sampleLoad(elapsed, MESSAGE_LOAD_WEIGHT);
+        }
+        m_load.set(load);
+
+        if (m_networkPool != null && m_networkPool.isMigrationEnabled()) {
+            maybeMigrate(now);
+        }
+    }
+
+    /*
+     * If this network is much busier than the least loaded one, move over the busiest port
+     * that carries no more than half the difference, so that the move narrows the gap
+     * instead of just shifting the imbalance over
+     */
+    private void maybeMigrate(long now) {
+        final VoltNetwork target = m_networkPool.getLeastLoadedNetwork();
+        if (target == null || target == this) {
+            return;
+        }
+        final long load = m_load.get();
+        final long targetLoad = target.getLoad();
+        if (load < MIGRATION_MIN_LOAD || load < targetLoad * MIGRATION_IMBALANCE) {
+            return;
+        }
+
+        final long maxPortLoad = (load - targetLoad) / 2;
+        VoltPort best = null;
+        for (VoltPort port : m_ports) {
+            final long portLoad = port.getLoad();
+            if (portLoad <= 0 || portLoad > maxPortLoad) continue;
+            if (best != null && portLoad <= best.getLoad()) continue;
+            if (port.getLastMigrated() != 0 && now - port.getLastMigrated() < MIGRATION_COOLDOWN_MS) continue;
+            if (!port.canMigrate()) continue;
+            best = port;
+        }
+        if (best == null) {
+            return;
+        }
+
+        networkLog.debug("Migrating connection " + best + " with load " + best.getLoad() +
+                " from network " + m_networkId + " to network " + target.m_networkId);
+        m_load.addAndGet(-best.getLoad());
+        target.addEstimatedLoad(best.getLoad());
+        migrate(best, target);
+    }
+
     @Override
     public void run() {
         if (m_coreBindId != null) {
@@ -279,6 +453,9 @@ class VoltNetwork implements Runnable
                         int readyKeys = 0;
                         if (m_networkId == 0) {
                             readyKeys = m_selector.select(5);
+                        } else if (m_networkPool != null) {
+                            // wake up to sample load even when idle
+                            readyKeys = m_selector.select(LOAD_SAMPLE_INTERVAL_MS);
                         } else {
                             readyKeys = m_selector.select();
                         }
@@ -310,6 +487,13 @@ class VoltNetwork implements Runnable
                                 m_logger.warn("Network was more than two seconds late in updating the estimated time");
                             }
                         }
+
+                        if (m_networkPool != null) {
+                            final long now = EstTime.currentTimeMillis();
+                            if (now - m_lastLoadSample >= LOAD_SAMPLE_INTERVAL_MS) {
+                                sampleLoad(now);
+                            }
+                        }
                     }
                 } catch (Throwable ex) {
                     ex.printStackTrace();
@@ -426,6 +610,8 @@ class VoltNetwork implements Runnable
             long totalMessagesRead = 0;
             long totalWritten = 0;
             long totalMessagesWritten = 0;
+            long totalWriteCalls = 0;
+            long totalHeapSerialized = 0;
             for (VoltPort p : m_ports) {
                 final long read = p.readStream().getBytesRead(interval);
                 final long writeInfo[] = p.writeStream().getBytesAndMessagesWritten(interval);
@@ -434,6 +620,8 @@ class VoltNetwork implements Runnable
                 totalMessagesRead += messagesRead;
                 totalWritten += writeInfo[0];
                 totalMessagesWritten += writeInfo[1];
+                totalWriteCalls += writeInfo[2];
+                totalHeapSerialized += writeInfo[3];
                 retval.put(
                         p.connectionId(),
                         Pair.of(
@@ -442,7 +630,9 @@ class VoltNetwork implements Runnable
                                         read,
                                         messagesRead,
                                         writeInfo[0],
-                                        writeInfo[1] }));
+                                        writeInfo[1],
+                                        writeInfo[2],
+                                        writeInfo[3] }));
             }
             retval.put(
                     -1L,
@@ -452,7 +642,9 @@ class VoltNetwork implements Runnable
                                     totalRead,
                                     totalMessagesRead,
                                     totalWritten,
-                                    totalMessagesWritten }));
+                                    totalMessagesWritten,
+                                    totalWriteCalls,
+                                    totalHeapSerialized }));
             return retval;
     }
 
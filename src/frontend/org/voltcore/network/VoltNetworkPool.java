@@ -39,6 +39,11 @@ public class VoltNetworkPool {
 
     private final VoltNetwork m_networks[];
     private final AtomicLong m_nextWorkerSelection = new AtomicLong();
+    /*
+     * Whether busy networks move connections to idle ones. Placement of new connections
+     * is always load aware, this only affects existing connections.
+     */
+    private volatile boolean m_migrationEnabled = Boolean.getBoolean("migrateNetworkConnections");
 
     public VoltNetworkPool() {
         this(1, null);
@@ -51,13 +56,13 @@ public class VoltNetworkPool {
         if (coreBindIds == null || coreBindIds.isEmpty()) {
             m_networks = new VoltNetwork[numThreads];
             for (int ii = 0; ii < numThreads; ii++) {
-                m_networks[ii] = new VoltNetwork(ii, null);
+                m_networks[ii] = new VoltNetwork(this, ii, null);
             }
         } else {
             final int coreBindIdsSize = coreBindIds.size();
             m_networks = new VoltNetwork[coreBindIdsSize];
             for (int ii = 0; ii < coreBindIdsSize; ii++) {
-                m_networks[ii] = new VoltNetwork(ii, coreBindIds.poll());
+                m_networks[ii] = new VoltNetwork(this, ii, coreBindIds.poll());
             }
         }
     }
@@ -85,10 +90,67 @@ public class VoltNetworkPool {
             final InputHandler handler,
             final int interestOps,
             final ReverseDNSPolicy dns) throws IOException {
-        VoltNetwork vn = m_networks[(int)(m_nextWorkerSelection.incrementAndGet() % m_networks.length)];
+        VoltNetwork vn = getLeastLoadedNetwork();
+        vn.addEstimatedLoad(getAveragePortLoad());
         return vn.registerChannel(channel, handler, interestOps, dns);
     }
 
+    /**
+     * Find the network with the least load as measured from the bytes and messages
+     * it handled recently, breaking ties by the number of connections it has. The search starts
+     * at a rotating offset so idle networks are used round robin.
+     */
+    VoltNetwork getLeastLoadedNetwork() {
+        final int start = (int)(m_nextWorkerSelection.incrementAndGet() % m_networks.length);
+        VoltNetwork best = null;
+        for (int ii = 0; ii < m_networks.length; ii++) {
+            final VoltNetwork vn = m_networks[(start + ii) % m_networks.length];
+            if (best == null ||
+                    vn.getLoad() < best.getLoad() ||
+                    (vn.getLoad() == best.getLoad() && vn.getPortCount() < best.getPortCount())) {
+                best = vn;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * A new connection hasn't been measured yet, assume it will be as busy as the average one
+     * so that a burst of new connections isn't piled onto a single network before the next sample
+     */
+    private long getAveragePortLoad() {
+        long load = 0;
+        long ports = 0;
+        for (VoltNetwork vn : m_networks) {
+            load += vn.getLoad();
+            ports += vn.getPortCount();
+        }
+        return ports == 0 ? 0 : load / ports;
+    }
+
+    public boolean isMigrationEnabled() {
+        return m_migrationEnabled;
+    }
+
+    /**
+     * Allow connections to be moved from busy network threads to less busy ones.
+     * Off by default, can also be enabled with -DmigrateNetworkConnections=true
+     */
+    public void setMigrationEnabled(boolean enabled) {
+        m_migrationEnabled = enabled;
+    }
+
+    /**
+     * @return The network a connection created by this pool is currently handled by
+     */
+    VoltNetwork getNetwork(Connection c) {
+        return ((VoltPort)c).network();
+    }
+
+    VoltNetwork[] getNetworks() {
+        return m_networks;
+    }
+
     public List<Long> getThreadIds() {
         ArrayList<Long> ids = new ArrayList<Long>();
         for (VoltNetwork vn : m_networks) {
@@ -35,12 +35,21 @@ import org.voltcore.utils.CoreUtils;
 /** Encapsulates a socket registration for a VoltNetwork */
 public class VoltPort implements Connection
 {
-    /** The network this port participates in */
-    private final VoltNetwork m_network;
+    /** The network this port participates in, changes if the port is migrated */
+    private volatile VoltNetwork m_network;
 
     private static final VoltLogger networkLog = new VoltLogger("NETWORK");
 
-    private final NetworkDBBPool m_pool;
+    /** Only used by the thread of the current network */
+    private NetworkDBBPool m_pool;
+
+    /*
+     * Load accounting, only touched by the thread of the current network.
+     * m_load is the bytes plus weighted messages handled per second at the last sample.
+     */
+    private long m_lastLoadTotal = 0;
+    private long m_load = 0;
+    private long m_lastMigrated = 0;
 
     /*
      * Thread pool for doing reverse DNS lookups. It will create new threads on
@@ -158,6 +167,68 @@ public class VoltPort implements Connection
         m_interestOps = key.interestOps();
     }
 
+    VoltNetwork network() {
+        return m_network;
+    }
+
+    /**
+     * Sample the traffic counters kept for IOSTATS and compute the load of the port
+     * since the last sample
+     * @param elapsedMillis Time since the last sample
+     * @param messageWeight Bytes of load attributed to handling each message
+     * @return The load in bytes per second
+     */
+    long sampleLoad(long elapsedMillis, int messageWeight) {
+        if (m_readStream == null || m_writeStream == null) {
+            return 0;
+        }
+        final long written[] = m_writeStream.getBytesAndMessagesWritten(false);
+        final long total =
+            m_readStream.getBytesRead(false) + written[0] +
+            (getMessagesRead(false) + written[1]) * messageWeight;
+        final long delta = total - m_lastLoadTotal;
+        m_lastLoadTotal = total;
+        m_load = elapsedMillis > 0 ? delta * 1000 / elapsedMillis : 0;
+        return m_load;
+    }
+
+    long getLoad() {
+        return m_load;
+    }
+
+    long getLastMigrated() {
+        return m_lastMigrated;
+    }
+
+    /**
+     * A port can only move to another network while it holds no buffers from the pool of
+     * its current network and isn't closing. Must be called from the current network's thread.
+     */
+    boolean canMigrate() {
+        return !m_isDead && !m_isShuttingDown && !m_running &&
+            m_selectionKey != null && m_selectionKey.isValid() &&
+            m_readStream != null && !m_readStream.holdsBuffers() &&
+            m_writeStream != null && !m_writeStream.holdsPoolBuffers();
+    }
+
+    /**
+     * Hand the port to another network. The old selection key must already be cancelled.
+     * Called from the thread of the old network, tasks queued on it afterwards are forwarded.
+     */
+    void migrating(VoltNetwork network, long now) {
+        m_lastMigrated = now;
+        m_pool = network.m_pool;
+        m_network = network;
+    }
+
+    /**
+     * Install the key the port was registered with by the network it migrated to.
+     * Unlike {@link #setKey(SelectionKey)} the streams and their contents are kept.
+     */
+    void migrated(SelectionKey key) {
+        m_selectionKey = key;
+    }
+
     /**
      * Lock the VoltPort for running by the VoltNetwork executor service. This prevents anything from sneaking in a messing with
      * the selector set until the executor service has had a chance to handle all the I/O.
@@ -181,16 +252,12 @@ public class VoltPort implements Connection
                 final int maxRead = m_handler.getMaxRead();
                 if (maxRead > 0) {
                     fillReadStream( maxRead);
-                    ByteBuffer message;
 
                     /*
                      * Process all the buffered bytes and retrieve as many messages as possible
-                     * and pass them off to the input handler.
+                     * and pass them off to the input handler as one batch.
                      */
-                    while ((message = m_handler.retrieveNextMessage( this )) != null) {
-                        m_handler.handleMessage( message, this);
-                        m_messagesRead++;
-                    }
+                    m_messagesRead += m_handler.handleInput(this);
                 }
             }
 
@@ -17,6 +17,8 @@
 
 package org.voltcore.network;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.nio.ByteBuffer;
 import java.io.IOException;
@@ -31,6 +33,16 @@ public abstract class VoltProtocolHandler implements InputHandler {
     private final long m_connectionId;
     private int m_nextLength;
 
+    /*
+     * Messages that are copied out of the read stream are packed into shared heap blocks
+     * of this size instead of each getting its own allocation. Larger messages get their own buffer.
+     */
+    static final int COPY_BLOCK_SIZE = 64 * 1024;
+    static final int MAX_PACKED_MESSAGE_SIZE = COPY_BLOCK_SIZE / 4;
+
+    private ByteBuffer m_copyBlock = ByteBuffer.allocate(0);
+    private final ArrayList<ByteBuffer> m_batch = new ArrayList<ByteBuffer>();
+
     public VoltProtocolHandler() {
         m_sequenceId = 0;
         m_connectionId = m_globalConnectionCounter.incrementAndGet();
@@ -48,6 +60,20 @@ public abstract class VoltProtocolHandler implements InputHandler {
          */
         ByteBuffer result = null;
 
+        if (nextMessageAvailable(inputStream)) {
+            result = ByteBuffer.allocate(m_nextLength);
+            inputStream.getBytes(result.array());
+            m_nextLength = 0;
+            m_sequenceId++;
+        }
+        return result;
+    }
+
+    /*
+     * Read the length prefix of the next message if necessary and
+     * check whether the whole message has arrived
+     */
+    private boolean nextMessageAvailable(NIOReadStream inputStream) throws IOException {
         if (m_nextLength == 0 && inputStream.dataAvailable() > (Integer.SIZE/8)) {
             m_nextLength = inputStream.getInt();
             if (m_nextLength < 1) {
@@ -62,13 +88,60 @@ public abstract class VoltProtocolHandler implements InputHandler {
             }
             assert m_nextLength > 0;
         }
-        if (m_nextLength > 0 && inputStream.dataAvailable() >= m_nextLength) {
-            result = ByteBuffer.allocate(m_nextLength);
-            inputStream.getBytes(result.array());
-            m_nextLength = 0;
-            m_sequenceId++;
+        return m_nextLength > 0 && inputStream.dataAvailable() >= m_nextLength;
+    }
+
+    /**
+     * Decode all the complete messages in the read stream and hand them to
+     * {@link #handleMessages(List, Connection)} in one call.
+     *
+     * Messages are copied to the heap because handlers keep views of them, small ones
+     * packed together into shared blocks. Each message buffer has position 0 and a capacity
+     * equal to the message length, but not necessarily an array offset of 0.
+     */
+    @Override
+    public int handleInput(Connection c) throws IOException {
+        final NIOReadStream inputStream = c.readStream();
+        try {
+            while (nextMessageAvailable(inputStream)) {
+                m_batch.add(copyMessage(inputStream, m_nextLength));
+                m_nextLength = 0;
+                m_sequenceId++;
+            }
+            final int count = m_batch.size();
+            if (count > 0) {
+                handleMessages(m_batch, c);
+            }
+            return count;
+        } finally {
+            m_batch.clear();
+        }
+    }
+
+    private ByteBuffer copyMessage(NIOReadStream inputStream, int length) {
+        if (length > MAX_PACKED_MESSAGE_SIZE) {
+            ByteBuffer message = ByteBuffer.allocate(length);
+            inputStream.getBytes(message.array());
+            return message;
+        }
+        if (m_copyBlock.remaining() < length) {
+            m_copyBlock = ByteBuffer.allocate(COPY_BLOCK_SIZE);
+        }
+        inputStream.getBytes(m_copyBlock.array(), m_copyBlock.arrayOffset() + m_copyBlock.position(), length);
+        final ByteBuffer message = m_copyBlock.slice();
+        message.limit(length);
+        m_copyBlock.position(m_copyBlock.position() + length);
+        return message.slice();
+    }
+
+    /**
+     * Handle a batch of messages decoded from one read. Handlers can override this to do
+     * per read work once per batch. The list is reused, don't hold on to it.
+     */
+    public void handleMessages(List<ByteBuffer> messages, Connection c) throws IOException {
+        for (int ii = 0; ii < messages.size(); ii++) {
+            handleMessage(messages.get(ii), c);
         }
-        return result;
     }
 
     @Override
@@ -0,0 +1,197 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to objects. Keys are never boxed and
+ * put/remove don't allocate unless the table has to grow. Null values aren't allowed.
+ * Not thread safe.
+ *
+ * Iterate by slot: for every slot below {@link #capacity()} whose {@link #valueAt(int)}
+ * is not null. {@link #removeAt(int)} may move a later entry into the removed slot, so
+ * look at the same slot again after removing from it.
+ */
+public class LongObjectHashMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private long m_keys[];
+    private Object m_values[];
+    private int m_mask;
+    private int m_size = 0;
+
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        // keep the load factor at or below one half
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+        m_mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32)) & m_mask;
+    }
+
+    private int find(long key) {
+        int i = slot(key);
+        while (m_values[i] != null) {
+            if (m_keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & m_mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        final int i = find(key);
+        return i < 0 ? null : (V)m_values[i];
+    }
+
+    /**
+     * @return The previous value for the key or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+        int i = slot(key);
+        while (m_values[i] != null) {
+            if (m_keys[i] == key) {
+                V old = (V)m_values[i];
+                m_values[i] = value;
+                return old;
+            }
+            i = (i + 1) & m_mask;
+        }
+        m_keys[i] = key;
+        m_values[i] = value;
+        if (++m_size * 2 > m_values.length) {
+            rehash(m_values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * @return The removed value or null if the key wasn't present
+     */
+    public V remove(long key) {
+        final int i = find(key);
+        return i < 0 ? null : removeAt(i);
+    }
+
+    public void clear() {
+        if (m_size > 0) {
+            Arrays.fill(m_values, null);
+            m_size = 0;
+        }
+    }
+
+    /**
+     * @return The number of slots, for iterating with {@link #keyAt(int)} and {@link #valueAt(int)}
+     */
+    public int capacity() {
+        return m_values.length;
+    }
+
+    public long keyAt(int slot) {
+        return m_keys[slot];
+    }
+
+    /**
+     * @return The value in the slot or null if the slot is empty
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V)m_values[slot];
+    }
+
+    /**
+     * Remove the entry in the slot. Entries that collided with it are shifted back so no
+     * tombstones are needed, which means a later entry can land in this slot.
+     * @return The removed value
+     */
+    @SuppressWarnings("unchecked")
+    public V removeAt(int slot) {
+        final V old = (V)m_values[slot];
+        if (old == null) {
+            return null;
+        }
+        int gap = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & m_mask;
+            if (m_values[i] == null) {
+                break;
+            }
+            // move the entry back unless its home slot lies after the gap
+            final int home = slot(m_keys[i]);
+            if (((i - home) & m_mask) >= ((i - gap) & m_mask)) {
+                m_keys[gap] = m_keys[i];
+                m_values[gap] = m_values[i];
+                gap = i;
+            }
+        }
+        m_values[gap] = null;
+        m_size--;
+        return old;
+    }
+
+    private void rehash(int capacity) {
+        final long oldKeys[] = m_keys;
+        final Object oldValues[] = m_values;
+        allocate(capacity);
+        for (int ii = 0; ii < oldValues.length; ii++) {
+            if (oldValues[ii] != null) {
+                int i = slot(oldKeys[ii]);
+                while (m_values[i] != null) {
+                    i = (i + 1) & m_mask;
+                }
+                m_keys[i] = oldKeys[ii];
+                m_values[i] = oldValues[ii];
+            }
+        }
+    }
+}
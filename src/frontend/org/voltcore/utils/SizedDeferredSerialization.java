@@ -0,0 +1,40 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltcore.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A DeferredSerialization that knows its exact size up front. The network thread
+ * serializes it straight into the pooled direct buffers of the write stream instead of
+ * copying a freshly allocated buffer into them. {@link DeferredSerialization#serialize()}
+ * is still used for messages too large to fit in a pooled buffer.
+ */
+public interface SizedDeferredSerialization extends DeferredSerialization {
+    /**
+     * @return The exact number of bytes {@link #serialize(ByteBuffer)} will write
+     */
+    int getSerializedSize();
+
+    /**
+     * Serialize into the buffer, which has at least {@link #getSerializedSize()} bytes remaining
+     * @throws IOException Thrown here because FastSerialzier throws IOException
+     */
+    void serialize(ByteBuffer buf) throws IOException;
+}
@@ -24,7 +24,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.cliffc_voltpatches.high_scale_lib.NonBlockingHashMap;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.dtxn.InitiatorStats.InvocationInfo;
-import org.voltdb.dtxn.LatencyStats.LatencyInfo;
 
 /**
  * Manage admission control for incoming requests by tracking the size of outstanding requests
@@ -97,10 +96,9 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
     private final ConcurrentHashMap<Long, Map<String, org.voltdb.dtxn.InitiatorStats.InvocationInfo>> m_connectionStates =
                  new ConcurrentHashMap<Long, Map<String, org.voltdb.dtxn.InitiatorStats.InvocationInfo>>(1024, .75f, 1);
 
-    // Use the same-ish trick for the latency stats.  LatencyInfo keeps
-    // volatile ImmutableLists for the buckets and a separate volatile max.
-    // Same single-writer, unsynchronized reader pattern as initiator stats.
-    private final LatencyInfo m_latencyInfo = new LatencyInfo();
+    // Same single-writer, unsynchronized reader pattern for the latency stats.
+    // Readers take a LatencyHistogram.copy(), which tolerates the concurrent writer.
+    private final LatencyHistogram m_latency = new LatencyHistogram();
 
     public AdmissionControlGroup(int maxBytes, int maxRequests)
     {
@@ -280,6 +278,7 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
             String connectionHostname,
             String procedureName,
             int delta,
+            long deltaMicros,
             byte status) {
         boolean needToInsert = false;
         Map<String, InvocationInfo> procInfoMap = m_connectionStates.get(connectionId);
@@ -293,7 +292,7 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
             procInfoMap.put(procedureName, info);
         }
         info.processInvocation(delta, status);
-        m_latencyInfo.addSample(delta);
+        m_latency.recordValue(deltaMicros);
         if (needToInsert) {
             m_connectionStates.put(connectionId, procInfoMap);
         }
@@ -303,7 +302,7 @@ public class AdmissionControlGroup implements org.voltcore.network.QueueMonitor
         return m_connectionStates.entrySet().iterator();
     }
 
-    public LatencyInfo getLatencyInfo() {
-        return m_latencyInfo;
+    public LatencyHistogram getLatencyHistogram() {
+        return m_latency.copy();
     }
 }
@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.catalog.Catalog;
@@ -55,10 +56,11 @@ public class CatalogContext {
     public final JdbcDatabaseMetaDataGenerator m_jdbc;
 
     /*
-     * Planner associated with this catalog version.
-     * Not thread-safe, should only be accessed by AsyncCompilerAgent
+     * Planners associated with this catalog version. A PlannerTool is not
+     * thread-safe, so each AsyncCompilerAgent planner thread borrows its own
+     * and returns it when done.
      */
-    public final PlannerTool m_ptool;
+    private final ConcurrentLinkedQueue<PlannerTool> m_ptools = new ConcurrentLinkedQueue<PlannerTool>();
 
     // PRIVATE
     //private final String m_path;
@@ -104,8 +106,8 @@ public class CatalogContext {
         authSystem = new AuthSystem(database, cluster.getSecurityenabled());
         this.deploymentCRC = deploymentCRC;
         m_jdbc = new JdbcDatabaseMetaDataGenerator(catalog);
-        m_ptool = new PlannerTool(cluster, database, version);
         catalogVersion = version;
+        m_ptools.offer(new PlannerTool(cluster, database, version));
     }
 
     public CatalogContext update(
@@ -142,6 +144,23 @@ public class CatalogContext {
         return retval;
     }
 
+    /**
+     * Take a planner for this catalog version for the exclusive use of the
+     * calling thread. A new one is created if all of them are in use.
+     * Return it with {@link #returnPlannerTool(PlannerTool)}.
+     */
+    public PlannerTool borrowPlannerTool() {
+        PlannerTool ptool = m_ptools.poll();
+        if (ptool == null) {
+            ptool = new PlannerTool(cluster, database, catalogVersion);
+        }
+        return ptool;
+    }
+
+    public void returnPlannerTool(PlannerTool ptool) {
+        m_ptools.offer(ptool);
+    }
+
     /**
      * Get a file/entry (as bytes) given a key/path in the source jar.
      *
@@ -28,10 +28,13 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -90,11 +93,11 @@ import org.voltdb.compiler.AsyncCompilerWork.AsyncCompilerWorkCompletionHandler;
 import org.voltdb.compiler.CatalogChangeResult;
 import org.voltdb.compiler.CatalogChangeWork;
 import org.voltdb.dtxn.InitiatorStats.InvocationInfo;
-import org.voltdb.dtxn.LatencyStats.LatencyInfo;
 import org.voltdb.export.ExportManager;
 import org.voltdb.iv2.Cartographer;
 import org.voltdb.iv2.Iv2Trace;
 import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.SpScheduler;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.messaging.FastSerializer;
 import org.voltdb.messaging.InitiateResponseMessage;
@@ -142,8 +145,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
      * in order to avoid ensure that nothing misses the end of backpressure notification
      */
     private final ReentrantLock m_backpressureLock = new ReentrantLock();
-    private final ConcurrentHashMap<Connection, Object> m_connections =
-            new ConcurrentHashMap<Connection, Object>(10240, .75f, 128);
+    private final ConcurrentHashMap<Connection, ClientInputHandler> m_connections =
+            new ConcurrentHashMap<Connection, ClientInputHandler>(10240, .75f, 128);
     private final SnapshotDaemon m_snapshotDaemon = new SnapshotDaemon();
     private final SnapshotDaemonAdapter m_snapshotDaemonAdapter = new SnapshotDaemonAdapter();
 
@@ -217,6 +220,12 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
     // IV2 doesn't use this at all. Leave it here for now for legacy.
     private final int m_allPartitions[];
     private ImmutableMap<Integer, Long> m_localReplicas = ImmutableMap.<Integer, Long>builder().build();
+    // All live replicas of each partition, for load balancing reads when SpScheduler.REPLICA_READS is on
+    private volatile ImmutableMap<Integer, long[]> m_partitionReplicas = ImmutableMap.<Integer, long[]>builder().build();
+    private final AtomicInteger m_nextReplica = new AtomicInteger();
+    // Only accessed by the replica read updater
+    private Set<Integer> m_liveHostIds = new HashSet<Integer>();
+    private ScheduledFuture<?> m_replicaReadUpdater;
     final long m_siteId;
     final long m_plannerSiteId;
     private final boolean m_isIV2Enabled;
@@ -250,8 +259,9 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                     }
 
                     if (m_hasGlobalClientBackPressure && !m_hasDTXNBackPressure) {
-                        for (Connection c : m_connections.keySet()) {
-                            if (!c.writeStream().hadBackPressure()) {
+                        for (Map.Entry<Connection, ClientInputHandler> e : m_connections.entrySet()) {
+                            final Connection c = e.getKey();
+                            if (!e.getValue().hasExportBackPressure() && !c.writeStream().hadBackPressure()) {
                                 /*
                                  * Also synchronize on the individual connection
                                  * so that enabling of read selection happens atomically
@@ -300,6 +310,13 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
      * Wait until they receive data or have been booted.
      */
     private boolean m_hasGlobalClientBackPressure = false;
+
+    /**
+     * Export data on this node is over its high water mark. Set from the export
+     * data source threads and read on the network threads, which are the only ones that
+     * switch read selection for it so it composes with the admission control groups.
+     */
+    private volatile boolean m_hasExportBackPressure = false;
     private final boolean m_isConfiguredForHSQL;
 
     /** A port that accepts client connections */
@@ -459,10 +476,11 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                                             if (!m_isIV2Enabled) {
                                                 m_backpressureLock.lock();
                                                 try {
-                                                    if (!m_hasDTXNBackPressure) {
+                                                    final ClientInputHandler clientHandler = (ClientInputHandler)handler;
+                                                    m_connections.put(c, clientHandler);
+                                                    if (!m_hasDTXNBackPressure && !clientHandler.hasExportBackPressure()) {
                                                         c.enableReadSelection();
                                                     }
-                                                    m_connections.put(c, "");
                                                 } finally {
                                                     m_backpressureLock.unlock();
                                                 }
@@ -787,6 +805,15 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             return m_isAdmin;
         }
 
+        /*
+         * Export backpressure only throttles user connections, admin connections
+         * stay readable so the database can still be paused or have its export drained
+         */
+        boolean hasExportBackPressure()
+        {
+            return m_hasExportBackPressure && !m_isAdmin;
+        }
+
         @Override
         public int getMaxRead() {
             if (m_hasDTXNBackPressure) {
@@ -818,10 +845,11 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 m_cihm.put(c.connectionId(),
                            new ClientInterfaceHandleManager( m_isAdmin, c, m_acg.get()));
                 m_acg.get().addMember(this);
-                if (!m_acg.get().hasBackPressure()) {
+                //Register before checking for export backpressure so it can't be missed
+                m_connections.put(c, this);
+                if (!m_acg.get().hasBackPressure() && !hasExportBackPressure()) {
                     c.enableReadSelection();
                 }
-                m_connections.put(c, "");
             }
         }
 
@@ -856,7 +884,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 return new Runnable() {
                     @Override
                     public void run() {
-                        if (!m_acg.get().hasBackPressure()) {
+                        if (!m_acg.get().hasBackPressure() && !hasExportBackPressure()) {
                             m_connection.enableReadSelection();
                         }
                     }
@@ -872,7 +900,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                      */
                     m_backpressureLock.lock();
                     try {
-                        if (!m_hasDTXNBackPressure) {
+                        if (!m_hasDTXNBackPressure && !hasExportBackPressure()) {
                             m_connection.enableReadSelection();
                         }
                     } finally {
@@ -932,7 +960,9 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
         @Override
         public void offBackpressure() {
-            m_connection.enableReadSelection();
+            if (!hasExportBackPressure()) {
+                m_connection.enableReadSelection();
+            }
         }
     }
 
@@ -979,6 +1009,12 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             }
             final long now = System.currentTimeMillis();
             final int delta = (int)(now - clientData.m_creationTime);
+            long deltaMicros = (System.nanoTime() - clientData.m_creationNanos) / 1000;
+            if (delta > deltaMicros / 1000 + 1) {
+                // a restarted transaction keeps its original creation time but gets a new
+                // in-flight record, fall back to the millisecond latency
+                deltaMicros = delta * 1000L;
+            }
 
             // Reuse the creation time of the original invocation to have accurate internal latency
             if (restartTransaction(clientData.m_messageSize, clientData.m_creationTime)) {
@@ -995,6 +1031,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                     cihm.connection.getHostnameAndIP(),
                     clientData.m_procName,
                     delta,
+                    deltaMicros,
                     clientResponse.getStatus());
 
             clientResponse.setClientHandle(clientData.m_clientHandle);
@@ -1081,8 +1118,9 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             if (m_hasGlobalClientBackPressure) {
                 return;
             }
-            for (final Connection c : m_connections.keySet()) {
-                if (!c.writeStream().hadBackPressure()) {
+            for (Map.Entry<Connection, ClientInputHandler> e : m_connections.entrySet()) {
+                final Connection c = e.getKey();
+                if (!e.getValue().hasExportBackPressure() && !c.writeStream().hadBackPressure()) {
                     /*
                      * Also synchronize on the individual connection
                      * so that enabling of read selection happens atomically
@@ -1103,6 +1141,69 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         }
     }
 
+    /**
+     * Invoked when export data on this node goes over its high water mark.
+     * Read selection is switched on each connection's own network thread so
+     * it is ordered with the admission control group doing the same. Admin
+     * connections are left alone.
+     */
+    public void onExportBackPressure() {
+        log.debug("Export back pressure, disabling read selection");
+        m_hasExportBackPressure = true;
+        for (Map.Entry<Connection, ClientInputHandler> e : m_connections.entrySet()) {
+            if (e.getValue().isAdmin()) {
+                continue;
+            }
+            final Connection c = e.getKey();
+            c.queueTask(new Runnable() {
+                @Override
+                public void run() {
+                    if (m_hasExportBackPressure) {
+                        c.disableReadSelection();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Invoked when export data on this node drained below the low water mark
+     */
+    public void offExportBackPressure() {
+        log.debug("No more export back pressure, attempting to enable read selection");
+        m_hasExportBackPressure = false;
+        for (Map.Entry<Connection, ClientInputHandler> e : m_connections.entrySet()) {
+            if (e.getValue().isAdmin()) {
+                continue;
+            }
+            final Connection c = e.getKey();
+            c.queueTask(new Runnable() {
+                @Override
+                public void run() {
+                    if (m_hasExportBackPressure || c.writeStream().hadBackPressure()) {
+                        return;
+                    }
+                    if (m_isIV2Enabled) {
+                        if (!m_acg.get().hasBackPressure()) {
+                            c.enableReadSelection();
+                        }
+                        return;
+                    }
+                    m_backpressureLock.lock();
+                    try {
+                        if (!m_hasDTXNBackPressure && !m_hasGlobalClientBackPressure) {
+                            synchronized (c) {
+                                c.enableReadSelection();
+                            }
+                        }
+                    } finally {
+                        m_backpressureLock.unlock();
+                    }
+                }
+            });
+        }
+    }
+
     // Wrap API to SimpleDtxnInitiator - mostly for the future
     public boolean createTransaction(
             final long connectionId,
@@ -1155,18 +1256,27 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
         Long initiatorHSId = null;
         boolean isShortCircuitRead = false;
+        boolean isReplicaRead = false;
 
         /*
          * If this is a read only single part, check if there is a local replica,
          * if there is, send it to the replica as a short circuit read
          */
         if (isSinglePartition && !isEveryPartition) {
-            if (isReadOnly) {
+            if (isReadOnly && SpScheduler.REPLICA_READS && !isForReplay &&
+                    !invocation.getProcName().startsWith("@")) {
+                /*
+                 * Spread user reads across every replica of the partition,
+                 * the replica forwards the read to the master if it can't serve it
+                 */
+                initiatorHSId = pickReplicaForRead(partitions[0]);
+                isReplicaRead = initiatorHSId != null;
+            }
+            else if (isReadOnly) {
                 initiatorHSId = m_localReplicas.get(partitions[0]);
+                isShortCircuitRead = initiatorHSId != null;
             }
-            if (initiatorHSId != null) {
-                isShortCircuitRead = true;
-            } else {
+            if (initiatorHSId == null) {
                 initiatorHSId = m_cartographer.getHSIdForSinglePartitionMaster(partitions[0]);
             }
         }
@@ -1181,8 +1291,14 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             return false;
         }
 
-        long handle = cihm.getHandle(isSinglePartition, partitions[0], invocation.getClientHandle(),
-                messageSize, now, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead);
+        long handle;
+        if (isReplicaRead) {
+            handle = cihm.getReplicaReadHandle(partitions[0], invocation.getClientHandle(),
+                    messageSize, now, invocation.getProcName(), initiatorHSId);
+        } else {
+            handle = cihm.getHandle(isSinglePartition, partitions[0], invocation.getClientHandle(),
+                    messageSize, now, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead);
+        }
 
         Iv2InitiateTaskMessage workRequest =
             new Iv2InitiateTaskMessage(m_siteId,
@@ -1202,7 +1318,69 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         return true;
     }
 
+    /**
+     * Round robin across the live replicas of a partition, master included.
+     * Returns null if the replicas aren't known yet.
+     */
+    private Long pickReplicaForRead(int partitionId)
+    {
+        long replicas[] = m_partitionReplicas.get(partitionId);
+        if (replicas == null || replicas.length == 0) {
+            return null;
+        }
+        int next = m_nextReplica.getAndIncrement() & Integer.MAX_VALUE;
+        return replicas[next % replicas.length];
+    }
 
+    /*
+     * Refresh the replicas reads are balanced across and, when hosts have failed,
+     * fail the reads that are outstanding at replicas on those hosts. A failed master is
+     * handled by the fail over at the client interface, a failed replica is not.
+     */
+    private void updateReplicaReadRouting()
+    {
+        final Set<Integer> liveHostIds = new HashSet<Integer>(VoltDB.instance().getHostMessenger().getLiveHostIds());
+
+        List<Integer> partitions = new ArrayList<Integer>(m_cartographer.getPartitions());
+        partitions.remove(Integer.valueOf(MpInitiator.MP_INIT_PID));
+        ImmutableMap.Builder<Integer, long[]> partitionReplicas = ImmutableMap.builder();
+        for (Map.Entry<Integer, List<Long>> e : m_cartographer.getReplicasForPartitions(partitions).entrySet()) {
+            List<Long> live = new ArrayList<Long>();
+            for (Long replica : e.getValue()) {
+                if (liveHostIds.contains(CoreUtils.getHostIdFromHSId(replica))) {
+                    live.add(replica);
+                }
+            }
+            partitionReplicas.put(e.getKey(), toArray(live));
+        }
+        m_partitionReplicas = partitionReplicas.build();
+
+        if (!liveHostIds.containsAll(m_liveHostIds)) {
+            for (final Connection c : m_connections.keySet()) {
+                c.queueTask(new Runnable() {
+                    @Override
+                    public void run() {
+                        ClientInterfaceHandleManager cihm = m_cihm.get(c.connectionId());
+                        if (cihm == null) return;
+                        writeDroppedResponses(c,
+                                cihm.removeReplicaReadsForFailedHosts(liveHostIds),
+                                "Read dropped due to the failure of the replica running it");
+                    }
+                });
+            }
+        }
+        m_liveHostIds = liveHostIds;
+    }
+
+    private static long[] toArray(Collection<Long> hsIds)
+    {
+        long retval[] = new long[hsIds.size()];
+        int ii = 0;
+        for (Long hsId : hsIds) {
+            retval[ii++] = hsId;
+        }
+        return retval;
+    }
 
     /**
      * Static factory method to easily create a ClientInterface with the default
@@ -1335,6 +1513,12 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         List<Iv2InFlight> transactions =
                 cihm.removeHandlesForPartitionAndInitiator( partitionId, initiatorHSId);
 
+        writeDroppedResponses(c, transactions,
+                "Transaction dropped due to change in mastership. " +
+                "It is possible the transaction was committed");
+    }
+
+    private static void writeDroppedResponses(Connection c, List<Iv2InFlight> transactions, String reason) {
         for (Iv2InFlight inFlight : transactions) {
             ClientResponseImpl response =
                     new ClientResponseImpl(
@@ -1342,8 +1526,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                             ClientResponse.UNINITIALIZED_APP_STATUS_CODE,
                             null,
                             new VoltTable[0],
-                            "Transaction dropped due to change in mastership. " +
-                            "It is possible the transaction was committed");
+                            reason);
             response.setClientHandle( inFlight.m_clientHandle );
             ByteBuffer buf = ByteBuffer.allocate(response.getSerializedSize() + 4);
             buf.putInt(buf.capacity() - 4);
@@ -2382,6 +2565,9 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         if (m_maxConnectionUpdater != null) {
             m_maxConnectionUpdater.cancel(false);
         }
+        if (m_replicaReadUpdater != null) {
+            m_replicaReadUpdater.cancel(false);
+        }
         if (m_acceptor != null) {
             m_acceptor.shutdown();
         }
@@ -2432,6 +2618,23 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 }
             };
             m_localReplicasBuilder.start();
+
+            /*
+             * Replicas come and go with failures and rejoins, keep the set reads
+             * are balanced across current
+             */
+            if (SpScheduler.REPLICA_READS) {
+                m_replicaReadUpdater = VoltDB.instance().scheduleWork(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            updateReplicaReadRouting();
+                        } catch (Exception e) {
+                            hostLog.warn("Failed to update replica read routing", e);
+                        }
+                    }
+                }, 0, 1, TimeUnit.SECONDS);
+            }
         }
 
         /*
@@ -2698,11 +2901,15 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         return statsIterators;
     }
 
-    public List<LatencyInfo> getLatencyStats() {
-        List<LatencyInfo> latencyStats = new ArrayList<LatencyInfo>();
+    /**
+     * @return The latencies of all the transactions completed by this client interface,
+     * merged across admission control groups
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        LatencyHistogram latency = new LatencyHistogram();
         for (AdmissionControlGroup acg : m_allACGs) {
-            latencyStats.add(acg.getLatencyInfo());
+            latency.add(acg.getLatencyHistogram());
         }
-        return latencyStats;
+        return latency;
     }
 }
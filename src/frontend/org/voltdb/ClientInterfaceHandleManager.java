@@ -25,9 +25,11 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.Connection;
+import org.voltcore.utils.CoreUtils;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
@@ -64,6 +66,9 @@ public class ClientInterfaceHandleManager
 
     private final Map<Long, Iv2InFlight> m_shortCircuitReads = new HashMap<Long, Iv2InFlight>();
 
+    // Reads load balanced across all replicas of a partition, they complete in any order
+    private final Map<Long, Iv2InFlight> m_replicaReads = new HashMap<Long, Iv2InFlight>();
+
     private static class HandleGenerator
     {
         private long m_sequence = 0;
@@ -104,16 +109,21 @@ public class ClientInterfaceHandleManager
         final long m_clientHandle;
         final int m_messageSize;
         final long m_creationTime;
+        // System.nanoTime() when this record was created, for microsecond latencies
+        final long m_creationNanos;
         final String m_procName;
+        final int m_partitionId;
         final long m_initiatorHSId;
         Iv2InFlight(long ciHandle, long clientHandle,
-                int messageSize, long creationTime, String procName, long initiatorHSId)
+                int messageSize, long creationTime, String procName, int partitionId, long initiatorHSId)
         {
             m_ciHandle = ciHandle;
             m_clientHandle = clientHandle;
             m_messageSize = messageSize;
             m_creationTime = creationTime;
+            m_creationNanos = System.nanoTime();
             m_procName = procName;
+            m_partitionId = partitionId;
             m_initiatorHSId = initiatorHSId;
         }
     }
@@ -155,6 +165,12 @@ public class ClientInterfaceHandleManager
                         clientHandle, messageSize, creationTime, procName, initiatorHSId, readOnly, isShortCircuitRead);
             }
             @Override
+            synchronized long getReplicaReadHandle(int partitionId, long clientHandle, int messageSize,
+                    long creationTime, String procName, long initiatorHSId) {
+                return super.getReplicaReadHandle(partitionId,
+                        clientHandle, messageSize, creationTime, procName, initiatorHSId);
+            }
+            @Override
             synchronized Iv2InFlight findHandle(long ciHandle) {
                 return super.findHandle(ciHandle);
             }
@@ -177,6 +193,11 @@ public class ClientInterfaceHandleManager
                 return super.removeHandlesForPartitionAndInitiator(partitionId, initiatorHSId);
             }
 
+            @Override
+            synchronized List<Iv2InFlight> removeReplicaReadsForFailedHosts(Set<Integer> liveHostIds) {
+                return super.removeReplicaReadsForFailedHosts(liveHostIds);
+            }
+
             @Override
             synchronized boolean shouldCheckThreadIdAssertion()
             {
@@ -224,7 +245,7 @@ public class ClientInterfaceHandleManager
         long ciHandle =
                 isShortCircuitRead ? m_shortCircuitHG.getNextHandle() : partitionStuff.m_generator.getNextHandle();
         Iv2InFlight inFlight =
-                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTime, procName, initiatorHSId);
+                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTime, procName, partitionId, initiatorHSId);
 
         if (isShortCircuitRead) {
             /*
@@ -254,6 +275,31 @@ public class ClientInterfaceHandleManager
         return ciHandle;
     }
 
+    /**
+     * Create a handle for a single partition read that was sent to any replica
+     * of the partition rather than the master. Like short circuit reads these aren't
+     * ordered with the partition's other work, the partition is kept so that they can
+     * be dropped on fail over.
+     */
+    long getReplicaReadHandle(
+            int partitionId,
+            long clientHandle,
+            int messageSize,
+            long creationTime,
+            String procName,
+            long initiatorHSId)
+    {
+        assert(!shouldCheckThreadIdAssertion() || m_expectedThreadId == Thread.currentThread().getId());
+        long ciHandle = m_shortCircuitHG.getNextHandle();
+        Iv2InFlight inFlight =
+                new Iv2InFlight(ciHandle, clientHandle, messageSize, creationTime, procName, partitionId, initiatorHSId);
+        m_replicaReads.put(ciHandle, inFlight);
+
+        m_outstandingTxns++;
+        m_acg.increaseBackpressure(messageSize);
+        return setReadBit(ciHandle);
+    }
+
     private static boolean getReadBit(long handle) {
         return (handle & READ_BIT) != 0;
     }
@@ -287,12 +333,25 @@ public class ClientInterfaceHandleManager
             m_outstandingTxns--;
             return inflight;
         }
+        inflight = m_replicaReads.remove(ciHandle);
+        if (inflight != null) {
+            m_acg.reduceBackpressure(inflight.m_messageSize);
+            m_outstandingTxns--;
+            return inflight;
+        }
 
         /*
          * Not a short circuit read, check the partition specific
          * queue of handles
          */
         int partitionId = getPartIdFromHandle(ciHandle);
+        if (readOnly && partitionId == MP_PART_ID) {
+            /*
+             * The MPI pipelines read only multi-part work, so these complete
+             * in any order and a missing earlier handle doesn't mean it was dropped
+             */
+            return removeHandle(setReadBit(ciHandle));
+        }
         PartitionData partitionStuff = m_partitionStuff.get(partitionId);
         if (partitionStuff == null) {
             // whoa, bad
@@ -356,6 +415,12 @@ public class ClientInterfaceHandleManager
             m_outstandingTxns--;
             return inflight;
         }
+        inflight = m_replicaReads.remove(ciHandle);
+        if (inflight != null) {
+            m_acg.reduceBackpressure(inflight.m_messageSize);
+            m_outstandingTxns--;
+            return inflight;
+        }
 
         /*
          * Not a short circuit read, check the partition specific
@@ -418,6 +483,10 @@ public class ClientInterfaceHandleManager
             m_outstandingTxns--;
             m_acg.reduceBackpressure(inflight.m_messageSize);
         }
+        for (Iv2InFlight inflight : m_replicaReads.values()) {
+            m_outstandingTxns--;
+            m_acg.reduceBackpressure(inflight.m_messageSize);
+        }
     }
 
     List<Iv2InFlight> removeHandlesForPartitionAndInitiator(Integer partitionId,
@@ -425,6 +494,21 @@ public class ClientInterfaceHandleManager
         assert(!shouldCheckThreadIdAssertion() || m_expectedThreadId == Thread.currentThread().getId());
         List<Iv2InFlight> retval = new ArrayList<Iv2InFlight>();
 
+        /*
+         * Replica reads may have been forwarded to the old master by a
+         * replica that couldn't serve them, drop them like the master's own work
+         */
+        Iterator<Iv2InFlight> ri = m_replicaReads.values().iterator();
+        while (ri.hasNext()) {
+            Iv2InFlight entry = ri.next();
+            if (entry.m_partitionId == partitionId && entry.m_initiatorHSId != initiatorHSId) {
+                ri.remove();
+                retval.add(entry);
+                m_outstandingTxns--;
+                m_acg.reduceBackpressure(entry.m_messageSize);
+            }
+        }
+
         if (!m_partitionStuff.containsKey(partitionId)) return retval;
 
         /*
@@ -460,6 +544,26 @@ public class ClientInterfaceHandleManager
         return retval;
     }
 
+    /**
+     * A replica that isn't the master can fail without a change in mastership,
+     * drop the reads that were sent to replicas on hosts that are no longer live.
+     */
+    List<Iv2InFlight> removeReplicaReadsForFailedHosts(Set<Integer> liveHostIds) {
+        assert(!shouldCheckThreadIdAssertion() || m_expectedThreadId == Thread.currentThread().getId());
+        List<Iv2InFlight> retval = new ArrayList<Iv2InFlight>();
+        Iterator<Iv2InFlight> i = m_replicaReads.values().iterator();
+        while (i.hasNext()) {
+            Iv2InFlight entry = i.next();
+            if (!liveHostIds.contains(CoreUtils.getHostIdFromHSId(entry.m_initiatorHSId))) {
+                i.remove();
+                retval.add(entry);
+                m_outstandingTxns--;
+                m_acg.reduceBackpressure(entry.m_messageSize);
+            }
+        }
+        return retval;
+    }
+
     // Coward's way out...the thread-safe override of this class will return false for this,
     // which will enable us to keep the thread ID assertions in all of the method calls and
     // not bomb when using the thread-safe version.
@@ -17,18 +17,138 @@
 
 package org.voltdb;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.KeeperException.Code;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.apache.zookeeper_voltpatches.ZooKeeper;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.EstTime;
 import org.voltcore.utils.InstanceId;
 import org.voltdb.dtxn.TransactionCreator;
+import org.voltdb.iv2.Cartographer;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.utils.VoltFile;
 
 /**
  * The default command log reinitiator for community edition VoltDB.
+ *
+ * Without a command log this does nothing. When constructed with the path of
+ * a log written by GroupCommitCommandLog it replays the log on top of the
+ * snapshot picked by the RestoreAgent. Every host replays its own copy of the
+ * log, the replay sequencers at the partition masters discard the duplicates
+ * coming from the replicas. Single partition transactions are sent to the
+ * partition masters, multi-partition transactions are represented by a
+ * sentinel on every partition and are initiated once by the host running the
+ * MPI.
  */
 public class DefaultCommandLogReinitiator implements CommandLogReinitiator
 {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    // Maximum number of replayed transactions waiting for a response per host
+    private static final int MAX_OUTSTANDING_TXNS = 10000;
+
     private Callback m_callback;
 
+    // All the following are only set if there is a command log to replay
+    private final int m_hostId;
+    private final StartAction m_action;
+    private final ZooKeeper m_zk;
+    private final File m_logPath;
+    private final int[] m_allPartitions;
+    private final Set<Integer> m_liveHosts;
+
+    private TransactionCreator m_initiator;
+    private InstanceId m_instanceId = null;
+    private Map<Integer, Long> m_logTxnIds = null;
+    private RestoreAgent.SnapshotInfo m_snapshotInfo = null;
+    private volatile boolean m_planned = false;
+    private volatile boolean m_started = false;
+    private Thread m_replayThread = null;
+
+    // Cluster-wide results of the replay, valid once replay completed
+    private boolean m_hasReplayedSegments = false;
+    private boolean m_hasReplayedTxns = false;
+
+    private final Object m_outstandingLock = new Object();
+    private int m_outstandingTxns = 0;
+
+    /**
+     * Collects the responses of the replayed transactions. Replayed
+     * transactions are allowed to fail the same way they failed the first
+     * time around, and duplicates are answered with IGNORED_TRANSACTION, so
+     * the responses are only counted.
+     */
+    private final RestoreAdapter m_replayAdapter = new RestoreAdapter(null) {
+        @Override
+        public void enqueue(ByteBuffer b) {
+            synchronized (m_outstandingLock) {
+                m_outstandingTxns--;
+                m_outstandingLock.notifyAll();
+            }
+        }
+
+        @Override
+        public long connectionId() {
+            return Long.MIN_VALUE + 3;
+        }
+    };
+
+    /**
+     * Used when command logging is disabled, replay completes immediately.
+     */
+    public DefaultCommandLogReinitiator() {
+        m_hostId = -1;
+        m_action = null;
+        m_zk = null;
+        m_logPath = null;
+        m_allPartitions = null;
+        m_liveHosts = null;
+    }
+
+    public DefaultCommandLogReinitiator(int hostId, StartAction action, ZooKeeper zk,
+                                        String logPath, int[] allPartitions,
+                                        Set<Integer> liveHosts) {
+        m_hostId = hostId;
+        m_action = action;
+        m_zk = zk;
+        m_logPath = new VoltFile(logPath);
+        m_allPartitions = allPartitions;
+        m_liveHosts = liveHosts;
+
+        if (m_action.doesRecover()) {
+            try {
+                JSONObject header = GroupCommitCommandLog.readOldestHeader(m_logPath);
+                if (header != null) {
+                    if (header.has("instanceId")) {
+                        m_instanceId = new InstanceId(header.getJSONObject("instanceId"));
+                    }
+                    m_logTxnIds = GroupCommitCommandLog.txnIdsFromHeader(header);
+                }
+            } catch (Exception e) {
+                VoltDB.crashLocalVoltDB("Unable to read the command log in " + m_logPath, true, e);
+            }
+        }
+    }
+
+    RestoreAdapter getAdapter() {
+        return m_replayAdapter;
+    }
+
     @Override
     public void setCallback(Callback callback) {
         m_callback = callback;
@@ -36,23 +156,210 @@ public class DefaultCommandLogReinitiator implements CommandLogReinitiator
 
     @Override
     public void replay() {
-        new Thread(new Runnable() {
+        m_replayThread = new Thread(new Runnable() {
             @Override
             public void run() {
+                if (m_planned) {
+                    replayLog();
+                }
+                m_started = true;
                 if (m_callback != null) {
                     m_callback.onReplayCompletion();
                 }
             }
-        }).start();
+        }, "Command log replay");
+        m_replayThread.start();
+    }
+
+    /**
+     * Replay the local log and synchronize with the other hosts. Blocks until
+     * every transaction sent by this host got a response and all hosts are done.
+     */
+    private void replayLog() {
+        final Cartographer cartographer = VoltDB.instance().getCartographer();
+        final boolean hasMPI =
+            CoreUtils.getHostIdFromHSId(cartographer.getHSIdForMultiPartitionInitiator()) == m_hostId;
+        final long[] counts = new long[] { 0, 0 }; // segments, transactions
+
+        try {
+            GroupCommitCommandLog.scanLog(m_logPath, new GroupCommitCommandLog.LogEntryHandler() {
+                long m_lastMpTxnId = Long.MIN_VALUE;
+
+                @Override
+                public void handleHeader(long generation, JSONObject header) {
+                    counts[0]++;
+                }
+
+                @Override
+                public void handleInitiate(long spHandle, Iv2InitiateTaskMessage message)
+                throws InterruptedException {
+                    if (!shouldReplay(message, spHandle)) {
+                        return;
+                    }
+                    final int partitionId = TxnEgo.getPartitionId(spHandle);
+                    final StoredProcedureInvocation invocation = message.getStoredProcedureInvocation();
+                    if (message.isSinglePartition()) {
+                        initiate(spHandle, message.getUniqueId(), invocation,
+                                 true, new int[] { partitionId });
+                        counts[1]++;
+                    } else {
+                        m_initiator.sendSentinel(message.getTxnId(), partitionId);
+                        if (hasMPI && message.getTxnId() > m_lastMpTxnId) {
+                            m_lastMpTxnId = message.getTxnId();
+                            initiate(message.getTxnId(), message.getUniqueId(), invocation,
+                                     false, m_allPartitions);
+                            counts[1]++;
+                        }
+                    }
+                }
+
+                @Override
+                public void handleFault(long writerHSId, Set<Long> survivors,
+                                        int partitionId, long spHandle) {
+                    // Every replica logs every transaction, the masters dedupe
+                    // the replayed copies so there is nothing to repair here
+                }
+            });
+        } catch (IOException e) {
+            VoltDB.crashGlobalVoltDB("Unable to replay the command log in " + m_logPath, true, e);
+        }
+
+        // Make sure every host has sent everything before ending the logs
+        barrier(VoltZK.cl_replay_barrier, new byte[0]);
+        for (int partitionId : m_allPartitions) {
+            if (CoreUtils.getHostIdFromHSId(cartographer.getHSIdForMaster(partitionId)) == m_hostId) {
+                m_initiator.sendEOLMessage(partitionId);
+            }
+        }
+        if (hasMPI) {
+            waitForOutstandingTxns();
+            m_initiator.sendEOLMessage(MpInitiator.MP_INIT_PID);
+        }
+        waitForOutstandingTxns();
+
+        LOG.info("Replayed " + counts[1] + " transactions from " + counts[0] +
+                 " command log generations");
+
+        String summary = null;
+        try {
+            JSONStringer stringer = new JSONStringer();
+            stringer.object();
+            stringer.key("segments").value(counts[0]);
+            stringer.key("txns").value(counts[1]);
+            stringer.endObject();
+            summary = stringer.toString();
+        } catch (Exception e) {
+            VoltDB.crashLocalVoltDB("Unable to serialize command log replay summary", true, e);
+        }
+
+        List<byte[]> results = barrier(VoltZK.cl_replay_complete, summary.getBytes());
+        try {
+            for (byte[] result : results) {
+                JSONObject jsObj = new JSONObject(new String(result));
+                m_hasReplayedSegments |= jsObj.getLong("segments") > 0;
+                m_hasReplayedTxns |= jsObj.getLong("txns") > 0;
+            }
+        } catch (Exception e) {
+            VoltDB.crashGlobalVoltDB("Unable to parse command log replay summaries", true, e);
+        }
+    }
+
+    /**
+     * Whether a logged transaction is newer than the restored snapshot.
+     */
+    private boolean shouldReplay(Iv2InitiateTaskMessage message, long spHandle) {
+        // Snapshots taken while the log was written don't need to be taken again
+        if (message.getStoredProcedureInvocation().getProcName().equals("@SnapshotSave")) {
+            return false;
+        }
+        if (m_snapshotInfo == null) {
+            return true;
+        }
+        Long snapshotTxnId = m_snapshotInfo.partitionToTxnId.get(TxnEgo.getPartitionId(spHandle));
+        if (snapshotTxnId != null && spHandle <= snapshotTxnId) {
+            return false;
+        }
+        if (!message.isSinglePartition()) {
+            Long snapshotMpTxnId = m_snapshotInfo.partitionToTxnId.get(MpInitiator.MP_INIT_PID);
+            if (snapshotMpTxnId == null) {
+                snapshotMpTxnId = m_snapshotInfo.txnId;
+            }
+            if (message.getTxnId() <= snapshotMpTxnId) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void initiate(long txnId, long uniqueId, StoredProcedureInvocation invocation,
+                          boolean isSinglePartition, int[] partitions)
+    throws InterruptedException {
+        synchronized (m_outstandingLock) {
+            while (m_outstandingTxns >= MAX_OUTSTANDING_TXNS) {
+                m_outstandingLock.wait();
+            }
+            m_outstandingTxns++;
+        }
+        boolean success = m_initiator.createTransaction(m_replayAdapter.connectionId(), "CommandLog", true,
+                                                        txnId, uniqueId, invocation,
+                                                        false, isSinglePartition, false,
+                                                        partitions, m_replayAdapter,
+                                                        invocation.getSerializedSize(),
+                                                        EstTime.currentTimeMillis());
+        if (!success) {
+            VoltDB.crashGlobalVoltDB("Failed to initiate command log replay of txn " + txnId,
+                                     false, null);
+        }
+    }
+
+    private void waitForOutstandingTxns() {
+        synchronized (m_outstandingLock) {
+            while (m_outstandingTxns > 0) {
+                try {
+                    m_outstandingLock.wait();
+                } catch (InterruptedException e) {}
+            }
+        }
+    }
+
+    /**
+     * Register this host under the given barrier node and wait for all the
+     * live hosts to do the same.
+     * @return the data every host registered with
+     */
+    private List<byte[]> barrier(String path, byte[] data) {
+        List<byte[]> results = new ArrayList<byte[]>();
+        try {
+            m_zk.create(path + "/host_" + m_hostId, data, Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+            while (true) {
+                List<String> children = m_zk.getChildren(path, false);
+                if (children.size() >= m_liveHosts.size()) {
+                    for (String child : children) {
+                        results.add(m_zk.getData(path + "/" + child, false, null));
+                    }
+                    break;
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {}
+            }
+        } catch (Exception e) {
+            VoltDB.crashGlobalVoltDB("Failed to synchronize command log replay: " + e.getMessage(),
+                                     false, e);
+        }
+        return results;
     }
 
     @Override
     public void join() throws InterruptedException {
+        if (m_replayThread != null) {
+            m_replayThread.join();
+        }
     }
 
     @Override
     public boolean hasReplayedSegments() {
-        return false;
+        return m_hasReplayedSegments;
     }
 
     @Override
@@ -62,29 +369,58 @@ public class DefaultCommandLogReinitiator implements CommandLogReinitiator
 
     @Override
     public Map<Integer, Long> getMaxLastSeenTxnByPartition() {
-        return null;
+        return m_logTxnIds;
     }
 
     @Override
     public boolean started() {
-        return true;
+        return m_zk == null || m_started;
     }
 
     @Override
     public void setSnapshotTxnId(RestoreAgent.SnapshotInfo info) {
+        m_snapshotInfo = info;
     }
 
     @Override
     public void returnAllSegments() {
+        // The truncation snapshot taken after replay covers everything in the log
+        if (m_logPath == null) {
+            return;
+        }
+        try {
+            for (long generation : GroupCommitCommandLog.findGenerations(m_logPath)) {
+                GroupCommitCommandLog.deleteGeneration(m_logPath, generation);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to delete replayed command log in " + m_logPath, e);
+        }
     }
 
     @Override
     public boolean hasReplayedTxns() {
-        return false;
+        return m_hasReplayedTxns;
     }
 
     @Override
     public void generateReplayPlan(int newPartitionCount) {
+        if (m_zk == null) {
+            return;
+        }
+        for (String path : new String[] { VoltZK.cl_replay_barrier, VoltZK.cl_replay_complete }) {
+            try {
+                m_zk.create(path, new byte[0], Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            } catch (KeeperException e) {
+                if (e.code() != Code.NODEEXISTS) {
+                    VoltDB.crashGlobalVoltDB("Failed to create Zookeeper node: " + e.getMessage(),
+                                             false, e);
+                }
+            } catch (InterruptedException e) {
+                VoltDB.crashGlobalVoltDB("Failed to create Zookeeper node: " + e.getMessage(),
+                                         false, e);
+            }
+        }
+        m_planned = true;
     }
 
     @Override
@@ -93,13 +429,14 @@ public class DefaultCommandLogReinitiator implements CommandLogReinitiator
 
     @Override
     public void setInitiator(TransactionCreator initiator) {
+        m_initiator = initiator;
     }
 
     @Override
     public InstanceId getInstanceId() {
         // When we don't have a command log, return null to cause the instance ID
         // check to get skipped entirely in RestoreAgent.generatePlans()
-        return null;
+        return m_instanceId;
     }
 
     @Override
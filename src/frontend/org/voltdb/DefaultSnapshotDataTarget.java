@@ -22,16 +22,23 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -50,9 +57,7 @@ import org.voltdb.utils.CompressionService;
 import com.google.common.util.concurrent.Callables;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.ListeningScheduledExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 
 public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
@@ -82,6 +87,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     private volatile IOException m_writeException = null;
 
     private volatile long m_bytesWritten = 0;
+    private final AtomicLong m_writeNanos = new AtomicLong(0);
 
     private static final Semaphore m_bytesAllowedBeforeSync = new Semaphore((1024 * 1024) * 256);
     private final AtomicInteger m_bytesWrittenSinceLastSync = new AtomicInteger(0);
@@ -102,9 +108,111 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     private final Condition m_noMoreOutstandingWriteTasksCondition =
             m_outstandingWriteTasksLock.newCondition();
 
-    private static final ListeningExecutorService m_es = CoreUtils.getSingleThreadExecutor("Snapshot write service ");
-    private static final ListeningScheduledExecutorService m_syncService = MoreExecutors.listeningDecorator(
-            Executors.newSingleThreadScheduledExecutor(CoreUtils.getThreadFactory("Snapshot sync service")));
+    /*
+     * Writes are done by a pool of threads per target directory so that a snapshot
+     * isn't limited to one writer thread when the volume can take concurrent writes,
+     * and so that separate volumes don't wait on each other. Each target drains its own
+     * queue from at most one pool thread at a time so the blocks of a file stay in order.
+     */
+    static final int WRITER_THREADS_PER_VOLUME = Integer.getInteger("snapshotWriterThreads", 2);
+    static final int MAX_BLOCKS_PER_WRITE = Integer.getInteger("snapshotBlocksPerWrite", 8);
+
+    static class VolumeWriters {
+        final ThreadPoolExecutor m_writers;
+        final ScheduledThreadPoolExecutor m_syncService;
+        //Targets using the pools, guarded by m_volumeWriters
+        int m_users = 0;
+
+        VolumeWriters(String volume) {
+            m_writers = new ThreadPoolExecutor(
+                    WRITER_THREADS_PER_VOLUME, WRITER_THREADS_PER_VOLUME,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    CoreUtils.getThreadFactory(null, "Snapshot write service " + volume,
+                                               CoreUtils.SMALL_STACK_SIZE, true, null));
+            m_writers.allowCoreThreadTimeOut(true);
+            m_syncService = new ScheduledThreadPoolExecutor(
+                    1, CoreUtils.getThreadFactory(null, "Snapshot sync service " + volume,
+                                                  CoreUtils.SMALL_STACK_SIZE, false, null));
+            m_syncService.setKeepAliveTime(60, TimeUnit.SECONDS);
+            m_syncService.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private static final HashMap<String, VolumeWriters> m_volumeWriters =
+            new HashMap<String, VolumeWriters>();
+
+    /*
+     * Java 6 has no way to ask which filesystem a file lives on,
+     * so the directory the file is created in stands in for the volume.
+     */
+    static VolumeWriters getVolumeWriters(File file) {
+        File dir;
+        try {
+            dir = file.getCanonicalFile().getParentFile();
+        } catch (IOException e) {
+            dir = file.getAbsoluteFile().getParentFile();
+        }
+        final String volume = dir == null ? "" : dir.getPath();
+        synchronized (m_volumeWriters) {
+            VolumeWriters writers = m_volumeWriters.get(volume);
+            if (writers == null) {
+                writers = new VolumeWriters(volume);
+                m_volumeWriters.put(volume, writers);
+            }
+            writers.m_users++;
+            return writers;
+        }
+    }
+
+    /*
+     * Shut down the pools of a volume once the last target writing to it is closed,
+     * so every directory ever snapshotted to doesn't keep an entry around
+     */
+    static void releaseVolumeWriters(VolumeWriters writers) {
+        synchronized (m_volumeWriters) {
+            if (--writers.m_users > 0) {
+                return;
+            }
+            m_volumeWriters.values().remove(writers);
+        }
+        writers.m_writers.shutdown();
+        writers.m_syncService.shutdown();
+    }
+
+    static int getVolumeWritersCount() {
+        synchronized (m_volumeWriters) {
+            return m_volumeWriters.size();
+        }
+    }
+
+    /*
+     * A block waiting for its turn to be written. The payload is compressed
+     * asynchronously, the write task waits for it in file order.
+     */
+    private static class PendingWrite {
+        final BBContainer m_tupleData;
+        final Future<BBContainer> m_compressionTask;
+        final boolean m_prependLength;
+        final SettableFuture<Object> m_result = SettableFuture.create();
+
+        PendingWrite(BBContainer tupleData, Future<BBContainer> compressionTask, boolean prependLength) {
+            m_tupleData = tupleData;
+            m_compressionTask = compressionTask;
+            m_prependLength = prependLength;
+        }
+    }
+
+    private final VolumeWriters m_writers;
+    private final AtomicBoolean m_writersReleased = new AtomicBoolean(false);
+    private final ConcurrentLinkedQueue<PendingWrite> m_pendingWrites = new ConcurrentLinkedQueue<PendingWrite>();
+    private final AtomicBoolean m_drainScheduled = new AtomicBoolean(false);
+    private final Runnable m_drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drainPendingWrites();
+        }
+    };
 
     public DefaultSnapshotDataTarget(
             final File file,
@@ -130,7 +238,46 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                 schemaTable,
                 txnId,
                 timestamp,
-                new int[] { 0, 0, 0, 2 });
+                new int[] { 0, 0, 0, 2 },
+                false,
+                null);
+    }
+
+    /**
+     * Create a target for a snapshot whose chunks are tagged with the id of the tuple block
+     * they were read from. If baseFile is not null the snapshot is a delta of the snapshot
+     * that wrote baseFile, a table file in the same directory, and blocks that weren't
+     * written since are only referenced by id.
+     */
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final boolean isReplicated,
+            final List<Integer> partitionIds,
+            final VoltTable schemaTable,
+            final long txnId,
+            final long timestamp,
+            final boolean blockTagged,
+            final String baseFile) throws IOException {
+        this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                isReplicated,
+                partitionIds,
+                schemaTable,
+                txnId,
+                timestamp,
+                new int[] { 0, 0, 0, 2 },
+                blockTagged,
+                baseFile);
     }
 
     public DefaultSnapshotDataTarget(
@@ -147,120 +294,168 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             final long timestamp,
             int version[]
             ) throws IOException {
+        this(
+                file,
+                hostId,
+                clusterName,
+                databaseName,
+                tableName,
+                numPartitions,
+                isReplicated,
+                partitionIds,
+                schemaTable,
+                txnId,
+                timestamp,
+                version,
+                false,
+                null);
+    }
+
+    public DefaultSnapshotDataTarget(
+            final File file,
+            final int hostId,
+            final String clusterName,
+            final String databaseName,
+            final String tableName,
+            final int numPartitions,
+            final boolean isReplicated,
+            final List<Integer> partitionIds,
+            final VoltTable schemaTable,
+            final long txnId,
+            final long timestamp,
+            int version[],
+            final boolean blockTagged,
+            final String baseFile
+            ) throws IOException {
         String hostname = CoreUtils.getHostnameOrAddress();
         m_file = file;
         m_tableName = tableName;
-        m_fos = new FileOutputStream(file);
-        m_channel = m_fos.getChannel();
-        m_needsFinalClose = !isReplicated;
-        final FastSerializer fs = new FastSerializer();
-        fs.writeInt(0);//CRC
-        fs.writeInt(0);//Header length placeholder
-        fs.writeByte(1);//Indicate the snapshot was not completed, set to true for the CRC calculation, false later
-        for (int ii = 0; ii < 4; ii++) {
-            fs.writeInt(version[ii]);//version
-        }
-        JSONStringer stringer = new JSONStringer();
-        byte jsonBytes[] = null;
+        m_writers = getVolumeWriters(file);
+        boolean initialized = false;
         try {
-            stringer.object();
-            stringer.key("txnId").value(txnId);
-            stringer.key("hostId").value(hostId);
-            stringer.key("hostname").value(hostname);
-            stringer.key("clusterName").value(clusterName);
-            stringer.key("databaseName").value(databaseName);
-            stringer.key("tableName").value(tableName.toUpperCase());
-            stringer.key("isReplicated").value(isReplicated);
-            stringer.key("isCompressed").value(true);
-            stringer.key("checksumType").value("CRC32C");
-            stringer.key("timestamp").value(timestamp);
-            /*
-             * The timestamp string is for human consumption, automated stuff should use
-             * the actual timestamp
-             */
-            stringer.key("timestampString").value(SnapshotUtil.formatHumanReadableDate(timestamp));
-            if (!isReplicated) {
-                stringer.key("partitionIds").array();
-                for (int partitionId : partitionIds) {
-                    stringer.value(partitionId);
-                }
-                stringer.endArray();
-
-                stringer.key("numPartitions").value(numPartitions);
+            m_fos = new FileOutputStream(file);
+            m_channel = m_fos.getChannel();
+            m_needsFinalClose = !isReplicated;
+            final FastSerializer fs = new FastSerializer();
+            fs.writeInt(0);//CRC
+            fs.writeInt(0);//Header length placeholder
+            fs.writeByte(1);//Indicate the snapshot was not completed, set to true for the CRC calculation, false later
+            for (int ii = 0; ii < 4; ii++) {
+                fs.writeInt(version[ii]);//version
             }
-            stringer.endObject();
-            String jsonString = stringer.toString();
-            JSONObject jsonObj = new JSONObject(jsonString);
-            jsonString = jsonObj.toString(4);
-            jsonBytes = jsonString.getBytes("UTF-8");
-        } catch (Exception e) {
-            throw new IOException(e);
-        }
-        fs.writeInt(jsonBytes.length);
-        fs.write(jsonBytes);
-
-        final BBContainer container = fs.getBBContainer();
-        container.b.position(4);
-        container.b.putInt(container.b.remaining() - 4);
-        container.b.position(0);
-
-        final byte schemaBytes[] = schemaTable.getSchemaBytes();
-
-        final PureJavaCrc32 crc = new PureJavaCrc32();
-        ByteBuffer aggregateBuffer = ByteBuffer.allocate(container.b.remaining() + schemaBytes.length);
-        aggregateBuffer.put(container.b);
-        aggregateBuffer.put(schemaBytes);
-        aggregateBuffer.flip();
-        crc.update(aggregateBuffer.array(), 4, aggregateBuffer.capacity() - 4);
-
-        final int crcValue = (int) crc.getValue();
-        aggregateBuffer.putInt(crcValue).position(8);
-        aggregateBuffer.put((byte)0).position(0);//Haven't actually finished writing file
+            JSONStringer stringer = new JSONStringer();
+            byte jsonBytes[] = null;
+            try {
+                stringer.object();
+                stringer.key("txnId").value(txnId);
+                stringer.key("hostId").value(hostId);
+                stringer.key("hostname").value(hostname);
+                stringer.key("clusterName").value(clusterName);
+                stringer.key("databaseName").value(databaseName);
+                stringer.key("tableName").value(tableName.toUpperCase());
+                stringer.key("isReplicated").value(isReplicated);
+                stringer.key("isCompressed").value(true);
+                stringer.key("checksumType").value("CRC32C");
+                stringer.key("timestamp").value(timestamp);
+                /*
+                 * The timestamp string is for human consumption, automated stuff should use
+                 * the actual timestamp
+                 */
+                stringer.key("timestampString").value(SnapshotUtil.formatHumanReadableDate(timestamp));
+                if (!isReplicated) {
+                    stringer.key("partitionIds").array();
+                    for (int partitionId : partitionIds) {
+                        stringer.value(partitionId);
+                    }
+                    stringer.endArray();
 
-        if (m_simulateFullDiskWritingHeader) {
-            m_writeException = new IOException("Disk full");
-            m_writeFailed = true;
-            m_fos.close();
-            throw m_writeException;
-        }
+                    stringer.key("numPartitions").value(numPartitions);
+                }
+                if (blockTagged) {
+                    stringer.key("blockTagged").value(true);
+                }
+                if (baseFile != null) {
+                    stringer.key("baseFile").value(baseFile);
+                }
+                stringer.endObject();
+                String jsonString = stringer.toString();
+                JSONObject jsonObj = new JSONObject(jsonString);
+                jsonString = jsonObj.toString(4);
+                jsonBytes = jsonString.getBytes("UTF-8");
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+            fs.writeInt(jsonBytes.length);
+            fs.write(jsonBytes);
+
+            final BBContainer container = fs.getBBContainer();
+            container.b.position(4);
+            container.b.putInt(container.b.remaining() - 4);
+            container.b.position(0);
+
+            final byte schemaBytes[] = schemaTable.getSchemaBytes();
+
+            final PureJavaCrc32 crc = new PureJavaCrc32();
+            ByteBuffer aggregateBuffer = ByteBuffer.allocate(container.b.remaining() + schemaBytes.length);
+            aggregateBuffer.put(container.b);
+            aggregateBuffer.put(schemaBytes);
+            aggregateBuffer.flip();
+            crc.update(aggregateBuffer.array(), 4, aggregateBuffer.capacity() - 4);
+
+            final int crcValue = (int) crc.getValue();
+            aggregateBuffer.putInt(crcValue).position(8);
+            aggregateBuffer.put((byte)0).position(0);//Haven't actually finished writing file
+
+            if (m_simulateFullDiskWritingHeader) {
+                m_writeException = new IOException("Disk full");
+                m_writeFailed = true;
+                m_fos.close();
+                throw m_writeException;
+            }
 
-        /*
-         * Be completely sure the write succeeded. If it didn't
-         * the disk is probably full or the path is bunk etc.
-         */
-        m_acceptOneWrite = true;
-        ListenableFuture<?> writeFuture =
-                write(Callables.returning((BBContainer)DBBPool.wrapBB(aggregateBuffer)), false);
-        try {
-            writeFuture.get();
-        } catch (InterruptedException e) {
-            m_fos.close();
-            throw new java.io.InterruptedIOException();
-        } catch (ExecutionException e) {
-            m_fos.close();
-            throw m_writeException;
-        }
-        if (m_writeFailed) {
-            m_fos.close();
-            throw m_writeException;
-        }
+            /*
+             * Be completely sure the write succeeded. If it didn't
+             * the disk is probably full or the path is bunk etc.
+             */
+            m_acceptOneWrite = true;
+            ListenableFuture<?> writeFuture =
+                    write(Callables.returning((BBContainer)DBBPool.wrapBB(aggregateBuffer)), false);
+            try {
+                writeFuture.get();
+            } catch (InterruptedException e) {
+                m_fos.close();
+                throw new java.io.InterruptedIOException();
+            } catch (ExecutionException e) {
+                m_fos.close();
+                throw m_writeException;
+            }
+            if (m_writeFailed) {
+                m_fos.close();
+                throw m_writeException;
+            }
 
-        ScheduledFuture<?> syncTask = null;
-        syncTask = m_syncService.scheduleAtFixedRate(new Runnable() {
-            @Override
-            public void run() {
-                int bytesSinceLastSync = 0;
-                while ((bytesSinceLastSync = m_bytesWrittenSinceLastSync.getAndSet(0)) > 0) {
-                    try {
-                        m_channel.force(false);
-                    } catch (IOException e) {
-                        SNAP_LOG.error("Error syncing snapshot", e);
+            ScheduledFuture<?> syncTask = null;
+            syncTask = m_writers.m_syncService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    int bytesSinceLastSync = 0;
+                    while ((bytesSinceLastSync = m_bytesWrittenSinceLastSync.getAndSet(0)) > 0) {
+                        try {
+                            m_channel.force(false);
+                        } catch (IOException e) {
+                            SNAP_LOG.error("Error syncing snapshot", e);
+                        }
+                        m_bytesAllowedBeforeSync.release(bytesSinceLastSync);
                     }
-                    m_bytesAllowedBeforeSync.release(bytesSinceLastSync);
                 }
+            }, 1, 1, TimeUnit.SECONDS);
+            m_syncTask = syncTask;
+            initialized = true;
+        } finally {
+            if (!initialized) {
+                releaseWriters();
             }
-        }, 1, 1, TimeUnit.SECONDS);
-        m_syncTask = syncTask;
+        }
     }
 
     @Override
@@ -292,14 +487,24 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         } else {
             completed.put((byte)1).flip();
         }
-        m_channel.write(completed);
-        m_channel.force(false);
-        m_channel.close();
+        try {
+            m_channel.write(completed);
+            m_channel.force(false);
+            m_channel.close();
+        } finally {
+            releaseWriters();
+        }
         if (m_onCloseHandler != null) {
             m_onCloseHandler.run();
         }
     }
 
+    private void releaseWriters() {
+        if (m_writersReleased.compareAndSet(false, true)) {
+            releaseVolumeWriters(m_writers);
+        }
+    }
+
     @Override
     public int getHeaderSize() {
         return 0;
@@ -351,86 +556,161 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
             cont.b.position(12);
             compressionTask = CompressionService.compressAndCRC32cBufferAsync(tupleData.b, cont);
         }
-        final Future<BBContainer> compressionTaskFinal = compressionTask;
+        final PendingWrite pending = new PendingWrite(tupleData, compressionTask, prependLength);
+        m_pendingWrites.offer(pending);
+        scheduleDrain();
+        return pending.m_result;
+    }
 
-        ListenableFuture<?> writeTask = m_es.submit(new Callable<Object>() {
-            @Override
-            public Object call() throws Exception {
-                try {
-                    if (m_acceptOneWrite) {
-                        m_acceptOneWrite = false;
-                    } else {
-                        if (m_simulateBlockedWrite != null) {
-                            m_simulateBlockedWrite.await();
-                        }
-                        if (m_simulateFullDiskWritingChunk) {
-                            throw new IOException("Disk full");
-                        }
-                    }
+    private void scheduleDrain() {
+        if (m_drainScheduled.compareAndSet(false, true)) {
+            m_writers.m_writers.execute(m_drainTask);
+        }
+    }
 
-                    int totalWritten = 0;
-                    if (prependLength) {
-                        BBContainer payloadContainer = compressionTaskFinal.get();
-                        try {
-                            final ByteBuffer payloadBuffer = payloadContainer.b;
-                            payloadBuffer.position(0);
-
-                            ByteBuffer lengthPrefix = ByteBuffer.allocate(12);
-                            m_bytesAllowedBeforeSync.acquire(payloadBuffer.remaining());
-                            //Length prefix does not include 4 header items, just compressd payload
-                            //that follows
-                            lengthPrefix.putInt(payloadBuffer.remaining() - 16);//length prefix
-                            lengthPrefix.putInt(tupleData.b.getInt(0)); // partitionId
-
-                            /*
-                             * Checksum the header and put it in the payload buffer
-                             */
-                            PureJavaCrc32C crc = new PureJavaCrc32C();
-                            crc.update(lengthPrefix.array(), 0, 8);
-                            lengthPrefix.putInt((int)crc.getValue());
-                            lengthPrefix.flip();
-                            payloadBuffer.put(lengthPrefix);
-                            payloadBuffer.position(0);
-
-                            /*
-                             * Write payload to file
-                             */
-                            while (payloadBuffer.hasRemaining()) {
-                                totalWritten += m_channel.write(payloadBuffer);
-                            }
-                        } finally {
-                            payloadContainer.discard();
-                        }
-                    } else {
-                        while (tupleData.b.hasRemaining()) {
-                            totalWritten += m_channel.write(tupleData.b);
-                        }
+    /*
+     * Write one batch of queued blocks and then go to the back of the pool's queue
+     * if there is more, so a large table doesn't starve the other files on the volume.
+     */
+    private void drainPendingWrites() {
+        final List<PendingWrite> batch = new ArrayList<PendingWrite>(MAX_BLOCKS_PER_WRITE);
+        PendingWrite pending;
+        while (batch.size() < MAX_BLOCKS_PER_WRITE && (pending = m_pendingWrites.poll()) != null) {
+            batch.add(pending);
+        }
+        try {
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        } finally {
+            m_drainScheduled.set(false);
+            if (!m_pendingWrites.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    /*
+     * Write a batch of blocks with a single gathering write where possible
+     */
+    private void writeBatch(List<PendingWrite> batch) {
+        final List<BBContainer> payloadContainers = new ArrayList<BBContainer>(batch.size());
+        Throwable failure = null;
+        int permitsHeld = 0;
+        try {
+            if (m_writeFailed) {
+                //Don't write the blocks queued behind a failed one
+                throw m_writeException;
+            }
+            if (m_acceptOneWrite) {
+                m_acceptOneWrite = false;
+            } else {
+                if (m_simulateBlockedWrite != null) {
+                    m_simulateBlockedWrite.await();
+                }
+                if (m_simulateFullDiskWritingChunk) {
+                    throw new IOException("Disk full");
+                }
+            }
+
+            final ByteBuffer buffers[] = new ByteBuffer[batch.size()];
+            int permitsNeeded = 0;
+            for (int ii = 0; ii < batch.size(); ii++) {
+                final PendingWrite write = batch.get(ii);
+                if (write.m_prependLength) {
+                    BBContainer payloadContainer = write.m_compressionTask.get();
+                    payloadContainers.add(payloadContainer);
+                    final ByteBuffer payloadBuffer = payloadContainer.b;
+                    payloadBuffer.position(0);
+
+                    ByteBuffer lengthPrefix = ByteBuffer.allocate(12);
+                    permitsNeeded += payloadBuffer.remaining();
+                    //Length prefix does not include 4 header items, just compressd payload
+                    //that follows
+                    lengthPrefix.putInt(payloadBuffer.remaining() - 16);//length prefix
+                    lengthPrefix.putInt(write.m_tupleData.b.getInt(0)); // partitionId
+
+                    /*
+                     * Checksum the header and put it in the payload buffer
+                     */
+                    PureJavaCrc32C crc = new PureJavaCrc32C();
+                    crc.update(lengthPrefix.array(), 0, 8);
+                    lengthPrefix.putInt((int)crc.getValue());
+                    lengthPrefix.flip();
+                    payloadBuffer.put(lengthPrefix);
+                    payloadBuffer.position(0);
+                    buffers[ii] = payloadBuffer;
+                } else {
+                    buffers[ii] = write.m_tupleData.b;
+                }
+            }
+
+            /*
+             * Take the permits for the whole batch in one call. Taking them block by block
+             * before anything is written lets writers on other files hold partial batches
+             * while waiting for more, and the sync thread only frees bytes already written.
+             */
+            m_bytesAllowedBeforeSync.acquire(permitsNeeded);
+            permitsHeld = permitsNeeded;
+
+            /*
+             * Write all the payloads to the file
+             */
+            final long start = System.nanoTime();
+            long totalWritten = 0;
+            int offset = 0;
+            while (offset < buffers.length) {
+                totalWritten += m_channel.write(buffers, offset, buffers.length - offset);
+                while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+                    offset++;
+                }
+            }
+            m_writeNanos.addAndGet(System.nanoTime() - start);
+            m_bytesWritten += totalWritten;
+            m_bytesWrittenSinceLastSync.addAndGet((int)totalWritten);
+            //Handed to the sync thread to release
+            permitsHeld = 0;
+        } catch (IOException e) {
+            if (!m_writeFailed) {
+                m_writeException = e;
+                SNAP_LOG.error("Error while attempting to write snapshot data to file " + m_file, e);
+                m_writeFailed = true;
+            }
+            failure = e;
+        } catch (Throwable t) {
+            m_writeException = new IOException(t);
+            SNAP_LOG.error("Unexpected error while attempting to write snapshot data to file " + m_file, t);
+            m_writeFailed = true;
+            failure = t;
+        } finally {
+            if (permitsHeld > 0) {
+                m_bytesAllowedBeforeSync.release(permitsHeld);
+            }
+            try {
+                for (BBContainer payloadContainer : payloadContainers) {
+                    payloadContainer.discard();
+                }
+                for (PendingWrite write : batch) {
+                    write.m_tupleData.discard();
+                }
+            } finally {
+                m_outstandingWriteTasksLock.lock();
+                try {
+                    if (m_outstandingWriteTasks.addAndGet(-batch.size()) == 0) {
+                        m_noMoreOutstandingWriteTasksCondition.signalAll();
                     }
-                    m_bytesWritten += totalWritten;
-                    m_bytesWrittenSinceLastSync.addAndGet(totalWritten);
-                } catch (IOException e) {
-                    m_writeException = e;
-                    SNAP_LOG.error("Error while attempting to write snapshot data to file " + m_file, e);
-                    m_writeFailed = true;
-                    throw e;
                 } finally {
-                    try {
-                        tupleData.discard();
-                    } finally {
-                        m_outstandingWriteTasksLock.lock();
-                        try {
-                            if (m_outstandingWriteTasks.decrementAndGet() == 0) {
-                                m_noMoreOutstandingWriteTasksCondition.signalAll();
-                            }
-                        } finally {
-                            m_outstandingWriteTasksLock.unlock();
-                        }
-                    }
+                    m_outstandingWriteTasksLock.unlock();
                 }
-                return null;
             }
-        });
-        return writeTask;
+        }
+        for (PendingWrite write : batch) {
+            if (failure == null) {
+                write.m_result.set(null);
+            } else {
+                write.m_result.setException(failure);
+            }
+        }
     }
 
     @Override
@@ -443,6 +723,11 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         return m_bytesWritten;
     }
 
+    @Override
+    public long getWriteTimeNanos() {
+        return m_writeNanos.get();
+    }
+
     @Override
     public void setOnCloseHandler(Runnable onClose) {
         m_onCloseHandler = onClose;
@@ -0,0 +1,669 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.messaging.VoltMessage;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
+import org.voltdb.utils.BinaryDeque.BinaryDequeTruncator;
+import org.voltdb.utils.PersistentBinaryDeque;
+import org.voltdb.utils.VoltFile;
+
+/**
+ * Command log that makes the Iv2InitiateTaskMessages logged by all the local
+ * initiators durable with one fsync per batch (group commit) instead of one
+ * per transaction.
+ *
+ * Entries are serialized on the calling site thread and handed to a single
+ * writer thread. The writer collects entries for up to fsyncInterval
+ * milliseconds (or until maxTxns are pending), appends the whole batch to a
+ * PersistentBinaryDeque as a single object and syncs it. In synchronous mode
+ * log() returns true and the DurabilityListener is told about the handles once
+ * the batch containing them is on disk. In asynchronous mode log() returns
+ * false and the caller executes the transaction right away.
+ *
+ * The log is split into generations, one PersistentBinaryDeque per generation.
+ * Every generation starts with a header recording, for each partition, the
+ * highest txnId logged in all previous generations. When a truncation snapshot
+ * completes the writer rolls to a new generation and deletes every generation
+ * older than the one it just closed, so a snapshot that is at least as new as
+ * the header of the oldest remaining generation is always a viable starting
+ * point for replay. See DefaultCommandLogReinitiator for the replay side.
+ */
+public class GroupCommitCommandLog implements CommandLog, SnapshotCompletionInterest {
+    private static final VoltLogger LOG = new VoltLogger("LOGGING");
+
+    static final String NONCE_PREFIX = "command_log_";
+
+    // Types of the entries stored in a batch
+    static final byte HEADER_ENTRY = 0;
+    static final byte INITIATE_ENTRY = 1;
+    static final byte FAULT_ENTRY = 2;
+
+    // Keep each batch object well under the PBD maximum object size
+    private static final int MAX_BATCH_BYTES = 1024 * 1024 * 32;
+
+    /**
+     * An entry waiting for the writer thread. The payload is fully serialized
+     * by the thread that logged it.
+     */
+    private static class PendingEntry {
+        final ByteBuffer m_payload;
+        final DurabilityListener m_listener;
+        final Object m_handle;
+        // Partition-wise txnId and the MP txnId, if any, used for the generation headers
+        final long m_spHandle;
+        final long m_mpTxnId;
+
+        PendingEntry(ByteBuffer payload, DurabilityListener listener, Object handle,
+                     long spHandle, long mpTxnId) {
+            m_payload = payload;
+            m_listener = listener;
+            m_handle = handle;
+            m_spHandle = spHandle;
+            m_mpTxnId = mpTxnId;
+        }
+    }
+
+    /**
+     * Receives the contents of the log in the order they were written.
+     */
+    interface LogEntryHandler {
+        public void handleHeader(long generation, JSONObject header) throws Exception;
+        public void handleInitiate(long spHandle, Iv2InitiateTaskMessage message) throws Exception;
+        public void handleFault(long writerHSId, Set<Long> survivors, int partitionId, long spHandle)
+        throws Exception;
+    }
+
+    private volatile boolean m_initialized = false;
+    private boolean m_isRejoin = false;
+
+    private File m_logDir;
+    private boolean m_synchronous;
+    private int m_fsyncInterval;
+    private int m_maxTxns;
+    private long m_logSizeBytes;
+    private InstanceId m_instanceId;
+
+    // Guards everything shared between the logging threads and the writer
+    private final Object m_lock = new Object();
+    private ArrayList<PendingEntry> m_pending = new ArrayList<PendingEntry>();
+    private long m_firstPendingTime = 0;
+    private boolean m_rollRequested = false;
+    private boolean m_shutdown = false;
+    private Thread m_writer;
+
+    // Only touched by the writer thread after initialization
+    private PersistentBinaryDeque m_pbd;
+    private long m_generation = 0;
+    private final Map<Integer, Long> m_lastLoggedTxnIds = new HashMap<Integer, Long>();
+    private long m_bytesSinceTruncation = 0;
+    private boolean m_truncationRequested = false;
+
+    @Override
+    public void init(CatalogContext context, long txnId, int partitionCount,
+                     String coreBinding, Map<Integer, Long> perPartitionTxnId) {
+        initialize(context, txnId, perPartitionTxnId, false);
+    }
+
+    @Override
+    public void initForRejoin(CatalogContext context, long txnId, int partitionCount,
+                              boolean isRejoin, String coreBinding,
+                              Map<Integer, Long> perPartitionTxnId) {
+        initialize(context, txnId, perPartitionTxnId, isRejoin);
+    }
+
+    private void initialize(CatalogContext context, long txnId, Map<Integer, Long> perPartitionTxnId,
+                            boolean isRejoin) {
+        org.voltdb.catalog.CommandLog config = context.cluster.getLogconfig().get("log");
+        Map<Integer, Long> txnIds = new HashMap<Integer, Long>();
+        if (perPartitionTxnId != null) {
+            txnIds.putAll(perPartitionTxnId);
+        }
+        if (txnId != Long.MIN_VALUE && !txnIds.containsKey(MpInitiator.MP_INIT_PID)) {
+            txnIds.put(MpInitiator.MP_INIT_PID, txnId);
+        }
+        m_isRejoin = isRejoin;
+        try {
+            start(new VoltFile(config.getLogpath()),
+                  config.getSynchronous(),
+                  config.getFsyncinterval(),
+                  config.getMaxtxns(),
+                  config.getLogsize() * 1024L * 1024L,
+                  VoltDB.instance().getHostMessenger().getInstanceId(),
+                  txnIds);
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Unable to initialize the command log in " + config.getLogpath(),
+                                    true, e);
+        }
+        VoltDB.instance().getSnapshotCompletionMonitor().addInterest(this);
+    }
+
+    /**
+     * Discard whatever is left in the log directory and start writing the
+     * first generation. Separate from init() so that the log can be exercised
+     * without a running server.
+     */
+    void start(File logDir, boolean synchronous, int fsyncInterval, int maxTxns,
+               long logSizeBytes, InstanceId instanceId, Map<Integer, Long> txnIds)
+    throws IOException {
+        m_logDir = logDir;
+        m_synchronous = synchronous;
+        m_fsyncInterval = fsyncInterval;
+        m_maxTxns = maxTxns;
+        m_logSizeBytes = logSizeBytes;
+        m_instanceId = instanceId;
+        m_lastLoggedTxnIds.putAll(txnIds);
+
+        if (!m_logDir.exists() && !m_logDir.mkdirs()) {
+            throw new IOException("Unable to create command log directory " + m_logDir);
+        }
+        // Anything still in the directory was either replayed and truncated
+        // by the restore that preceded this or belongs to a previous database
+        for (long generation : findGenerations(m_logDir)) {
+            deleteGeneration(m_logDir, generation);
+        }
+
+        m_generation = 0;
+        m_pbd = new PersistentBinaryDeque(nonceForGeneration(m_generation), m_logDir);
+        writeHeader();
+
+        LOG.info("Command logging to " + m_logDir + " in " + (m_synchronous ? "synchronous" : "asynchronous") +
+                 " mode with a " + m_fsyncInterval + "ms group commit interval");
+
+        m_writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writerLoop();
+            }
+        }, "Command log writer");
+        m_writer.setDaemon(true);
+        m_writer.start();
+        m_initialized = true;
+    }
+
+    @Override
+    public boolean needsInitialization() {
+        return !m_initialized;
+    }
+
+    @Override
+    public boolean log(Iv2InitiateTaskMessage message, long spHandle,
+                       DurabilityListener listener, Object durabilityHandle) {
+        // Transactions replayed before the log is initialized end up in the
+        // truncation snapshot that precedes initialization
+        if (!m_initialized) {
+            return false;
+        }
+
+        ByteBuffer payload;
+        try {
+            ByteBuffer msgBuf = VoltMessage.toBuffer(message);
+            payload = ByteBuffer.allocate(1 + 8 + msgBuf.remaining());
+            payload.put(INITIATE_ENTRY);
+            payload.putLong(spHandle);
+            payload.put(msgBuf);
+            payload.flip();
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Unable to serialize a command log entry", true, e);
+            return false;
+        }
+
+        long mpTxnId = message.isSinglePartition() ? Long.MIN_VALUE : message.getTxnId();
+        enqueue(new PendingEntry(payload,
+                                 m_synchronous ? listener : null,
+                                 m_synchronous ? durabilityHandle : null,
+                                 spHandle, mpTxnId));
+        return m_synchronous;
+    }
+
+    @Override
+    public void logIv2Fault(long writerHSId, Set<Long> survivorHSId,
+                            int partitionId, long spHandle) {
+        if (!m_initialized) {
+            return;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8 + 4 + 8 + 4 + 8 * survivorHSId.size());
+        payload.put(FAULT_ENTRY);
+        payload.putLong(writerHSId);
+        payload.putInt(partitionId);
+        payload.putLong(spHandle);
+        payload.putInt(survivorHSId.size());
+        for (long hsId : survivorHSId) {
+            payload.putLong(hsId);
+        }
+        payload.flip();
+        enqueue(new PendingEntry(payload, null, null, Long.MIN_VALUE, Long.MIN_VALUE));
+    }
+
+    private void enqueue(PendingEntry entry) {
+        synchronized (m_lock) {
+            if (m_pending.isEmpty()) {
+                m_firstPendingTime = System.currentTimeMillis();
+                m_lock.notifyAll();
+            }
+            m_pending.add(entry);
+            if (m_pending.size() >= m_maxTxns) {
+                m_lock.notifyAll();
+            }
+        }
+    }
+
+    private void writerLoop() {
+        while (true) {
+            ArrayList<PendingEntry> batch;
+            boolean roll;
+            boolean shutdown;
+            synchronized (m_lock) {
+                try {
+                    while (!m_shutdown && !m_rollRequested && m_pending.isEmpty()) {
+                        m_lock.wait();
+                    }
+                    // Group commit window, measured from the oldest pending entry
+                    long deadline = m_firstPendingTime + m_fsyncInterval;
+                    long now = System.currentTimeMillis();
+                    while (!m_shutdown && !m_pending.isEmpty() &&
+                           m_pending.size() < m_maxTxns && now < deadline) {
+                        m_lock.wait(deadline - now);
+                        now = System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    // Treated like a shutdown request, flush what is pending
+                    m_shutdown = true;
+                }
+                batch = m_pending;
+                m_pending = new ArrayList<PendingEntry>();
+                roll = m_rollRequested;
+                m_rollRequested = false;
+                shutdown = m_shutdown;
+            }
+
+            try {
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+                if (roll) {
+                    rollGeneration();
+                }
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to write to the command log in " + m_logDir, true, e);
+            }
+
+            if (shutdown) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write the batch as few PBD objects as possible, sync once and then
+     * notify the listeners of everything that became durable.
+     */
+    private void writeBatch(ArrayList<PendingEntry> batch) throws IOException {
+        int start = 0;
+        while (start < batch.size()) {
+            int end = start;
+            int size = 4;
+            do {
+                size += 4 + batch.get(end).m_payload.remaining();
+                end++;
+            } while (end < batch.size() &&
+                     size + 4 + batch.get(end).m_payload.remaining() <= MAX_BATCH_BYTES);
+
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            buf.putInt(end - start);
+            for (int ii = start; ii < end; ii++) {
+                PendingEntry entry = batch.get(ii);
+                buf.putInt(entry.m_payload.remaining());
+                buf.put(entry.m_payload);
+                trackTxnIds(entry);
+            }
+            buf.flip();
+            m_pbd.offer(new BBContainer[] { DBBPool.wrapBB(buf) });
+            m_bytesSinceTruncation += size;
+            start = end;
+        }
+        m_pbd.sync();
+
+        if (m_synchronous) {
+            Map<DurabilityListener, ArrayList<Object>> durable =
+                new LinkedHashMap<DurabilityListener, ArrayList<Object>>();
+            for (PendingEntry entry : batch) {
+                if (entry.m_listener == null) {
+                    continue;
+                }
+                ArrayList<Object> handles = durable.get(entry.m_listener);
+                if (handles == null) {
+                    handles = new ArrayList<Object>();
+                    durable.put(entry.m_listener, handles);
+                }
+                handles.add(entry.m_handle);
+            }
+            for (Map.Entry<DurabilityListener, ArrayList<Object>> e : durable.entrySet()) {
+                e.getKey().onDurability(e.getValue());
+            }
+        }
+
+        if (!m_truncationRequested && m_logSizeBytes > 0 && m_bytesSinceTruncation > m_logSizeBytes) {
+            m_truncationRequested = true;
+            requestTruncationSnapshot();
+        }
+    }
+
+    private void trackTxnIds(PendingEntry entry) {
+        if (entry.m_spHandle != Long.MIN_VALUE) {
+            int partitionId = TxnEgo.getPartitionId(entry.m_spHandle);
+            Long last = m_lastLoggedTxnIds.get(partitionId);
+            if (last == null || last < entry.m_spHandle) {
+                m_lastLoggedTxnIds.put(partitionId, entry.m_spHandle);
+            }
+        }
+        if (entry.m_mpTxnId != Long.MIN_VALUE) {
+            Long last = m_lastLoggedTxnIds.get(MpInitiator.MP_INIT_PID);
+            if (last == null || last < entry.m_mpTxnId) {
+                m_lastLoggedTxnIds.put(MpInitiator.MP_INIT_PID, entry.m_mpTxnId);
+            }
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        String json;
+        try {
+            JSONStringer stringer = new JSONStringer();
+            stringer.object();
+            if (m_instanceId != null) {
+                stringer.key("instanceId").value(m_instanceId.serializeToJSONObject());
+            }
+            stringer.key("txnIds").object();
+            for (Map.Entry<Integer, Long> e : m_lastLoggedTxnIds.entrySet()) {
+                stringer.key(e.getKey().toString()).value(e.getValue());
+            }
+            stringer.endObject();
+            stringer.endObject();
+            json = stringer.toString();
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+
+        byte[] bytes = json.getBytes("UTF-8");
+        ByteBuffer buf = ByteBuffer.allocate(4 + 4 + 1 + bytes.length);
+        buf.putInt(1);
+        buf.putInt(1 + bytes.length);
+        buf.put(HEADER_ENTRY);
+        buf.put(bytes);
+        buf.flip();
+        m_pbd.offer(new BBContainer[] { DBBPool.wrapBB(buf) });
+        m_pbd.sync();
+    }
+
+    /**
+     * Called on the writer thread after a truncation snapshot completed.
+     * Everything in the generations before the current one is covered by
+     * that snapshot.
+     */
+    private void rollGeneration() throws IOException {
+        m_pbd.close();
+        m_generation++;
+        m_pbd = new PersistentBinaryDeque(nonceForGeneration(m_generation), m_logDir);
+        writeHeader();
+
+        for (long generation : findGenerations(m_logDir)) {
+            if (generation < m_generation - 1) {
+                deleteGeneration(m_logDir, generation);
+            }
+        }
+        m_bytesSinceTruncation = 0;
+        m_truncationRequested = false;
+    }
+
+    private void requestTruncationSnapshot() {
+        LOG.info("Command log has grown past " + (m_logSizeBytes / (1024 * 1024)) +
+                 " megabytes, requesting a truncation snapshot");
+        try {
+            VoltDB.instance().getHostMessenger().getZK().create(
+                    VoltZK.request_truncation_snapshot, null,
+                    Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+        } catch (Exception e) {
+            LOG.error("Unable to request a command log truncation snapshot", e);
+            m_truncationRequested = false;
+        }
+    }
+
+    @Override
+    public CountDownLatch snapshotCompleted(SnapshotCompletionEvent event) {
+        if (event.truncationSnapshot) {
+            synchronized (m_lock) {
+                m_rollRequested = true;
+                m_lock.notifyAll();
+            }
+            if (m_isRejoin && event.requestId != null) {
+                VoltDB.instance().recoveryComplete(event.requestId);
+            }
+        }
+        return new CountDownLatch(0);
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        if (!m_initialized) {
+            return;
+        }
+        VoltDB.instance().getSnapshotCompletionMonitor().removeInterest(this);
+        stop();
+    }
+
+    /**
+     * Flush anything pending and close the log.
+     */
+    void stop() throws InterruptedException {
+        synchronized (m_lock) {
+            m_shutdown = true;
+            m_lock.notifyAll();
+        }
+        m_writer.join();
+        m_initialized = false;
+        try {
+            m_pbd.close();
+        } catch (IOException e) {
+            LOG.error("Error closing the command log", e);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    static String nonceForGeneration(long generation) {
+        return NONCE_PREFIX + generation;
+    }
+
+    /**
+     * Find the generations of the command log present in a directory.
+     * @return the generation numbers, oldest first
+     */
+    static TreeSet<Long> findGenerations(File logDir) {
+        final TreeSet<Long> generations = new TreeSet<Long>();
+        if (!logDir.isDirectory()) {
+            return generations;
+        }
+        logDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File pathname) {
+                // nonce.seq.pbd where the nonce is command_log_<generation>
+                String[] parts = pathname.getName().split("\\.");
+                if (parts.length == 3 && "pbd".equals(parts[2]) && parts[0].startsWith(NONCE_PREFIX)) {
+                    try {
+                        generations.add(Long.valueOf(parts[0].substring(NONCE_PREFIX.length())));
+                    } catch (NumberFormatException e) {}
+                }
+                return false;
+            }
+        });
+        return generations;
+    }
+
+    static void deleteGeneration(File logDir, long generation) throws IOException {
+        new PersistentBinaryDeque(nonceForGeneration(generation), logDir).closeAndDelete();
+    }
+
+    /**
+     * Pass every entry in every generation in the directory to the handler,
+     * oldest first. The log files are left untouched.
+     */
+    static void scanLog(File logDir, final LogEntryHandler handler) throws IOException {
+        final VoltDbMessageFactory factory = new VoltDbMessageFactory();
+        for (final long generation : findGenerations(logDir)) {
+            PersistentBinaryDeque pbd = new PersistentBinaryDeque(nonceForGeneration(generation), logDir);
+            try {
+                pbd.parseAndTruncate(new BinaryDequeTruncator() {
+                    @Override
+                    public ByteBuffer parse(ByteBuffer b) {
+                        try {
+                            int count = b.getInt();
+                            for (int ii = 0; ii < count; ii++) {
+                                int length = b.getInt();
+                                ByteBuffer entry = b.slice();
+                                entry.limit(length);
+                                b.position(b.position() + length);
+                                parseEntry(generation, entry, factory, handler);
+                            }
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                        // Never truncate anything
+                        return null;
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e);
+            } finally {
+                pbd.close();
+            }
+        }
+    }
+
+    private static void parseEntry(long generation, ByteBuffer entry, VoltDbMessageFactory factory,
+                                   LogEntryHandler handler) throws Exception {
+        byte type = entry.get();
+        if (type == HEADER_ENTRY) {
+            byte[] bytes = new byte[entry.remaining()];
+            entry.get(bytes);
+            handler.handleHeader(generation, new JSONObject(new String(bytes, "UTF-8")));
+        } else if (type == INITIATE_ENTRY) {
+            long spHandle = entry.getLong();
+            VoltMessage msg = factory.createMessageFromBuffer(entry.slice(), -1);
+            handler.handleInitiate(spHandle, (Iv2InitiateTaskMessage) msg);
+        } else if (type == FAULT_ENTRY) {
+            long writerHSId = entry.getLong();
+            int partitionId = entry.getInt();
+            long spHandle = entry.getLong();
+            int survivorCount = entry.getInt();
+            Set<Long> survivors = new HashSet<Long>();
+            for (int ii = 0; ii < survivorCount; ii++) {
+                survivors.add(entry.getLong());
+            }
+            handler.handleFault(writerHSId, survivors, partitionId, spHandle);
+        } else {
+            throw new IOException("Unknown command log entry type " + type);
+        }
+    }
+
+    /**
+     * Read the header of the oldest generation in the directory without
+     * scanning the rest of the log.
+     * @return the header, or null if there is no log
+     */
+    static JSONObject readOldestHeader(File logDir) throws IOException {
+        TreeSet<Long> generations = findGenerations(logDir);
+        if (generations.isEmpty()) {
+            return null;
+        }
+        PersistentBinaryDeque pbd = new PersistentBinaryDeque(nonceForGeneration(generations.first()), logDir);
+        try {
+            BBContainer cont = pbd.poll();
+            if (cont == null) {
+                return null;
+            }
+            // Don't discard the container, that would delete the segment once
+            // it is drained. Closing the deque first makes the container inert.
+            ByteBuffer b = cont.b;
+            b.getInt();
+            int length = b.getInt();
+            ByteBuffer entry = b.slice();
+            entry.limit(length);
+            if (entry.get() != HEADER_ENTRY) {
+                throw new IOException("Command log generation " + generations.first() +
+                                      " does not start with a header");
+            }
+            byte[] bytes = new byte[entry.remaining()];
+            entry.get(bytes);
+            return new JSONObject(new String(bytes, "UTF-8"));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        } finally {
+            pbd.close();
+        }
+    }
+
+    /**
+     * Convert the txnIds recorded in a generation header back into a map.
+     */
+    static Map<Integer, Long> txnIdsFromHeader(JSONObject header) throws JSONException {
+        Map<Integer, Long> txnIds = new HashMap<Integer, Long>();
+        JSONObject jsTxnIds = header.getJSONObject("txnIds");
+        Iterator<?> keys = jsTxnIds.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            txnIds.put(Integer.valueOf(key), jsTxnIds.getLong(key));
+        }
+        return txnIds;
+    }
+}
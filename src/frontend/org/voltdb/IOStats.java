@@ -69,6 +69,9 @@ public class IOStats extends StatsSource {
         columns.add(new ColumnInfo("MESSAGES_READ", VoltType.BIGINT));
         columns.add(new ColumnInfo("BYTES_WRITTEN", VoltType.BIGINT));
         columns.add(new ColumnInfo("MESSAGES_WRITTEN", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WRITE_CALLS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES_PER_WRITE_CALL", VoltType.BIGINT));
+        columns.add(new ColumnInfo("HEAP_SERIALIZED_MESSAGES", VoltType.BIGINT));
 
     }
 
@@ -83,6 +86,11 @@ public class IOStats extends StatsSource {
         rowValues[columnNameToIndex.get("MESSAGES_READ")] = counters[1];
         rowValues[columnNameToIndex.get("BYTES_WRITTEN")] = counters[2];
         rowValues[columnNameToIndex.get("MESSAGES_WRITTEN")] = counters[3];
+        rowValues[columnNameToIndex.get("WRITE_CALLS")] = counters[4];
+        rowValues[columnNameToIndex.get("BYTES_PER_WRITE_CALL")] = counters[4] == 0 ? 0 : counters[2] / counters[4];
+        // messages that were serialized into a newly allocated heap buffer and copied,
+        // instead of straight into the pooled network buffers
+        rowValues[columnNameToIndex.get("HEAP_SERIALIZED_MESSAGES")] = counters[5];
         super.updateStatsRow(rowKey, rowValues);
     }
 
@@ -417,17 +417,18 @@ public class Inits {
             }
 
             if (logEnabled) {
-                if (!m_config.m_isEnterprise) {
-                    hostLog.warn(
-                            "Command logging requested in deployment file but can't be enabled in Community Edition.");
+                Class<?> loggerClass = null;
+                if (m_config.m_isEnterprise) {
+                    loggerClass = MiscUtils.loadProClass("org.voltdb.CommandLogImpl",
+                                                         "Command logging", true);
+                }
+                if (loggerClass == null) {
+                    // Community edition group commits the log with a single writer
+                    m_rvdb.m_commandLog = new GroupCommitCommandLog();
                 }
                 else {
                     try {
-                        Class<?> loggerClass = MiscUtils.loadProClass("org.voltdb.CommandLogImpl",
-                                                                   "Command logging", false);
-                        if (loggerClass != null) {
-                            m_rvdb.m_commandLog = (CommandLog)loggerClass.newInstance();
-                        }
+                        m_rvdb.m_commandLog = (CommandLog)loggerClass.newInstance();
                     } catch (InstantiationException e) {
                         VoltDB.crashLocalVoltDB("Unable to instantiate command log", true, e);
                     } catch (IllegalAccessException e) {
@@ -0,0 +1,328 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>High dynamic range histogram of latencies in microseconds. Values below
+ * {@link #SUB_BUCKET_COUNT} microseconds are counted exactly. Larger values fall in
+ * buckets whose width doubles with every power of two, each split into
+ * {@link #SUB_BUCKET_COUNT} / 2 sub-buckets, so any recorded value is reported
+ * within 1/128th (under 1%) of its real value whether it is 300us or 30 seconds.
+ * Nothing is ever dropped into an overflow bucket.</p>
+ *
+ * <p>The counts array only grows as far as the largest value recorded, which keeps
+ * histograms of sub-second latencies to a few KB. Histograms can be merged with
+ * {@link #add(LatencyHistogram)}, subtracted with {@link #diff(LatencyHistogram, LatencyHistogram)}
+ * and serialized with {@link #flattenToBuffer(ByteBuffer)} so histograms from different
+ * connections or hosts can be combined.</p>
+ *
+ * <p>Not thread safe. {@link #copy()} can be used to read a histogram while a single
+ * other thread records into it; the copy may miss the values recorded concurrently.</p>
+ */
+public class LatencyHistogram {
+    /** log2 of the number of exactly counted values */
+    static final int SUB_BUCKET_BITS = 8;
+    /** Values below this many microseconds are counted exactly */
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+
+    private long m_counts[] = new long[0];
+    private long m_totalCount = 0;
+    private long m_sum = 0;
+    private long m_min = Long.MAX_VALUE;
+    private long m_max = 0;
+
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+        final int bucket = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_HALF_BITS;
+        return (bucket << SUB_BUCKET_HALF_BITS) + (int)(value >>> bucket);
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int bucket = (index >>> SUB_BUCKET_HALF_BITS) - 1;
+        return (long)(index - (bucket << SUB_BUCKET_HALF_BITS)) << bucket;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int bucket = (index >>> SUB_BUCKET_HALF_BITS) - 1;
+        return lowestEquivalentValue(index) + (1L << bucket) - 1;
+    }
+
+    private void ensureIndex(int index) {
+        if (index >= m_counts.length) {
+            // grow a whole bucket at a time
+            int length = (index | ((1 << SUB_BUCKET_HALF_BITS) - 1)) + 1;
+            m_counts = Arrays.copyOf(m_counts, Math.max(length, SUB_BUCKET_COUNT));
+        }
+    }
+
+    /**
+     * Record a latency.
+     * @param micros Latency in microseconds. Negative values are recorded as 0,
+     * which happens when the clock moves backwards.
+     */
+    public void recordValue(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        final int index = indexFor(micros);
+        ensureIndex(index);
+        m_counts[index]++;
+        m_totalCount++;
+        m_sum += micros;
+        if (micros < m_min) {
+            m_min = micros;
+        }
+        if (micros > m_max) {
+            m_max = micros;
+        }
+    }
+
+    /**
+     * Add all the values recorded in another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        final long otherCounts[] = other.m_counts;
+        ensureIndex(otherCounts.length - 1);
+        for (int i = 0; i < otherCounts.length; i++) {
+            m_counts[i] += otherCounts[i];
+        }
+        m_totalCount += other.m_totalCount;
+        m_sum += other.m_sum;
+        m_min = Math.min(m_min, other.m_min);
+        m_max = Math.max(m_max, other.m_max);
+    }
+
+    /**
+     * Return a histogram of the values recorded in newer that were not yet recorded in older,
+     * where newer is a later copy of the same histogram as older.
+     */
+    public static LatencyHistogram diff(LatencyHistogram newer, LatencyHistogram older) {
+        LatencyHistogram retval = newer.copy();
+        final int length = Math.min(retval.m_counts.length, older.m_counts.length);
+        for (int i = 0; i < length; i++) {
+            retval.m_counts[i] -= older.m_counts[i];
+        }
+        retval.m_totalCount -= older.m_totalCount;
+        retval.m_sum -= older.m_sum;
+        // the exact extremes of the difference are gone, bound them by the remaining buckets
+        retval.m_min = Long.MAX_VALUE;
+        retval.m_max = 0;
+        for (int i = 0; i < retval.m_counts.length; i++) {
+            if (retval.m_counts[i] > 0) {
+                retval.m_min = Math.max(newer.m_min, lowestEquivalentValue(i));
+                break;
+            }
+        }
+        for (int i = retval.m_counts.length - 1; i >= 0; i--) {
+            if (retval.m_counts[i] > 0) {
+                retval.m_max = Math.min(newer.m_max, highestEquivalentValue(i));
+                break;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * @return A deep copy. The total count of the copy is recomputed from the copied counts
+     * so it stays consistent if another thread is recording into this histogram.
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram retval = new LatencyHistogram();
+        final long counts[] = m_counts;
+        retval.m_counts = counts.clone();
+        long total = 0;
+        for (long count : retval.m_counts) {
+            total += count;
+        }
+        retval.m_totalCount = total;
+        retval.m_sum = m_sum;
+        retval.m_min = m_min;
+        retval.m_max = m_max;
+        return retval;
+    }
+
+    public void reset() {
+        Arrays.fill(m_counts, 0);
+        m_totalCount = 0;
+        m_sum = 0;
+        m_min = Long.MAX_VALUE;
+        m_max = 0;
+    }
+
+    public long getTotalCount() {
+        return m_totalCount;
+    }
+
+    /**
+     * @return The smallest value recorded in microseconds or 0 if the histogram is empty
+     */
+    public long getMin() {
+        return m_totalCount == 0 ? 0 : m_min;
+    }
+
+    /**
+     * @return The largest value recorded in microseconds or 0 if the histogram is empty
+     */
+    public long getMax() {
+        return m_totalCount == 0 ? 0 : m_max;
+    }
+
+    /**
+     * @return The average of the recorded values in microseconds or 0 if the histogram is empty
+     */
+    public double getMean() {
+        return m_totalCount == 0 ? 0 : (double)m_sum / m_totalCount;
+    }
+
+    /**
+     * @param percentile A number in [0.0, 1.0]. 0.0 returns the minimum and 1.0 the maximum.
+     * @return The latency in microseconds that percentile of the recorded values are at or below,
+     * accurate to within 1%. 0 if the histogram is empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if ((percentile > 1.0) || (percentile < 0.0)) {
+            throw new IllegalArgumentException(
+                    "Percentile must be greater than or equal to 0.0 and less than or equal to 1.0");
+        }
+        if (m_totalCount <= 0) {
+            return 0;
+        }
+        long rank = (long)Math.ceil(m_totalCount * percentile);
+        if (rank < 1) rank = 1;
+        long sum = 0;
+        for (int i = 0; i < m_counts.length; i++) {
+            sum += m_counts[i];
+            if (sum >= rank) {
+                return Math.max(getMin(), Math.min(getMax(), highestEquivalentValue(i)));
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Count the recorded values in consecutive linear ranges, e.g. 50 ranges of 1000us to
+     * get the number of values in each millisecond up to 50ms. Each histogram bucket is
+     * attributed to the range holding its midpoint. Values beyond the last range are not counted.
+     *
+     * @param rangeMicros The width of each range in microseconds
+     * @param rangeCount The number of ranges
+     * @return The counts by range
+     */
+    public long[] getLinearCounts(long rangeMicros, int rangeCount) {
+        final long retval[] = new long[rangeCount];
+        for (int i = 0; i < m_counts.length; i++) {
+            if (m_counts[i] == 0) {
+                continue;
+            }
+            final long mid = (lowestEquivalentValue(i) + highestEquivalentValue(i)) / 2;
+            final long range = mid / rangeMicros;
+            if (range < rangeCount) {
+                retval[(int)range] += m_counts[i];
+            }
+        }
+        return retval;
+    }
+
+    private int nonZeroCount() {
+        int nonZero = 0;
+        for (long count : m_counts) {
+            if (count != 0) {
+                nonZero++;
+            }
+        }
+        return nonZero;
+    }
+
+    /**
+     * @return The number of bytes {@link #flattenToBuffer(ByteBuffer)} will write
+     */
+    public int getSerializedSize() {
+        // bits, total, sum, min, max, number of buckets, then (index, count) per non-empty bucket
+        return 1 + 8 + 8 + 8 + 8 + 4 + nonZeroCount() * (4 + 8);
+    }
+
+    /**
+     * Serialize the histogram. Only non-empty buckets are written.
+     */
+    public void flattenToBuffer(ByteBuffer buf) {
+        buf.put((byte)SUB_BUCKET_BITS);
+        buf.putLong(m_totalCount);
+        buf.putLong(m_sum);
+        buf.putLong(m_min);
+        buf.putLong(m_max);
+        buf.putInt(nonZeroCount());
+        for (int i = 0; i < m_counts.length; i++) {
+            if (m_counts[i] != 0) {
+                buf.putInt(i);
+                buf.putLong(m_counts[i]);
+            }
+        }
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(getSerializedSize());
+        flattenToBuffer(buf);
+        return buf.array();
+    }
+
+    /**
+     * Deserialize a histogram written by {@link #flattenToBuffer(ByteBuffer)}
+     */
+    public static LatencyHistogram fromBuffer(ByteBuffer buf) {
+        final byte bits = buf.get();
+        if (bits != SUB_BUCKET_BITS) {
+            throw new IllegalArgumentException("Unsupported histogram precision " + bits);
+        }
+        LatencyHistogram retval = new LatencyHistogram();
+        retval.m_totalCount = buf.getLong();
+        retval.m_sum = buf.getLong();
+        retval.m_min = buf.getLong();
+        retval.m_max = buf.getLong();
+        final int nonZero = buf.getInt();
+        for (int ii = 0; ii < nonZero; ii++) {
+            final int index = buf.getInt();
+            retval.ensureIndex(index);
+            retval.m_counts[index] = buf.getLong();
+        }
+        return retval;
+    }
+
+    public static LatencyHistogram fromBytes(byte bytes[]) {
+        return fromBuffer(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count %d, min %dus, p50 %dus, p99 %dus, p99.9 %dus, p99.99 %dus, max %dus",
+                m_totalCount, getMin(),
+                getValueAtPercentile(.5), getValueAtPercentile(.99),
+                getValueAtPercentile(.999), getValueAtPercentile(.9999), getMax());
+    }
+}
@@ -77,6 +77,18 @@ public class LoadedProcedureSet {
         procs = builder.build();
     }
 
+    /**
+     * Load only the user procedures. Used by sites which never run
+     * system procedures, like the MPI's read-only sites.
+     */
+    public void loadUserProcedures(
+            CatalogContext catalogContext,
+            BackendTarget backendTarget,
+            CatalogSpecificPlanner csp) {
+        m_registeredSysProcPlanFragments.clear();
+        procs = loadProceduresFromCatalog(catalogContext, backendTarget, csp).build();
+    }
+
     private ImmutableMap.Builder<String, ProcedureRunner> loadProceduresFromCatalog(
             CatalogContext catalogContext,
             BackendTarget backendTarget,
@@ -23,6 +23,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.iv2.RepairLog;
 import org.voltdb.utils.SystemStatsCollector;
 
 public class MemoryStats extends StatsSource {
@@ -79,6 +80,7 @@ public class MemoryStats extends StatsSource {
         columns.add(new VoltTable.ColumnInfo("STRINGMEMORY", VoltType.INTEGER));
         columns.add(new VoltTable.ColumnInfo("TUPLECOUNT", VoltType.BIGINT));
         columns.add(new VoltTable.ColumnInfo("POOLEDMEMORY", VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo("REPAIRLOGMEMORY", VoltType.BIGINT));
     }
 
     @Override
@@ -113,6 +115,7 @@ public class MemoryStats extends StatsSource {
         rowValues[columnNameToIndex.get("STRINGMEMORY")] = totals.stringMem;
         rowValues[columnNameToIndex.get("TUPLECOUNT")] = totals.tupleCount;
         rowValues[columnNameToIndex.get("POOLEDMEMORY")] = totals.pooledMem / 1024;
+        rowValues[columnNameToIndex.get("REPAIRLOGMEMORY")] = RepairLog.getBytesAllocatedGlobally() / 1024;
         super.updateStatsRow(rowKey, rowValues);
     }
 
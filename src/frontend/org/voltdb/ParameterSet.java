@@ -77,8 +77,9 @@ public class ParameterSet implements JSONString {
     }
 
     public static ParameterSet fromArrayNoCopy(Object... params) {
-        byte[][][] encodedStringArrays = new byte[params.length][][];
-        byte[][] encodedStrings = new byte[params.length][];
+        // only allocated when there are strings to encode
+        byte[][][] encodedStringArrays = null;
+        byte[][] encodedStrings = null;
 
         int size = 2;
 
@@ -137,6 +138,9 @@ public class ParameterSet implements JSONString {
                                 size += 4 + arrayEncodedStrings[zz].length;
                             }
                         }
+                        if (encodedStringArrays == null) {
+                            encodedStringArrays = new byte[params.length][][];
+                        }
                         encodedStringArrays[ii] = arrayEncodedStrings;
                         break;
                     case TIMESTAMP:
@@ -198,6 +202,9 @@ public class ParameterSet implements JSONString {
                 case STRING:
                     byte encodedString[] = ((String)obj).getBytes(Constants.UTF8ENCODING);
                     size += 4 + encodedString.length;
+                    if (encodedStrings == null) {
+                        encodedStrings = new byte[params.length][];
+                    }
                     encodedStrings[ii] = encodedString;
                     break;
                 case TIMESTAMP:
@@ -293,6 +300,19 @@ public class ParameterSet implements JSONString {
         return m_params.length;
     }
 
+    /**
+     * @return True if any parameter is an array or a table, whose contents the caller
+     * could still change after handing them over
+     */
+    public boolean hasMutableParameters() {
+        for (Object obj : m_params) {
+            if (obj != null && (obj.getClass().isArray() || obj instanceof VoltTable)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public int getSerializedSize() {
         assert(m_serializedSize >= 2);
         return m_serializedSize;
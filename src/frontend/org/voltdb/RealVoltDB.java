@@ -97,6 +97,7 @@ import org.voltdb.dtxn.InitiatorStats;
 import org.voltdb.dtxn.LatencyStats;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.export.ExportManager;
+import org.voltdb.export.ExportStats;
 import org.voltdb.fault.FaultDistributor;
 import org.voltdb.fault.FaultDistributorInterface;
 import org.voltdb.fault.SiteFailureFault;
@@ -178,6 +179,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
     private InitiatorStats m_initiatorStats;
     @SuppressWarnings("unused")
     private LiveClientsStats m_liveClientsStats = null;
+    private ExportStats m_exportStats = null;
     int m_myHostId;
     long m_depCRC = -1;
     String m_serializedCatalog;
@@ -566,6 +568,8 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
             m_initiatorStats = new InitiatorStats(m_myHostId);
             m_liveClientsStats = new LiveClientsStats();
             getStatsAgent().registerStatsSource(StatsSelector.LIVECLIENTS, 0, m_liveClientsStats);
+            m_exportStats = new ExportStats();
+            getStatsAgent().registerStatsSource(StatsSelector.EXPORT, 0, m_exportStats);
             m_latencyStats = new LatencyStats(m_myHostId);
 
             /*
@@ -597,7 +601,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
              * Configure and start all the IV2 sites
              */
             try {
-                boolean usingCommandLog = m_config.m_isEnterprise &&
+                boolean usingCommandLog =
                     m_catalogContext.cluster.getLogconfig().get("log").getEnabled();
                 m_leaderAppointer = new LeaderAppointer(
                         m_messenger,
@@ -748,6 +752,9 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
             // set additional restore agent stuff
             if (m_restoreAgent != null) {
                 ci.bindAdapter(m_restoreAgent.getAdapter());
+                if (m_restoreAgent.getReplayAdapter() != null) {
+                    ci.bindAdapter(m_restoreAgent.getReplayAdapter());
+                }
                 m_restoreAgent.setCatalogContext(m_catalogContext);
                 m_restoreAgent.setInitiator(new Iv2TransactionCreator(m_clientInterfaces.get(0)));
             }
@@ -1945,7 +1952,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
         try {
             final ZooKeeper zk = m_messenger.getZK();
             boolean logRecoveryCompleted = false;
-            if (getCommandLog().getClass().getName().equals("org.voltdb.CommandLogImpl")) {
+            if (getCommandLog().isEnabled()) {
                 try {
                     if (m_rejoinTruncationReqId == null) {
                         m_rejoinTruncationReqId = java.util.UUID.randomUUID().toString();
@@ -1975,6 +1982,11 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback
         return m_commandLog;
     }
 
+    @Override
+    public Cartographer getCartographer() {
+        return m_cartographer;
+    }
+
     @Override
     public OperationMode getMode()
     {
@@ -119,6 +119,15 @@ SnapshotCompletionInterest
         return m_restoreAdapter;
     }
 
+    // The adapter receiving the responses of replayed transactions, if the
+    // command log is replayed by the default reinitiator
+    RestoreAdapter getReplayAdapter() {
+        if (m_replayAgent instanceof DefaultCommandLogReinitiator) {
+            return ((DefaultCommandLogReinitiator) m_replayAgent).getAdapter();
+        }
+        return null;
+    }
+
     private final ZooKeeper m_zk;
     private final SnapshotCompletionMonitor m_snapshotMonitor;
     private final Callback m_callback;
@@ -403,7 +412,7 @@ SnapshotCompletionInterest
         m_callback = callback;
         m_action = action;
         m_zk = zk;
-        m_clEnabled = VoltDB.instance().getConfig().m_isEnterprise ? clEnabled : false;
+        m_clEnabled = clEnabled;
         m_clPath = clPath;
         m_clSnapshotPath = clSnapshotPath;
         m_snapshotPath = snapshotPath;
@@ -419,7 +428,16 @@ SnapshotCompletionInterest
         try {
             Class<?> replayClass = MiscUtils.loadProClass("org.voltdb.CommandLogReinitiatorImpl",
                                                           "Command log replay", true);
-            if (replayClass != null) {
+            if (replayClass == null) {
+                if (m_clEnabled) {
+                    m_replayAgent = new DefaultCommandLogReinitiator(m_hostId,
+                                                                     m_action,
+                                                                     m_zk,
+                                                                     m_clPath,
+                                                                     m_allPartitions,
+                                                                     m_liveHosts);
+                }
+            } else {
                 Constructor<?> constructor =
                     replayClass.getConstructor(int.class,
                                                StartAction.class,
@@ -1240,10 +1258,8 @@ SnapshotCompletionInterest
          * they can be set individually
          */
         List<String> paths = new ArrayList<String>();
-        if (VoltDB.instance().getConfig().m_isEnterprise) {
-            if (m_clSnapshotPath != null) {
-                paths.add(m_clSnapshotPath);
-            }
+        if (m_clEnabled && m_clSnapshotPath != null) {
+            paths.add(m_clSnapshotPath);
         }
         if (m_snapshotPath != null) {
             paths.add(m_snapshotPath);
@@ -0,0 +1,140 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Per-procedure cost of the result digests that an initiator's duplicate
+ * counters compute to compare replica responses. Digests are computed on
+ * whichever thread delivers the response to the initiator mailbox, so the
+ * counters are updated under the mailbox lock and read racily here, the
+ * same way the other site stats are.
+ */
+public class ResultDigestStats extends SiteStatsSource {
+
+    private static final int DIGESTS = 0;
+    private static final int BYTES = 1;
+    private static final int NANOS = 2;
+    private static final int MAX_NANOS = 3;
+    private static final int INTERVAL_MAX_NANOS = 4;
+    private static final int MISMATCHES = 5;
+    private static final int COUNTERS = 6;
+
+    private final Map<String, long[]> m_totals = new ConcurrentHashMap<String, long[]>();
+    private final Map<String, long[]> m_lastTotals = new HashMap<String, long[]>();
+    private Map<String, long[]> m_rows = new HashMap<String, long[]>();
+
+    public ResultDigestStats(long siteId) {
+        super(siteId, false);
+    }
+
+    private long[] counters(String procName) {
+        long[] counters = m_totals.get(procName);
+        if (counters == null) {
+            counters = new long[COUNTERS];
+            m_totals.put(procName, counters);
+        }
+        return counters;
+    }
+
+    /**
+     * Record the digest of one response of bytes length that took nanos to compute
+     */
+    public void digested(String procName, long bytes, long nanos) {
+        long[] counters = counters(procName);
+        counters[DIGESTS]++;
+        counters[BYTES] += bytes;
+        counters[NANOS] += nanos;
+        counters[MAX_NANOS] = Math.max(counters[MAX_NANOS], nanos);
+        counters[INTERVAL_MAX_NANOS] = Math.max(counters[INTERVAL_MAX_NANOS], nanos);
+    }
+
+    public void mismatched(String procName) {
+        counters(procName)[MISMATCHES]++;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("PROCEDURE", VoltType.STRING));
+        columns.add(new ColumnInfo("DIGESTS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BYTES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_NANOS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_NANOS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MISMATCHES", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        final long[] row = m_rows.get(rowKey);
+        rowValues[columnNameToIndex.get("PROCEDURE")] = rowKey;
+        rowValues[columnNameToIndex.get("DIGESTS")] = row[DIGESTS];
+        rowValues[columnNameToIndex.get("BYTES")] = row[BYTES];
+        rowValues[columnNameToIndex.get("AVG_NANOS")] = row[DIGESTS] == 0 ? 0L : row[NANOS] / row[DIGESTS];
+        rowValues[columnNameToIndex.get("MAX_NANOS")] = row[MAX_NANOS];
+        rowValues[columnNameToIndex.get("MISMATCHES")] = row[MISMATCHES];
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected synchronized Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        Map<String, long[]> rows = new HashMap<String, long[]>();
+        for (Map.Entry<String, long[]> e : m_totals.entrySet()) {
+            final long[] totals = e.getValue().clone();
+            final long[] row = totals.clone();
+            if (interval) {
+                final long[] last = m_lastTotals.get(e.getKey());
+                if (last != null) {
+                    row[DIGESTS] -= last[DIGESTS];
+                    row[BYTES] -= last[BYTES];
+                    row[NANOS] -= last[NANOS];
+                    row[MISMATCHES] -= last[MISMATCHES];
+                }
+                row[MAX_NANOS] = totals[INTERVAL_MAX_NANOS];
+                e.getValue()[INTERVAL_MAX_NANOS] = 0;
+                m_lastTotals.put(e.getKey(), totals);
+            }
+            rows.put(e.getKey(), row);
+        }
+        m_rows = rows;
+        final Iterator<String> keys = rows.keySet().iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return keys.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,186 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.voltdb.VoltTable.ColumnInfo;
+
+/**
+ * Where a site thread's time goes, broken down by the type of SiteTasker it
+ * ran, with the time spent inside the EE split out. An IDLE row reports the
+ * time the site spent waiting for work, as measured by its StarvationTracker.
+ * Tasks are recorded by the site thread and read racily by the stats agent.
+ */
+public class SiteTaskProfile extends SiteStatsSource {
+
+    public static final String IDLE = "IDLE";
+
+    private static final int COUNT = 0;
+    private static final int NANOS = 1;
+    private static final int EE_NANOS = 2;
+    private static final int MAX_NANOS = 3;
+    private static final int INTERVAL_MAX_NANOS = 4;
+    private static final int COUNTERS = 5;
+
+    private final StarvationTracker m_starvationTracker;
+    private final Map<Class<?>, long[]> m_totals = new ConcurrentHashMap<Class<?>, long[]>();
+
+    private final long m_startTime;
+    private long m_lastStartTime;
+    private long m_elapsed;
+    private final Map<String, long[]> m_lastTotals = new HashMap<String, long[]>();
+    private Map<String, long[]> m_rows = new HashMap<String, long[]>();
+
+    public SiteTaskProfile(long siteId, StarvationTracker starvationTracker) {
+        super(siteId, false);
+        m_starvationTracker = starvationTracker;
+        m_lastStartTime = m_startTime = System.nanoTime();
+    }
+
+    /**
+     * Record a task run by the site thread
+     * @param taskClass class of the SiteTasker
+     * @param nanos wall clock time the task ran for
+     * @param eeNanos part of that time spent in the EE
+     */
+    public void taskRan(Class<?> taskClass, long nanos, long eeNanos) {
+        long[] counters = m_totals.get(taskClass);
+        if (counters == null) {
+            counters = new long[COUNTERS];
+            m_totals.put(taskClass, counters);
+        }
+        counters[COUNT]++;
+        counters[NANOS] += nanos;
+        counters[EE_NANOS] += eeNanos;
+        counters[MAX_NANOS] = Math.max(counters[MAX_NANOS], nanos);
+        counters[INTERVAL_MAX_NANOS] = Math.max(counters[INTERVAL_MAX_NANOS], nanos);
+    }
+
+    private static String taskName(Class<?> taskClass) {
+        // anonymous tasks are named after their enclosing class
+        while (taskClass.isAnonymousClass()) {
+            taskClass = taskClass.getEnclosingClass();
+        }
+        return taskClass.getSimpleName();
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("TASK", VoltType.STRING));
+        columns.add(new ColumnInfo("COUNT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PERCENT", VoltType.FLOAT));
+        columns.add(new ColumnInfo("TOTAL_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX", VoltType.BIGINT));
+        columns.add(new ColumnInfo("EE_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("EE_PERCENT", VoltType.FLOAT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        final long[] row = m_rows.get(rowKey);
+        final long count = row[COUNT];
+        final long nanos = row[NANOS];
+        rowValues[columnNameToIndex.get("TASK")] = rowKey;
+        rowValues[columnNameToIndex.get("COUNT")] = count;
+        rowValues[columnNameToIndex.get("PERCENT")] = m_elapsed == 0 ? 0.0 : nanos / (m_elapsed / 100.0);
+        // times in microseconds, like the STARVATION stats
+        rowValues[columnNameToIndex.get("TOTAL_TIME")] = nanos / 1000;
+        rowValues[columnNameToIndex.get("AVG")] = count == 0 ? 0L : (nanos / count) / 1000;
+        rowValues[columnNameToIndex.get("MAX")] = row[MAX_NANOS] / 1000;
+        rowValues[columnNameToIndex.get("EE_TIME")] = row[EE_NANOS] / 1000;
+        rowValues[columnNameToIndex.get("EE_PERCENT")] = nanos == 0 ? 0.0 : row[EE_NANOS] / (nanos / 100.0);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected synchronized Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        final long now = System.nanoTime();
+        Map<String, long[]> totals = new HashMap<String, long[]>();
+        for (Map.Entry<Class<?>, long[]> e : m_totals.entrySet()) {
+            final long[] counters = e.getValue().clone();
+            if (interval) {
+                e.getValue()[INTERVAL_MAX_NANOS] = 0;
+            }
+            // different anonymous classes can share a name
+            final String name = taskName(e.getKey());
+            final long[] merged = totals.get(name);
+            if (merged == null) {
+                totals.put(name, counters);
+            } else {
+                for (int i = 0; i < COUNTERS; i++) {
+                    merged[i] = (i == MAX_NANOS || i == INTERVAL_MAX_NANOS) ?
+                            Math.max(merged[i], counters[i]) : merged[i] + counters[i];
+                }
+            }
+        }
+        final long idle[] = new long[COUNTERS];
+        idle[COUNT] = m_starvationTracker.getStarvationCount();
+        idle[NANOS] = m_starvationTracker.getStarvationNanos();
+        // the tracker only keeps an overall max, report it for intervals too
+        idle[MAX_NANOS] = idle[INTERVAL_MAX_NANOS] = m_starvationTracker.getMaxStarvationNanos();
+        totals.put(IDLE, idle);
+
+        Map<String, long[]> rows = new HashMap<String, long[]>();
+        for (Map.Entry<String, long[]> e : totals.entrySet()) {
+            final long[] row = e.getValue().clone();
+            if (interval) {
+                final long[] last = m_lastTotals.get(e.getKey());
+                if (last != null) {
+                    row[COUNT] -= last[COUNT];
+                    row[NANOS] -= last[NANOS];
+                    row[EE_NANOS] -= last[EE_NANOS];
+                }
+                row[MAX_NANOS] = e.getValue()[INTERVAL_MAX_NANOS];
+                m_lastTotals.put(e.getKey(), e.getValue());
+            }
+            rows.put(e.getKey(), row);
+        }
+        if (interval) {
+            m_elapsed = now - m_lastStartTime;
+            m_lastStartTime = now;
+        } else {
+            m_elapsed = now - m_startTime;
+        }
+        m_rows = rows;
+
+        final Iterator<String> keys = rows.keySet().iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return keys.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
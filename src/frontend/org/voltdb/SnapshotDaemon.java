@@ -120,6 +120,8 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
     private String m_path;
     private String m_prefix;
     private String m_prefixAndSeparator;
+    private boolean m_incremental;
+    private int m_consolidate;
     private Future<?> m_snapshotTask;
 
     private SnapshotSchedule m_lastKnownSchedule = null;
@@ -197,6 +199,8 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
         m_prefix = null;
         m_path = null;
         m_prefixAndSeparator = null;
+        m_incremental = false;
+        m_consolidate = 0;
 
 
 
@@ -1080,6 +1084,8 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
             m_path = schedule.getPath();
             m_prefix = schedule.getPrefix();
             m_prefixAndSeparator = m_prefix + "_";
+            m_incremental = schedule.getIncremental();
+            m_consolidate = Math.max(1, schedule.getConsolidate());
             final String frequencyUnitString = schedule.getFrequencyunit().toLowerCase();
             assert(frequencyUnitString.length() == 1);
             final char frequencyUnit = frequencyUnitString.charAt(0);
@@ -1233,6 +1239,18 @@ public class SnapshotDaemon implements SnapshotCompletionInterest {
             jsObj.put("path", m_path);
             jsObj.put("nonce", nonce);
             jsObj.put("perPartitionTxnIds", retrievePerPartitionTransactionIds());
+            if (m_incremental) {
+                /*
+                 * Each snapshot only writes the tuple blocks changed since the previous one.
+                 * Once a chain of deltas is m_consolidate snapshots long, every host rewrites
+                 * its newest table files to hold all the blocks so the older snapshots of the
+                 * chain can be deleted.
+                 */
+                JSONObject jsData = new JSONObject();
+                jsData.put("incremental", true);
+                jsData.put("consolidate", m_consolidate);
+                jsObj.put("data", jsData.toString());
+            }
             m_snapshots.offer(new Snapshot(m_path, nonce, now));
             long handle = m_nextCallbackHandle++;
             m_procedureCallbacks.put(handle, new ProcedureCallback() {
@@ -54,6 +54,11 @@ public interface SnapshotDataTarget {
 
     public long getBytesWritten();
 
+    /**
+     * Get the time spent writing data out, in nanoseconds, or 0 if the target doesn't track it
+     */
+    public long getWriteTimeNanos();
+
     public void setOnCloseHandler(Runnable onClose);
 
     /**
@@ -19,14 +19,21 @@ package org.voltdb;
 import java.io.File;
 import java.io.FileFilter;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.network.Connection;
+import org.voltcore.utils.Pair;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil;
 import org.voltdb.utils.VoltFile;
 
 /**
@@ -176,17 +183,14 @@ public class SnapshotDeleteAgent extends OpsAgent
             public void run() {
                 StringBuilder sb = new StringBuilder();
                 sb.append("Deleting files: ");
+                List<File> filesToDelete = new ArrayList<File>();
                 for (int ii = 0; ii < paths.length; ii++) {
                     List<File> relevantFiles = retrieveRelevantFiles(paths[ii], nonces[ii]);
                     if (relevantFiles != null) {
-                        for (final File f : relevantFiles) {
-                            sb.append(f.getPath());
-                            sb.append(',');
-                            //long size = f.length();
-                            f.delete();
-                        }
+                        filesToDelete.addAll(relevantFiles);
                     }
                 }
+                deleteFiles(filesToDelete, sb);
                 SNAP_LOG.info(sb.toString());
             }
         }.start();
@@ -194,6 +198,96 @@ public class SnapshotDeleteAgent extends OpsAgent
         return new VoltTable[] {result};
     }
 
+    /*
+     * Table files written by incremental snapshots are deltas of a table file of an older
+     * snapshot in the same directory, which may be a delta itself. Files a kept table file
+     * reaches through its base files are kept as well, even if their snapshot is deleted.
+     * Table files of incremental chains left behind by deleted snapshots are deleted once
+     * nothing reaches them any more. Only files older than a snapshot that has a digest are
+     * considered, so that files of a snapshot still being written are left alone.
+     */
+    private static void deleteFiles(List<File> files, StringBuilder sb) {
+        Set<String> deleting = new HashSet<String>();
+        Set<File> directories = new HashSet<File>();
+        for (File f : files) {
+            deleting.add(f.getAbsolutePath());
+            directories.add(f.getAbsoluteFile().getParentFile());
+        }
+
+        Set<String> reachable = new HashSet<String>();
+        List<File> orphans = new ArrayList<File>();
+        for (File directory : directories) {
+            File[] directoryFiles = directory.listFiles();
+            if (directoryFiles == null) {
+                continue;
+            }
+            Set<String> digestedNonces = new HashSet<String>();
+            for (File f : directoryFiles) {
+                if (f.getName().endsWith(".digest") && !deleting.contains(f.getAbsolutePath())) {
+                    digestedNonces.add(SnapshotUtil.parseNonceFromDigestFilename(f.getName()));
+                }
+            }
+
+            Map<String, Pair<Long, String>> tableFiles = new HashMap<String, Pair<Long, String>>();
+            Set<String> chainFiles = new HashSet<String>();
+            long newestDigestedTxnId = Long.MIN_VALUE;
+            for (File f : directoryFiles) {
+                if (!f.getName().endsWith(".vpt")) {
+                    continue;
+                }
+                Pair<Long, String> header = SnapshotUtil.parseTxnIdAndBaseFileFromTableFile(f);
+                if (header == null) {
+                    continue;
+                }
+                tableFiles.put(f.getName(), header);
+                if (header.getSecond() != null) {
+                    chainFiles.add(f.getName());
+                    chainFiles.add(header.getSecond());
+                }
+                if (digestedNonces.contains(SnapshotUtil.parseNonceFromSnapshotFilename(f.getName()))) {
+                    newestDigestedTxnId = Math.max(newestDigestedTxnId, header.getFirst());
+                }
+            }
+
+            for (Map.Entry<String, Pair<Long, String>> e : tableFiles.entrySet()) {
+                File f = new File(directory, e.getKey());
+                if (deleting.contains(f.getAbsolutePath())) {
+                    continue;
+                }
+                String nonce = SnapshotUtil.parseNonceFromSnapshotFilename(e.getKey());
+                if (chainFiles.contains(e.getKey()) && !digestedNonces.contains(nonce) &&
+                        e.getValue().getFirst() < newestDigestedTxnId) {
+                    orphans.add(f);
+                    continue;
+                }
+                // Follow the chain of base files of a table file that is kept
+                String baseFile = e.getValue().getSecond();
+                while (baseFile != null && reachable.add(new File(directory, baseFile).getAbsolutePath())) {
+                    Pair<Long, String> baseHeader = tableFiles.get(baseFile);
+                    baseFile = baseHeader == null ? null : baseHeader.getSecond();
+                }
+            }
+        }
+
+        for (File f : files) {
+            if (reachable.contains(f.getAbsolutePath())) {
+                SNAP_LOG.info("Keeping " + f.getPath() + ", a newer incremental snapshot is a delta of it");
+                continue;
+            }
+            sb.append(f.getPath());
+            sb.append(',');
+            f.delete();
+        }
+
+        for (File f : orphans) {
+            if (!reachable.contains(f.getAbsolutePath())) {
+                sb.append(f.getPath());
+                sb.append(',');
+                f.delete();
+            }
+        }
+    }
+
     private final List<File> retrieveRelevantFiles(String filePath, String nonce) {
         final File path = new VoltFile(filePath);
 
@@ -489,6 +489,11 @@ public class SnapshotSiteProcessor {
             }
 
             tableAndPredicate.getSecond().addPredicate(task.m_predicate, task.m_deleteTuples);
+            if (task.m_snapshotEpoch > 0) {
+                // The EE writes block tagged rows to a single output stream only
+                assert(m_snapshotTableTasks.get(task.m_table.getRelativeIndex()).size() == 1);
+                tableAndPredicate.getSecond().setBlockEpochs(task.m_snapshotEpoch, task.m_baseEpoch);
+            }
         }
 
         return tablesAndPredicates;
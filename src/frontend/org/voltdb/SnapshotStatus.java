@@ -89,6 +89,7 @@ public class SnapshotStatus extends StatsSource {
         columns.add(new ColumnInfo("DURATION", VoltType.BIGINT));
         columns.add(new ColumnInfo("THROUGHPUT", VoltType.FLOAT));
         columns.add(new ColumnInfo("RESULT", VoltType.STRING));
+        columns.add(new ColumnInfo("WRITE_THROUGHPUT", VoltType.FLOAT));
     }
 
     @SuppressWarnings("unchecked")
@@ -105,6 +106,11 @@ public class SnapshotStatus extends StatsSource {
                 (s.timeFinished - timeStarted) / 1000.0;
             throughput = (s.bytesWritten / (1024.0 * 1024.0)) / duration;
         }
+        // MB/s while actually writing this table's file, as opposed to the whole snapshot
+        double writeThroughput = 0;
+        if (t.writeTimeNanos != 0) {
+            writeThroughput = (t.size / (1024.0 * 1024.0)) / (t.writeTimeNanos / 1000000000.0);
+        }
 
         rowValues[columnNameToIndex.get("TABLE")] = t.name;
         rowValues[columnNameToIndex.get("PATH")] = s.path;
@@ -117,6 +123,7 @@ public class SnapshotStatus extends StatsSource {
         rowValues[columnNameToIndex.get("DURATION")] = duration;
         rowValues[columnNameToIndex.get("THROUGHPUT")] = throughput;
         rowValues[columnNameToIndex.get("RESULT")] = t.error == null ? "SUCCESS" : "FAILURE";
+        rowValues[columnNameToIndex.get("WRITE_THROUGHPUT")] = writeThroughput;
         super.updateStatsRow(rowKey, rowValues);
     }
 
@@ -31,6 +31,10 @@ public class SnapshotTableTask
     final SnapshotDataFilter m_filters[];
     final AbstractExpression m_predicate;
     final boolean m_deleteTuples;
+    /** Epoch of a block tagged snapshot, 0 if the rows aren't tagged with their block ids */
+    final long m_snapshotEpoch;
+    /** Epoch of the snapshot this one is a delta of, 0 to write every block */
+    final long m_baseEpoch;
 
     public SnapshotTableTask(
             final Table table,
@@ -38,12 +42,26 @@ public class SnapshotTableTask
             final SnapshotDataFilter filters[],
             final AbstractExpression predicate,
             final boolean deleteTuples)
+    {
+        this(table, target, filters, predicate, deleteTuples, 0, 0);
+    }
+
+    public SnapshotTableTask(
+            final Table table,
+            final SnapshotDataTarget target,
+            final SnapshotDataFilter filters[],
+            final AbstractExpression predicate,
+            final boolean deleteTuples,
+            final long snapshotEpoch,
+            final long baseEpoch)
     {
         m_table = table;
         m_target = target;
         m_filters = filters;
         m_predicate = predicate;
         m_deleteTuples = deleteTuples;
+        m_snapshotEpoch = snapshotEpoch;
+        m_baseEpoch = baseEpoch;
     }
 
     public int getTableId()
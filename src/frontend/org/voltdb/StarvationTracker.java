@@ -20,16 +20,28 @@ import java.util.ArrayList;
 import java.util.Iterator;
 
 import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.iv2.SiteTaskerQueue;
 
 /**
  * A class to track and generate statistics regarding task starvation.
  * A worker thread can instantiate one of these and report when starvation begins and ends.
+ * The site's task queue also reports the queue depth and how long each task waited in it.
  */
 public class StarvationTracker extends SiteStatsSource {
 
     public StarvationTracker(long siteId) {
         super(siteId, false);
         m_lastStartTime = m_startTime = System.nanoTime();
+        m_taskProfile = new SiteTaskProfile(siteId, this);
+    }
+
+    /*
+     * Breakdown of the time the site is not starved by the type of task it ran
+     */
+    private final SiteTaskProfile m_taskProfile;
+
+    public SiteTaskProfile getTaskProfile() {
+        return m_taskProfile;
     }
 
     /*
@@ -52,6 +64,17 @@ public class StarvationTracker extends SiteStatsSource {
 
     private long m_starvationStartTime;
 
+    /*
+     * Recorded by the site thread as it dequeues tasks. LatencyHistogram is used
+     * for the depths too, they are just counts instead of microseconds.
+     */
+    private final LatencyHistogram m_queueDepths = new LatencyHistogram();
+    private final LatencyHistogram m_transactionWaits = new LatencyHistogram();
+    private final LatencyHistogram m_backgroundWaits = new LatencyHistogram();
+    private LatencyHistogram m_lastQueueDepths = new LatencyHistogram();
+    private LatencyHistogram m_lastTransactionWaits = new LatencyHistogram();
+    private LatencyHistogram m_lastBackgroundWaits = new LatencyHistogram();
+
     private boolean m_interval;
 
     /**
@@ -66,6 +89,22 @@ public class StarvationTracker extends SiteStatsSource {
         m_starvationStartTime = System.nanoTime();
     }
 
+    long getStarvationCount() {
+        return m_count;
+    }
+
+    // Includes the current period of starvation, if there is one
+    long getStarvationNanos() {
+        if (m_starved) {
+            return m_totalTime + (System.nanoTime() - m_starvationStartTime);
+        }
+        return m_totalTime;
+    }
+
+    long getMaxStarvationNanos() {
+        return m_count == 0 ? 0 : m_max;
+    }
+
     public void endStarvation() {
         if (!m_starved) {
             return;
@@ -81,6 +120,21 @@ public class StarvationTracker extends SiteStatsSource {
         m_lastMin = Math.min(m_lastMin, delta);
     }
 
+    /**
+     * Record a task leaving the site task queue
+     * @param lane SiteTaskerQueue lane the task was in
+     * @param waitNanos how long the task was queued
+     * @param depth tasks in the queue, including this one
+     */
+    public void dequeued(int lane, long waitNanos, int depth) {
+        m_queueDepths.recordValue(depth);
+        if (lane == SiteTaskerQueue.BACKGROUND_LANE) {
+            m_backgroundWaits.recordValue(waitNanos / 1000);
+        } else {
+            m_transactionWaits.recordValue(waitNanos / 1000);
+        }
+    }
+
     @Override
     protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
         super.populateColumnSchema(columns);
@@ -90,10 +144,46 @@ public class StarvationTracker extends SiteStatsSource {
         columns.add(new ColumnInfo("MIN", VoltType.BIGINT));
         columns.add(new ColumnInfo("MAX", VoltType.BIGINT));
         columns.add(new ColumnInfo("STDDEV", VoltType.BIGINT));
+        columns.add(new ColumnInfo("QUEUE_DEPTH_AVG", VoltType.FLOAT));
+        columns.add(new ColumnInfo("QUEUE_DEPTH_P99", VoltType.BIGINT));
+        columns.add(new ColumnInfo("QUEUE_DEPTH_MAX", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WAIT_AVG", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WAIT_P50", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WAIT_P99", VoltType.BIGINT));
+        columns.add(new ColumnInfo("WAIT_MAX", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BACKGROUND_WAIT_P99", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BACKGROUND_WAIT_MAX", VoltType.BIGINT));
+    }
+
+    private void updateQueueColumns(Object rowValues[]) {
+        LatencyHistogram depths = m_queueDepths.copy();
+        LatencyHistogram waits = m_transactionWaits.copy();
+        LatencyHistogram backgroundWaits = m_backgroundWaits.copy();
+        if (m_interval) {
+            LatencyHistogram lastDepths = m_lastQueueDepths;
+            LatencyHistogram lastWaits = m_lastTransactionWaits;
+            LatencyHistogram lastBackgroundWaits = m_lastBackgroundWaits;
+            m_lastQueueDepths = depths;
+            m_lastTransactionWaits = waits;
+            m_lastBackgroundWaits = backgroundWaits;
+            depths = LatencyHistogram.diff(depths, lastDepths);
+            waits = LatencyHistogram.diff(waits, lastWaits);
+            backgroundWaits = LatencyHistogram.diff(backgroundWaits, lastBackgroundWaits);
+        }
+        rowValues[columnNameToIndex.get("QUEUE_DEPTH_AVG")] = depths.getMean();
+        rowValues[columnNameToIndex.get("QUEUE_DEPTH_P99")] = depths.getValueAtPercentile(.99);
+        rowValues[columnNameToIndex.get("QUEUE_DEPTH_MAX")] = depths.getMax();
+        rowValues[columnNameToIndex.get("WAIT_AVG")] = (long)waits.getMean();
+        rowValues[columnNameToIndex.get("WAIT_P50")] = waits.getValueAtPercentile(.5);
+        rowValues[columnNameToIndex.get("WAIT_P99")] = waits.getValueAtPercentile(.99);
+        rowValues[columnNameToIndex.get("WAIT_MAX")] = waits.getMax();
+        rowValues[columnNameToIndex.get("BACKGROUND_WAIT_P99")] = backgroundWaits.getValueAtPercentile(.99);
+        rowValues[columnNameToIndex.get("BACKGROUND_WAIT_MAX")] = backgroundWaits.getMax();
     }
 
     @Override
     protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        updateQueueColumns(rowValues);
         if (m_interval) {
             final long now = System.nanoTime();
             final long totalTime = now - m_lastStartTime;
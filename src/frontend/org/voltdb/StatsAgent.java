@@ -277,6 +277,15 @@ public class StatsAgent extends OpsAgent
             case STARVATION:
                 stats = collectStarvationStats(interval);
                 break;
+            case RESULTDIGEST:
+                stats = collectResultDigestStats(interval);
+                break;
+            case SITEPROFILE:
+                stats = collectSiteProfileStats(interval);
+                break;
+            case EXPORT:
+                stats = collectExportStats(interval);
+                break;
             case PLANNER:
                 stats = collectPlannerStats(interval);
                 break;
@@ -445,6 +454,45 @@ public class StatsAgent extends OpsAgent
         return stats;
     }
 
+    private VoltTable[] collectResultDigestStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable rStats = getStatsAggregate(StatsSelector.RESULTDIGEST, interval, now);
+        if (rStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = rStats;
+        }
+        return stats;
+    }
+
+    private VoltTable[] collectSiteProfileStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable pStats = getStatsAggregate(StatsSelector.SITEPROFILE, interval, now);
+        if (pStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = pStats;
+        }
+        return stats;
+    }
+
+    private VoltTable[] collectExportStats(boolean interval)
+    {
+        Long now = System.currentTimeMillis();
+        VoltTable[] stats = null;
+
+        VoltTable eStats = getStatsAggregate(StatsSelector.EXPORT, interval, now);
+        if (eStats != null) {
+            stats = new VoltTable[1];
+            stats[0] = eStats;
+        }
+        return stats;
+    }
+
     private VoltTable[] collectPlannerStats(boolean interval)
     {
         Long now = System.currentTimeMillis();
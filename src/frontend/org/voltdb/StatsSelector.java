@@ -21,6 +21,9 @@ public enum StatsSelector {
     INDEX,            // invoked as @stat index
     PROCEDURE,        // invoked as @stat procedure
     STARVATION,
+    SITEPROFILE,      // site thread time by task type, invoked as @stat siteprofile
+    RESULTDIGEST,     // cost of the replica result digests, invoked as @stat resultdigest
+    EXPORT,           // export lag per table and partition, invoked as @stat export
     INITIATOR,        // invoked as @stat initiator
     LATENCY,          // invoked as @stat latency
     PARTITIONCOUNT,
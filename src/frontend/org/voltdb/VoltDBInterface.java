@@ -25,6 +25,7 @@ import org.voltcore.messaging.HostMessenger;
 import org.voltcore.utils.Pair;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.fault.FaultDistributorInterface;
+import org.voltdb.iv2.Cartographer;
 import org.voltdb.licensetool.LicenseApi;
 
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -45,6 +46,8 @@ public interface VoltDBInterface
 
     public CommandLog getCommandLog();
 
+    public Cartographer getCartographer();
+
     /**
      * Initialize all the global components, then initialize all the m_sites.
      */
@@ -121,6 +121,34 @@ public interface Client {
     public boolean callProcedure(ProcedureCallback callback, String procName, Object... parameters)
     throws IOException, NoConnectionsException;
 
+    /**
+     * Asynchronously invoke a procedure and return a future for its response. This call never
+     * blocks, not even when there is backpressure or the configured rate limits are reached;
+     * the invocation is then held back by the client and sent as soon as there is room. The
+     * future is completed with the response whatever its status, so check
+     * {@link ClientResponse#getStatus()} when it is done.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return A future completed with the response of the procedure.
+     * @throws NoConnectionsException if the client has no connections or is shutdown.
+     */
+    public ProcedureFuture callProcedureAsync(String procName, Object... parameters)
+    throws NoConnectionsException;
+
+    /**
+     * Same as {@link #callProcedureAsync(String, Object...)}, with a timeout for this invocation
+     * instead of the client wide procedure call timeout. The timeout is measured from when the
+     * invocation is sent and is checked about once a second. A timed out invocation completes the
+     * future with {@link ClientResponse#CONNECTION_TIMEOUT}.
+     * @param timeoutMS Procedure call timeout in milliseconds.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return A future completed with the response of the procedure.
+     * @throws NoConnectionsException if the client has no connections or is shutdown.
+     */
+    public ProcedureFuture callProcedureAsync(long timeoutMS, String procName, Object... parameters)
+    throws NoConnectionsException;
+
     /**
      * Deprecated because hinting at the serialized size no longer has any effect
      *
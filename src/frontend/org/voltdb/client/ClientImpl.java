@@ -70,6 +70,9 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
      */
     private final CopyOnWriteArrayList<Long> m_blessedThreadIds = new CopyOnWriteArrayList<Long>();
 
+    // default timeout for async calls that don't specify one
+    private final long m_procedureCallTimeoutMS;
+
     /****************************************************
                         Public API
      ****************************************************/
@@ -92,6 +95,7 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
                 config.m_connectionResponseTimeoutMS,
                 config.m_useClientAffinity);
         m_distributer.addClientStatusListener(new CSL());
+        m_procedureCallTimeoutMS = config.m_procedureCallTimeoutMS;
         m_username = config.m_username;
 
         if (config.m_cleartext) {
@@ -287,6 +291,25 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
         return private_callProcedure(callback, 0, invocation);
     }
 
+    @Override
+    public final ProcedureFuture callProcedureAsync(String procName, Object... parameters)
+    throws NoConnectionsException {
+        return callProcedureAsync(m_procedureCallTimeoutMS, procName, parameters);
+    }
+
+    @Override
+    public final ProcedureFuture callProcedureAsync(long timeoutMS, String procName, Object... parameters)
+    throws NoConnectionsException {
+        if (m_isShutdown) {
+            throw new NoConnectionsException("Client instance is shutdown");
+        }
+        final ProcedureInvocation invocation =
+            new ProcedureInvocation(m_handle.getAndIncrement(), procName, parameters);
+        final ProcedureFuture future = new ProcedureFuture(invocation, timeoutMS);
+        m_distributer.queueAsync(future);
+        return future;
+    }
+
     @Override
     public int calculateInvocationSerializedSize(String procName,
             Object... parameters) {
@@ -20,7 +20,7 @@ package org.voltdb.client;
 import java.util.Date;
 import java.util.Iterator;
 
-import org.voltdb.LatencyBucketSet;
+import org.voltdb.LatencyHistogram;
 
 /**
  * <p>Essentially a set of counters for a specific context with helper
@@ -54,16 +54,15 @@ public class ClientStats {
     // cumulative latency measured by the cluster, used to calculate avg lat.
     long m_clusterRoundTripTime; // microsecs
 
-    /** The number of buckets tracking latency with 1ms granularity. */
+    /** The number of buckets returned by {@link #getLatencyBucketsBy1ms()}. */
     final public static int ONE_MS_BUCKET_COUNT = 50;
-    /** The number of buckets tracking latency with 10ms granularity. */
+    /** The number of buckets returned by {@link #getLatencyBucketsBy10ms()}. */
     final public static int TEN_MS_BUCKET_COUNT = 20;
-    /** The number of buckets tracking latency with 100ms granularity. */
+    /** The number of buckets returned by {@link #getLatencyBucketsBy100ms()}. */
     final public static int HUNDRED_MS_BUCKET_COUNT = 10;
 
-    LatencyBucketSet m_latencyBy1ms;
-    LatencyBucketSet m_latencyBy10ms;
-    LatencyBucketSet m_latencyBy100ms;
+    // client measured round trip times in microseconds
+    LatencyHistogram m_latency;
 
     long m_bytesSent;
     long m_bytesReceived;
@@ -77,9 +76,7 @@ public class ClientStats {
         m_endTS = Long.MIN_VALUE;
         m_invocationsCompleted = m_invocationAborts = m_invocationErrors = 0;
         m_roundTripTime = m_clusterRoundTripTime = 0;
-        m_latencyBy1ms = new LatencyBucketSet(1, ONE_MS_BUCKET_COUNT);
-        m_latencyBy10ms = new LatencyBucketSet(10, TEN_MS_BUCKET_COUNT);
-        m_latencyBy100ms = new LatencyBucketSet(100, HUNDRED_MS_BUCKET_COUNT);
+        m_latency = new LatencyHistogram();
         m_bytesSent = m_bytesReceived = 0;
     }
 
@@ -95,9 +92,7 @@ public class ClientStats {
         m_invocationErrors = other.m_invocationErrors;
         m_roundTripTime = other.m_roundTripTime;
         m_clusterRoundTripTime = other.m_clusterRoundTripTime;
-        m_latencyBy1ms = (LatencyBucketSet) other.m_latencyBy1ms.clone();
-        m_latencyBy10ms = (LatencyBucketSet) other.m_latencyBy10ms.clone();
-        m_latencyBy100ms = (LatencyBucketSet) other.m_latencyBy100ms.clone();
+        m_latency = other.m_latency.copy();
         m_bytesSent = other.m_bytesSent;
         m_bytesReceived = other.m_bytesReceived;
     }
@@ -125,9 +120,7 @@ public class ClientStats {
         retval.m_roundTripTime = newer.m_roundTripTime - older.m_roundTripTime;
         retval.m_clusterRoundTripTime = newer.m_clusterRoundTripTime - older.m_clusterRoundTripTime;
 
-        retval.m_latencyBy1ms = LatencyBucketSet.diff(newer.m_latencyBy1ms, older.m_latencyBy1ms);
-        retval.m_latencyBy10ms = LatencyBucketSet.diff(newer.m_latencyBy10ms, older.m_latencyBy10ms);
-        retval.m_latencyBy100ms = LatencyBucketSet.diff(newer.m_latencyBy100ms, older.m_latencyBy100ms);
+        retval.m_latency = LatencyHistogram.diff(newer.m_latency, older.m_latency);
 
         retval.m_bytesSent = newer.m_bytesSent - older.m_bytesSent;
         retval.m_bytesReceived = newer.m_bytesReceived - older.m_bytesReceived;
@@ -174,25 +167,20 @@ public class ClientStats {
         m_roundTripTime += other.m_roundTripTime;
         m_clusterRoundTripTime += other.m_clusterRoundTripTime;
 
-        m_latencyBy1ms.add(other.m_latencyBy1ms);
-        m_latencyBy10ms.add(other.m_latencyBy10ms);
-        m_latencyBy100ms.add(other.m_latencyBy100ms);
+        m_latency.add(other.m_latency);
 
         m_bytesSent += other.m_bytesSent;
         m_bytesReceived += other.m_bytesReceived;
     }
 
-    void update(int roundTripTime, int clusterRoundTripTime, boolean abort, boolean error) {
+    void update(int roundTripTime, long roundTripMicros, int clusterRoundTripTime, boolean abort, boolean error) {
         m_invocationsCompleted++;
         if (abort) m_invocationAborts++;
         if (error) m_invocationErrors++;
         m_roundTripTime += roundTripTime;
         m_clusterRoundTripTime += clusterRoundTripTime;
 
-        // calculate the latency buckets to increment and increment.
-        m_latencyBy1ms.update(roundTripTime);
-        m_latencyBy10ms.update(roundTripTime);
-        m_latencyBy100ms.update(roundTripTime);
+        m_latency.recordValue(roundTripMicros);
     }
 
     /**
@@ -330,54 +318,59 @@ public class ClientStats {
     }
 
     /**
-     * <p>Get the raw buckets used for latency tracking in 1ms increments. For example, if
-     * a transaction returns in 3.2ms, then the array at index 3 will be incremented by
-     * one. It can be thought of as a histogram of latencies. It has
-     * {@link ONE_MS_BUCKET_COUNT} buckets, for a range of
-     * <code>ONE_MS_BUCKET_COUNT x 1ms</code></p>
+     * <p>Get the number of transactions by client round trip latency in 1ms increments.
+     * For example, if a transaction returns in 3.2ms, then the array at index 3 is one
+     * higher. It has {@link #ONE_MS_BUCKET_COUNT} buckets, for a range of
+     * <code>ONE_MS_BUCKET_COUNT x 1ms</code>.</p>
      *
-     * <p>This raw data, along with other bucket sets of different granularity,  is used to
-     * support the {@link kPercentileLatency(double)} method. This returns a copy of the
-     * internal array so it is threadsafe and mutable if you wish. Note that the buckets
+     * <p>The counts are derived from the histogram returned by
+     * {@link #getLatencyHistogram()}, so a transaction within 1% of a bucket
+     * boundary may be counted in the neighboring bucket.</p>
      *
      * @return An array containing counts for different latency values.
      */
     public long[] getLatencyBucketsBy1ms() {
-        return m_latencyBy1ms.buckets.clone();
+        return m_latency.getLinearCounts(1000, ONE_MS_BUCKET_COUNT);
     }
 
     /**
-     * <p>Get the raw buckets used for latency tracking in 10ms increments. For example, if
-     * a transaction returns in 42ms, then the array at index 4 will be incremented by
-     * one. It can be thought of as a histogram of latencies. It has
-     * {@link TEN_MS_BUCKET_COUNT} buckets, for a range of
+     * <p>Get the number of transactions by client round trip latency in 10ms increments.
+     * For example, if a transaction returns in 42ms, then the array at index 4 is one
+     * higher. It has {@link #TEN_MS_BUCKET_COUNT} buckets, for a range of
      * <code>TEN_MS_BUCKET_COUNT x 10ms</code>.</p>
      *
-     * <p>This raw data, along with other bucket sets of different granularity,  is used to
-     * support the {@link kPercentileLatency(double)} method. This returns a copy of the
-     * internal array so it is threadsafe and mutable if you wish. Note that the buckets
+     * <p>See {@link #getLatencyBucketsBy1ms()} for accuracy.</p>
      *
      * @return An array containing counts for different latency values.
      */
     public long[] getLatencyBucketsBy10ms() {
-        return m_latencyBy10ms.buckets.clone();
+        return m_latency.getLinearCounts(10 * 1000, TEN_MS_BUCKET_COUNT);
     }
 
     /**
-     * <p>Get the raw buckets used for latency tracking in 1ms increments. For example, if
-     * a transaction returns in 3.2ms, then the array at index 3 will be incremented by
-     * one. It can be thought of as a histogram of latencies. It has
-     * {@link HUNDRED_MS_BUCKET_COUNT} buckets, for a range of
+     * <p>Get the number of transactions by client round trip latency in 100ms increments.
+     * For example, if a transaction returns in 342ms, then the array at index 3 is one
+     * higher. It has {@link #HUNDRED_MS_BUCKET_COUNT} buckets, for a range of
      * <code>HUNDRED_MS_BUCKET_COUNT x 100ms</code>.</p>
      *
-     * <p>This raw data, along with other bucket sets of different granularity,  is used to
-     * support the {@link kPercentileLatency(double)} method. This returns a copy of the
-     * internal array so it is threadsafe and mutable if you wish. Note that the buckets
+     * <p>See {@link #getLatencyBucketsBy1ms()} for accuracy.</p>
      *
      * @return An array containing counts for different latency values.
      */
     public long[] getLatencyBucketsBy100ms() {
-        return m_latencyBy100ms.buckets.clone();
+        return m_latency.getLinearCounts(100 * 1000, HUNDRED_MS_BUCKET_COUNT);
+    }
+
+    /**
+     * <p>Get a copy of the histogram of client round trip latencies in microseconds for
+     * the time period covered by this stats instance. Histograms from different stats
+     * instances or clients can be combined with {@link LatencyHistogram#add(LatencyHistogram)}
+     * and shipped around with {@link LatencyHistogram#toBytes()}.</p>
+     *
+     * @return A {@link LatencyHistogram} that is not referenced by the client.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return m_latency.copy();
     }
 
     /**
@@ -403,75 +396,76 @@ public class ClientStats {
     }
 
     /**
-     * <p>Using the latency bucketing statistics gathered by the client, estimate
+     * <p>Using the latency histogram gathered by the client, estimate
      * the k-percentile latency value for the time period covered by this stats
      * instance.</p>
      *
      * <p>For example, k=.5 returns an estimate of the median. k=0 returns the
      * minimum. k=1.0 returns the maximum.</p>
      *
-     * <p>The accuracy is limited by the precision of the buckets, and will have
-     * higher margin of error as courser sets of buckets are used. Small numbers
-     * of transactions in the period will also increase error. Finally, note that
-     * latency isn't tracked for transactions are outside values tracked by the
-     * largest set of buckets. If k=X implies latency greater than
-     * <code>{@link HUNDRED_MS_BUCKET_COUNT} * 100</code>, then it will return
-     * a number larger than <code>{@link HUNDRED_MS_BUCKET_COUNT} * 100</code>,
-     * but nothing more is promised.</p>
+     * <p>The histogram tracks latencies of any size to within 1%, so the result
+     * is accurate to the nearest millisecond. Use {@link #kPercentileLatencyAsDouble(double)}
+     * for sub-millisecond latencies.</p>
      *
      * @param percentile A floating point number between 0.0 and 1.0.
      * @return An estimate of k-percentile latency in whole milliseconds.
      */
     public int kPercentileLatency(double percentile) {
-        int kpl;
-
-        kpl = m_latencyBy1ms.kPercentileLatency(percentile);
-        if (kpl != Integer.MAX_VALUE) {
-            return kpl;
-        }
-
-        kpl = m_latencyBy10ms.kPercentileLatency(percentile);
-        if (kpl != Integer.MAX_VALUE) {
-            return kpl;
-        }
-
-        kpl = m_latencyBy100ms.kPercentileLatency(percentile);
-        if (kpl != Integer.MAX_VALUE) {
-            return kpl;
-        }
+        return (int) Math.round(m_latency.getValueAtPercentile(percentile) / 1000.0);
+    }
 
-        return m_latencyBy100ms.msPerBucket * m_latencyBy100ms.numberOfBuckets * 2;
+    /**
+     * <p>Like {@link #kPercentileLatency(double)}, but with microsecond resolution.</p>
+     *
+     * @param percentile A floating point number between 0.0 and 1.0.
+     * @return An estimate of k-percentile latency in milliseconds.
+     */
+    public double kPercentileLatencyAsDouble(double percentile) {
+        return m_latency.getValueAtPercentile(percentile) / 1000.0;
     }
 
+    /**
+     * <p>Generate a text histogram of the client round trip latencies. The range runs
+     * up to the 99.999th percentile latency and is split into at most 10 bins of whole
+     * milliseconds. Transactions slower than the range are reported in a last bin.</p>
+     *
+     * @return The report, one line per bin.
+     */
     public String latencyHistoReport() {
+        final int maxNumberOfBins = 10;
+        final long maxBinHeight = 70;
         StringBuilder sb = new StringBuilder();
 
-        // for now, I believe 3 digit accuracy is enough
-        int upper = kPercentileLatency(0.99999);
-        int high = kPercentileLatency(0.99);
-
-        if(high <= m_latencyBy1ms.numberOfBuckets * m_latencyBy1ms.msPerBucket){
-            if(upper <= m_latencyBy1ms.numberOfBuckets * m_latencyBy1ms.msPerBucket) {
-                return m_latencyBy1ms.latencyHistoReport(upper);
-            } else {
-                // 99% are within the range, ignore 1% outliners for more accurate result
-                return m_latencyBy1ms.latencyHistoReport(high);
-            }
-        } else if(upper <= m_latencyBy10ms.numberOfBuckets * m_latencyBy10ms.msPerBucket) {
-           return m_latencyBy10ms.latencyHistoReport(upper);
-        } else if(upper <= m_latencyBy100ms.numberOfBuckets * m_latencyBy100ms.msPerBucket) {
-            return m_latencyBy100ms.latencyHistoReport(upper);
-        } else {
-            // rare case; add one more bin to calculate percentile for txns with latency over 1000ms
-            sb.append(m_latencyBy100ms.latencyHistoReport(m_latencyBy100ms.msPerBucket * m_latencyBy100ms.numberOfBuckets));
-            sb.append(String.format(">%1-10sms:", m_latencyBy100ms.msPerBucket * m_latencyBy100ms.numberOfBuckets));
-            int height = (int)Math.ceil(m_latencyBy100ms.unaccountedTxns * m_latencyBy100ms.maxBinHeight / m_latencyBy100ms.totalTxns);
-            for(int i = 0; i < height; i++) {
-                sb.append("|");
-            }
-            sb.append(String.format("]%7.3f%%\n", ((double)m_latencyBy100ms.unaccountedTxns / (double)m_latencyBy100ms.totalTxns * 100)));
+        final long totalTxns = m_latency.getTotalCount();
+        if (totalTxns == 0) {
             return sb.toString();
         }
+
+        // for now, I believe 3 digit accuracy is enough
+        int upper = Math.max(kPercentileLatency(0.99999), 1);
+        int binWidth = (int) Math.ceil((double) upper / maxNumberOfBins);
+        int numberOfBins = (int) Math.ceil((double) upper / binWidth);
+
+        long bins[] = m_latency.getLinearCounts(binWidth * 1000L, numberOfBins);
+        long binned = 0;
+        for (int i = 0; i < numberOfBins; i++) {
+            binned += bins[i];
+            sb.append(String.format("%1$-4s - %2$-4sms: [", i * binWidth, (i + 1) * binWidth));
+            appendBin(sb, bins[i], totalTxns, maxBinHeight);
+        }
+        if (binned < totalTxns) {
+            sb.append(String.format(">%1$-10sms: [", numberOfBins * binWidth));
+            appendBin(sb, totalTxns - binned, totalTxns, maxBinHeight);
+        }
+        return sb.toString();
+    }
+
+    private static void appendBin(StringBuilder sb, long txnsInBin, long totalTxns, long maxBinHeight) {
+        int binHeight = (int) Math.ceil((double) txnsInBin * maxBinHeight / totalTxns);
+        for (int j = 0; j < binHeight; j++) {
+            sb.append("|");
+        }
+        sb.append(String.format("]%7.3f%%\n", (double) txnsInBin / (double) totalTxns * 100));
     }
 
     /**
@@ -557,9 +551,7 @@ public class ClientStats {
         if (m_invocationsCompleted > 0) {
             sb.append(String.format("    avg latency client/internal: %d/%d\n",
                     m_roundTripTime / m_invocationsCompleted, m_clusterRoundTripTime / m_invocationsCompleted));
-            sb.append(m_latencyBy1ms).append("\n");
-            sb.append(m_latencyBy10ms).append("\n");
-            sb.append(m_latencyBy100ms).append("\n");
+            sb.append("    latency: ").append(m_latency).append("\n");
         }
 
         return sb.toString();
@@ -22,6 +22,7 @@ import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -35,6 +36,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -47,7 +49,10 @@ import org.voltcore.network.QueueMonitor;
 import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.network.VoltProtocolHandler;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.LongObjectHashMap;
 import org.voltcore.utils.Pair;
+import org.voltcore.utils.SizedDeferredSerialization;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.JdbcDatabaseMetaDataGenerator;
 import org.voltdb.LegacyHashinator;
@@ -67,6 +72,9 @@ class Distributer {
 
     static final long PING_HANDLE = Long.MAX_VALUE;
 
+    // upper bound on the recycled callback bookkeeping kept per connection
+    private static final int MAX_FREE_BOOKEEPING = 4096;
+
     // handles used internally are negative and decrement for each call
     public final AtomicLong m_sysHandle = new AtomicLong(-1);
 
@@ -122,6 +130,18 @@ class Distributer {
                 CoreUtils.getThreadFactory("VoltDB Client Reaper Thread"));
     ScheduledFuture<?> m_timeoutReaperHandle;
 
+    /*
+     * Async invocations that could not be sent because of backpressure or the rate limiter.
+     * They are sent in order from the reaper thread when backpressure ends or a response
+     * frees room in the rate limiter. No more are held back than the client may have
+     * outstanding, past that they fail right away.
+     */
+    private final ArrayDeque<ProcedureFuture> m_pendingAsync = new ArrayDeque<ProcedureFuture>();
+    // Size of m_pendingAsync, read without the lock to skip waking the reaper thread for nothing
+    private volatile int m_pendingAsyncCount = 0;
+    private final AtomicBoolean m_pendingAsyncDrainScheduled = new AtomicBoolean(false);
+    private volatile boolean m_isShutdown = false;
+
     /**
      * Server's instances id. Unique for the cluster
      */
@@ -204,24 +224,30 @@ class Distributer {
                         }
 
                         // for each outstanding procedure
-                        Iterator<Entry<Long, CallbackBookeeping>> iter = c.m_callbacks.entrySet().iterator();
-                        while (iter.hasNext()) {
-                            Entry<Long, CallbackBookeeping> e = iter.next();
-                            long handle = e.getKey();
-                            CallbackBookeeping cb = e.getValue();
+                        int slot = 0;
+                        while (slot < c.m_callbacks.capacity()) {
+                            CallbackBookeeping cb = c.m_callbacks.valueAt(slot);
+                            if (cb == null) {
+                                slot++;
+                                continue;
+                            }
+                            long handle = c.m_callbacks.keyAt(slot);
 
                             // if the timeout is expired, call the callback and remove the
                             // bookeeping data
-                            if ((now - cb.timestamp) > m_procedureCallTimeoutMS) {
+                            if ((now - cb.timestamp) > cb.timeoutMS) {
 
                                 // make the minimum timeout for certain long running system procedures
                                 //  higher than the default 2m.
                                 // you can still set the default timeout higher than even this value
+                                // and a timeout given with the call is always honored
                                 boolean isLongOp = false;
                                 // this form allows you to list ops to treat specially
                                 isLongOp |= cb.name.equals("@UpdateApplicationCatalog");
                                 isLongOp |= cb.name.equals("@SnapshotSave");
-                                if (isLongOp && ((now - cb.timestamp) < MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS)) {
+                                if (isLongOp && cb.timeoutMS == m_procedureCallTimeoutMS &&
+                                        ((now - cb.timestamp) < MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS)) {
+                                    slot++;
                                     continue;
                                 }
 
@@ -231,7 +257,7 @@ class Distributer {
                                         "",
                                         new VoltTable[0],
                                         String.format("No response received in the allotted time (set to %d ms).",
-                                                m_procedureCallTimeoutMS));
+                                                cb.timeoutMS));
                                 r.setClientHandle(handle);
                                 r.setClientRoundtrip((int) (now - cb.timestamp));
                                 r.setClusterRoundtrip((int) (now - cb.timestamp));
@@ -241,10 +267,15 @@ class Distributer {
                                 } catch (Exception e1) {
                                     e1.printStackTrace();
                                 }
-                                iter.remove();
+                                // removing can shift another entry into this slot, look at it again
+                                c.m_callbacks.removeAt(slot);
+                                c.releaseBookeeping(cb);
                                 m_rateLimiter.transactionResponseReceived(now, -1);
+                                wakePendingAsync();
                                 int callbacksToInvoke = c.m_callbacksToInvoke.decrementAndGet();
                                 assert(callbacksToInvoke >= 0);
+                            } else {
+                                slot++;
                             }
                         }
                     }
@@ -256,20 +287,72 @@ class Distributer {
     }
 
     class CallbackBookeeping {
-        public CallbackBookeeping(long timestamp, ProcedureCallback callback, String name) {
+        public CallbackBookeeping(long timestamp, ProcedureCallback callback, String name, long timeoutMS) {
             assert(callback != null);
             this.timestamp = timestamp;
+            this.nanoTime = System.nanoTime();
             this.callback = callback;
             this.name = name;
+            this.timeoutMS = timeoutMS;
         }
         long timestamp;
+        // for measuring round trip latency in microseconds
+        long nanoTime;
         ProcedureCallback callback;
         String name;
+        long timeoutMS;
+    }
+
+    /**
+     * Drains the async invocations held back by backpressure. Only ever runs on the reaper thread.
+     */
+    class PendingAsyncDrain implements Runnable {
+        @Override
+        public void run() {
+            m_pendingAsyncDrainScheduled.set(false);
+            while (true) {
+                ProcedureFuture future;
+                synchronized (m_pendingAsync) {
+                    future = m_pendingAsync.peekFirst();
+                }
+                if (future == null) {
+                    return;
+                }
+                int result;
+                try {
+                    result = trySendAsync(future);
+                } catch (NoConnectionsException e) {
+                    result = ASYNC_SENT;
+                    future.clientCallback(new ClientResponseImpl(
+                            ClientResponse.CONNECTION_LOST, new VoltTable[0],
+                            "No connections to the database were available to send the invocation"));
+                }
+                if (result != ASYNC_SENT) {
+                    /*
+                     * Backpressure ending or a response coming back schedules the next attempt.
+                     * Only a transactions per second limit has to be waited out.
+                     */
+                    if (result == ASYNC_RATE_LIMITED && !m_rateLimiter.atOutstandingLimit()) {
+                        schedulePendingAsyncDrain(1);
+                    }
+                    return;
+                }
+                synchronized (m_pendingAsync) {
+                    // a cancellation may have removed it already
+                    if (m_pendingAsync.peekFirst() == future) {
+                        m_pendingAsync.pollFirst();
+                        m_pendingAsyncCount = m_pendingAsync.size();
+                    }
+                }
+            }
+        }
     }
 
     class NodeConnection extends VoltProtocolHandler implements org.voltcore.network.QueueMonitor {
         private final AtomicInteger m_callbacksToInvoke = new AtomicInteger(0);
-        private final HashMap<Long, CallbackBookeeping> m_callbacks;
+        private final LongObjectHashMap<CallbackBookeeping> m_callbacks;
+        // recycled bookkeeping, only touched while holding the connection lock
+        private final ArrayDeque<CallbackBookeeping> m_freeBookeeping = new ArrayDeque<CallbackBookeeping>();
         private final HashMap<String, ClientStats> m_stats = new HashMap<String, ClientStats>();
         private Connection m_connection;
         private final InetSocketAddress m_socketAddress;
@@ -284,16 +367,24 @@ class Distributer {
         public NodeConnection(long ids[], InetSocketAddress socketAddress) {
             assert(socketAddress != null);
 
-            m_callbacks = new HashMap<Long, CallbackBookeeping>();
+            m_callbacks = new LongObjectHashMap<CallbackBookeeping>(1024);
             m_socketAddress = socketAddress;
         }
 
-        public void createWork(long handle, String name, ByteBuffer c,
-                ProcedureCallback callback, boolean ignoreBackpressure) {
+        public void createWork(long handle, String name, DeferredSerialization c,
+                ProcedureCallback callback, boolean ignoreBackpressure, long timeoutMS) {
             assert(callback != null);
             long now = System.currentTimeMillis();
             now = m_rateLimiter.sendTxnWithOptionalBlockAndReturnCurrentTime(
                     now, ignoreBackpressure);
+            enqueueWork(now, handle, name, c, callback, timeoutMS);
+        }
+
+        /**
+         * Send work that the rate limiter has already accounted for
+         */
+        void enqueueWork(long now, long handle, String name, DeferredSerialization c,
+                ProcedureCallback callback, long timeoutMS) {
             synchronized (this) {
                 if (!m_isConnected) {
                     final ClientResponse r = new ClientResponseImpl(
@@ -307,16 +398,39 @@ class Distributer {
                     }
                     // for bookkeeping, but it feels dishonest to call this here
                     m_rateLimiter.transactionResponseReceived(now, -1);
+                    wakePendingAsync();
                     return;
                 }
 
                 assert(m_callbacks.containsKey(handle) == false);
-                m_callbacks.put(handle, new CallbackBookeeping(now, callback, name));
+                m_callbacks.put(handle, acquireBookeeping(now, callback, name, timeoutMS));
                 m_callbacksToInvoke.incrementAndGet();
             }
             m_connection.writeStream().enqueue(c);
         }
 
+        private CallbackBookeeping acquireBookeeping(long timestamp, ProcedureCallback callback,
+                String name, long timeoutMS) {
+            CallbackBookeeping cb = m_freeBookeeping.poll();
+            if (cb == null) {
+                return new CallbackBookeeping(timestamp, callback, name, timeoutMS);
+            }
+            cb.timestamp = timestamp;
+            cb.nanoTime = System.nanoTime();
+            cb.callback = callback;
+            cb.name = name;
+            cb.timeoutMS = timeoutMS;
+            return cb;
+        }
+
+        private void releaseBookeeping(CallbackBookeeping cb) {
+            cb.callback = null;
+            cb.name = null;
+            if (m_freeBookeeping.size() < MAX_FREE_BOOKEEPING) {
+                m_freeBookeeping.push(cb);
+            }
+        }
+
         void sendPing() {
             ProcedureInvocation invocation = new ProcedureInvocation(PING_HANDLE, "@Ping");
             ByteBuffer buf = ByteBuffer.allocate(4 + invocation.getSerializedSize());
@@ -335,6 +449,7 @@ class Distributer {
          * Update the procedures statistics
          * @param procName Name of procedure being updated
          * @param roundTrip round trip from client queued to client response callback invocation
+         * @param roundTripMicros the same round trip in microseconds
          * @param clusterRoundTrip round trip measured within the VoltDB cluster
          * @param abort true of the procedure was aborted
          * @param failure true if the procedure failed
@@ -342,6 +457,7 @@ class Distributer {
         private void updateStats(
                 String procName,
                 int roundTrip,
+                long roundTripMicros,
                 int clusterRoundTrip,
                 boolean abort,
                 boolean failure) {
@@ -356,12 +472,13 @@ class Distributer {
                 stats.m_endTS = Long.MIN_VALUE;
                 m_stats.put(procName, stats);
             }
-            stats.update(roundTrip, clusterRoundTrip, abort, failure);
+            stats.update(roundTrip, roundTripMicros, clusterRoundTrip, abort, failure);
         }
 
         @Override
         public void handleMessage(ByteBuffer buf, Connection c) {
             long now = System.currentTimeMillis();
+            long nowNanos = System.nanoTime();
             ClientResponseImpl response = new ClientResponseImpl();
             try {
                 response.initFromBuffer(buf);
@@ -410,7 +527,9 @@ class Distributer {
                     }
                     int clusterRoundTrip = response.getClusterRoundtrip();
                     m_rateLimiter.transactionResponseReceived(now, clusterRoundTrip);
-                    updateStats(stuff.name, delta, clusterRoundTrip, abort, error);
+                    wakePendingAsync();
+                    updateStats(stuff.name, delta, (nowNanos - stuff.nanoTime) / 1000, clusterRoundTrip, abort, error);
+                    releaseBookeeping(stuff);
                 }
             }
 
@@ -501,7 +620,11 @@ class Distributer {
                             ClientResponse.CONNECTION_LOST, new VoltTable[0],
                             "Connection to database host (" + m_socketAddress +
                     ") was lost before a response was received");
-                for (final CallbackBookeeping callBk : m_callbacks.values()) {
+                for (int slot = 0; slot < m_callbacks.capacity(); slot++) {
+                    final CallbackBookeeping callBk = m_callbacks.valueAt(slot);
+                    if (callBk == null) {
+                        continue;
+                    }
                     try {
                         callBk.callback.clientCallback(r);
                     }
@@ -512,6 +635,7 @@ class Distributer {
                     m_callbacksToInvoke.decrementAndGet();
                 }
                 m_callbacks.clear();
+                wakePendingAsync();
             }
         }
 
@@ -530,6 +654,7 @@ class Distributer {
                             csl.backpressure(false);
                         }
                     }
+                    schedulePendingAsyncDrain(0);
                 }
             };
         }
@@ -570,6 +695,9 @@ class Distributer {
                     more = more || cxn.m_callbacksToInvoke.get() > 0;
                 }
             }
+            synchronized (m_pendingAsync) {
+                more = more || !m_pendingAsync.isEmpty();
+            }
             if (more) {
                 Thread.sleep(5);
             }
@@ -685,105 +813,286 @@ class Distributer {
             ProcedureInvocation invocation,
             ProcedureCallback cb,
             final boolean ignoreBackpressure)
+    throws NoConnectionsException {
+        return queue(invocation, cb, ignoreBackpressure, m_procedureCallTimeoutMS);
+    }
+
+    /**
+     * Same as {@link #queue(ProcedureInvocation, ProcedureCallback, boolean)} with a timeout
+     * for this invocation instead of the client wide procedure call timeout.
+     */
+    boolean queue(
+            ProcedureInvocation invocation,
+            ProcedureCallback cb,
+            final boolean ignoreBackpressure,
+            long timeoutMS)
     throws NoConnectionsException {
         assert(invocation != null);
         assert(cb != null);
 
-        NodeConnection cxn = null;
-        boolean backpressure = true;
+        final NodeConnection cxn = selectConnection(invocation, ignoreBackpressure);
 
         /*
-         * Synchronization is necessary to ensure that m_connections is not modified
-         * as well as to ensure that backpressure is reported correctly
+         * Do the heavy weight serialization outside the synchronized block.
+         * createWork synchronizes on an individual connection which allows for more concurrency
          */
-        synchronized (this) {
-            final int totalConnections = m_connections.size();
+        if (cxn != null) {
+            cxn.createWork(invocation.getHandle(), invocation.getProcName(), new InvocationWrite(invocation), cb,
+                    ignoreBackpressure, timeoutMS);
+        }
 
-            if (totalConnections == 0) {
-                throw new NoConnectionsException("No connections.");
+        return cxn != null;
+    }
+
+    /**
+     * Queue an invocation without ever blocking the caller. If there is backpressure or the
+     * rate limiter is saturated the invocation is held back and sent, in order, as soon as
+     * there is room. The future is completed with the response.
+     * @throws NoConnectionsException
+     */
+    void queueAsync(ProcedureFuture future) throws NoConnectionsException {
+        future.m_distributer = this;
+        synchronized (m_pendingAsync) {
+            // don't overtake invocations that are already held back
+            if (!m_pendingAsync.isEmpty()) {
+                holdBackAsync(future);
+                return;
+            }
+        }
+        if (trySendAsync(future) != ASYNC_SENT) {
+            synchronized (m_pendingAsync) {
+                holdBackAsync(future);
             }
+            // the reaper thread checks again so a wakeup that came in the meantime isn't lost
+            schedulePendingAsyncDrain(0);
+        }
+    }
 
-            /*
-             * Check if the master for the partition is known. No back pressure check to ensure correct
-             * routing, but backpressure will be managed anyways.
-             */
-            if (m_useClientAffinity && m_hashinatorInitialized) {
-                final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
+    // Must hold the m_pendingAsync lock
+    private void holdBackAsync(ProcedureFuture future) {
+        final int maxPending = m_rateLimiter.getLimits()[1];
+        if (m_pendingAsync.size() >= maxPending) {
+            future.clientCallback(new ClientResponseImpl(
+                    ClientResponse.GRACEFUL_FAILURE, new VoltTable[0],
+                    "Invocation was not sent, " + maxPending +
+                    " async invocations are already waiting for backpressure to end"));
+            return;
+        }
+        m_pendingAsync.addLast(future);
+        m_pendingAsyncCount = m_pendingAsync.size();
+    }
 
-                if (procedureInfo != null) {
-                    Integer hashedPartition = MpInitiator.MP_INIT_PID;
-                    if (!procedureInfo.multiPart) {
-                        hashedPartition =
-                            invocation.getHashinatedParam(procedureInfo.partitionParameterType,
-                                procedureInfo.partitionParameter);
-                    }
-                    /*
-                     * If the procedure is read only and single part, load balance across replicas
-                     */
-                    if (!procedureInfo.multiPart && procedureInfo.readOnly) {
-                        NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
-                        if (partitionReplicas != null && partitionReplicas.length > 0) {
-                            cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
-                            if (cxn.hadBackPressure()) {
-                                //See if there is one without backpressure
-                                for (NodeConnection nc : partitionReplicas) {
-                                    if (!nc.hadBackPressure()) {
-                                        cxn = nc;
-                                        break;
-                                    }
+    private static final int ASYNC_SENT = 0;
+    private static final int ASYNC_BACKPRESSURE = 1;
+    private static final int ASYNC_RATE_LIMITED = 2;
+
+    /**
+     * @return ASYNC_SENT if the invocation was sent, otherwise whether it has to wait for
+     * backpressure or the rate limiter
+     */
+    private int trySendAsync(ProcedureFuture future) throws NoConnectionsException {
+        if (m_isShutdown) {
+            throw new NoConnectionsException("Client instance is shutdown");
+        }
+        final ProcedureInvocation invocation = future.m_invocation;
+        final NodeConnection cxn = selectConnection(invocation, false);
+        if (cxn == null) {
+            return ASYNC_BACKPRESSURE;
+        }
+        final long now = System.currentTimeMillis();
+        if (!m_rateLimiter.trySendTxn(now)) {
+            return ASYNC_RATE_LIMITED;
+        }
+        cxn.enqueueWork(now, invocation.getHandle(), invocation.getProcName(), new InvocationWrite(invocation),
+                future, future.m_timeoutMS);
+        return ASYNC_SENT;
+    }
+
+    // A response freed room in the rate limiter, send what was held back
+    private void wakePendingAsync() {
+        if (m_pendingAsyncCount > 0) {
+            schedulePendingAsyncDrain(0);
+        }
+    }
+
+    private void schedulePendingAsyncDrain(long delayMS) {
+        if (m_isShutdown || !m_pendingAsyncDrainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            m_ex.schedule(new PendingAsyncDrain(), delayMS, TimeUnit.MILLISECONDS);
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            // shutting down, shutdown() fails whatever is left
+            m_pendingAsyncDrainScheduled.set(false);
+        }
+    }
+
+    /**
+     * Stop waiting for the response to an async invocation. Returns false if the response
+     * has already been delivered or is being delivered.
+     */
+    boolean cancel(ProcedureFuture future) {
+        synchronized (m_pendingAsync) {
+            if (m_pendingAsync.remove(future)) {
+                m_pendingAsyncCount = m_pendingAsync.size();
+                return true;
+            }
+        }
+        final long handle = future.m_invocation.getHandle();
+        for (NodeConnection c : m_connections) {
+            synchronized (c) {
+                CallbackBookeeping cb = c.m_callbacks.get(handle);
+                if (cb != null && cb.callback == future) {
+                    c.m_callbacks.remove(handle);
+                    c.releaseBookeeping(cb);
+                    m_rateLimiter.transactionResponseReceived(System.currentTimeMillis(), -1);
+                    wakePendingAsync();
+                    int callbacksToInvoke = c.m_callbacksToInvoke.decrementAndGet();
+                    assert(callbacksToInvoke >= 0);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pick the connection for the invocation. Returns null and notifies the listeners
+     * if all candidate connections have backpressure. Synchronization is necessary to
+     * ensure that m_connections is not modified as well as to ensure that backpressure
+     * is reported correctly.
+     */
+    private synchronized NodeConnection selectConnection(
+            ProcedureInvocation invocation,
+            final boolean ignoreBackpressure)
+    throws NoConnectionsException {
+        NodeConnection cxn = null;
+        boolean backpressure = true;
+
+        final int totalConnections = m_connections.size();
+
+        if (totalConnections == 0) {
+            throw new NoConnectionsException("No connections.");
+        }
+
+        /*
+         * Check if the master for the partition is known. No back pressure check to ensure correct
+         * routing, but backpressure will be managed anyways.
+         */
+        if (m_useClientAffinity && m_hashinatorInitialized) {
+            final Procedure procedureInfo = m_procedureInfo.get(invocation.getProcName());
+
+            if (procedureInfo != null) {
+                Integer hashedPartition = MpInitiator.MP_INIT_PID;
+                if (!procedureInfo.multiPart) {
+                    hashedPartition =
+                        invocation.getHashinatedParam(procedureInfo.partitionParameterType,
+                            procedureInfo.partitionParameter);
+                }
+                /*
+                 * If the procedure is read only and single part, load balance across replicas
+                 */
+                if (!procedureInfo.multiPart && procedureInfo.readOnly) {
+                    NodeConnection partitionReplicas[] = m_partitionReplicas.get(hashedPartition);
+                    if (partitionReplicas != null && partitionReplicas.length > 0) {
+                        cxn = partitionReplicas[ThreadLocalRandom.current().nextInt(partitionReplicas.length)];
+                        if (cxn.hadBackPressure()) {
+                            //See if there is one without backpressure
+                            for (NodeConnection nc : partitionReplicas) {
+                                if (!nc.hadBackPressure()) {
+                                    cxn = nc;
+                                    break;
                                 }
                             }
-                            if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                                backpressure = false;
-                            }
                         }
-                    } else {
-                        /*
-                         * Writes have to go to the master
-                         */
-                        cxn = m_partitionMasters.get(hashedPartition);
-                        if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
+                        if (!cxn.hadBackPressure() || ignoreBackpressure) {
                             backpressure = false;
                         }
                     }
-                }
-            }
-            if (cxn == null) {
-                for (int i=0; i < totalConnections; ++i) {
-                    cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
-                    if (!cxn.hadBackPressure() || ignoreBackpressure) {
-                        // serialize and queue the invocation
+                } else {
+                    /*
+                     * Writes have to go to the master
+                     */
+                    cxn = m_partitionMasters.get(hashedPartition);
+                    if (cxn != null && !cxn.hadBackPressure() || ignoreBackpressure) {
                         backpressure = false;
-                        break;
                     }
                 }
             }
-
-            if (backpressure) {
-                cxn = null;
-                for (ClientStatusListenerExt s : m_listeners) {
-                    s.backpressure(true);
+        }
+        if (cxn == null) {
+            for (int i=0; i < totalConnections; ++i) {
+                cxn = m_connections.get(Math.abs(++m_nextConnection % totalConnections));
+                if (!cxn.hadBackPressure() || ignoreBackpressure) {
+                    // serialize and queue the invocation
+                    backpressure = false;
+                    break;
                 }
             }
         }
 
-        /*
-         * Do the heavy weight serialization outside the synchronized block.
-         * createWork synchronizes on an individual connection which allows for more concurrency
-         */
-        if (cxn != null) {
-            ByteBuffer buf = ByteBuffer.allocate(4 + invocation.getSerializedSize());
-            buf.putInt(buf.capacity() - 4);
-            try {
-                invocation.flattenToBuffer(buf);
+        if (backpressure) {
+            cxn = null;
+            for (ClientStatusListenerExt s : m_listeners) {
+                s.backpressure(true);
+            }
+        }
+        return cxn;
+    }
+
+    /**
+     * Writes an invocation with its length prefix. Invocations whose parameters can't be changed by
+     * the caller afterwards are serialized by the network thread straight into its pooled direct
+     * buffers. Array and table parameters are serialized right away since the caller may reuse them.
+     */
+    static final class InvocationWrite implements SizedDeferredSerialization {
+        private final ProcedureInvocation m_invocation;
+        private final int m_size;
+        private ByteBuffer m_buf = null;
+
+        InvocationWrite(ProcedureInvocation invocation) {
+            m_invocation = invocation;
+            m_size = 4 + invocation.getSerializedSize();
+            if (invocation.hasMutableParameters()) {
+                ByteBuffer buf = ByteBuffer.allocate(m_size);
+                try {
+                    serialize(buf);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
                 buf.flip();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+                m_buf = buf;
+            }
+        }
+
+        @Override
+        public int getSerializedSize() {
+            return m_size;
+        }
+
+        @Override
+        public void serialize(ByteBuffer buf) throws IOException {
+            if (m_buf != null) {
+                buf.put(m_buf);
+                return;
+            }
+            buf.putInt(m_size - 4);
+            m_invocation.flattenToBuffer(buf);
+        }
+
+        @Override
+        public ByteBuffer[] serialize() throws IOException {
+            if (m_buf == null) {
+                // too large for a pooled buffer
+                ByteBuffer buf = ByteBuffer.allocate(m_size);
+                serialize(buf);
+                return new ByteBuffer[] { buf };
             }
-            cxn.createWork(invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure);
+            return new ByteBuffer[] { m_buf };
         }
 
-        return !backpressure;
+        @Override
+        public void cancel() {}
     }
 
     /**
@@ -793,10 +1102,24 @@ class Distributer {
      */
     final void shutdown() throws InterruptedException {
         // stop the old proc call reaper
+        m_isShutdown = true;
         m_timeoutReaperHandle.cancel(false);
         m_ex.shutdown();
         m_ex.awaitTermination(1, TimeUnit.SECONDS);
 
+        // fail the async invocations that never made it out
+        ArrayList<ProcedureFuture> pending;
+        synchronized (m_pendingAsync) {
+            pending = new ArrayList<ProcedureFuture>(m_pendingAsync);
+            m_pendingAsync.clear();
+            m_pendingAsyncCount = 0;
+        }
+        for (ProcedureFuture future : pending) {
+            future.clientCallback(new ClientResponseImpl(
+                    ClientResponse.CONNECTION_LOST, new VoltTable[0],
+                    "Client instance was shutdown before the invocation was sent"));
+        }
+
         m_network.shutdown();
     }
 
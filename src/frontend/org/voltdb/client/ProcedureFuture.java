@@ -0,0 +1,200 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.client;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+ * The pending result of a procedure invoked with
+ * {@link Client#callProcedureAsync(String, Object...)}.
+ *
+ * The future is completed with the {@link ClientResponse} of the invocation, whatever
+ * its status, exactly as a {@link ProcedureCallback} would be invoked. Check
+ * {@link ClientResponse#getStatus()} to find out whether the procedure succeeded,
+ * the call timed out or the connection was lost.
+ *
+ * Listeners added with {@link #addListener(Runnable, Executor)} run once the future
+ * is done, which allows calls to be chained without blocking a thread per call.
+ */
+public final class ProcedureFuture implements Future<ClientResponse>, ProcedureCallback {
+
+    private static final class Listener {
+        final Runnable m_runnable;
+        final Executor m_executor;
+        Listener m_next;
+
+        Listener(Runnable runnable, Executor executor) {
+            m_runnable = runnable;
+            m_executor = executor;
+        }
+    }
+
+    // set by the client before the invocation is queued
+    final ProcedureInvocation m_invocation;
+    final long m_timeoutMS;
+    volatile Distributer m_distributer;
+
+    private ClientResponse m_response = null;
+    private boolean m_cancelled = false;
+    private Listener m_listeners = null;
+
+    ProcedureFuture(ProcedureInvocation invocation, long timeoutMS) {
+        m_invocation = invocation;
+        m_timeoutMS = timeoutMS;
+    }
+
+    /**
+     * Invoked by the client library when the response arrives. Completes the future.
+     */
+    @Override
+    public void clientCallback(ClientResponse clientResponse) {
+        Listener listeners;
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            m_response = clientResponse;
+            listeners = m_listeners;
+            m_listeners = null;
+            notifyAll();
+        }
+        runListeners(listeners);
+    }
+
+    /**
+     * Cancel the invocation. A cancelled invocation that has not been written to a connection
+     * yet is never sent. If it has been sent the client stops waiting for the response,
+     * and a response that arrives anyway is reported to
+     * {@link ClientStatusListenerExt#lateProcedureResponse(ClientResponse, String, int)}.
+     *
+     * @param mayInterruptIfRunning Ignored, a procedure can't be interrupted once it is running.
+     * @return False if the response arrived or is being delivered, true otherwise.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (isDone()) {
+                return false;
+            }
+        }
+        if (m_distributer != null && !m_distributer.cancel(this)) {
+            // the response beat the cancellation
+            return false;
+        }
+        Listener listeners;
+        synchronized (this) {
+            if (isDone()) {
+                return false;
+            }
+            m_cancelled = true;
+            listeners = m_listeners;
+            m_listeners = null;
+            notifyAll();
+        }
+        runListeners(listeners);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return m_cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return m_cancelled || m_response != null;
+    }
+
+    @Override
+    public synchronized ClientResponse get() throws InterruptedException {
+        while (!isDone()) {
+            wait();
+        }
+        return getDone();
+    }
+
+    @Override
+    public synchronized ClientResponse get(long timeout, TimeUnit unit)
+    throws InterruptedException, TimeoutException {
+        long remaining = unit.toNanos(timeout);
+        final long deadline = System.nanoTime() + remaining;
+        while (!isDone()) {
+            if (remaining <= 0) {
+                throw new TimeoutException("No response received for " + m_invocation.getProcName());
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return getDone();
+    }
+
+    private ClientResponse getDone() {
+        if (m_cancelled) {
+            throw new CancellationException("Invocation of " + m_invocation.getProcName() + " was cancelled");
+        }
+        return m_response;
+    }
+
+    /**
+     * Run the listener with the executor once the future is done. If the future is already
+     * done the listener is run right away. Listeners that are cheap and don't block can be
+     * run directly on the thread that completes the future by passing an executor that
+     * simply calls {@link Runnable#run()}; that thread is a client network thread.
+     *
+     * @param listener The listener to run.
+     * @param executor The executor to run the listener with.
+     */
+    public void addListener(Runnable listener, Executor executor) {
+        if (listener == null || executor == null) {
+            throw new NullPointerException();
+        }
+        final Listener l = new Listener(listener, executor);
+        synchronized (this) {
+            if (!isDone()) {
+                l.m_next = m_listeners;
+                m_listeners = l;
+                return;
+            }
+        }
+        runListeners(l);
+    }
+
+    private void runListeners(Listener listeners) {
+        // listeners were pushed on the front, run them in the order they were added
+        Listener reversed = null;
+        while (listeners != null) {
+            Listener next = listeners.m_next;
+            listeners.m_next = reversed;
+            reversed = listeners;
+            listeners = next;
+        }
+        for (Listener l = reversed; l != null; l = l.m_next) {
+            try {
+                l.m_executor.execute(l.m_runnable);
+            } catch (RuntimeException e) {
+                ClientImpl.LOG.log(Level.WARNING, "Failed to run a listener of the invocation of " +
+                        m_invocation.getProcName(), e);
+            }
+        }
+    }
+}
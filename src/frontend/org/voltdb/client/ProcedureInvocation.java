@@ -79,6 +79,10 @@ public class ProcedureInvocation {
         return size;
     }
 
+    boolean hasMutableParameters() {
+        return m_parameters.hasMutableParameters();
+    }
+
     public Integer getHashinatedParam(int type, int index) {
         return m_parameters.getHashinatedParam(type, index);
     }
@@ -146,6 +146,13 @@ class RateLimiter {
         return limits;
     }
 
+    /**
+     * @return True if no more transactions may be sent until a response is received.
+     */
+    synchronized boolean atOutstandingLimit() {
+        return m_outstandingTxns >= m_maxOutstandingTxns;
+    }
+
     synchronized void transactionResponseReceived(long timestamp, int internalLatency) {
         ensureCurrentBlockIsKosher(timestamp);
         --m_outstandingTxns;
@@ -157,49 +164,56 @@ class RateLimiter {
     }
 
     /**
-     *
+     * Account for a transaction about to be sent if the rate and outstanding
+     * limits allow it.
      *
      * @param timestamp The time as measured when the call is made.
-     * @param ignoreBackpressure If true, never block.
-     * @return The time as measured when the call returns.
+     * @param ignoreBackpressure If true, always account for the transaction.
+     * @return True if the transaction was accounted for and may be sent.
      */
-    long sendTxnWithOptionalBlockAndReturnCurrentTime(long timestamp, boolean ignoreBackpressure) {
-        while (true) {
-            synchronized(this) {
-                // switch to a new block if 100ms has passed
-                // possibly compute a new target rate
-                ensureCurrentBlockIsKosher(timestamp);
-
-                assert((timestamp - m_currentBlockTimestamp) <= BLOCK_SIZE);
+    private synchronized boolean tryToSendTxn(long timestamp, boolean ignoreBackpressure) {
+        // switch to a new block if 100ms has passed
+        // possibly compute a new target rate
+        ensureCurrentBlockIsKosher(timestamp);
 
-                // don't let the time be before the start of the current block
-                // also ensure faketime - m_currentBlockTimestamp is positive
-                long faketime = timestamp < m_currentBlockTimestamp ? m_currentBlockTimestamp : timestamp;
+        assert((timestamp - m_currentBlockTimestamp) <= BLOCK_SIZE);
 
-                long targetTxnsPerBlock = m_targetTxnsPerSecond / (1000 / BLOCK_SIZE);
+        // don't let the time be before the start of the current block
+        // also ensure faketime - m_currentBlockTimestamp is positive
+        long faketime = timestamp < m_currentBlockTimestamp ? m_currentBlockTimestamp : timestamp;
 
-                // compute the percentage of the current 100ms block that has passed
-                double expectedTxnsSent =
-                        targetTxnsPerBlock * (faketime - m_currentBlockTimestamp + 1.0) / BLOCK_SIZE;
-                expectedTxnsSent = Math.ceil(expectedTxnsSent);
+        long targetTxnsPerBlock = m_targetTxnsPerSecond / (1000 / BLOCK_SIZE);
 
-                assert(expectedTxnsSent <= targetTxnsPerBlock); // stupid fp math
-                assert((expectedTxnsSent >= 1.0) || (targetTxnsPerBlock == 0));
+        // compute the percentage of the current 100ms block that has passed
+        double expectedTxnsSent =
+                targetTxnsPerBlock * (faketime - m_currentBlockTimestamp + 1.0) / BLOCK_SIZE;
+        expectedTxnsSent = Math.ceil(expectedTxnsSent);
 
-                // if the rate is under target, no problems
-                if (((m_currentBlockSendCount < expectedTxnsSent) &&
-                     (m_outstandingTxns < m_maxOutstandingTxns)) ||
-                    (ignoreBackpressure == true)) {
+        assert(expectedTxnsSent <= targetTxnsPerBlock); // stupid fp math
+        assert((expectedTxnsSent >= 1.0) || (targetTxnsPerBlock == 0));
 
-                    // bookkeeping
-                    ++m_currentBlockSendCount;
-                    ++m_outstandingTxns;
+        // if the rate is under target, no problems
+        if (((m_currentBlockSendCount < expectedTxnsSent) &&
+             (m_outstandingTxns < m_maxOutstandingTxns)) ||
+            (ignoreBackpressure == true)) {
 
-                    // exit the while loop
-                    break;
-                }
-            }
+            // bookkeeping
+            ++m_currentBlockSendCount;
+            ++m_outstandingTxns;
+            return true;
+        }
+        return false;
+    }
 
+    /**
+     *
+     *
+     * @param timestamp The time as measured when the call is made.
+     * @param ignoreBackpressure If true, never block.
+     * @return The time as measured when the call returns.
+     */
+    long sendTxnWithOptionalBlockAndReturnCurrentTime(long timestamp, boolean ignoreBackpressure) {
+        while (!tryToSendTxn(timestamp, ignoreBackpressure)) {
             // if the rate is above target, pause for the smallest time possible
             try { Thread.sleep(1); } catch (InterruptedException e) {}
             timestamp = System.currentTimeMillis();
@@ -209,6 +223,16 @@ class RateLimiter {
         return timestamp;
     }
 
+    /**
+     * Non-blocking version of {@link #sendTxnWithOptionalBlockAndReturnCurrentTime(long, boolean)}.
+     *
+     * @param timestamp The time as measured when the call is made.
+     * @return True if the transaction may be sent now, false if it is over the limits.
+     */
+    boolean trySendTxn(long timestamp) {
+        return tryToSendTxn(timestamp, false);
+    }
+
     public synchronized void debug() {
         System.out.printf("Target throughput/s is %d and max outstanding txns is %d\n",
                 m_targetTxnsPerSecond, m_maxOutstandingTxns);
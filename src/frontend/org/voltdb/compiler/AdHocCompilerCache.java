@@ -19,12 +19,13 @@ package org.voltdb.compiler;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltdb.common.Constants;
 import org.voltdb.planner.BoundPlan;
@@ -40,6 +41,14 @@ import org.voltdb.planner.BoundPlan;
  * statement mapped to core parameterized plans. These parameterized
  * plans need parameter values and sql literals in order to be
  * actually used.
+ *
+ * Lookups don't take any locks, so the ad hoc planner threads can all
+ * hit the cache at once. Each level is bounded by the estimated size of
+ * the plans it holds rather than by entry count, and is trimmed with a
+ * CLOCK sweep: a lookup sets an entry's reference bit, and the sweep
+ * gives referenced entries a second chance before evicting them.
+ * Insertions are rare next to lookups (they follow a full planning pass)
+ * and are serialized on the cache instance.
  */
 public class AdHocCompilerCache implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -71,116 +80,142 @@ public class AdHocCompilerCache implements Serializable {
     // PER-INSTANCE AWESOMEC CACHING CODE
     //////////////////////////////////////////////////////////////////////////
 
-    // cache sizes determined at construction time
-    final int MAX_LITERAL_ENTRIES;
-    final int MAX_CORE_ENTRIES;
+    // default cache sizes, in bytes of serialized plan
+    static final long DEFAULT_LITERAL_CACHE_BYTES =
+        Long.getLong("adHocLiteralCacheBytes", 32 * 1024 * 1024);
+    static final long DEFAULT_CORE_CACHE_BYTES =
+        Long.getLong("adHocCoreCacheBytes", 32 * 1024 * 1024);
+
+    /**
+     * One level of the cache. Reads go straight to the concurrent map;
+     * writes and the eviction sweep must be serialized by the caller.
+     */
+    static class ClockCache<V> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private static class Entry<V> implements Serializable {
+            private static final long serialVersionUID = 1L;
+            final V m_value;
+            final long m_size;
+            volatile boolean m_referenced;
+
+            Entry(V value, long size, boolean referenced) {
+                m_value = value;
+                m_size = size;
+                m_referenced = referenced;
+            }
+        }
+
+        final long m_maxBytes;
+        final ConcurrentHashMap<String, Entry<V>> m_entries = new ConcurrentHashMap<String, Entry<V>>();
+        final AtomicLong m_bytes = new AtomicLong(0);
+        final AtomicLong m_evictions = new AtomicLong(0);
+        /** evictions not yet handed to the planner stats */
+        final AtomicLong m_unreportedEvictions = new AtomicLong(0);
+        /** the clock hand, only moved by the writer */
+        private transient Iterator<Map.Entry<String, Entry<V>>> m_hand = null;
+
+        ClockCache(long maxBytes) {
+            m_maxBytes = maxBytes;
+        }
+
+        V get(String key) {
+            Entry<V> entry = m_entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            // avoid dirtying the cache line on every hit
+            if (!entry.m_referenced) {
+                entry.m_referenced = true;
+            }
+            return entry.m_value;
+        }
+
+        /** Look up a value without marking it as recently used. */
+        V peek(String key) {
+            Entry<V> entry = m_entries.get(key);
+            return entry == null ? null : entry.m_value;
+        }
+
+        /**
+         * Insert or replace a value, then sweep until the level is back under budget.
+         * @return true if the key was not already present
+         */
+        boolean put(String key, V value, long size) {
+            Entry<V> old = m_entries.put(key, new Entry<V>(value, size, false));
+            m_bytes.addAndGet(size);
+            if (old != null) {
+                m_bytes.addAndGet(-old.m_size);
+            }
+            evict(key);
+            return old == null;
+        }
+
+        /**
+         * Advance the clock hand, clearing reference bits and evicting unreferenced
+         * entries until the level fits. The entry just inserted is never evicted, so a
+         * single plan larger than the budget stays until the next insertion.
+         */
+        private void evict(String inserted) {
+            while (m_bytes.get() > m_maxBytes && m_entries.size() > 1) {
+                if (m_hand == null || !m_hand.hasNext()) {
+                    m_hand = m_entries.entrySet().iterator();
+                }
+                Map.Entry<String, Entry<V>> candidate = m_hand.next();
+                Entry<V> entry = candidate.getValue();
+                if (candidate.getKey().equals(inserted)) {
+                    continue;
+                }
+                if (entry.m_referenced) {
+                    entry.m_referenced = false;
+                    continue;
+                }
+                if (m_entries.remove(candidate.getKey(), entry)) {
+                    m_bytes.addAndGet(-entry.m_size);
+                    m_evictions.incrementAndGet();
+                    m_unreportedEvictions.incrementAndGet();
+                }
+            }
+        }
+
+        int size() {
+            return m_entries.size();
+        }
+    }
 
     /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    final ClockCache<AdHocPlannedStatement> m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
-     *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
-
-    // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
-    long m_literalInsertions = 0;
-    long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
-    long m_planInsertions = 0;
-    long m_planEvictions = 0;
-
-    /** {@see this#startPeriodicStatsPrinting() } */
-    Timer m_statsTimer = null;
+     *  to what values to enable its specialized (expression-indexed) plan.
+     *  The lists are never modified once cached; adding a variant replaces the list. */
+    final ClockCache<List<BoundPlan>> m_coreCache;
 
     /**
      * Constructor with default cache sizes.
      */
     private AdHocCompilerCache() {
-        this(1000, 1000);
+        this(DEFAULT_LITERAL_CACHE_BYTES, DEFAULT_CORE_CACHE_BYTES);
     }
 
 
     /**
      * Constructor with specific cache sizes is only called directly for testing.
      *
-     * @param maxLiteralEntries cache size for literals
-     * @param maxCoreEntries cache size for parameterized plans
-     */
-    AdHocCompilerCache(int maxLiteralEntries, int maxCoreEntries) {
-        MAX_LITERAL_ENTRIES = maxLiteralEntries;
-        MAX_CORE_ENTRIES = maxCoreEntries;
-
-        // an LRU cache map
-        m_literalCache = new LinkedHashMap<String, AdHocPlannedStatement>(MAX_LITERAL_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, AdHocPlannedStatement> eldest) {
-                if (size() > MAX_LITERAL_ENTRIES) {
-                    ++m_literalEvictions;
-                    return true;
-                }
-                return false;
-            }
-        };
-
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
-                }
-                return false;
-            }
-        };
-    }
-
-    /**
-     * Stats printing method used during development.
-     * Probably shouldn't live past real stats integration.
+     * @param maxLiteralBytes cache size for literals
+     * @param maxCoreBytes cache size for parameterized plans
      */
-    synchronized void printStats() {
-        String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
-                m_literalInsertions, m_literalEvictions);
-        String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
-                m_planInsertions, m_planEvictions);
-
-        System.out.print(line1 + line2);
-        System.out.flush();
-
-        // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
-        m_literalInsertions = 0;
-        m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
-        m_planInsertions = 0;
-        m_planEvictions = 0;
+    AdHocCompilerCache(long maxLiteralBytes, long maxCoreBytes) {
+        m_literalCache = new ClockCache<AdHocPlannedStatement>(maxLiteralBytes);
+        m_coreCache = new ClockCache<List<BoundPlan>>(maxCoreBytes);
     }
 
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
-        AdHocPlannedStatement retval = m_literalCache.get(sql);
-        if (retval != null) {
-            ++m_literalHits;
-        }
-        return retval;
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        return m_literalCache.get(sql);
     }
 
     /**
@@ -188,13 +223,8 @@ public class AdHocCompilerCache implements Serializable {
      * SQL statement
      * @return A CorePlan that needs parameter values to run.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
-        List<BoundPlan> retval = m_coreCache.get(parsedToken);
-        if (retval != null) {
-            ++m_planHits;
-        }
-        return retval;
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        return m_coreCache.get(parsedToken);
     }
 
     /**
@@ -215,24 +245,11 @@ public class AdHocCompilerCache implements Serializable {
         AdHocPlannedStatement plan = planIn;
         assert(new String(plan.sql, Constants.UTF8ENCODING).equals(sql));
 
-        // uncomment this to get some raw stdout cache performance stats every 5s
-        //startPeriodicStatsPrinting();
-
         BoundPlan matched = null;
         BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings());
         // deal with the parameterized plan cache first
-        List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
-        if (boundVariants == null) {
-            boundVariants = new ArrayList<BoundPlan>();
-            m_coreCache.put(parsedToken, boundVariants);
-            // Note that there is an edge case in which more than one plan is getting counted as one
-            // "plan insertion". This only happens when two different plans arose from the same parameterized
-            // query (token) because one invocation used the correct constants to trigger an expression index and
-            // another invocation did not.  These are not counted separately (which would have to happen below
-            // after each call to boundVariants.add) because they are not evicted separately.
-            // It seems saner to use consistent units when counting insertions vs. evictions.
-            ++m_planInsertions;
-        } else {
+        List<BoundPlan> boundVariants = m_coreCache.peek(parsedToken);
+        if (boundVariants != null) {
             for (BoundPlan boundPlan : boundVariants) {
                 if (boundPlan.equals(unmatched)) {
                     matched = boundPlan;
@@ -251,36 +268,39 @@ public class AdHocCompilerCache implements Serializable {
             }
         }
         if (matched == null) {
-            // Don't count insertions (of possibly repeated tokens) here
-            //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-            boundVariants.add(unmatched);
+            // Readers may be iterating the cached list, so copy it rather than adding in place
+            List<BoundPlan> updated = new ArrayList<BoundPlan>();
+            if (boundVariants != null) {
+                updated.addAll(boundVariants);
+            }
+            updated.add(unmatched);
+            m_coreCache.put(parsedToken, Collections.unmodifiableList(updated),
+                            estimateSize(parsedToken, updated));
         }
 
-        // then deal with the
-        AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
+        // then deal with the literal cache
+        AdHocPlannedStatement cachedPlan = m_literalCache.peek(sql);
         if (cachedPlan == null) {
-            m_literalCache.put(sql, plan);
-            ++m_literalInsertions;
+            m_literalCache.put(sql, plan, 2L * sql.length() + plan.getSerializedSize());
         }
         else {
             assert(cachedPlan.equals(plan));
         }
     }
 
-    /**
-     * Start a timer that prints cache stats to the console every 5s.
-     * Used for development until we get better stats integration.
-     */
-    public void startPeriodicStatsPrinting() {
-        if (m_statsTimer == null) {
-            m_statsTimer = new Timer();
-            m_statsTimer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    printStats();
+    private static long estimateSize(String parsedToken, List<BoundPlan> boundVariants) {
+        long size = 2L * parsedToken.length();
+        for (BoundPlan boundPlan : boundVariants) {
+            size += boundPlan.core.getSerializedSize();
+            if (boundPlan.constants != null) {
+                for (String constant : boundPlan.constants) {
+                    if (constant != null) {
+                        size += 2L * constant.length();
+                    }
                 }
-            }, 5000, 5000);
+            }
         }
+        return size;
     }
 
     /**
@@ -298,4 +318,37 @@ public class AdHocCompilerCache implements Serializable {
     public int getCoreCacheSize() {
         return m_coreCache.size();
     }
+
+    /**
+     * Return the number of entries evicted from the literal cache.
+     * @return  literal cache eviction count since the cache was created
+     */
+    public long getLiteralCacheEvictions() {
+        return m_literalCache.m_evictions.get();
+    }
+
+    /**
+     * Return the number of entries evicted from the core (parameterized) cache.
+     * @return  core cache eviction count since the cache was created
+     */
+    public long getCoreCacheEvictions() {
+        return m_coreCache.m_evictions.get();
+    }
+
+    /**
+     * Return the number of entries evicted from the literal cache since the
+     * last call, so that stats fed by several caches count each eviction once.
+     * @return  literal cache evictions not yet taken
+     */
+    public long takeLiteralCacheEvictions() {
+        return m_literalCache.m_unreportedEvictions.getAndSet(0);
+    }
+
+    /**
+     * Return the number of entries evicted from the core cache since the last call.
+     * @return  core cache evictions not yet taken
+     */
+    public long takeCoreCacheEvictions() {
+        return m_coreCache.m_unreportedEvictions.getAndSet(0);
+    }
 }
@@ -20,8 +20,10 @@ package org.voltdb.compiler;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.lang3.StringUtils;
 import org.voltcore.logging.VoltLogger;
@@ -44,12 +46,22 @@ public class AsyncCompilerAgent {
     // if more than this amount of work is queued, reject new work
     static public final int MAX_QUEUE_DEPTH = 250;
 
+    // number of statements planned concurrently, each planner thread
+    // borrows its own PlannerTool from the catalog context
+    static public final int PLANNER_THREADS = Integer.getInteger("adHocPlannerThreads",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+
     // accept work via this mailbox
     Mailbox m_mailbox;
 
     // do work in this executor service
     final ListeningExecutorService m_es =
-        CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner", MAX_QUEUE_DEPTH);
+        CoreUtils.getListeningExecutorService("Ad Hoc Planner", PLANNER_THREADS,
+                                              new LinkedBlockingQueue<Runnable>(MAX_QUEUE_DEPTH), null);
+
+    // Ad hoc planning holds the read lock, preparing a catalog change holds
+    // the write lock so that it never overlaps with planning
+    private final ReentrantReadWriteLock m_catalogFence = new ReentrantReadWriteLock();
 
     // intended for integration test use. finish planning what's in
     // the queue and terminate the TPE.
@@ -105,6 +117,7 @@ public class AsyncCompilerAgent {
         else if (wrapper.payload instanceof CatalogChangeWork) {
             final CatalogChangeWork w = (CatalogChangeWork)(wrapper.payload);
             if (VoltDB.instance().getConfig().m_isEnterprise) {
+                m_catalogFence.writeLock().lock();
                 try {
                     Class<?> acahClz = getClass().getClassLoader().loadClass("org.voltdb.compiler.AsyncCompilerAgentHelper");
                     Object acah = acahClz.newInstance();
@@ -120,6 +133,9 @@ public class AsyncCompilerAgent {
                 catch (Exception e) {
                     VoltDB.crashLocalVoltDB("Error preparing catalog diff.", true, e);
                 }
+                finally {
+                    m_catalogFence.writeLock().unlock();
+                }
             }
             assert(false); // shouldn't get here in community edition
         }
@@ -135,15 +151,30 @@ public class AsyncCompilerAgent {
     }
 
     AdHocPlannedStmtBatch compileAdHocPlan(AdHocPlannerWork work) {
+        m_catalogFence.readLock().lock();
+        try {
+            // record the catalog version the query is planned against to
+            // catch races vs. updateApplicationCatalog. The planner comes from
+            // the same context so it never plans against another catalog.
+            CatalogContext context = work.catalogContext;
+            if (context == null) {
+                context = VoltDB.instance().getCatalogContext();
+            }
 
-        // record the catalog version the query is planned against to
-        // catch races vs. updateApplicationCatalog.
-        CatalogContext context = work.catalogContext;
-        if (context == null) {
-            context = VoltDB.instance().getCatalogContext();
+            final PlannerTool ptool = context.borrowPlannerTool();
+            try {
+                return planBatch(ptool, work);
+            }
+            finally {
+                context.returnPlannerTool(ptool);
+            }
         }
+        finally {
+            m_catalogFence.readLock().unlock();
+        }
+    }
 
-        final PlannerTool ptool = context.m_ptool;
+    private AdHocPlannedStmtBatch planBatch(PlannerTool ptool, AdHocPlannerWork work) {
 
         AdHocPlannedStmtBatch plannedStmtBatch =
                 new AdHocPlannedStmtBatch(work.sqlBatchText,
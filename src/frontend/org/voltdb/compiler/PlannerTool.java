@@ -90,7 +90,7 @@ public class PlannerTool {
 
         // Create and register a singleton planner stats collector, if this is the first time.
         // In mock test environments there may be no stats agent.
-        synchronized (this) {
+        synchronized (PlannerTool.class) {
             if (m_plannerStats == null) {
                 final StatsAgent statsAgent = VoltDB.instance().getStatsAgent();
                 if (statsAgent != null) {
@@ -223,7 +223,9 @@ public class PlannerTool {
         }
         finally {
             if (m_plannerStats != null) {
-                m_plannerStats.endStatsCollection(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(), cacheUse, -1);
+                m_plannerStats.endStatsCollection(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(),
+                                                  m_cache.takeLiteralCacheEvictions(), m_cache.takeCoreCacheEvictions(),
+                                                  cacheUse, -1);
             }
         }
     }
@@ -19,47 +19,39 @@ package org.voltdb.dtxn;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.List;
 
 import org.voltdb.ClientInterface;
+import org.voltdb.LatencyHistogram;
 import org.voltdb.SiteStatsSource;
 import org.voltdb.StatsSelector;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.VoltType;
 
-import com.google.common.collect.ImmutableList;
-
 /**
- * Class that provides latency information in buckets. Each bucket contains the
- * number of procedures with latencies in the range.
+ * Class that provides the latency of the transactions completed by the client interfaces
+ * of this host. There is a single row per host with the count and percentiles of the
+ * latencies in microseconds, plus the serialized {@link LatencyHistogram} in the
+ * HISTOGRAM column so the histograms of all the hosts can be merged into cluster-wide
+ * percentiles with {@link LatencyHistogram#fromBytes(byte[])} and
+ * {@link LatencyHistogram#add(LatencyHistogram)}.
  */
 public class LatencyStats extends SiteStatsSource {
     /**
-     * A dummy iterator that wraps and int and provides the
-     * Iterator<Object> necessary for getStatsRowKeyIterator()
-     *
+     * Iterator over the single row of the table
      */
-    private static class BucketIterator implements Iterator<Object> {
-        private final int buckets;
-        private int current = -1;
-
-        private BucketIterator(int buckets) {
-            // Store the 0-indexed size
-            this.buckets = buckets - 1;
-        }
+    private static class SingleRowIterator implements Iterator<Object> {
+        private boolean m_done = false;
 
         @Override
         public boolean hasNext() {
-            if (current == buckets) {
-                return false;
-            }
-            return true;
+            return !m_done;
         }
 
         @Override
         public Object next() {
-            return ++current;
+            m_done = true;
+            return 0;
         }
 
         @Override
@@ -68,66 +60,14 @@ public class LatencyStats extends SiteStatsSource {
         }
     }
 
-    public static class LatencyInfo
-    {
-        private volatile ImmutableList<Long> m_latencyStats;
-        private volatile long m_max;
-
-        public LatencyInfo()
-        {
-            Long[] buckets = {0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l,
-                0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l, 0l,
-                0l, 0l, 0l, 0l, 0l, 0l};
-            m_latencyStats = ImmutableList.copyOf(buckets);
-            m_max = (m_latencyStats.size() - 1) * BUCKET_RANGE;
-        }
-
-        public void addSample(int delta)
-        {
-            int bucketIndex = Math.min((int) (delta / BUCKET_RANGE), m_latencyStats.size() - 1);
-
-            // if the host's clock moves backwards, bucketIndex can be negative
-            // this next line of code is a lie, but a beautiful one that keeps your server up
-            if (bucketIndex < 0) bucketIndex = 0;
-
-            m_max = Math.max(delta, m_max);
-            ImmutableList.Builder<Long> builder = ImmutableList.builder();
-            for (int i = 0; i < m_latencyStats.size(); i++) {
-                if (i == bucketIndex) {
-                    builder.add(m_latencyStats.get(i) + 1);
-                }
-                else {
-                    builder.add(m_latencyStats.get(i));
-                }
-            }
-            m_latencyStats = builder.build();
-        }
-
-        void mergeLatencyInfo(LatencyInfo other)
-        {
-            assert(other != null);
-            assert(m_latencyStats.size() == other.m_latencyStats.size());
-            m_max = Math.max(m_max, other.m_max);
-            ImmutableList.Builder<Long> builder = ImmutableList.builder();
-            for (int i = 0; i < m_latencyStats.size(); i++) {
-                builder.add(m_latencyStats.get(i) + other.m_latencyStats.get(i));
-            }
-            m_latencyStats = builder.build();
-        }
-
-        List<Long> getBuckets()
-        {
-            return m_latencyStats;
-        }
-
-        long getMax()
-        {
-            return m_max;
-        }
-    }
+    private final long m_startTS = System.currentTimeMillis();
+    // totals as of the last interval poll
+    private LatencyHistogram m_lastTotals = new LatencyHistogram();
+    private long m_lastIntervalTS = m_startTS;
 
-    private static final long BUCKET_RANGE = 10; // 10ms
-    private LatencyInfo m_totals;
+    // the histogram and time range for the row being generated
+    private LatencyHistogram m_latency;
+    private long m_intervalMS;
 
     public LatencyStats(long siteId) {
         super(siteId, false);
@@ -137,36 +77,50 @@ public class LatencyStats extends SiteStatsSource {
     @Override
     protected Iterator<Object> getStatsRowKeyIterator(boolean interval)
     {
-        m_totals = new LatencyInfo();
+        LatencyHistogram totals = new LatencyHistogram();
         for (ClientInterface ci : VoltDB.instance().getClientInterfaces()) {
-            List<LatencyInfo> thisci = ci.getLatencyStats();
-            for (LatencyInfo info : thisci) {
-                m_totals.mergeLatencyInfo(info);
-            }
+            totals.add(ci.getLatencyHistogram());
         }
-        return new BucketIterator(m_totals.getBuckets().size());
+        final long now = System.currentTimeMillis();
+        if (interval) {
+            m_latency = LatencyHistogram.diff(totals, m_lastTotals);
+            m_intervalMS = now - m_lastIntervalTS;
+            m_lastTotals = totals;
+            m_lastIntervalTS = now;
+        } else {
+            m_latency = totals;
+            m_intervalMS = now - m_startTS;
+        }
+        return new SingleRowIterator();
     }
 
     @Override
     protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
         super.populateColumnSchema(columns);
-        columns.add(new ColumnInfo("BUCKET_MIN", VoltType.INTEGER));
-        columns.add(new ColumnInfo("BUCKET_MAX", VoltType.INTEGER));
-        columns.add(new ColumnInfo("INVOCATIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("INTERVAL", VoltType.BIGINT));
+        columns.add(new ColumnInfo("COUNT", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P50", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P95", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99_9", VoltType.BIGINT));
+        columns.add(new ColumnInfo("P99_99", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX", VoltType.BIGINT));
+        columns.add(new ColumnInfo("HISTOGRAM", VoltType.VARBINARY));
     }
 
     @Override
     protected void updateStatsRow(Object rowKey, Object[] rowValues) {
-        final int bucket = (Integer) rowKey;
-
-        rowValues[columnNameToIndex.get("BUCKET_MIN")] = bucket * BUCKET_RANGE;
-        if (bucket < m_totals.getBuckets().size() - 1) {
-            rowValues[columnNameToIndex.get("BUCKET_MAX")] = (bucket + 1) * BUCKET_RANGE;
-        } else {
-            // max for the last bucket is the max of the largest latency
-            rowValues[columnNameToIndex.get("BUCKET_MAX")] = m_totals.getMax();
-        }
-        rowValues[columnNameToIndex.get("INVOCATIONS")] = m_totals.getBuckets().get(bucket);
+        rowValues[columnNameToIndex.get("INTERVAL")] = m_intervalMS;
+        rowValues[columnNameToIndex.get("COUNT")] = m_latency.getTotalCount();
+        rowValues[columnNameToIndex.get("AVG")] = (long) m_latency.getMean();
+        rowValues[columnNameToIndex.get("P50")] = m_latency.getValueAtPercentile(.5);
+        rowValues[columnNameToIndex.get("P95")] = m_latency.getValueAtPercentile(.95);
+        rowValues[columnNameToIndex.get("P99")] = m_latency.getValueAtPercentile(.99);
+        rowValues[columnNameToIndex.get("P99_9")] = m_latency.getValueAtPercentile(.999);
+        rowValues[columnNameToIndex.get("P99_99")] = m_latency.getValueAtPercentile(.9999);
+        rowValues[columnNameToIndex.get("MAX")] = m_latency.getMax();
+        rowValues[columnNameToIndex.get("HISTOGRAM")] = m_latency.toBytes();
         super.updateStatsRow(rowKey, rowValues);
     }
 }
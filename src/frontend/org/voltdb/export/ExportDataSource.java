@@ -24,9 +24,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -93,6 +96,31 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
 
     private final int m_nullArrayLength;
 
+    /**
+     * Told when the data pending for a source goes over its high water mark
+     * and when it drains back below the low water mark
+     */
+    public interface BackpressureListener {
+        public void onBackpressure(ExportDataSource source, boolean hasBackpressure);
+    }
+
+    //Flow control state, only touched from m_es. 0 disables the high water mark.
+    private volatile long m_highWaterMark = 0;
+    private BackpressureListener m_backpressureListener;
+    private volatile boolean m_hasBackpressure = false;
+
+    //End USO, row count and push time of each block pushed since this source was
+    //created that hasn't been fully acked yet. Blocks recovered from disk aren't counted.
+    private static final int PENDING_END_USO = 0;
+    private static final int PENDING_ROWS = 1;
+    private static final int PENDING_PUSH_TIME = 2;
+    private final ArrayDeque<long[]> m_pendingBlocks = new ArrayDeque<long[]>();
+
+    //Lag figures published from m_es for the stats source to read
+    private volatile long m_pendingBytes = 0;
+    private volatile long m_pendingRows = 0;
+    private volatile long m_oldestPendingTime = 0;
+
     /**
      * Create a new data source.
      * @param db
@@ -255,6 +283,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
 
         String nonce = m_signature + "_" + m_HSId + "_" + m_partitionId;
         m_committedBuffers = new StreamBlockQueue(overflowPath, nonce);
+        m_pendingBytes = m_committedBuffers.sizeInBytes();
 
         // compute the number of bytes necessary to hold one bit per
         // schema column
@@ -298,6 +327,117 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             }
         }
         m_firstUnpolledUso = Math.max(m_firstUnpolledUso, lastUso);
+
+        long[] pending = m_pendingBlocks.peek();
+        while (pending != null && releaseOffset >= pending[PENDING_END_USO]) {
+            m_pendingBlocks.poll();
+            m_pendingRows -= pending[PENDING_ROWS];
+            pending = m_pendingBlocks.peek();
+        }
+        updateFlowControl();
+    }
+
+    /**
+     * Count the length prefixed rows in a block pushed by the EE
+     */
+    private static long countRows(ByteBuffer buffer) {
+        ByteBuffer rows = buffer.duplicate();
+        rows.order(ByteOrder.LITTLE_ENDIAN);
+        long count = 0;
+        while (rows.remaining() >= 4) {
+            int length = rows.getInt();
+            if (length < 0 || length > rows.remaining()) {
+                break;
+            }
+            rows.position(rows.position() + length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Publish the lag figures and start or stop backpressure if the pending data
+     * crossed the high water mark or dropped below 80% of it.
+     */
+    private void updateFlowControl() {
+        m_pendingBytes = m_committedBuffers.sizeInBytes();
+        long[] oldest = m_pendingBlocks.peek();
+        m_oldestPendingTime = oldest == null ? 0 : oldest[PENDING_PUSH_TIME];
+
+        boolean hasBackpressure = m_hasBackpressure;
+        if (m_highWaterMark <= 0 || m_endOfStream) {
+            //Nothing more to slow down once the stream has ended
+            hasBackpressure = false;
+        } else if (m_pendingBytes > m_highWaterMark) {
+            hasBackpressure = true;
+        } else if (m_pendingBytes < m_highWaterMark * 0.8) {
+            hasBackpressure = false;
+        }
+        setBackpressure(hasBackpressure);
+    }
+
+    private void setBackpressure(boolean hasBackpressure) {
+        if (hasBackpressure == m_hasBackpressure) {
+            return;
+        }
+        m_hasBackpressure = hasBackpressure;
+        if (m_backpressureListener != null) {
+            m_backpressureListener.onBackpressure(this, hasBackpressure);
+        }
+    }
+
+    /**
+     * Set the amount of pending data, in memory and on disk, above which this source
+     * asks for backpressure. 0 means there is no limit.
+     */
+    public void setHighWaterMark(final long bytes, final BackpressureListener listener) {
+        try {
+            m_es.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (listener != m_backpressureListener) {
+                        //Leave the old listener with nothing outstanding
+                        setBackpressure(false);
+                        m_backpressureListener = listener;
+                    }
+                    m_highWaterMark = bytes;
+                    try {
+                        updateFlowControl();
+                    } catch (Exception e) {
+                        exportLog.error("Error applying export high water mark", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //Already closed
+        }
+    }
+
+    public long getHighWaterMark() {
+        return m_highWaterMark;
+    }
+
+    public boolean hasBackpressure() {
+        return m_hasBackpressure;
+    }
+
+    /**
+     * Bytes pushed to this source that haven't been acked, in memory and on disk
+     */
+    public long getPendingBytes() {
+        return m_pendingBytes;
+    }
+
+    public long getPendingRows() {
+        return m_pendingRows;
+    }
+
+    /**
+     * Milliseconds since the oldest block that hasn't been fully acked was pushed, 0 if there is none
+     */
+    public long getOldestPendingAge(long now) {
+        long oldest = m_oldestPendingTime;
+        return oldest == 0 ? 0 : Math.max(0, now - oldest);
     }
 
     private void exportActionImpl(RawProcessor.ExportInternalMessage m) {
@@ -547,6 +687,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             assert(!sync);
 
             m_endOfStream = endOfStream;
+            updateFlowControl();
 
             if (m_committedBuffers.sizeInBytes() == 0) {
                 exportLog.info("Pushed EOS buffer with 0 bytes remaining");
@@ -567,6 +708,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
         assert(!m_endOfStream);
         if (buffer != null) {
             if (buffer.capacity() > 0) {
+                long rows = countRows(buffer);
                 try {
                     m_committedBuffers.offer(new StreamBlock(
                             new BBContainer(buffer, bufferPtr) {
@@ -576,6 +718,8 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                                     deleted.set(true);
                                 }
                             }, uso, false));
+                    m_pendingBlocks.offer(new long[] { uso + buffer.capacity(), rows, System.currentTimeMillis() });
+                    m_pendingRows += rows;
                 } catch (IOException e) {
                     exportLog.error(e);
                     if (!deleted.get()) {
@@ -602,6 +746,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
                 exportLog.error(e);
             }
         }
+        updateFlowControl();
         pollImpl(m_pollFuture);
     }
 
@@ -637,6 +782,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             @Override
             public Object call() throws Exception {
                 try {
+                    setBackpressure(false);
                     m_committedBuffers.closeAndDelete();
                     return null;
                 } finally {
@@ -656,6 +802,9 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             public void run() {
                 try {
                     m_committedBuffers.truncateToTxnId(txnId, m_nullArrayLength);
+                    m_pendingBlocks.clear();
+                    m_pendingRows = 0;
+                    updateFlowControl();
                     if (m_committedBuffers.isEmpty() && m_endOfStream) {
                         if (m_pollFuture != null) {
                             m_pollFuture.set(null);
@@ -677,6 +826,7 @@ public class ExportDataSource implements Comparable<ExportDataSource> {
             @Override
             public void run() {
                 try {
+                    setBackpressure(false);
                     m_committedBuffers.close();
                 } catch (IOException e) {
                     exportLog.error(e);
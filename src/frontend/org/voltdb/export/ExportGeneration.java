@@ -548,6 +548,17 @@ public class ExportGeneration {
         };
     }
 
+    /**
+     * All the data sources of this generation across partitions
+     */
+    public List<ExportDataSource> getDataSources() {
+        List<ExportDataSource> sources = new ArrayList<ExportDataSource>();
+        for (HashMap<String, ExportDataSource> partitionSources : m_dataSourcesByPartition.values()) {
+            sources.addAll(partitionSources.values());
+        }
+        return sources;
+    }
+
     public long getQueuedExportBytes(int partitionId, String signature) {
         //assert(m_dataSourcesByPartition.containsKey(partitionId));
         //assert(m_dataSourcesByPartition.get(partitionId).containsKey(delegateId));
@@ -20,6 +20,7 @@ package org.voltdb.export;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -38,6 +39,7 @@ import org.voltcore.utils.COWSortedMap;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.Pair;
 import org.voltdb.CatalogContext;
+import org.voltdb.ClientInterface;
 import org.voltdb.VoltDB;
 import org.voltdb.catalog.Cluster;
 import org.voltdb.catalog.Connector;
@@ -61,6 +63,13 @@ import com.google.common.base.Throwables;
  * wrap a BBContainer.
  *
  * Processors are loaded by reflection based on configuration in project.xml.
+ *
+ * The connector properties can also bound how much export data may pile up
+ * on a node. The highwatermark property gives a limit in megabytes for the data
+ * pending, in memory and on disk, for each table and partition, and
+ * highwatermark.TABLENAME overrides it for one table. When a source goes over its
+ * limit the client interfaces stop reading new requests until it drains below 80%
+ * of the limit. Without either property export data is only bounded by the disk.
  */
 public class ExportManager
 {
@@ -116,6 +125,40 @@ public class ExportManager
 
     private volatile Properties m_processorConfig = new Properties();
 
+    /**
+     * Connector property with the default high water mark in megabytes,
+     * suffixed with a table name for a per table value
+     */
+    public static final String HIGH_WATER_MARK = "highwatermark";
+
+    /*
+     * Sources over their high water mark. Client reads are disabled while
+     * this isn't empty.
+     */
+    private final Set<ExportDataSource> m_sourcesWithBackpressure = new HashSet<ExportDataSource>();
+
+    private final ExportDataSource.BackpressureListener m_backpressureListener =
+            new ExportDataSource.BackpressureListener() {
+        @Override
+        public void onBackpressure(ExportDataSource source, boolean hasBackpressure) {
+            synchronized (m_sourcesWithBackpressure) {
+                if (hasBackpressure) {
+                    if (m_sourcesWithBackpressure.add(source) && m_sourcesWithBackpressure.size() == 1) {
+                        exportLog.info("Export backpressure began, table " + source.getTableName() +
+                                " partition " + source.getPartitionId() + " has " + source.getPendingBytes() +
+                                " bytes pending with a high water mark of " + source.getHighWaterMark());
+                        setClientBackpressure(true);
+                    }
+                } else {
+                    if (m_sourcesWithBackpressure.remove(source) && m_sourcesWithBackpressure.isEmpty()) {
+                        exportLog.info("Export backpressure ended");
+                        setClientBackpressure(false);
+                    }
+                }
+            }
+        }
+    };
+
     private final Runnable m_onGenerationDrained = new Runnable() {
         @Override
         public void run() {
@@ -311,6 +354,61 @@ public class ExportManager
         m_loaderClass = conn.getLoaderclass();
 
         createInitialExportProcessor(catalogContext, conn, true, partitions);
+        applyHighWaterMarks();
+    }
+
+    private static void setClientBackpressure(boolean hasBackpressure) {
+        if (VoltDB.instance() == null || VoltDB.instance().getClientInterfaces() == null) {
+            return;
+        }
+        for (ClientInterface ci : VoltDB.instance().getClientInterfaces()) {
+            if (hasBackpressure) {
+                ci.onExportBackPressure();
+            } else {
+                ci.offExportBackPressure();
+            }
+        }
+    }
+
+    /**
+     * High water mark in bytes for a table from the connector properties, 0 if there is none
+     */
+    static long getHighWaterMark(Properties config, String tableName) {
+        String value = config.getProperty(HIGH_WATER_MARK);
+        final String tableKey = HIGH_WATER_MARK + "." + tableName;
+        for (String name : config.stringPropertyNames()) {
+            if (name.equalsIgnoreCase(tableKey)) {
+                value = config.getProperty(name);
+            }
+        }
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim())) * 1024 * 1024;
+        } catch (NumberFormatException e) {
+            exportLog.error("Ignoring export high water mark \"" + value + "\" for table " + tableName +
+                    ", it should be a number of megabytes");
+            return 0;
+        }
+    }
+
+    private void applyHighWaterMarks() {
+        Properties config = m_processorConfig;
+        for (ExportDataSource source : getDataSources()) {
+            source.setHighWaterMark(getHighWaterMark(config, source.getTableName()), m_backpressureListener);
+        }
+    }
+
+    /**
+     * All the data sources of all the generations on this node
+     */
+    public List<ExportDataSource> getDataSources() {
+        List<ExportDataSource> sources = new ArrayList<ExportDataSource>();
+        for (ExportGeneration generation : m_generations.values()) {
+            sources.addAll(generation.getDataSources());
+        }
+        return sources;
     }
 
     private void createInitialExportProcessor(
@@ -494,6 +592,7 @@ public class ExportManager
         if (m_processor.get() == null) {
             createInitialExportProcessor(catalogContext, conn, false, partitions);
         }
+        applyHighWaterMarks();
     }
 
     public void shutdown() {
@@ -0,0 +1,91 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.export;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.voltdb.StatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Export lag for each data source on this node: what has been pushed by the EE
+ * and not yet acked by the connector, and whether it is holding back clients.
+ * The figures are published by each source's own thread and read racily here.
+ */
+public class ExportStats extends StatsSource {
+
+    private List<ExportDataSource> m_sources = new ArrayList<ExportDataSource>();
+
+    public ExportStats() {
+        super(false);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("PARTITION_ID", VoltType.INTEGER));
+        columns.add(new ColumnInfo("TABLE_NAME", VoltType.STRING));
+        columns.add(new ColumnInfo("GENERATION", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PENDING_BYTES", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PENDING_ROWS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("OLDEST_PENDING_AGE_MS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("HIGH_WATER_MARK", VoltType.BIGINT));
+        columns.add(new ColumnInfo("BACKPRESSURE", VoltType.TINYINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        final ExportDataSource source = (ExportDataSource)rowKey;
+        rowValues[columnNameToIndex.get("PARTITION_ID")] = source.getPartitionId();
+        rowValues[columnNameToIndex.get("TABLE_NAME")] = source.getTableName();
+        rowValues[columnNameToIndex.get("GENERATION")] = source.getGeneration();
+        rowValues[columnNameToIndex.get("PENDING_BYTES")] = source.getPendingBytes();
+        rowValues[columnNameToIndex.get("PENDING_ROWS")] = source.getPendingRows();
+        rowValues[columnNameToIndex.get("OLDEST_PENDING_AGE_MS")] =
+                source.getOldestPendingAge(System.currentTimeMillis());
+        rowValues[columnNameToIndex.get("HIGH_WATER_MARK")] = source.getHighWaterMark();
+        rowValues[columnNameToIndex.get("BACKPRESSURE")] = (byte)(source.hasBackpressure() ? 1 : 0);
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        ExportManager manager = ExportManager.instance();
+        m_sources = manager == null ? new ArrayList<ExportDataSource>() : manager.getDataSources();
+        final Iterator<ExportDataSource> sources = m_sources.iterator();
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return sources.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return sources.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
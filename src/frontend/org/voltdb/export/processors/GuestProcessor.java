@@ -159,12 +159,7 @@ public class GuestProcessor implements ExportDataProcessor {
                             try {
                                 edb.onBlockStart();
                                 cont.b.order(ByteOrder.LITTLE_ENDIAN);
-                                while (cont.b.hasRemaining()) {
-                                    int length = cont.b.getInt();
-                                    byte[] rowdata = new byte[length];
-                                    cont.b.get(rowdata, 0, length);
-                                    edb.processRow(length, rowdata);
-                                }
+                                edb.processBlock(cont.b);
                                 edb.onBlockCompletion();
                                 break;
                             } catch (RestartBlockException e) {
@@ -17,6 +17,8 @@
 
 package org.voltdb.exportclient;
 
+import java.nio.ByteBuffer;
+
 import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
 
 /**
@@ -41,6 +43,12 @@ public class DiscardingExportClient extends ExportClientBase {
             return true;
         }
 
+        @Override
+        public void processBlock(ByteBuffer block) {
+            // nothing to look at, don't bother copying the rows out
+            block.position(block.limit());
+        }
+
         @Override
         public void sourceNoLongerAdvertised(AdvertisedDataSource source) {
         }
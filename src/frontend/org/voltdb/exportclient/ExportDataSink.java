@@ -178,13 +178,8 @@ public class ExportDataSink {
 
                 try {
                     m_decoder.onBlockStart();
-                    // run the verifier until m.getData() is consumed
-                    while (m.getData().hasRemaining()) {
-                        int length = m.getData().getInt();
-                        byte[] rowdata = new byte[length];
-                        m.getData().get(rowdata, 0, length);
-                        m_decoder.processRow(length, rowdata);
-                    }
+                    // run the decoder until m.getData() is consumed
+                    m_decoder.processBlock(m.getData());
 
                     // Perform completion work on the decoder
                     m_decoder.onBlockCompletion();
@@ -19,6 +19,7 @@ package org.voltdb.exportclient;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 
@@ -65,6 +66,25 @@ public abstract class ExportDecoderBase {
      */
     abstract public boolean processRow(int rowSize, byte[] rowData) throws RestartBlockException;
 
+    /**
+     * Process all the rows of a block. The block is little endian and positioned
+     * on the length prefix of its first row, and is consumed up to its limit.
+     * By default each row is copied out and handed to processRow. Decoders that
+     * want to avoid the per row copy and decode can override this and read the
+     * rows in place with an {@link ExportRowView}.
+     *
+     * @param block
+     *            the rows of the block, each prefixed with its length
+     */
+    public void processBlock(ByteBuffer block) throws RestartBlockException {
+        while (block.hasRemaining()) {
+            int length = block.getInt();
+            byte[] rowdata = new byte[length];
+            block.get(rowdata, 0, length);
+            processRow(length, rowdata);
+        }
+    }
+
     abstract public void sourceNoLongerAdvertised(AdvertisedDataSource source);
 
     /**
@@ -20,6 +20,8 @@ package org.voltdb.exportclient;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
@@ -36,22 +38,26 @@ public class ExportEncoder {
     public static ByteBuffer getEncodedTable(VoltTable table)
     throws IOException {
 
-        // get the table
-        FastSerializer fs = new FastSerializer(false, false);
+        // encode the rows, then size the block to fit them all
+        ArrayList<byte[]> rows = new ArrayList<byte[]>();
+        int dataLength = 0;
         table.resetRowPosition();
         while (table.advanceRow()) {
             byte[] rowData = encodeRow(table);
-            fs.writeInt(rowData.length);
-            fs.write(rowData);
+            rows.add(rowData);
+            dataLength += 4 + rowData.length;
         }
-        byte[] data = fs.getBytes();
 
         // write the table with a length prefix
-        fs = new FastSerializer(false, false);
-        fs.writeInt(data.length);
-        fs.write(data);
-
-        return fs.getBuffer();
+        ByteBuffer buf = ByteBuffer.allocate(4 + dataLength);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(dataLength);
+        for (byte[] rowData : rows) {
+            buf.putInt(rowData.length);
+            buf.put(rowData);
+        }
+        buf.flip();
+        return buf;
     }
 
     static byte[] encodeRow(VoltTable table)
@@ -71,7 +77,7 @@ public class ExportEncoder {
                 int index = i >> 3;
                 int bit = i % 8;
                 byte mask = (byte) (0x80 >>> bit);
-                nullBits[index] = (byte) (nullBits[index] & mask);
+                nullBits[index] = (byte) (nullBits[index] | mask);
             }
         }
         fs.write(nullBits);
@@ -116,6 +122,9 @@ public class ExportEncoder {
             case STRING:
                 encodeString(fs, table.getString(index));
                 break;
+            case VARBINARY:
+                encodeVarbinary(fs, table.getVarbinary(index));
+                break;
             case DECIMAL:
                 encodeDecimal(fs, table.getDecimalAsBigDecimal(index));
                 break;
@@ -151,6 +160,18 @@ public class ExportEncoder {
         fs.write(strdata);
     }
 
+    /**
+    * Write a varbinary according to the Export encoding specification
+    *
+    * @param fs
+    * @throws IOException
+    */
+    static public void encodeVarbinary(final FastSerializer fs, byte[] value)
+    throws IOException {
+        fs.writeInt(value.length);
+        fs.write(value);
+    }
+
     /**
     * Read a timestamp according to the Export encoding specification.
     *
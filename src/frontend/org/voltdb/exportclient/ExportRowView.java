@@ -0,0 +1,270 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.exportclient;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import org.voltdb.VoltType;
+
+/**
+ * A reusable, read only view of a single row of an export block. The view is
+ * moved from row to row with {@link #next(ByteBuffer)} and decodes column values
+ * straight out of the block, so unlike {@link ExportDecoderBase#decodeRow(byte[])}
+ * no per row arrays, boxed values or Strings are created. The column offsets are
+ * computed once when the view is positioned on a row.
+ *
+ * Anything handed out by the view (the string returned by {@link #getString(int)}
+ * in particular) is only valid until the view is moved to the next row.
+ */
+public class ExportRowView {
+
+    private final VoltType[] m_types;
+    private final boolean[] m_nulls;
+    // absolute position of each column's value in m_buf, for
+    // variable length columns this is the position of the length prefix
+    private final int[] m_offsets;
+    private final int m_nullArrayLength;
+    private final StringBuilder m_string = new StringBuilder(64);
+
+    private ByteBuffer m_buf;
+    private int m_rowOffset;
+    private int m_rowLength;
+
+    public ExportRowView(List<VoltType> columnTypes) {
+        m_types = columnTypes.toArray(new VoltType[columnTypes.size()]);
+        m_nulls = new boolean[m_types.length];
+        m_offsets = new int[m_types.length];
+        m_nullArrayLength = (m_types.length + 7) >> 3;
+    }
+
+    /**
+     * Position the view on the next length prefixed row of a little endian
+     * export block and advance the block past it. The block is advanced past
+     * a row that fails to decode, so the caller can skip it and carry on.
+     *
+     * @return false if there are no rows left in the block
+     */
+    public boolean next(ByteBuffer block) throws IOException {
+        if (!block.hasRemaining()) {
+            return false;
+        }
+        final int length = block.getInt();
+        final int offset = block.position();
+        if (length < 0 || length > block.remaining()) {
+            // nothing after a bad length prefix can be trusted
+            block.position(block.limit());
+            throw new IOException("Export row length " + length + " at offset " + offset +
+                    " overruns its block of length " + block.limit());
+        }
+        block.position(offset + length);
+        wrap(block, offset, length);
+        return true;
+    }
+
+    /**
+     * Position the view on the row of the given length starting at offset
+     * in a little endian buffer. The buffer's position is not changed.
+     */
+    public void wrap(ByteBuffer buf, int offset, int length) throws IOException {
+        if (buf.order() != ByteOrder.LITTLE_ENDIAN) {
+            throw new IOException("Export rows are little endian");
+        }
+        final int end = offset + length;
+        if (length < m_nullArrayLength || end > buf.limit()) {
+            throw new IOException("Export row of length " + length + " at offset " + offset +
+                    " overruns its block of length " + buf.limit());
+        }
+        m_buf = buf;
+        m_rowOffset = offset;
+        m_rowLength = length;
+
+        // The null flags were written with this mapping to column index:
+        // the byte for the flag is column index / 8, and the bit in that
+        // byte is 0x80 >> (column index % 8).
+        int pos = offset + m_nullArrayLength;
+        for (int i = 0; i < m_types.length; i++) {
+            m_nulls[i] = (buf.get(offset + (i >> 3)) & (0x80 >>> (i & 7))) != 0;
+            m_offsets[i] = pos;
+            if (m_nulls[i]) {
+                continue;
+            }
+            switch (m_types[i]) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+            case FLOAT:
+            case TIMESTAMP:
+                // every fixed width value is exported as 8 bytes
+                pos += 8;
+                break;
+            case STRING:
+            case VARBINARY:
+            case DECIMAL:
+                if (pos + 4 > end) {
+                    throw new IOException("Export row truncated in column " + i);
+                }
+                pos += 4 + buf.getInt(pos);
+                break;
+            default:
+                throw new IOException("Invalid column type: " + m_types[i]);
+            }
+            if (pos > end) {
+                throw new IOException("Export row truncated in column " + i);
+            }
+        }
+    }
+
+    public int getColumnCount() {
+        return m_types.length;
+    }
+
+    public VoltType getColumnType(int column) {
+        return m_types[column];
+    }
+
+    /**
+     * The buffer, offset and length of the row the view is positioned on,
+     * for decoders that need to pass the raw row along.
+     */
+    public ByteBuffer getRowBuffer() {
+        return m_buf;
+    }
+
+    public int getRowOffset() {
+        return m_rowOffset;
+    }
+
+    public int getRowLength() {
+        return m_rowLength;
+    }
+
+    public boolean isNull(int column) {
+        return m_nulls[column];
+    }
+
+    /**
+     * Value of an integer column of any width, or of a TIMESTAMP
+     * column in microseconds since the epoch
+     */
+    public long getLong(int column) {
+        return m_buf.getLong(m_offsets[column]);
+    }
+
+    public double getDouble(int column) {
+        return m_buf.getDouble(m_offsets[column]);
+    }
+
+    /**
+     * Length in bytes of a STRING, VARBINARY or DECIMAL column
+     */
+    public int getLength(int column) {
+        return m_buf.getInt(m_offsets[column]);
+    }
+
+    /**
+     * Decode a STRING column. The returned sequence is reused by the view and
+     * only valid until the next call, toString() it to keep it around.
+     */
+    public CharSequence getString(int column) {
+        final StringBuilder sb = m_string;
+        sb.setLength(0);
+        final ByteBuffer buf = m_buf;
+        int pos = m_offsets[column];
+        final int end = pos + 4 + buf.getInt(pos);
+        pos += 4;
+        while (pos < end) {
+            final int b = buf.get(pos++);
+            if (b >= 0) {
+                sb.append((char)b);
+                continue;
+            }
+            int extra;
+            int cp;
+            if ((b & 0xE0) == 0xC0) {
+                extra = 1;
+                cp = b & 0x1F;
+            } else if ((b & 0xF0) == 0xE0) {
+                extra = 2;
+                cp = b & 0x0F;
+            } else if ((b & 0xF8) == 0xF0) {
+                extra = 3;
+                cp = b & 0x07;
+            } else {
+                sb.append('\uFFFD');
+                continue;
+            }
+            if (pos + extra > end) {
+                sb.append('\uFFFD');
+                break;
+            }
+            boolean malformed = false;
+            for (int i = 0; i < extra; i++) {
+                final int cont = buf.get(pos + i);
+                if ((cont & 0xC0) != 0x80) {
+                    malformed = true;
+                    break;
+                }
+                cp = (cp << 6) | (cont & 0x3F);
+            }
+            if (malformed || cp > Character.MAX_CODE_POINT) {
+                sb.append('\uFFFD');
+                continue;
+            }
+            pos += extra;
+            sb.appendCodePoint(cp);
+        }
+        return sb;
+    }
+
+    /**
+     * Copy a VARBINARY (or the raw bytes of a STRING) column into dest
+     * at destOffset, returns the number of bytes copied.
+     */
+    public int getBytes(int column, byte[] dest, int destOffset) {
+        final int pos = m_offsets[column];
+        final int length = m_buf.getInt(pos);
+        for (int i = 0; i < length; i++) {
+            dest[destOffset + i] = m_buf.get(pos + 4 + i);
+        }
+        return length;
+    }
+
+    public byte[] getBytes(int column) {
+        final byte[] bytes = new byte[getLength(column)];
+        getBytes(column, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Decimals are exported as their string representation
+     */
+    public BigDecimal getDecimal(int column) {
+        final int pos = m_offsets[column];
+        final int length = m_buf.getInt(pos);
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char)m_buf.get(pos + 4 + i);
+        }
+        return new BigDecimal(chars);
+    }
+}
@@ -17,11 +17,16 @@
 
 package org.voltdb.exportclient;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -38,9 +43,12 @@ import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.json_voltpatches.JSONObject;
@@ -53,10 +61,12 @@ import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
 import org.voltdb.types.TimestampType;
 import org.voltdb.utils.Encoder;
 import org.voltdb.utils.VoltFile;
+import org.xerial.snappy.SnappyOutputStream;
 
 import au.com.bytecode.opencsv_voltpatches.CSVWriter;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 /**
  * Uses the Export feature of VoltDB to write exported tables to files.
@@ -65,7 +75,8 @@ import com.google.common.base.Throwables;
  * comma-separated values, tsv for tab-separated values --outdir {path where output files should be written} --nonce
  * {string-to-unique-ify output files} --user {username for cluster export user} --password {password for cluster export
  * user} --period {period (in minutes) to use when rolling the file over} --dateformat {format of the date/time stamp
- * added to each new rolling file}
+ * added to each new rolling file} --rollsize {size (in MB) at which a file is rolled over before its period is up}
+ * --compression [none|gzip|snappy] --type binary writes rows in their export encoding, described by the schema file
  *
  */
 public class ExportToFileClient extends ExportClientBase {
@@ -118,15 +129,117 @@ public class ExportToFileClient extends ExportClientBase {
 
     private BinaryEncoding m_binaryEncoding;
 
+    public static enum Compression {
+        NONE(""),
+        GZIP(".gz"),
+        SNAPPY(".snappy");
+
+        final String m_extension;
+
+        Compression(String extension) {
+            m_extension = extension;
+        }
+    }
+
+    // write rows as they were exported rather than as text
+    protected boolean m_binary;
+    protected Compression m_compression;
+    // roll when a file reaches this many bytes, 0 to only roll on the period
+    protected long m_rollSize;
+
     /**
     *
     */
     public void notifyRollIsComplete(File[] files) {}
 
+    /**
+     * Counts the bytes that make it to the file, after any compression
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        volatile long m_count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            m_count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            m_count += len;
+        }
+    }
+
+    /**
+     * An open output file, written as text through a CSVWriter or
+     * as binary straight to the (possibly compressed) stream
+     */
+    class ExportFile {
+        final CountingOutputStream m_counter;
+        final OutputStream m_out;
+        final CSVWriter m_csv;
+
+        ExportFile(File file) throws IOException {
+            m_counter = new CountingOutputStream(new FileOutputStream(file, false));
+            OutputStream out = m_counter;
+            if (m_compression == Compression.GZIP) {
+                out = new GZIPOutputStream(out, 4096 * 4);
+            } else if (m_compression == Compression.SNAPPY) {
+                out = new SnappyOutputStream(out);
+            }
+
+            if (m_binary) {
+                m_out = new BufferedOutputStream(out, 4096 * 4);
+                m_csv = null;
+                return;
+            }
+            m_out = out;
+            OutputStreamWriter osw = new OutputStreamWriter(out, "UTF-8");
+            if (m_fullDelimiters != null) {
+                m_csv = new CSVWriter(new BufferedWriter(osw, 4096 * 4),
+                        m_fullDelimiters[0], m_fullDelimiters[1], m_fullDelimiters[2], String.valueOf(m_fullDelimiters[3]));
+            }
+            else if (m_delimiter == ',')
+                // CSV
+                m_csv = new CSVWriter(new BufferedWriter(osw, 4096 * 4), m_delimiter);
+            else {
+                // TSV
+                m_csv = CSVWriter.getStrictTSVWriter(new BufferedWriter(osw, 4096 * 4));
+            }
+        }
+
+        void flush() throws IOException {
+            if (m_csv != null) {
+                m_csv.flush();
+            } else {
+                m_out.flush();
+            }
+        }
+
+        void close() throws IOException {
+            if (m_csv != null) {
+                m_csv.close();
+            } else {
+                m_out.close();
+            }
+        }
+
+        long bytesWritten() {
+            return m_counter.m_count;
+        }
+    }
+
     class PeriodicExportContext {
         File m_dirContainingFiles;
-        final Map<FileHandle, CSVWriter> m_writers = new TreeMap<FileHandle, CSVWriter>();
+        final Map<FileHandle, ExportFile> m_writers = new TreeMap<FileHandle, ExportFile>();
         boolean m_hasClosed = false;
+        // set once a file in this batch has grown past the roll size
+        final AtomicBoolean m_rollRequested = new AtomicBoolean(false);
         protected Date start;
         protected final Set<String> m_batchSchemasWritten = new HashSet<String>();
 
@@ -255,8 +368,8 @@ public class ExportToFileClient extends ExportClientBase {
             if (m_hasClosed) return;
 
             // flush and close any files that are open
-            for (Entry<FileHandle, CSVWriter> entry : m_writers.entrySet()) {
-                CSVWriter writer = entry.getValue();
+            for (Entry<FileHandle, ExportFile> entry : m_writers.entrySet()) {
+                ExportFile writer = entry.getValue();
                 if (writer == null) continue;
                 try {
                     writer.flush();
@@ -351,9 +464,16 @@ public class ExportToFileClient extends ExportClientBase {
             notifyRollIsComplete(notifySet);
         }
 
-        CSVWriter getWriter(String tableName, long generation) {
+        ExportFile getWriter(String tableName, long generation) {
+            // each table's decoder writes from its own thread
+            synchronized (m_writers) {
+                return getWriterLocked(tableName, generation);
+            }
+        }
+
+        private ExportFile getWriterLocked(String tableName, long generation) {
             FileHandle handle = new FileHandle(tableName, generation);
-            CSVWriter writer = m_writers.get(handle);
+            ExportFile writer = m_writers.get(handle);
             if (writer != null)
                 return writer;
 
@@ -366,18 +486,7 @@ public class ExportToFileClient extends ExportClientBase {
                 throw new RuntimeException();
             }
             try {
-                OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(newFile, false), "UTF-8");
-                if (m_fullDelimiters != null) {
-                    writer = new CSVWriter(new BufferedWriter(osw, 4096 * 4),
-                            m_fullDelimiters[0], m_fullDelimiters[1], m_fullDelimiters[2], String.valueOf(m_fullDelimiters[3]));
-                }
-                else if (m_delimiter == ',')
-                    // CSV
-                    writer = new CSVWriter(new BufferedWriter(osw, 4096 * 4), m_delimiter);
-                else {
-                    // TSV
-                    writer = CSVWriter.getStrictTSVWriter(new BufferedWriter(osw, 4096 * 4));
-                }
+                writer = new ExportFile(newFile);
             }
             catch (Exception e) {
                 m_logger.error(e.getMessage());
@@ -443,25 +552,32 @@ public class ExportToFileClient extends ExportClientBase {
     }
 
 
-    // This class outputs exported rows converted to CSV or TSV values
-    // for the table named in the constructor's AdvertisedDataSource
+    // This class outputs exported rows converted to CSV or TSV values,
+    // or as binary, for the table named in the constructor's AdvertisedDataSource
     class ExportToFileDecoder extends ExportDecoderBase {
         private final long m_generation;
         private final String m_tableName;
         protected String m_schemaString = "ERROR SERIALIZING SCHEMA";
         private final HashSet<AdvertisedDataSource> m_sources = new HashSet<AdvertisedDataSource>();
-        private FutureTask<CSVWriter> m_firstBlockTask;
-        private CSVWriter m_writer;
+        private FutureTask<ExportFile> m_firstBlockTask;
+        private ExportFile m_writer;
+        private PeriodicExportContext m_writerContext;
+        private final ExportRowView m_row;
+        // blocks for every partition of the table are written from this thread
+        // so a busy table doesn't hold up the others
+        private final ListeningExecutorService m_es;
 
         private void resetWriter() {
-            m_firstBlockTask = new FutureTask<CSVWriter>(new Callable<CSVWriter>() {
+            final PeriodicExportContext context = m_current;
+            m_firstBlockTask = new FutureTask<ExportFile>(new Callable<ExportFile>() {
                 @Override
-                public CSVWriter call() throws Exception {
-                    CSVWriter writer = m_current.getWriter(m_tableName, m_generation);
-                    m_current.writeSchema(m_tableName, m_generation, m_schemaString);
+                public ExportFile call() throws Exception {
+                    ExportFile writer = context.getWriter(m_tableName, m_generation);
+                    context.writeSchema(m_tableName, m_generation, m_schemaString);
+                    m_writerContext = context;
                     return writer;
                 }
-            });;
+            });
         }
 
         public ExportToFileDecoder(
@@ -471,6 +587,8 @@ public class ExportToFileClient extends ExportClientBase {
             super(source);
             m_generation = generation;
             m_tableName = tableName;
+            m_row = new ExportRowView(source.columnTypes);
+            m_es = CoreUtils.getCachedSingleThreadExecutor("ExportToFile writer for " + tableName, 5000);
 
             setSchemaForSource(source);
             resetWriter();
@@ -510,39 +628,108 @@ public class ExportToFileClient extends ExportClientBase {
             }
         }
 
+        @Override
+        public ListeningExecutorService getExecutor() {
+            return m_es;
+        }
+
         @Override
         public boolean processRow(int rowSize, byte[] rowData) {
-            // Grab the data row
-            Object[] row = null;
+            ByteBuffer row = ByteBuffer.wrap(rowData, 0, rowSize);
+            if (m_binary) {
+                try {
+                    writeBinary(rowSize, row);
+                } catch (IOException e) {
+                    Throwables.propagate(e);
+                }
+                return true;
+            }
             try {
-                row = decodeRow(rowData);
+                m_row.wrap(row.order(ByteOrder.LITTLE_ENDIAN), 0, rowSize);
             } catch (IOException e) {
                 m_logger.error("Unable to decode row for table: " + m_source.tableName);
                 return false;
             }
+            return writeRow();
+        }
 
+        @Override
+        public void processBlock(ByteBuffer block) {
+            if (m_binary) {
+                // the block is already a run of length prefixed rows, write it as is
+                try {
+                    if (block.hasArray()) {
+                        m_writer.m_out.write(block.array(), block.arrayOffset() + block.position(), block.remaining());
+                    } else {
+                        byte[] chunk = new byte[Math.min(block.remaining(), 4096 * 4)];
+                        while (block.hasRemaining()) {
+                            int length = Math.min(block.remaining(), chunk.length);
+                            block.get(chunk, 0, length);
+                            m_writer.m_out.write(chunk, 0, length);
+                        }
+                    }
+                } catch (IOException e) {
+                    Throwables.propagate(e);
+                }
+                block.position(block.limit());
+                return;
+            }
+            while (block.hasRemaining()) {
+                try {
+                    m_row.next(block);
+                } catch (IOException e) {
+                    m_logger.error("Unable to decode row for table: " + m_source.tableName);
+                    continue;
+                }
+                writeRow();
+            }
+        }
+
+        private void writeBinary(int rowSize, ByteBuffer row) throws IOException {
+            OutputStream out = m_writer.m_out;
+            // same little endian length prefix the rows are exported with
+            out.write(rowSize & 0xFF);
+            out.write((rowSize >>> 8) & 0xFF);
+            out.write((rowSize >>> 16) & 0xFF);
+            out.write((rowSize >>> 24) & 0xFF);
+            out.write(row.array(), row.arrayOffset() + row.position(), rowSize);
+        }
+
+        private boolean writeRow() {
             try {
                 String[] fields = new String[m_tableSchema.size() - m_firstfield];
 
                 for (int i = m_firstfield; i < m_tableSchema.size(); i++) {
-                    if (row[i] == null) {
+                    if (m_row.isNull(i)) {
                         fields[i - m_firstfield] = "NULL";
-                    } else if (m_tableSchema.get(i) == VoltType.VARBINARY) {
+                        continue;
+                    }
+                    switch (m_tableSchema.get(i)) {
+                    case VARBINARY:
                         if (m_binaryEncoding == BinaryEncoding.HEX) {
-                            fields[i - m_firstfield] = Encoder.hexEncode((byte[]) row[i]);
+                            fields[i - m_firstfield] = Encoder.hexEncode(m_row.getBytes(i));
                         } else {
-                            fields[i - m_firstfield] = Encoder.base64Encode((byte[]) row[i]);
+                            fields[i - m_firstfield] = Encoder.base64Encode(m_row.getBytes(i));
                         }
-                    } else if (m_tableSchema.get(i) == VoltType.STRING) {
-                        fields[i - m_firstfield] = (String) row[i];
-                    } else if (m_tableSchema.get(i) == VoltType.TIMESTAMP) {
-                        TimestampType timestamp = (TimestampType) row[i];
+                        break;
+                    case STRING:
+                        fields[i - m_firstfield] = m_row.getString(i).toString();
+                        break;
+                    case TIMESTAMP:
+                        TimestampType timestamp = new TimestampType(m_row.getLong(i));
                         fields[i - m_firstfield] = m_ODBCDateformat.get().format(timestamp.asApproximateJavaDate());
-                    } else {
-                        fields[i - m_firstfield] = row[i].toString();
+                        break;
+                    case FLOAT:
+                        fields[i - m_firstfield] = Double.toString(m_row.getDouble(i));
+                        break;
+                    case DECIMAL:
+                        fields[i - m_firstfield] = m_row.getDecimal(i).toString();
+                        break;
+                    default:
+                        fields[i - m_firstfield] = Long.toString(m_row.getLong(i));
                     }
                 }
-                m_writer.writeNext(fields);
+                m_writer.m_csv.writeNext(fields);
             }
             catch (Exception x) {
                 x.printStackTrace();
@@ -571,13 +758,18 @@ public class ExportToFileClient extends ExportClientBase {
          */
         @Override
         public void onBlockCompletion() {
+            boolean full = false;
             try {
                 m_writer.flush();
+                full = m_rollSize > 0 && m_writer.bytesWritten() >= m_rollSize;
             } catch (Throwable t) {
                 Throwables.propagate(t);
             } finally {
                 m_batchLock.readLock().unlock();
             }
+            if (full) {
+                requestRoll(m_writerContext);
+            }
         }
 
         @Override
@@ -632,6 +824,28 @@ public class ExportToFileClient extends ExportClientBase {
                               boolean autodiscoverTopology,
                               TimeZone tz,
                               BinaryEncoding be) {
+        this(delimiter, nonce, outdir, period, dateformatString, fullDelimiters,
+                firstfield, useAdminPorts, batched, withSchema, throughputMonitorPeriod,
+                autodiscoverTopology, tz, be, false, Compression.NONE, 0);
+    }
+
+    public ExportToFileClient(char delimiter,
+                              String nonce,
+                              File outdir,
+                              int period,
+                              String dateformatString,
+                              String fullDelimiters,
+                              int firstfield,
+                              boolean useAdminPorts,
+                              boolean batched,
+                              boolean withSchema,
+                              int throughputMonitorPeriod,
+                              boolean autodiscoverTopology,
+                              TimeZone tz,
+                              BinaryEncoding be,
+                              boolean binary,
+                              Compression compression,
+                              long rollSize) {
         super(useAdminPorts, throughputMonitorPeriod, autodiscoverTopology);
         configureInternal(
                 delimiter,
@@ -644,7 +858,10 @@ public class ExportToFileClient extends ExportClientBase {
                 batched,
                 withSchema,
                 tz,
-                be);
+                be,
+                binary,
+                compression,
+                rollSize);
     }
 
     @Override
@@ -692,6 +909,10 @@ public class ExportToFileClient extends ExportClientBase {
         m_batchLock.writeLock().lock();
         final PeriodicExportContext previous = m_current;
         try {
+            if (isTooSoonToRoll(previous)) {
+                // a size based roll just happened
+                return;
+            }
             m_current = new PeriodicExportContext();
 
             m_logger.trace("Rolling batch.");
@@ -708,6 +929,48 @@ public class ExportToFileClient extends ExportClientBase {
         previous.closeAllWriters();
     }
 
+    /**
+     * A new batch or file is named after the time it is started, it can't
+     * be rolled again until the date format gives it a different name.
+     */
+    private boolean isTooSoonToRoll(PeriodicExportContext context) {
+        SimpleDateFormat format = m_dateformat.get();
+        return format.format(new Date()).equals(format.format(context.start));
+    }
+
+    /**
+     * Ask for the batch to be rolled because one of its files is full. The
+     * roll is done on the rotation thread, rolling from the writer would
+     * wait on the writers of other tables.
+     */
+    void requestRoll(final PeriodicExportContext context) {
+        if (!context.m_rollRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            m_ses.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (m_current != context) {
+                        // the period ran out first
+                        return;
+                    }
+                    if (isTooSoonToRoll(context)) {
+                        m_ses.schedule(this, 1, TimeUnit.SECONDS);
+                        return;
+                    }
+                    try {
+                        roll();
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down, the writers are about to be closed anyway
+        }
+    }
+
     protected void logConfigurationInfo() {
 
         StringBuilder sb = new StringBuilder();
@@ -728,13 +991,20 @@ public class ExportToFileClient extends ExportClientBase {
         }
 
         m_logger.info(String.format("Writing to disk in %s format",
-                (m_delimiter == ',') ? "CSV" : "TSV"));
+                m_binary ? "binary" : (m_delimiter == ',') ? "CSV" : "TSV"));
+        if (m_compression != Compression.NONE) {
+            m_logger.info("Compressing export files with " + m_compression.name().toLowerCase());
+        }
         m_logger.info(String.format("Prepending export data files with nonce: %s",
                 m_nonce));
         m_logger.info(String.format("Using date format for file names: %s",
                 m_dateFormatOriginalString));
         m_logger.info(String.format("Rotate export files every %d minute%s",
                 m_period, m_period == 1 ? "" : "s"));
+        if (m_rollSize > 0) {
+            m_logger.info(String.format("Rotate export files once one reaches %d MB",
+                    m_rollSize / (1024 * 1024)));
+        }
         m_logger.info(String.format("Writing export files to dir: %s",
                 m_outDir));
         if (m_firstfield == 0) {
@@ -751,11 +1021,13 @@ public class ExportToFileClient extends ExportClientBase {
         System.out.println("java -cp <classpath> org.voltdb.exportclient.ExportToFileClient "
                         + "--servers server1[,server2,...,serverN] "
                         + "--connect (admin|client) "
-                        + "--type (csv|tsv) "
+                        + "--type (csv|tsv|binary) "
                         + "--nonce file_prefix "
                         + "[--batched] "
                         + "[--with-schema] "
                         + "[--period rolling_period_in_minutes] "
+                        + "[--rollsize rolling_size_in_MB] "
+                        + "[--compression (none|gzip|snappy)] "
                         + "[--dateformat date_pattern_for_file_name] "
                         + "[--outdir target_directory] "
                         + "[--skipinternals] "
@@ -788,6 +1060,9 @@ public class ExportToFileClient extends ExportClientBase {
         boolean autodiscoverTopolgy = true;
         TimeZone tz = VoltDB.GMT_TIMEZONE;
         BinaryEncoding be = BinaryEncoding.HEX;
+        boolean binary = false;
+        Compression compression = Compression.NONE;
+        long rollSize = 0;
 
         for (int ii = 0; ii < args.length; ii++) {
             String arg = args[ii];
@@ -836,8 +1111,12 @@ public class ExportToFileClient extends ExportClientBase {
                     delimiter = ',';
                 } else if (type.equalsIgnoreCase("tsv")) {
                     delimiter = '\t';
+                } else if (type.equalsIgnoreCase("binary")) {
+                    // the delimiter is unused but marks the type as given
+                    delimiter = ',';
+                    binary = true;
                 } else {
-                    System.err.println("Error: --type must be one of CSV or TSV");
+                    System.err.println("Error: --type must be one of CSV, TSV or BINARY");
                     printHelpAndQuit(-1);
                 }
                 ii++;
@@ -916,6 +1195,34 @@ public class ExportToFileClient extends ExportClientBase {
                 }
                 ii++;
             }
+            else if (arg.equals("--rollsize")) {
+                if (args.length < ii + 1) {
+                    System.err.println("Error: Not enough args following --rollsize");
+                    printHelpAndQuit(-1);
+                }
+                rollSize = Long.parseLong(args[ii + 1]);
+                if (rollSize < 1) {
+                    System.err.println("Error: Specified value for --rollsize must be >= 1.");
+                    printHelpAndQuit(-1);
+                }
+                rollSize *= 1024 * 1024;
+                ii++;
+            }
+            else if (arg.equals("--compression")) {
+                if (args.length < ii + 1) {
+                    System.err.println("Error: Not enough args following --compression");
+                    printHelpAndQuit(-1);
+                }
+                try {
+                    compression = Compression.valueOf(args[ii + 1].trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.err.println(
+                            "The compression \"" + args[ii + 1].trim() +
+                            "\" is unsupported. Must be one of [ none | gzip | snappy ]");
+                    printHelpAndQuit(-1);
+                }
+                ii++;
+            }
             else if (arg.equals("--dateformat")) {
                 if (args.length < ii + 1) {
                     System.err.println("Error: Not enough args following --dateformat");
@@ -1001,6 +1308,10 @@ public class ExportToFileClient extends ExportClientBase {
             System.err.println("ExportToFile: must provide an output type");
             printHelpAndQuit(-1);
         }
+        if (binary && firstfield != 0) {
+            System.err.println("ExportToFile: --skipinternals can't be used with binary output");
+            printHelpAndQuit(-1);
+        }
 
         // create the export to file client
         ExportToFileClient client = new ExportToFileClient(delimiter,
@@ -1016,7 +1327,10 @@ public class ExportToFileClient extends ExportClientBase {
                                                            throughputMonitorPeriod,
                                                            autodiscoverTopolgy,
                                                            tz,
-                                                           be);
+                                                           be,
+                                                           binary,
+                                                           compression,
+                                                           rollSize);
 
         // add all of the servers specified
         for (String server : volt_servers) {
@@ -1052,14 +1366,18 @@ public class ExportToFileClient extends ExportClientBase {
             throw new IllegalArgumentException("ExportToFile: must provide a filename nonce");
         }
         char delimiter = '\0';
+        boolean binary = false;
         String type = conf.getProperty("type", "").trim();
         if (type != null) {
             if (type.equalsIgnoreCase("csv")) {
                 delimiter = ',';
             } else if (type.equalsIgnoreCase("tsv")) {
                 delimiter = '\t';
+            } else if (type.equalsIgnoreCase("binary")) {
+                delimiter = ',';
+                binary = true;
             } else {
-                throw new IllegalArgumentException("Error: --type must be one of CSV or TSV");
+                throw new IllegalArgumentException("Error: --type must be one of CSV, TSV or BINARY");
             }
         }
         if (delimiter == '\0') {
@@ -1089,6 +1407,15 @@ public class ExportToFileClient extends ExportClientBase {
             throw new IllegalArgumentException("Error: Specified value for --period must be >= 1.");
         }
 
+        long rollSize = Long.parseLong(conf.getProperty("rollsize", "0").trim());
+        if (rollSize < 0) {
+            throw new IllegalArgumentException("Error: Specified value for --rollsize must be >= 1.");
+        }
+        rollSize *= 1024 * 1024;
+
+        Compression compression = Compression.valueOf(
+                conf.getProperty("compression", "NONE").trim().toUpperCase());
+
         String dateformatString = conf.getProperty("dateformat", "yyyyMMddHHmmss").trim();
         boolean batched = Boolean.parseBoolean(conf.getProperty("batched", "false"));
         boolean withSchema = Boolean.parseBoolean(conf.getProperty("with-schema", "false"));
@@ -1118,7 +1445,10 @@ public class ExportToFileClient extends ExportClientBase {
                 batched,
                 withSchema,
                 tz,
-                encoding);
+                encoding,
+                binary,
+                compression,
+                rollSize);
     }
 
     private void configureInternal(
@@ -1132,9 +1462,18 @@ public class ExportToFileClient extends ExportClientBase {
                               boolean batched,
                               boolean withSchema,
                               final TimeZone tz,
-                              final BinaryEncoding be) {
+                              final BinaryEncoding be,
+                              boolean binary,
+                              Compression compression,
+                              long rollSize) {
+        if (binary && firstfield != 0) {
+            throw new IllegalArgumentException("ExportToFile: skipinternals can't be used with binary output");
+        }
         m_delimiter = delimiter;
-        m_extension = (delimiter == ',') ? ".csv" : ".tsv";
+        m_binary = binary;
+        m_compression = compression;
+        m_rollSize = rollSize;
+        m_extension = (binary ? ".bin" : (delimiter == ',') ? ".csv" : ".tsv") + compression.m_extension;
         m_nonce = nonce;
         m_outDir = outdir;
         m_tableDecoders = new HashMap<Long, HashMap<String, ExportToFileDecoder>>();
@@ -1159,7 +1498,8 @@ public class ExportToFileClient extends ExportClientBase {
         m_binaryEncoding = be;
         m_firstfield = firstfield;
         m_batched = batched;
-        m_withSchema = withSchema;
+        // binary files can't be read without knowing the columns
+        m_withSchema = withSchema || binary;
 
         if (fullDelimiters != null) {
             fullDelimiters = StringEscapeUtils.unescapeHtml4(fullDelimiters);
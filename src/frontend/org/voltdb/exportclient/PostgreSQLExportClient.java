@@ -20,7 +20,12 @@
 package org.voltdb.exportclient;
 
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.sql.*;
 import java.util.Properties;
 
@@ -35,201 +40,410 @@ public class PostgreSQLExportClient extends ExportClientBase {
     private static final VoltLogger m_logger = new VoltLogger("ExportClient");
     private static Connection conn = null;
     private static String postgres_schema_prefix;
+    private static int postgres_batch_size = 1000;
+
+    // How often each decoder logs its throughput and commit latency
+    static final long REPORT_INTERVAL_MS = 10000;
 
     public PostgreSQLExportClient(boolean useAdminPorts) {
         super(useAdminPorts);
     }
 
-    static class PostgresDecoder extends ExportDecoderBase {
-        private PreparedStatement pstmt = null;
+    /**
+     * Create the schema for the source's generation and the table for its
+     * rows if they don't already exist.
+     */
+    static void createSchemaAndTable(Connection conn, String schemaPrefix, AdvertisedDataSource source) {
+        Statement stmt = null;
+        try {
+            stmt = conn.createStatement();
+        } catch (SQLException e) {
+            m_logger.fatal("createStatement failed for " + source.tableName);
+            System.exit(-1);
+        }
 
-        public PostgresDecoder(AdvertisedDataSource source) {
-            super(source);
+        try {
+            String schemaExistsQuery = "SELECT EXISTS(SELECT * " +
+                "FROM information_schema.schemata WHERE schema_name = '" +
+                schemaPrefix + source.m_generation + "')";
+
+            ResultSet schemaExists = stmt.executeQuery(schemaExistsQuery);
+            schemaExists.next();
+            if (!schemaExists.getBoolean(1)) {
+                stmt.execute("CREATE SCHEMA " + schemaPrefix + source.m_generation);
+                conn.commit();
+            }
+            schemaExists.close();
+            schemaExistsQuery = null;
+        } catch (SQLException e) {
+            m_logger.fatal("Schema creation failed");
+            System.exit(-1);
+        }
 
-            m_logger.debug("New PostgresDecoder for " + m_source.tableName);
+        try {
+            String createTableQuery = "CREATE TABLE IF NOT EXISTS " +
+                schemaPrefix + source.m_generation +
+                "." + source.tableName + " (";
 
-            Statement stmt = null;
-            try {
-                stmt = conn.createStatement();
-            } catch (SQLException e) {
-                m_logger.fatal("createStatement failed for " + m_source.tableName);
-                System.exit(-1);
-            }
+            for (int i = 0; i < source.columnNames.size(); i++) {
+                if (i != 0) {
+                    createTableQuery += ", ";
+                }
 
-            try {
-                String schemaExistsQuery = "SELECT EXISTS(SELECT * " +
-                    "FROM information_schema.schemata WHERE schema_name = '" +
-                    postgres_schema_prefix + m_source.m_generation + "')";
-
-                ResultSet schemaExists = stmt.executeQuery(schemaExistsQuery);
-                schemaExists.next();
-                if (!schemaExists.getBoolean(1)) {
-                    stmt.execute("CREATE SCHEMA " + postgres_schema_prefix + m_source.m_generation);
-                    conn.commit();
+                createTableQuery += source.columnNames.get(i) + " ";
+
+                if (source.columnTypes.get(i) == VoltType.TINYINT) {
+                    createTableQuery += "SMALLINT " +
+                        "CONSTRAINT " + source.columnNames.get(i) +
+                        "_tinyint CHECK (-128 <= " + source.columnNames.get(i) +
+                        " AND " + source.columnNames.get(i) + " <= 127)";
+                } else if (source.columnTypes.get(i) == VoltType.STRING) {
+                    // PostgreSQL's TEXT type is unlimited in size
+                    // and should be suitable for most use cases.
+                    // Would be nice to create a VARCHAR with the
+                    // same limit as Volt, but it doesn't look like
+                    // we can get that information from here.
+
+                    createTableQuery += "TEXT";
+                } else if (source.columnTypes.get(i) == VoltType.DECIMAL) {
+                    // Same deal as STRING, but currently DECIMAL's
+                    // precision and scale cannot be changed, so
+                    // it's not horrible to do it this way.
+
+                    createTableQuery += "DECIMAL(" +
+                        VoltDecimalHelper.kDefaultPrecision +
+                        "," + VoltDecimalHelper.kDefaultScale + ")";
+                } else if (source.columnTypes.get(i) == VoltType.FLOAT) {
+                    createTableQuery += "DOUBLE PRECISION";
+                } else if (source.columnTypes.get(i) == VoltType.VARBINARY) {
+                    createTableQuery += "BYTEA";
+                } else {
+                    createTableQuery += source.columnTypes.get(i).name();
                 }
-                schemaExists.close();
-                schemaExistsQuery = null;
-            } catch (SQLException e) {
-                m_logger.fatal("Schema creation failed");
-                System.exit(-1);
             }
 
-            try {
-                String createTableQuery = "CREATE TABLE IF NOT EXISTS " +
-                    postgres_schema_prefix + m_source.m_generation +
-                    "." + m_source.tableName + " (";
+            createTableQuery += ")";
 
-                for (int i = 0; i < m_source.columnNames.size(); i++) {
-                    if (i != 0) {
-                        createTableQuery += ", ";
-                    }
+            stmt.execute(createTableQuery);
+            createTableQuery = null;
+            conn.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
 
-                    createTableQuery += m_source.columnNames.get(i) + " ";
-
-                    if (m_source.columnTypes.get(i) == VoltType.TINYINT) {
-                        createTableQuery += "SMALLINT " +
-                            "CONSTRAINT " + m_source.columnNames.get(i) +
-                            "_tinyint CHECK (-128 <= " + m_source.columnNames.get(i) +
-                            " AND " + m_source.columnNames.get(i) + " <= 127)";
-                    } else if (m_source.columnTypes.get(i) == VoltType.STRING) {
-                        // PostgreSQL's TEXT type is unlimited in size
-                        // and should be suitable for most use cases.
-                        // Would be nice to create a VARCHAR with the
-                        // same limit as Volt, but it doesn't look like
-                        // we can get that information from here.
-
-                        createTableQuery += "TEXT";
-                    } else if (m_source.columnTypes.get(i) == VoltType.DECIMAL) {
-                        // Same deal as STRING, but currently DECIMAL's
-                        // precision and scale cannot be changed, so
-                        // it's not horrible to do it this way.
-
-                        createTableQuery += "DECIMAL(" +
-                            VoltDecimalHelper.kDefaultPrecision +
-                            "," + VoltDecimalHelper.kDefaultScale + ")";
-                    } else if (m_source.columnTypes.get(i) == VoltType.FLOAT) {
-                        createTableQuery += "DOUBLE PRECISION";
-                    } else if (m_source.columnTypes.get(i) == VoltType.VARBINARY) {
-                        createTableQuery += "BYTEA";
-                    } else {
-                        createTableQuery += m_source.columnTypes.get(i).name();
-                    }
-                }
+    /**
+     * Loads each export block in one transaction. Rows are sent to the server
+     * in JDBC batches, or streamed with COPY when the PostgreSQL driver supports
+     * it, and committed when the block completes. The block is only acked once
+     * onBlockCompletion returns, so a failed commit rolls back and restarts it.
+     */
+    static class PostgresDecoder extends ExportDecoderBase {
+        private final Connection m_conn;
+        private final int m_batchSize;
+        private final String m_qualifiedTableName;
+        private PreparedStatement pstmt = null;
 
-                createTableQuery += ")";
+        // The driver's CopyManager and its copyIn(String, Reader) when loading with COPY
+        private final Object m_copyManager;
+        private final Method m_copyIn;
+        private final String m_copyStatement;
+        private final StringBuilder m_copyData = new StringBuilder();
+        private final ExportRowView m_row;
 
-                stmt.execute(createTableQuery);
-                createTableQuery = null;
-                conn.commit();
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
-            try {
-                stmt.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
+        // rows in the current block and the ones not yet sent to the server
+        private int m_blockRows = 0;
+        private int m_pendingRows = 0;
 
-            String pstmtString = "INSERT INTO " +
-                postgres_schema_prefix + m_source.m_generation + "." +
-                m_source.tableName + " (";
-            for (int i = 0; i < m_source.columnNames.size(); i++) {
-                if (i != 0) {
-                    pstmtString += ", ";
-                }
+        // totals since the last throughput report
+        long m_rowsCommitted = 0;
+        long m_commits = 0;
+        long m_commitNanos = 0;
+        private long m_lastReportTime = System.currentTimeMillis();
 
-                pstmtString += m_source.columnNames.get(i);
-            }
-            pstmtString += ") VALUES (";
+        public PostgresDecoder(AdvertisedDataSource source, Connection conn, String schemaPrefix, int batchSize) {
+            super(source);
+
+            m_logger.debug("New PostgresDecoder for " + m_source.tableName);
+            m_conn = conn;
+            m_batchSize = batchSize;
+            m_row = new ExportRowView(m_source.columnTypes);
+            m_qualifiedTableName = schemaPrefix + m_source.m_generation + "." + m_source.tableName;
+
+            StringBuilder columns = new StringBuilder();
+            StringBuilder params = new StringBuilder();
             for (int i = 0; i < m_source.columnNames.size(); i++) {
                 if (i != 0) {
-                    pstmtString += ", ";
+                    columns.append(", ");
+                    params.append(", ");
                 }
-
-                pstmtString += "?";
+                columns.append(m_source.columnNames.get(i));
+                params.append("?");
             }
-            pstmtString += ")";
 
+            Object copyManager = null;
+            Method copyIn = null;
             try {
-                pstmt = conn.prepareStatement(pstmtString);
-            } catch (SQLException e) {
-                m_logger.fatal("Creation of PreparedStatement for table " + m_source.tableName + " failed");
-                System.exit(-1);
+                Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+                if (conn.isWrapperFor(pgConnection)) {
+                    copyManager = pgConnection.getMethod("getCopyAPI").invoke(conn.unwrap(pgConnection));
+                    copyIn = copyManager.getClass().getMethod("copyIn", String.class, Reader.class);
+                }
+            } catch (Exception e) {
+                // not the PostgreSQL driver, or one without COPY support
+                copyManager = null;
+                copyIn = null;
+            }
+            m_copyManager = copyManager;
+            m_copyIn = copyIn;
+            m_copyStatement = "COPY " + m_qualifiedTableName + " (" + columns + ") FROM STDIN WITH CSV";
+
+            if (m_copyManager != null) {
+                m_logger.info("Loading table " + m_source.tableName + " with COPY");
+            } else {
+                String pstmtString = "INSERT INTO " + m_qualifiedTableName +
+                    " (" + columns + ") VALUES (" + params + ")";
+                try {
+                    pstmt = m_conn.prepareStatement(pstmtString);
+                } catch (SQLException e) {
+                    m_logger.fatal("Creation of PreparedStatement for table " + m_source.tableName + " failed");
+                    System.exit(-1);
+                }
             }
-            pstmtString = null;
         }
 
         @Override
-        public void onBlockCompletion() {
+        public void onBlockStart() {
+            // a restarted block starts over from nothing
+            m_blockRows = 0;
+            m_pendingRows = 0;
+            m_copyData.setLength(0);
+        }
+
+        @Override
+        public void onBlockCompletion() throws RestartBlockException {
             try {
-                conn.commit();
+                flush();
+                long start = System.nanoTime();
+                m_conn.commit();
+                m_commitNanos += System.nanoTime() - start;
             } catch (SQLException e) {
-                m_logger.error("commit() failed for row in table " + m_source.tableName);
+                m_logger.error("commit() failed for block in table " + m_source.tableName +
+                        ", retrying the block", e);
+                rollback();
+                throw new RestartBlockException(true);
             }
+            m_commits++;
+            m_rowsCommitted += m_blockRows;
+            m_blockRows = 0;
+            reportStats();
         }
 
         @Override
-        public boolean processRow(int rowSize, byte[] rowData) {
-            m_logger.debug("In processRow for table " + m_source.tableName);
-
-            Object[] row = null;
+        public boolean processRow(int rowSize, byte[] rowData) throws RestartBlockException {
             try {
-                row = decodeRow(rowData);
+                m_row.wrap(ByteBuffer.wrap(rowData).order(ByteOrder.LITTLE_ENDIAN), 0, rowSize);
             } catch (IOException e) {
                 m_logger.error("Unable to decode row for table: " + m_source.tableName);
                 return false;
             }
+            return addRow();
+        }
 
-            try {
-                for (int i = 0; i < m_source.columnTypes.size(); i++) {
-                    if (row[i] == null) {
-                        pstmt.setNull(i + 1, Types.NULL);
-                    } else if (m_source.columnTypes.get(i) == VoltType.DECIMAL) {
-                        pstmt.setBigDecimal(i + 1, (BigDecimal)row[i]);
-                    } else if (m_source.columnTypes.get(i) == VoltType.TINYINT) {
-                        pstmt.setByte(i + 1, (Byte)row[i]);
-                    } else if (m_source.columnTypes.get(i) == VoltType.SMALLINT) {
-                        pstmt.setShort(i + 1, (Short)row[i]);
-                    } else if (m_source.columnTypes.get(i) == VoltType.INTEGER) {
-                        pstmt.setInt(i + 1, (Integer)row[i]);
-                    } else if (m_source.columnTypes.get(i) == VoltType.BIGINT) {
-                        pstmt.setLong(i + 1, (Long)row[i]);
-                    } else if (m_source.columnTypes.get(i) == VoltType.FLOAT) {
-                        pstmt.setDouble(i + 1, (Double)row[i]);
-                    } else if (m_source.columnTypes.get(i) == VoltType.STRING) {
-                        pstmt.setString(i + 1, (String)row[i]);
-                    } else if (m_source.columnTypes.get(i) == VoltType.TIMESTAMP) {
-                        TimestampType timestamp = (TimestampType)row[i];
-                        pstmt.setTimestamp(i + 1, timestamp.asJavaTimestamp());
-                    } else if (m_source.columnTypes.get(i) == VoltType.VARBINARY) {
-                        byte[] bytes = (byte[])row[i];
-                        pstmt.setBytes(i + 1, bytes);
-                    }
+        @Override
+        public void processBlock(ByteBuffer block) throws RestartBlockException {
+            // read the rows in place rather than copying each one out
+            while (block.hasRemaining()) {
+                try {
+                    m_row.next(block);
+                } catch (IOException e) {
+                    m_logger.error("Unable to decode row for table: " + m_source.tableName);
+                    continue;
                 }
+                addRow();
+            }
+        }
 
-                try {
-                    pstmt.executeUpdate();
-                } catch (SQLException e) {
-                    m_logger.error("executeUpdate() failed in processRow() for table " + m_source.tableName);
-                    return false;
+        private boolean addRow() throws RestartBlockException {
+            try {
+                if (m_copyManager != null) {
+                    appendCopyRow(m_copyData, m_row);
+                } else {
+                    bindRow(m_row);
+                    pstmt.addBatch();
                 }
             } catch (Exception e) {
                 m_logger.error("processRow() failed in table " + m_source.tableName);
                 return false;
             }
+            m_blockRows++;
+
+            // bound the memory a large block holds on to, it still commits once
+            if (++m_pendingRows >= m_batchSize) {
+                try {
+                    flush();
+                } catch (SQLException e) {
+                    m_logger.error("Sending rows failed in processRow() for table " + m_source.tableName +
+                            ", retrying the block", e);
+                    rollback();
+                    throw new RestartBlockException(true);
+                }
+            }
             return true;
         }
 
+        private void bindRow(ExportRowView row) throws SQLException {
+            for (int i = 0; i < row.getColumnCount(); i++) {
+                if (row.isNull(i)) {
+                    pstmt.setNull(i + 1, Types.NULL);
+                    continue;
+                }
+                switch (row.getColumnType(i)) {
+                case TINYINT:
+                    pstmt.setByte(i + 1, (byte)row.getLong(i));
+                    break;
+                case SMALLINT:
+                    pstmt.setShort(i + 1, (short)row.getLong(i));
+                    break;
+                case INTEGER:
+                    pstmt.setInt(i + 1, (int)row.getLong(i));
+                    break;
+                case BIGINT:
+                    pstmt.setLong(i + 1, row.getLong(i));
+                    break;
+                case FLOAT:
+                    pstmt.setDouble(i + 1, row.getDouble(i));
+                    break;
+                case STRING:
+                    pstmt.setString(i + 1, row.getString(i).toString());
+                    break;
+                case TIMESTAMP:
+                    pstmt.setTimestamp(i + 1, new TimestampType(row.getLong(i)).asJavaTimestamp());
+                    break;
+                case VARBINARY:
+                    pstmt.setBytes(i + 1, row.getBytes(i));
+                    break;
+                case DECIMAL:
+                    pstmt.setBigDecimal(i + 1, row.getDecimal(i));
+                    break;
+                default:
+                    throw new SQLException("Unsupported column type " + row.getColumnType(i));
+                }
+            }
+        }
+
+        // send the rows accumulated so far to the server, without committing
+        private void flush() throws SQLException {
+            if (m_pendingRows == 0) {
+                return;
+            }
+            if (m_copyManager != null) {
+                try {
+                    m_copyIn.invoke(m_copyManager, m_copyStatement, new StringReader(m_copyData.toString()));
+                } catch (InvocationTargetException e) {
+                    if (e.getCause() instanceof SQLException) {
+                        throw (SQLException)e.getCause();
+                    }
+                    throw new SQLException("COPY failed for table " + m_source.tableName, e.getCause());
+                } catch (IllegalAccessException e) {
+                    throw new SQLException("COPY failed for table " + m_source.tableName, e);
+                }
+                m_copyData.setLength(0);
+            } else {
+                pstmt.executeBatch();
+            }
+            m_pendingRows = 0;
+        }
+
+        private void rollback() {
+            try {
+                if (pstmt != null) {
+                    pstmt.clearBatch();
+                }
+                m_conn.rollback();
+            } catch (SQLException e) {
+                m_logger.error("rollback() failed for table " + m_source.tableName, e);
+            }
+            m_pendingRows = 0;
+            m_copyData.setLength(0);
+        }
+
+        private void reportStats() {
+            final long now = System.currentTimeMillis();
+            final long elapsed = now - m_lastReportTime;
+            if (elapsed < REPORT_INTERVAL_MS) {
+                return;
+            }
+            m_logger.info("Table " + m_source.tableName + " partition " + m_source.partitionId +
+                    ": " + (m_rowsCommitted * 1000 / elapsed) + " rows/sec, " +
+                    m_commits + " commits averaging " +
+                    (m_commitNanos / Math.max(1, m_commits) / 1000) + " us");
+            m_rowsCommitted = 0;
+            m_commits = 0;
+            m_commitNanos = 0;
+            m_lastReportTime = now;
+        }
+
         @Override
         public void sourceNoLongerAdvertised(AdvertisedDataSource source) {
         }
     }
 
+    /**
+     * Append a row to a COPY ... WITH CSV stream. Nulls are
+     * empty unquoted fields so strings are always quoted.
+     */
+    static void appendCopyRow(StringBuilder sb, ExportRowView row) {
+        for (int i = 0; i < row.getColumnCount(); i++) {
+            if (i != 0) {
+                sb.append(',');
+            }
+            if (row.isNull(i)) {
+                continue;
+            }
+            switch (row.getColumnType(i)) {
+            case STRING:
+                CharSequence str = row.getString(i);
+                sb.append('"');
+                for (int j = 0; j < str.length(); j++) {
+                    char c = str.charAt(j);
+                    if (c == '"') {
+                        sb.append('"');
+                    }
+                    sb.append(c);
+                }
+                sb.append('"');
+                break;
+            case VARBINARY:
+                sb.append("\\x").append(Encoder.hexEncode(row.getBytes(i)));
+                break;
+            case TIMESTAMP:
+                sb.append(new TimestampType(row.getLong(i)).asJavaTimestamp());
+                break;
+            case DECIMAL:
+                sb.append(row.getDecimal(i).toPlainString());
+                break;
+            case FLOAT:
+                sb.append(row.getDouble(i));
+                break;
+            default:
+                sb.append(row.getLong(i));
+            }
+        }
+        sb.append('\n');
+    }
+
     @Override
     public ExportDecoderBase constructExportDecoder(AdvertisedDataSource source) {
-        return new PostgresDecoder(source);
+        createSchemaAndTable(conn, postgres_schema_prefix, source);
+        return new PostgresDecoder(source, conn, postgres_schema_prefix, postgres_batch_size);
     }
 
     protected static void printHelpAndQuit(int code, boolean extended) {
@@ -243,6 +457,8 @@ public class PostgreSQLExportClient extends ExportClientBase {
             ("       --pgserver server --pgdb database --pguser user");
         System.out.println
             ("       [--pgschema schema_prefix] [--pgpassword password]");
+        System.out.println
+            ("       [--pgbatchsize rows]");
 
         if (extended) {
             System.out.println();
@@ -258,6 +474,8 @@ public class PostgreSQLExportClient extends ExportClientBase {
             System.out.println("  --password       VoltDB password to connect with");
             System.out.println("  --pgpassword     PostgreSQL password to connect with");
             System.out.println("  --pgschema       Prefix string for the PostgreSQL schemas");
+            System.out.println("  --pgbatchsize    Rows sent to PostgreSQL per batch, each export block");
+            System.out.println("                   is still committed once (default 1000)");
         }
 
         System.exit(code);
@@ -345,6 +563,13 @@ public class PostgreSQLExportClient extends ExportClientBase {
             } else if (arg.equals("--pgpassword")) {
                 postgres_password = args[ii + 1];
                 ii++;
+            } else if (arg.equals("--pgbatchsize")) {
+                if (args.length < ii + 1) {
+                    System.err.println("Error: Not enough args following --pgbatchsize");
+                    printHelpAndQuit(-1, false);
+                }
+                postgres_batch_size = Integer.parseInt(args[ii + 1]);
+                ii++;
             }
         }
 
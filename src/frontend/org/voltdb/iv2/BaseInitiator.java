@@ -31,6 +31,7 @@ import org.voltdb.LoadedProcedureSet;
 import org.voltdb.MemoryStats;
 import org.voltdb.PartitionDRGateway;
 import org.voltdb.ProcedureRunnerFactory;
+import org.voltdb.ResultDigestStats;
 import org.voltdb.StartAction;
 import org.voltdb.StarvationTracker;
 import org.voltdb.StatsAgent;
@@ -108,6 +109,16 @@ public abstract class BaseInitiator implements Initiator
         agent.registerStatsSource(StatsSelector.STARVATION,
                                   getInitiatorHSId(),
                                   st);
+        agent.registerStatsSource(StatsSelector.SITEPROFILE,
+                                  getInitiatorHSId(),
+                                  st.getTaskProfile());
+        ResultDigestStats rds = new ResultDigestStats(getInitiatorHSId());
+        if (DuplicateCounter.COMPARE_RESULT_DIGESTS) {
+            m_scheduler.setResultDigestStats(rds);
+        }
+        agent.registerStatsSource(StatsSelector.RESULTDIGEST,
+                                  getInitiatorHSId(),
+                                  rds);
 
         String partitionString = " ";
         if (m_partitionId != -1) {
@@ -48,4 +48,10 @@ public class DRTask extends SiteTasker {
         // no-op during rejoin
     }
 
+    @Override
+    public int getQueueLane()
+    {
+        return SiteTaskerQueue.PRIORITY_LANE;
+    }
+
 }
@@ -17,14 +17,18 @@
 
 package org.voltdb.iv2;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import org.apache.cassandra_voltpatches.MurmurHash3;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
 import org.voltdb.ClientResponseImpl;
+import org.voltdb.ResultDigestStats;
+import org.voltdb.VoltTable;
 import org.voltdb.messaging.FragmentResponseMessage;
 import org.voltdb.messaging.InitiateResponseMessage;
 
@@ -40,6 +44,12 @@ public class DuplicateCounter
 
     protected static final VoltLogger tmLog = new VoltLogger("TM");
 
+    /**
+     * Compare a 64-bit digest of the result tables of replica responses in
+     * addition to the hash of the SQL they ran.
+     */
+    static final boolean COMPARE_RESULT_DIGESTS = Boolean.getBoolean("compareResultDigests");
+
     final long m_destinationId;
     Long m_responseHash = null;
     protected VoltMessage m_lastResponse = null;
@@ -47,14 +57,32 @@ public class DuplicateCounter
     final long m_txnId;
     private final String m_storedProcName;
 
+    // Where digest costs are recorded, null if digests are not compared
+    private final ResultDigestStats m_digestStats;
+    Long m_responseDigest = null;
+    // The first response is only digested once a second one arrives to
+    // compare it with. The first is usually the local site's, so this keeps
+    // the digest work off the site thread and on the network thread that
+    // delivers the replica response.
+    private VoltMessage m_undigestedResponse = null;
+
     DuplicateCounter(
             long destinationHSId,
             long realTxnId,
             List<Long> expectedHSIds, String procName)    {
+        this(destinationHSId, realTxnId, expectedHSIds, procName, null);
+    }
+
+    DuplicateCounter(
+            long destinationHSId,
+            long realTxnId,
+            List<Long> expectedHSIds, String procName,
+            ResultDigestStats digestStats)    {
         m_destinationId = destinationHSId;
         m_txnId = realTxnId;
         m_expectedHSIds = new ArrayList<Long>(expectedHSIds);
         m_storedProcName = procName;
+        m_digestStats = digestStats;
     }
 
     long getTxnId()
@@ -100,6 +128,9 @@ public class DuplicateCounter
                 tmLog.error(msg);
                 return MISMATCH;
             }
+            if (m_digestStats != null && !checkDigest(message)) {
+                return MISMATCH;
+            }
             m_lastResponse = message;
         }
 
@@ -122,6 +153,93 @@ public class DuplicateCounter
         }
     }
 
+    /**
+     * Compare the result digest of this response with the ones already offered.
+     * @return false if the results differ
+     */
+    private boolean checkDigest(VoltMessage message)
+    {
+        if (m_responseDigest == null) {
+            if (m_undigestedResponse == null) {
+                m_undigestedResponse = message;
+                return true;
+            }
+            m_responseDigest = digest(m_undigestedResponse);
+        }
+        long digest = digest(message);
+        if (m_responseDigest != digest) {
+            m_digestStats.mismatched(getStoredProcedureName());
+            tmLog.fatal("Stored procedure " + getStoredProcedureName()
+                    + " returned different results at different partition replicas."
+                    + " Shutting down to preserve data integrity.");
+            String msg = String.format("RESULT DIGEST MISMATCH COMPARING: %d to %d\n"
+                    + "PREV MESSAGE: %s\n"
+                    + "CURR MESSAGE: %s\n",
+                    digest, m_responseDigest,
+                    m_undigestedResponse != null ? m_undigestedResponse.toString() : m_lastResponse.toString(),
+                    message.toString());
+            tmLog.error(msg);
+            return false;
+        }
+        m_undigestedResponse = null;
+        return true;
+    }
+
+    private long digest(VoltMessage message)
+    {
+        final long start = System.nanoTime();
+        long digest = 0;
+        long bytes = 0;
+        if (message instanceof InitiateResponseMessage) {
+            ClientResponseImpl r = ((InitiateResponseMessage)message).getClientResponseData();
+            if (r != null && r.getResults() != null) {
+                for (VoltTable table : r.getResults()) {
+                    digest = digest(table, digest);
+                    bytes += table.getSerializedSize();
+                }
+            }
+        }
+        else {
+            FragmentResponseMessage r = (FragmentResponseMessage)message;
+            for (int i = 0; i < r.getTableCount(); i++) {
+                VoltTable table = r.getTableAtIndex(i);
+                if (table != null) {
+                    bytes += table.getSerializedSize();
+                }
+                digest = digest(table, digest);
+            }
+        }
+        m_digestStats.digested(getStoredProcedureName(), bytes, System.nanoTime() - start);
+        return digest;
+    }
+
+    /**
+     * Fold the serialized form of a result table into a running digest.
+     * The rows are hashed one by one and summed, so replicas which return
+     * the same rows in a different order (a SELECT with no ORDER BY over
+     * a table rebuilt by rejoin, say) still agree. The order of the tables
+     * themselves is significant.
+     */
+    static long digest(VoltTable table, long seed)
+    {
+        if (table == null) {
+            return MurmurHash3.hash3_x64_128(seed);
+        }
+        ByteBuffer buf = table.getTableDataReference();
+        // header length excludes its own int, the row count follows the header
+        final int rowStart = buf.getInt(0) + 4;
+        final int rowCount = buf.getInt(rowStart);
+        long rows = 0;
+        int pos = rowStart + 4;
+        for (int i = 0; i < rowCount; i++) {
+            final int rowLength = buf.getInt(pos);
+            rows += MurmurHash3.hash3_x64_128(buf, pos + 4, rowLength, 0);
+            pos += rowLength + 4;
+        }
+        final long header = MurmurHash3.hash3_x64_128(buf, 0, rowStart + 4, seed);
+        return MurmurHash3.hash3_x64_128(rows, header);
+    }
+
     int offer(InitiateResponseMessage message)
     {
         ClientResponseImpl r = message.getClientResponseData();
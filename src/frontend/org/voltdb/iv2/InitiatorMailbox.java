@@ -18,6 +18,7 @@
 package org.voltdb.iv2;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
@@ -200,6 +201,7 @@ public class InitiatorMailbox implements Mailbox
             m_algo.cancel();
         }
         m_scheduler.shutdown();
+        m_repairLog.shutdown();
     }
 
     // Change the replica set configuration (during or after promotion)
@@ -330,7 +332,7 @@ public class InitiatorMailbox implements Mailbox
     private void handleLogRequest(VoltMessage message)
     {
         Iv2RepairLogRequestMessage req = (Iv2RepairLogRequestMessage)message;
-        List<Iv2RepairLogResponseMessage> logs = m_repairLog.contents(req.getRequestId(),
+        Iterator<Iv2RepairLogResponseMessage> logs = m_repairLog.contents(req.getRequestId(),
                 req.isMPIRequest());
 
         tmLog.debug(""
@@ -338,8 +340,8 @@ public class InitiatorMailbox implements Mailbox
             + " handling repair log request id " + req.getRequestId()
             + " for " + CoreUtils.hsIdToString(message.m_sourceHSId) + ". ");
 
-        for (Iv2RepairLogResponseMessage log : logs) {
-            send(message.m_sourceHSId, log);
+        while (logs.hasNext()) {
+            send(message.m_sourceHSId, logs.next());
         }
     }
 
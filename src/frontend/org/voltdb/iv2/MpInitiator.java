@@ -48,6 +48,9 @@ public class MpInitiator extends BaseInitiator implements Promotable
 {
     public static final int MP_INIT_PID = TxnEgo.PARTITIONID_MAX_VALUE;
 
+    // Runs read-only MP procedures concurrently; null when pipelining is off
+    private MpRoSitePool m_sitePool = null;
+
     public MpInitiator(HostMessenger messenger, long buddyHSId, StatsAgent agent)
     {
         super(VoltZK.iv2mpi,
@@ -82,6 +85,11 @@ public class MpInitiator extends BaseInitiator implements Promotable
 
         super.configureCommon(backend, serializedCatalog, catalogContext,
                 csp, numberOfPartitions, startAction, null, null, cl, coreBindIds, null);
+        if (MpRoSitePool.isSupported(backend)) {
+            m_sitePool = new MpRoSitePool(getInitiatorHSId(), m_partitionId, backend,
+                    catalogContext, csp);
+            ((MpScheduler)m_scheduler).setMpRoSitePool(m_sitePool);
+        }
         // add ourselves to the ephemeral node list which BabySitters will watch for this
         // partition
         LeaderElector.createParticipantNode(m_messenger.getZK(),
@@ -190,6 +198,18 @@ public class MpInitiator extends BaseInitiator implements Promotable
     {
         // note this will never require snapshot isolation because the MPI has no snapshot funtionality
         m_executionSite.updateCatalog(diffCmds, context, csp, false, true);
+        if (m_sitePool != null) {
+            m_sitePool.updateCatalog(context, csp);
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        super.shutdown();
+        if (m_sitePool != null) {
+            m_sitePool.shutdown();
+        }
     }
 
     @Override
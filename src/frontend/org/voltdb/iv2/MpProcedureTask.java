@@ -64,6 +64,7 @@ public class MpProcedureTask extends ProcedureTask
         m_msg = msg;
         m_initiatorHSIds.addAll(pInitiators);
         m_restartMasters.set(new ArrayList<Long>());
+        ((MpTransactionState)m_txnState).m_queue = queue;
     }
 
     /**
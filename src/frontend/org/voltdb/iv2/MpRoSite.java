@@ -0,0 +1,322 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.Pair;
+import org.voltdb.BackendTarget;
+import org.voltdb.CatalogContext;
+import org.voltdb.CatalogSpecificPlanner;
+import org.voltdb.DependencyPair;
+import org.voltdb.HsqlBackend;
+import org.voltdb.LoadedProcedureSet;
+import org.voltdb.ParameterSet;
+import org.voltdb.ProcedureRunner;
+import org.voltdb.ProcedureRunnerFactory;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StatsSelector;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltProcedure.VoltAbortException;
+import org.voltdb.VoltTable;
+import org.voltdb.dtxn.TransactionState;
+import org.voltdb.exceptions.EEException;
+import org.voltdb.rejoin.TaskLog;
+
+/**
+ * A stripped down Site which runs read-only multi-partition procedures at
+ * the MPI alongside the MPI's own Site.  All of the SQL an MP procedure
+ * runs is distributed to the partitions (or borrowed from the buddy site),
+ * so this needs no EE; it only needs its own ProcedureRunners, since those
+ * can't be shared between threads.
+ */
+public class MpRoSite implements Runnable, SiteProcedureConnection
+{
+    final long m_siteId;
+    final int m_partitionId;
+    final BackendTarget m_backend;
+    final SiteTaskerQueue m_scheduler = new SiteTaskerQueue();
+    volatile boolean m_shouldContinue = true;
+
+    // Only touched from the site thread once it is running
+    private CatalogContext m_context;
+    private CatalogSpecificPlanner m_csp;
+    private LoadedProcedureSet m_loadedProcedures = null;
+
+    MpRoSite(long siteId, int partitionId, BackendTarget backend,
+             CatalogContext context, CatalogSpecificPlanner csp)
+    {
+        m_siteId = siteId;
+        m_partitionId = partitionId;
+        m_backend = backend;
+        m_context = context;
+        m_csp = csp;
+    }
+
+    /** Queue a task to run on this site's thread. */
+    void doWork(SiteTasker task)
+    {
+        m_scheduler.offer(task);
+    }
+
+    /**
+     * Reload the procedures from the new catalog, in order with the work
+     * already queued to this site.
+     */
+    void updateCatalog(final CatalogContext context, final CatalogSpecificPlanner csp)
+    {
+        m_scheduler.offer(new SiteTasker() {
+            @Override
+            public void run(SiteProcedureConnection siteConnection)
+            {
+                m_context = context;
+                m_csp = csp;
+                loadProcedures();
+            }
+
+            @Override
+            public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog)
+            {
+                throw new RuntimeException("MPI read-only site asked to rejoin.");
+            }
+        });
+    }
+
+    void startShutdown()
+    {
+        m_shouldContinue = false;
+        // wake the site thread up if it's waiting for work
+        m_scheduler.offer(new SiteTasker() {
+            @Override
+            public void run(SiteProcedureConnection siteConnection) {}
+
+            @Override
+            public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog) {}
+        });
+    }
+
+    private void loadProcedures()
+    {
+        ProcedureRunnerFactory prf = new ProcedureRunnerFactory();
+        prf.configure(this, null);
+        LoadedProcedureSet procSet = new LoadedProcedureSet(this, prf, m_siteId, 0);
+        procSet.loadUserProcedures(m_context, m_backend, m_csp);
+        m_loadedProcedures = procSet;
+    }
+
+    @Override
+    public void run()
+    {
+        Thread.currentThread().setName("Iv2MpRoSite: " + CoreUtils.hsIdToString(m_siteId));
+        try {
+            loadProcedures();
+            while (m_shouldContinue) {
+                SiteTasker task = m_scheduler.take();
+                if (m_shouldContinue) {
+                    task.run(this);
+                }
+            }
+        }
+        catch (OutOfMemoryError e)
+        {
+            String errmsg = "MP read-only site: " + CoreUtils.hsIdToString(m_siteId) +
+                " ran out of Java memory. " + "This node will shut down.";
+            VoltDB.crashLocalVoltDB(errmsg, true, e);
+        }
+        catch (Throwable t)
+        {
+            String errmsg = "MP read-only site: " + CoreUtils.hsIdToString(m_siteId) +
+                " encountered an " + "unexpected error and will die, taking this VoltDB node down.";
+            VoltDB.crashLocalVoltDB(errmsg, true, t);
+        }
+    }
+
+    @Override
+    public ProcedureRunner getProcedureRunner(String procedureName)
+    {
+        return m_loadedProcedures.getProcByName(procedureName);
+    }
+
+    @Override
+    public Map<Integer, List<VoltTable>> recursableRun(TransactionState currentTxnState)
+    {
+        return currentTxnState.recursableRun(this);
+    }
+
+    @Override
+    public long getCorrespondingSiteId()
+    {
+        return m_siteId;
+    }
+
+    @Override
+    public int getCorrespondingPartitionId()
+    {
+        return m_partitionId;
+    }
+
+    @Override
+    public int getCorrespondingHostId()
+    {
+        return CoreUtils.getHostIdFromHSId(m_siteId);
+    }
+
+    @Override
+    public HsqlBackend getHsqlBackendIfExists()
+    {
+        return null;
+    }
+
+    //
+    // Read-only MP procedures send all of their SQL to the partitions, so
+    // there is nothing to undo, export, snapshot or account for here.  The
+    // calls below that would need an EE holding data abort the procedure.
+    //
+
+    // Same token Site hands read-only fragments: no undo is registered
+    @Override
+    public long getLatestUndoToken()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long getNextUndoToken()
+    {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public void updateBackendLogLevels()
+    {
+    }
+
+    @Override
+    public byte[] loadTable(long txnId, String clusterName, String databaseName,
+            String tableName, VoltTable data, boolean returnUniqueViolations, long undoToken)
+    {
+        throw new VoltAbortException("Read-only procedure can't load table " + tableName);
+    }
+
+    @Override
+    public byte[] loadTable(long txnId, int tableId, VoltTable data,
+            boolean returnUniqueViolations, long undoToken)
+    {
+        throw new VoltAbortException("Read-only procedure can't load table " + tableId);
+    }
+
+    // Only the single-partition fast path executes fragments locally
+    @Override
+    public VoltTable[] executePlanFragments(int numFragmentIds, long[] planFragmentIds,
+            long[] inputDepIds, Object[] parameterSets, long spHandle, long uniqueId,
+            boolean readOnly) throws EEException
+    {
+        throw new VoltAbortException("Multi-partition procedure can't execute fragments locally");
+    }
+
+    @Override
+    public void simulateExecutePlanFragments(long txnId, boolean readOnly)
+    {
+        throw new RuntimeException("Not supported in IV2.");
+    }
+
+    @Override
+    public void truncateUndoLog(boolean rollback, long token, long txnId, long spHandle)
+    {
+    }
+
+    // No local fragments consume them
+    @Override
+    public void stashWorkUnitDependencies(Map<Integer, List<VoltTable>> dependencies)
+    {
+    }
+
+    // Sysprocs are never pipelined; they run on the MPI's own Site
+    @Override
+    public DependencyPair executeSysProcPlanFragment(TransactionState txnState,
+            Map<Integer, List<VoltTable>> dependencies, long fragmentId, ParameterSet params)
+    {
+        throw new VoltAbortException("System procedure fragment " + fragmentId +
+                " sent to an MPI read-only site");
+    }
+
+    // Read-only sites are created by the pool after startup and never rejoin
+    @Override
+    public void setRejoinComplete(JoinProducerBase.JoinCompletionAction action,
+            Map<String, Map<Integer, Pair<Long, Long>>> exportSequenceNumbers)
+    {
+    }
+
+    // No export streams live here
+    @Override
+    public long[] getUSOForExportTable(String signature)
+    {
+        return null;
+    }
+
+    @Override
+    public void toggleProfiler(int toggle)
+    {
+    }
+
+    @Override
+    public void tick()
+    {
+    }
+
+    @Override
+    public void quiesce()
+    {
+    }
+
+    @Override
+    public void exportAction(boolean syncAction, long ackOffset, Long sequenceNumber,
+            Integer partitionId, String tableSignature)
+    {
+    }
+
+    // The MPI's own Site reports the stats for this partition
+    @Override
+    public VoltTable[] getStats(StatsSelector selector, int[] locators,
+            boolean interval, Long now)
+    {
+        return null;
+    }
+
+    @Override
+    public Future<?> doSnapshotWork()
+    {
+        return null;
+    }
+
+    // The MPI's own Site restores the MP txn id
+    @Override
+    public void setPerPartitionTxnIds(long[] perPartitionTxnIds)
+    {
+    }
+
+    // Holds no rows, so none are mispartitioned
+    @Override
+    public long[] validatePartitioning(long[] tableIds, int hashinatorType, byte[] hashinatorConfig)
+    {
+        return new long[tableIds.length];
+    }
+}
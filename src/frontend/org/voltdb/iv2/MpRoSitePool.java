@@ -0,0 +1,139 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.BackendTarget;
+import org.voltdb.CatalogContext;
+import org.voltdb.CatalogSpecificPlanner;
+
+/**
+ * The MpRoSites which run pipelined read-only MP transactions for the
+ * MpTransactionTaskQueue.  Sites are started on demand, so the pool only
+ * grows as deep as the read-only MP workload actually pipelines, and are
+ * kept around once started.
+ */
+public class MpRoSitePool
+{
+    private static final VoltLogger tmLog = new VoltLogger("TM");
+
+    // How many read-only MP transactions the MPI may have in flight at once.
+    // Anything less than two turns pipelining off.
+    static final int MAX_POOL_SIZE = Integer.getInteger("mpReadPipelineDepth", 4);
+
+    private final long m_siteId;
+    private final int m_partitionId;
+    private final BackendTarget m_backend;
+    private CatalogContext m_catalogContext;
+    private CatalogSpecificPlanner m_csp;
+
+    private final Deque<MpRoSite> m_idleSites = new ArrayDeque<MpRoSite>();
+    private final Map<Long, MpRoSite> m_busySites = new HashMap<Long, MpRoSite>();
+    private final List<Thread> m_siteThreads = new ArrayList<Thread>();
+
+    MpRoSitePool(long siteId, int partitionId, BackendTarget backend,
+                 CatalogContext context, CatalogSpecificPlanner csp)
+    {
+        m_siteId = siteId;
+        m_partitionId = partitionId;
+        m_backend = backend;
+        m_catalogContext = context;
+        m_csp = csp;
+    }
+
+    /**
+     * Pipelining needs the MP procedures to run without the MPI Site's own
+     * backend; only the native EE, where all MP SQL goes to the partitions,
+     * qualifies.
+     */
+    static boolean isSupported(BackendTarget backend)
+    {
+        return MAX_POOL_SIZE > 1 && backend == BackendTarget.NATIVE_EE_JNI;
+    }
+
+    synchronized boolean canAcceptWork()
+    {
+        return m_busySites.size() < MAX_POOL_SIZE;
+    }
+
+    /** Run the task for txnId on an idle site, starting one if needed */
+    synchronized void doWork(long txnId, TransactionTask task)
+    {
+        MpRoSite site = m_idleSites.pollFirst();
+        if (site == null) {
+            site = new MpRoSite(m_siteId, m_partitionId, m_backend, m_catalogContext, m_csp);
+            Thread siteThread = new Thread(site);
+            siteThread.setDaemon(true);
+            siteThread.start();
+            m_siteThreads.add(siteThread);
+            tmLog.debug("Started MPI read-only site " + m_siteThreads.size() +
+                    " of at most " + MAX_POOL_SIZE);
+        }
+        m_busySites.put(txnId, site);
+        site.doWork(task);
+    }
+
+    /** The transaction txnId is done, its site can take new work */
+    synchronized void completeWork(long txnId)
+    {
+        MpRoSite site = m_busySites.remove(txnId);
+        if (site != null) {
+            m_idleSites.addFirst(site);
+        }
+    }
+
+    /**
+     * Only called when no reads are in flight, as catalog updates run on
+     * the MPI's Site with nothing else in flight.
+     */
+    synchronized void updateCatalog(CatalogContext context, CatalogSpecificPlanner csp)
+    {
+        m_catalogContext = context;
+        m_csp = csp;
+        for (MpRoSite site : m_idleSites) {
+            site.updateCatalog(context, csp);
+        }
+        for (MpRoSite site : m_busySites.values()) {
+            site.updateCatalog(context, csp);
+        }
+    }
+
+    synchronized void shutdown()
+    {
+        for (MpRoSite site : m_idleSites) {
+            site.startShutdown();
+        }
+        for (MpRoSite site : m_busySites.values()) {
+            site.startShutdown();
+        }
+        for (Thread siteThread : m_siteThreads) {
+            try {
+                siteThread.join();
+            } catch (InterruptedException e) {
+                tmLog.info("Interrupted during shutdown", e);
+            }
+        }
+    }
+}
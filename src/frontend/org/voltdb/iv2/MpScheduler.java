@@ -65,12 +65,21 @@ public class MpScheduler extends Scheduler
 
     MpScheduler(int partitionId, long buddyHSId, SiteTaskerQueue taskQueue)
     {
-        super(partitionId, taskQueue);
+        super(partitionId, taskQueue, new MpTransactionTaskQueue(taskQueue));
         m_buddyHSId = buddyHSId;
         m_iv2Masters = new ArrayList<Long>();
         m_uniqueIdGenerator = new UniqueIdGenerator(partitionId, 0);
     }
 
+    /**
+     * Let read-only MP transactions run on the given pool of sites,
+     * pipelined behind each other.
+     */
+    void setMpRoSitePool(MpRoSitePool sitePool)
+    {
+        ((MpTransactionTaskQueue)m_pendingTasks).setMpRoSitePool(sitePool);
+    }
+
     @Override
     public void shutdown()
     {
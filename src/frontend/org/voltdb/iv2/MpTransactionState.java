@@ -72,6 +72,10 @@ public class MpTransactionState extends TransactionState
     FragmentTaskMessage m_localWork = null;
     boolean m_haveDistributedInitTask = false;
     boolean m_isRestart = false;
+    // Set once the final batch of distributed work has gone out.  The MPI's
+    // task queue may start the next read-only transaction after that point.
+    volatile boolean m_haveSentFinalWork = false;
+    TransactionTaskQueue m_queue = null;
 
     MpTransactionState(Mailbox mailbox,
                        TransactionInfoBaseMessage notice,
@@ -174,6 +178,26 @@ public class MpTransactionState extends TransactionState
         else {
             m_remoteWork = null;
         }
+        if (task.isFinalTask() && isReadOnly()) {
+            finalWorkSent();
+        }
+    }
+
+    /**
+     * Note that no more distributed work will be sent for this transaction
+     * and give the MPI's task queue a chance to start the next read.
+     */
+    private void finalWorkSent()
+    {
+        m_haveSentFinalWork = true;
+        if (m_queue != null) {
+            m_queue.flush();
+        }
+    }
+
+    boolean haveSentFinalWork()
+    {
+        return m_haveSentFinalWork;
     }
 
     private Map<Integer, Set<Long>>
@@ -0,0 +1,271 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.exceptions.TransactionRestartException;
+import org.voltdb.messaging.FragmentResponseMessage;
+import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.rejoin.TaskLog;
+
+/**
+ * The MPI's TransactionTaskQueue.  Read-only user procedures are handed to
+ * an MpRoSitePool and may overlap each other; everything else (writes,
+ * sysprocs, every-partition work and repair) runs on the MPI's own Site
+ * with nothing else in flight, exactly as before.
+ *
+ * A read may only start once every read already in flight has sent its
+ * final batch of distributed work.  Each partition therefore sees the
+ * fragments of pipelined reads in the same order and can run them one at
+ * a time without deadlocking.
+ */
+public class MpTransactionTaskQueue extends TransactionTaskQueue
+{
+    private MpRoSitePool m_sitePool = null;
+
+    // The write/sysproc/every-partition task running on the MPI's Site, if any
+    private TransactionTask m_currentWrite = null;
+    // Reads running on the MpRoSitePool, by txnId
+    private final Map<Long, TransactionTask> m_currentReads = new HashMap<Long, TransactionTask>();
+
+    // Repairs must also run alone; they wait for the poisoned reads to drain.
+    private final List<SiteTasker> m_pendingRepairs = new ArrayList<SiteTasker>();
+    private int m_runningRepairs = 0;
+
+    MpTransactionTaskQueue(SiteTaskerQueue queue)
+    {
+        super(queue);
+    }
+
+    /**
+     * Reads are only pipelined once a pool is provided.  Until then (and
+     * for backends where the pool isn't usable) the MPI runs one
+     * transaction at a time.
+     */
+    synchronized void setMpRoSitePool(MpRoSitePool sitePool)
+    {
+        m_sitePool = sitePool;
+    }
+
+    @Override
+    synchronized boolean offer(TransactionTask task)
+    {
+        Iv2Trace.logTransactionTaskQueueOffer(task);
+        m_backlog.addLast(task);
+        release();
+        // anything not started is still at the back of the backlog
+        return !m_backlog.isEmpty() && m_backlog.getLast() == task;
+    }
+
+    @Override
+    synchronized int flush()
+    {
+        if (m_currentWrite != null && m_currentWrite.getTransactionState().isDone()) {
+            m_currentWrite = null;
+        }
+        Iterator<Entry<Long, TransactionTask>> iter = m_currentReads.entrySet().iterator();
+        while (iter.hasNext()) {
+            Entry<Long, TransactionTask> e = iter.next();
+            if (e.getValue().getTransactionState().isDone()) {
+                iter.remove();
+                m_sitePool.completeWork(e.getKey());
+            }
+        }
+        return release();
+    }
+
+    /**
+     * Poison everything in flight, update the masters for everything
+     * waiting, and run the repair task on the MPI's Site once the reads
+     * have drained.  A restarting write is re-offered behind the repair
+     * by restart().
+     */
+    @Override
+    synchronized void repair(SiteTasker task, List<Long> masters)
+    {
+        m_pendingRepairs.add(new RepairTask(task));
+        if (m_currentWrite instanceof MpProcedureTask) {
+            ((MpProcedureTask)m_currentWrite).doRestart(masters);
+            poison((MpProcedureTask)m_currentWrite);
+        }
+        for (TransactionTask read : m_currentReads.values()) {
+            poison((MpProcedureTask)read);
+        }
+        for (TransactionTask next : m_backlog) {
+            if (next instanceof MpProcedureTask) {
+                ((MpProcedureTask)next).updateMasters(masters);
+            }
+        }
+        release();
+    }
+
+    private void poison(MpProcedureTask task)
+    {
+        MpTransactionState txn = (MpTransactionState)task.getTransactionState();
+        FragmentTaskMessage dummy = new FragmentTaskMessage(0L, 0L, 0L, 0L, false, false, false);
+        FragmentResponseMessage poison =
+            new FragmentResponseMessage(dummy, 0L); // Don't care about source HSID here
+        TransactionRestartException restart = new TransactionRestartException(
+                "Transaction being restarted due to fault recovery or shutdown.", task.getTxnId());
+        poison.setStatus(FragmentResponseMessage.UNEXPECTED_ERROR, restart);
+        txn.offerReceivedFragmentResponse(poison);
+    }
+
+    /**
+     * Only writes restart, and the restarting write is still the one in
+     * flight on the MPI's Site.
+     */
+    @Override
+    synchronized void restart()
+    {
+        taskQueueOffer(m_currentWrite);
+    }
+
+    @Override
+    synchronized int size()
+    {
+        return m_backlog.size();
+    }
+
+    synchronized void repairDone()
+    {
+        m_runningRepairs--;
+        release();
+    }
+
+    /**
+     * Start as much of the backlog as the in-flight work allows.
+     * @return the number of tasks started
+     */
+    private int release()
+    {
+        if (!m_pendingRepairs.isEmpty()) {
+            if (m_currentReads.isEmpty()) {
+                for (SiteTasker repair : m_pendingRepairs) {
+                    m_runningRepairs++;
+                    m_taskQueue.offer(repair);
+                }
+                m_pendingRepairs.clear();
+            }
+            return 0;
+        }
+        if (m_runningRepairs > 0) {
+            return 0;
+        }
+        int offered = 0;
+        while (!m_backlog.isEmpty() && m_currentWrite == null) {
+            TransactionTask task = m_backlog.getFirst();
+            if (isPipelinedRead(task)) {
+                if (!m_sitePool.canAcceptWork() || !readsHaveSentFinalWork()) {
+                    break;
+                }
+                m_backlog.removeFirst();
+                m_currentReads.put(task.getTxnId(), task);
+                Iv2Trace.logSiteTaskerQueueOffer(task);
+                m_sitePool.doWork(task.getTxnId(), task);
+            }
+            else {
+                if (!m_currentReads.isEmpty()) {
+                    break;
+                }
+                m_backlog.removeFirst();
+                m_currentWrite = task;
+                taskQueueOffer(task);
+            }
+            ++offered;
+        }
+        return offered;
+    }
+
+    private boolean isPipelinedRead(TransactionTask task)
+    {
+        if (m_sitePool == null || !(task instanceof MpProcedureTask)) {
+            return false;
+        }
+        MpProcedureTask mpTask = (MpProcedureTask)task;
+        return mpTask.m_msg.isReadOnly() &&
+            !mpTask.m_isRestart &&
+            !mpTask.m_msg.getStoredProcedureName().startsWith("@");
+    }
+
+    private boolean readsHaveSentFinalWork()
+    {
+        for (TransactionTask read : m_currentReads.values()) {
+            MpTransactionState txn = (MpTransactionState)read.getTransactionState();
+            if (!txn.haveSentFinalWork() && !txn.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class RepairTask extends SiteTasker
+    {
+        final SiteTasker m_repair;
+
+        RepairTask(SiteTasker repair)
+        {
+            m_repair = repair;
+        }
+
+        @Override
+        public void run(SiteProcedureConnection siteConnection)
+        {
+            try {
+                m_repair.run(siteConnection);
+            }
+            finally {
+                repairDone();
+            }
+        }
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog)
+        throws IOException
+        {
+            m_repair.runForRejoin(siteConnection, taskLog);
+        }
+
+        @Override
+        public int getQueueLane()
+        {
+            return m_repair.getQueueLane();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("MpTransactionTaskQueue:").append("\n");
+        sb.append("\tSIZE: ").append(size());
+        sb.append("\tREADS IN FLIGHT: ").append(m_currentReads.size());
+        if (m_currentWrite != null) {
+            sb.append("\tCURRENT: ").append(m_currentWrite);
+        }
+        return sb.toString();
+    }
+}
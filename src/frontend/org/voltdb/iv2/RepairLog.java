@@ -17,30 +17,53 @@
 
 package org.voltdb.iv2;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.VoltDB;
 import org.voltdb.messaging.CompleteTransactionMessage;
 import org.voltdb.messaging.DumpMessage;
 import org.voltdb.messaging.FragmentTaskMessage;
 import org.voltdb.messaging.Iv2InitiateTaskMessage;
 import org.voltdb.messaging.Iv2RepairLogResponseMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
 
 /**
  * The repair log stores messages received from a PI in case they need to be
  * shared with less informed RIs should the PI shed its mortal coil.
+ *
+ * Messages are kept serialized in off-heap chunks so a long running MP transaction
+ * holding back truncation doesn't grow the java heap, only a small index entry per
+ * message lives on the heap. A chunk is freed as soon as everything in it has been
+ * truncated.
  */
 public class RepairLog
 {
     private static final boolean IS_SP = true;
     private static final boolean IS_MP = false;
 
+    // Size of the off-heap chunks messages are serialized into. Larger messages get a chunk of their own.
+    static final int CHUNK_SIZE = Integer.getInteger("repairLogChunkSize", 256 * 1024);
+
+    // Off-heap bytes held by all the repair logs in this process
+    private static final AtomicLong s_bytesAllocated = new AtomicLong(0);
+
+    public static long getBytesAllocatedGlobally()
+    {
+        return s_bytesAllocated.get();
+    }
+
     VoltLogger tmLog = new VoltLogger("TM");
 
     // Initialize to Long MAX_VALUE to prevent feeding a newly joined node
@@ -54,18 +77,49 @@ public class RepairLog
     // The HSID of this initiator, for logging purposes
     long m_HSId = Long.MIN_VALUE;
 
+    // A direct buffer that serialized messages are appended to
+    static class Chunk
+    {
+        final BBContainer m_container;
+        int m_position = 0;
+        int m_liveItems = 0;
+
+        Chunk(int capacity)
+        {
+            m_container = DBBPool.allocateDirect(capacity);
+            s_bytesAllocated.addAndGet(capacity);
+        }
+
+        int remaining()
+        {
+            return m_container.b.capacity() - m_position;
+        }
+
+        void discard()
+        {
+            s_bytesAllocated.addAndGet(-m_container.b.capacity());
+            m_container.discard();
+        }
+    }
+
     // want voltmessage as payload with message-independent metadata.
     static class Item
     {
-        final VoltMessage m_msg;
+        final Chunk m_chunk;
+        final int m_offset;
+        final int m_length;
+        final long m_sourceHSId;
         final long m_handle;
         final long m_txnId;
         final boolean m_type;
 
-        Item(boolean type, VoltMessage msg, long handle, long txnId)
+        Item(boolean type, Chunk chunk, int offset, int length, long sourceHSId, long handle, long txnId)
         {
             m_type = type;
-            m_msg = msg;
+            m_chunk = chunk;
+            m_offset = offset;
+            m_length = length;
+            m_sourceHSId = sourceHSId;
             m_handle = handle;
             m_txnId = txnId;
         }
@@ -79,9 +133,22 @@ public class RepairLog
             return m_txnId;
         }
 
+        // Rehydrate the message from a heap copy, the chunk may be freed
+        // while the message is still in use
         VoltMessage getMessage()
         {
-            return m_msg;
+            ByteBuffer serialized = m_chunk.m_container.b.duplicate();
+            serialized.limit(m_offset + m_length);
+            serialized.position(m_offset);
+            ByteBuffer copy = ByteBuffer.allocate(m_length);
+            copy.put(serialized);
+            copy.flip();
+            try {
+                return new VoltDbMessageFactory().createMessageFromBuffer(copy, m_sourceHSId);
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to deserialize repair log entry", true, e);
+                return null;
+            }
         }
 
         boolean isSP()
@@ -95,9 +162,12 @@ public class RepairLog
         }
     }
 
-    // log storage.
+    // log storage, in spHandle order.
     final List<Item> m_log;
 
+    // the chunk new messages are appended to
+    Chunk m_writeChunk = null;
+
     RepairLog()
     {
         m_log = new ArrayList<Item>();
@@ -132,7 +202,7 @@ public class RepairLog
             if (!m.isReadOnly()) {
                 m_lastSpHandle = m.getSpHandle();
                 truncate(Long.MIN_VALUE, m.getTruncationHandle());
-                m_log.add(new Item(IS_SP, m, m.getSpHandle(), m.getTxnId()));
+                append(IS_SP, m, m.getSpHandle(), m.getTxnId());
             }
         } else if (msg instanceof FragmentTaskMessage) {
             final TransactionInfoBaseMessage m = (TransactionInfoBaseMessage)msg;
@@ -140,7 +210,7 @@ public class RepairLog
                 truncate(m.getTruncationHandle(), Long.MIN_VALUE);
                 // only log the first fragment of a procedure (and handle 1st case)
                 if (m.getTxnId() > m_lastMpHandle || m_lastMpHandle == Long.MAX_VALUE) {
-                    m_log.add(new Item(IS_MP, m, m.getSpHandle(), m.getTxnId()));
+                    append(IS_MP, m, m.getSpHandle(), m.getTxnId());
                     m_lastMpHandle = m.getTxnId();
                     m_lastSpHandle = m.getSpHandle();
                 }
@@ -152,7 +222,7 @@ public class RepairLog
             CompleteTransactionMessage ctm = (CompleteTransactionMessage)msg;
             if (!ctm.isReadOnly() && !ctm.isRestart()) {
                 truncate(ctm.getTruncationHandle(), Long.MIN_VALUE);
-                m_log.add(new Item(IS_MP, ctm, ctm.getSpHandle(), ctm.getTxnId()));
+                append(IS_MP, ctm, ctm.getSpHandle(), ctm.getTxnId());
                 //Restore will send a complete transaction message with a lower mp transaction id because
                 //the restore transaction precedes the loading of the right mp transaction id from the snapshot
                 //Hence Math.max
@@ -164,12 +234,65 @@ public class RepairLog
             String who = CoreUtils.hsIdToString(m_HSId);
             tmLog.warn("Repair log dump for site: " + who + ", isLeader: " + m_isLeader);
             tmLog.warn("" + who + ": lastSpHandle: " + m_lastSpHandle + ", lastMpHandle: " + m_lastMpHandle);
-            for (Iv2RepairLogResponseMessage il : contents(0l, false)) {
-               tmLog.warn("" + who + ": msg: " + il);
+            Iterator<Iv2RepairLogResponseMessage> il = contents(0l, false);
+            while (il.hasNext()) {
+               tmLog.warn("" + who + ": msg: " + il.next());
+            }
+        }
+    }
+
+    // serialize a message to the end of the log.
+    private void append(boolean type, VoltMessage msg, long handle, long txnId)
+    {
+        final int length = msg.getSerializedSize();
+        if (m_writeChunk == null || m_writeChunk.remaining() < length) {
+            if (m_writeChunk != null && m_writeChunk.m_liveItems == 0) {
+                m_writeChunk.discard();
+            }
+            m_writeChunk = new Chunk(Math.max(CHUNK_SIZE, length));
+        }
+
+        final int offset = m_writeChunk.m_position;
+        ByteBuffer buf = m_writeChunk.m_container.b.duplicate();
+        buf.limit(offset + length);
+        buf.position(offset);
+        try {
+            msg.flattenToBuffer(buf.slice());
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Unable to serialize repair log entry", true, e);
+        }
+        m_writeChunk.m_position += length;
+        m_writeChunk.m_liveItems++;
+        m_log.add(new Item(type, m_writeChunk, offset, length, msg.m_sourceHSId, handle, txnId));
+    }
+
+    // drop an item's claim on its chunk, freeing or rewinding the chunk once it is empty.
+    private void release(Item item)
+    {
+        final Chunk chunk = item.m_chunk;
+        if (--chunk.m_liveItems == 0) {
+            if (chunk == m_writeChunk) {
+                chunk.m_position = 0;
+            }
+            else {
+                chunk.discard();
             }
         }
     }
 
+    // free all the off-heap storage when the initiator goes away.
+    void shutdown()
+    {
+        for (Item item : m_log) {
+            release(item);
+        }
+        m_log.clear();
+        if (m_writeChunk != null) {
+            m_writeChunk.discard();
+            m_writeChunk = null;
+        }
+    }
+
     // trim unnecessary log messages.
     private void truncate(long mpHandle, long spHandle)
     {
@@ -183,9 +306,11 @@ public class RepairLog
             RepairLog.Item item = it.next();
             if (item.isSP() && item.m_handle <= spHandle) {
                 it.remove();
+                release(item);
             }
             else if (item.isMP() && item.m_txnId <= mpHandle) {
                 it.remove();
+                release(item);
             }
         }
     }
@@ -196,10 +321,12 @@ public class RepairLog
         return m_lastSpHandle;
     }
 
-    // produce the contents of the repair log.
-    public List<Iv2RepairLogResponseMessage> contents(long requestId, boolean forMPI)
+    // produce the contents of the repair log. Messages are rehydrated one at a time
+    // as the responses are consumed, which must happen before anything else is
+    // delivered to the log.
+    public Iterator<Iv2RepairLogResponseMessage> contents(final long requestId, boolean forMPI)
     {
-        List<Item> items = new LinkedList<Item>();
+        final List<Item> items = new ArrayList<Item>();
         Iterator<Item> it = m_log.iterator();
         while (it.hasNext()) {
             Item i = it.next();
@@ -208,35 +335,50 @@ public class RepairLog
             }
         }
 
-        int ofTotal = items.size() + 1;
+        final int ofTotal = items.size() + 1;
         tmLog.debug("Responding with " + ofTotal + " repair log parts.");
-        List<Iv2RepairLogResponseMessage> responses =
-            new LinkedList<Iv2RepairLogResponseMessage>();
-
-        int seq = 0;
-        Iv2RepairLogResponseMessage header =
-            new Iv2RepairLogResponseMessage(
-                    requestId,
-                    seq++,
-                    ofTotal,
-                    m_lastSpHandle,
-                    m_lastMpHandle,
-                    null); // no payload. just an ack.
-        responses.add(header);
-
-        Iterator<Item> itemator = items.iterator();
-        while (itemator.hasNext()) {
-            Item item = itemator.next();
-            Iv2RepairLogResponseMessage response =
-                new Iv2RepairLogResponseMessage(
+        final long lastSpHandle = m_lastSpHandle;
+        final long lastMpHandle = m_lastMpHandle;
+
+        return new Iterator<Iv2RepairLogResponseMessage>() {
+            int m_seq = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return m_seq < ofTotal;
+            }
+
+            @Override
+            public Iv2RepairLogResponseMessage next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (m_seq == 0) {
+                    return new Iv2RepairLogResponseMessage(
+                            requestId,
+                            m_seq++,
+                            ofTotal,
+                            lastSpHandle,
+                            lastMpHandle,
+                            null); // no payload. just an ack.
+                }
+                Item item = items.get(m_seq - 1);
+                return new Iv2RepairLogResponseMessage(
                         requestId,
-                        seq++,
+                        m_seq++,
                         ofTotal,
                         item.getHandle(),
                         item.getTxnId(),
                         item.getMessage());
-            responses.add(response);
-        }
-        return responses;
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 }
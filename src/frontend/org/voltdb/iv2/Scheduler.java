@@ -25,6 +25,7 @@ import org.voltcore.messaging.Mailbox;
 import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.messaging.VoltMessage;
 
+import org.voltdb.ResultDigestStats;
 import org.voltdb.SiteProcedureConnection;
 import org.voltdb.StarvationTracker;
 import org.voltdb.VoltDB;
@@ -102,10 +103,18 @@ abstract public class Scheduler implements InitiatorMessageHandler
      */
     protected Object m_lock;
 
+    // Non-null when duplicate counters should compare result digests
+    protected ResultDigestStats m_resultDigestStats = null;
+
     Scheduler(int partitionId, SiteTaskerQueue taskQueue)
+    {
+        this(partitionId, taskQueue, new TransactionTaskQueue(taskQueue));
+    }
+
+    Scheduler(int partitionId, SiteTaskerQueue taskQueue, TransactionTaskQueue pendingTasks)
     {
         m_tasks = taskQueue;
-        m_pendingTasks = new TransactionTaskQueue(m_tasks);
+        m_pendingTasks = pendingTasks;
         m_partitionId = partitionId;
         m_txnEgo = TxnEgo.makeZero(partitionId);
     }
@@ -152,6 +161,10 @@ abstract public class Scheduler implements InitiatorMessageHandler
         m_tasks.setStarvationTracker(tracker);
     }
 
+    public void setResultDigestStats(ResultDigestStats stats) {
+        m_resultDigestStats = stats;
+    }
+
     public void setLock(Object o) {
         m_lock = o;
     }
@@ -45,6 +45,7 @@ import org.voltdb.PartitionDRGateway;
 import org.voltdb.ProcedureRunner;
 import org.voltdb.SiteProcedureConnection;
 import org.voltdb.SiteSnapshotConnection;
+import org.voltdb.SiteTaskProfile;
 import org.voltdb.SnapshotDataTarget;
 import org.voltdb.SnapshotSiteProcessor;
 import org.voltdb.SnapshotTableTask;
@@ -111,6 +112,11 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
 
     // Manages pending tasks.
     final SiteTaskerQueue m_scheduler;
+    // Tasks taken from m_scheduler in one batch, only touched by the site thread
+    static final int TASK_BATCH_SIZE = Math.max(1, Integer.getInteger("siteTaskBatchSize", 8));
+    private final SiteTasker m_taskBatch[] = new SiteTasker[TASK_BATCH_SIZE];
+    // Time spent per task type, null if the queue has no starvation tracker
+    private SiteTaskProfile m_taskProfile = null;
 
     /*
      * There is really no legit reason to touch the initiator mailbox from the site,
@@ -467,24 +473,41 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         }
         initialize(m_startupConfig.m_serializedCatalog, m_startupConfig.m_timestamp);
         m_startupConfig = null; // release the serializedCatalog bytes.
+        if (m_scheduler.getStarvationTracker() != null) {
+            m_taskProfile = m_scheduler.getStarvationTracker().getTaskProfile();
+        }
 
         try {
             while (m_shouldContinue) {
                 if (m_rejoinState == kStateRunning) {
-                    // Normal operation blocks the site thread on the sitetasker queue.
-                    SiteTasker task = m_scheduler.take();
-                    if (task instanceof TransactionTask) {
-                        m_currentTxnId = ((TransactionTask)task).getTxnId();
-                        m_lastTxnTime = EstTime.currentTimeMillis();
+                    // Normal operation blocks the site thread on the sitetasker queue
+                    // and runs everything already queued behind the first task in one go.
+                    final int count = m_scheduler.takeBatch(m_taskBatch);
+                    for (int i = 0; i < count; i++) {
+                        SiteTasker task = m_taskBatch[i];
+                        m_taskBatch[i] = null;
+                        if (!m_shouldContinue) {
+                            continue;
+                        }
+                        if (task instanceof TransactionTask) {
+                            m_currentTxnId = ((TransactionTask)task).getTxnId();
+                            m_lastTxnTime = EstTime.currentTimeMillis();
+                        }
+                        final long start = System.nanoTime();
+                        final long eeStart = m_ee.getExecutionNanos();
+                        task.run(getSiteProcedureConnection());
+                        profileTask(task, start, eeStart);
                     }
-                    task.run(getSiteProcedureConnection());
                 }
                 else {
                     // Rejoin operation poll and try to do some catchup work. Tasks
                     // are responsible for logging any rejoin work they might have.
                     SiteTasker task = m_scheduler.poll();
                     if (task != null) {
+                        final long start = System.nanoTime();
+                        final long eeStart = m_ee.getExecutionNanos();
                         task.runForRejoin(getSiteProcedureConnection(), m_rejoinTaskLog);
+                        profileTask(task, start, eeStart);
                     }
                     replayFromTaskLog();
                 }
@@ -508,6 +531,14 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         shutdown();
     }
 
+    private void profileTask(SiteTasker task, long start, long eeStart)
+    {
+        if (m_taskProfile != null) {
+            m_taskProfile.taskRan(task.getClass(), System.nanoTime() - start,
+                    m_ee.getExecutionNanos() - eeStart);
+        }
+    }
+
     ParticipantTransactionState global_replay_mpTxn = null;
     void replayFromTaskLog() throws IOException
     {
@@ -37,4 +37,13 @@ public abstract class SiteTasker {
     abstract public void runForRejoin(SiteProcedureConnection siteConnection,
             TaskLog rejoinTaskLog) throws IOException;
 
+    /**
+     * The SiteTaskerQueue lane this task is queued in. Anything that has to
+     * stay ordered with transactions must use the transaction lane.
+     */
+    public int getQueueLane()
+    {
+        return SiteTaskerQueue.TRANSACTION_LANE;
+    }
+
 }
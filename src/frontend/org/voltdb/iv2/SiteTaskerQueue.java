@@ -17,48 +17,223 @@
 
 package org.voltdb.iv2;
 
-import jsr166y.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import org.voltdb.StarvationTracker;
 
-/** SiteTaskerScheduler orders SiteTaskers for execution. */
+/**
+ * SiteTaskerScheduler orders SiteTaskers for execution.
+ *
+ * Tasks are queued in lock-free multi-producer, single-consumer lanes and
+ * the Site thread is the only consumer. Each SiteTasker picks its lane:
+ * <ul>
+ * <li>PRIORITY_LANE: short periodic site upkeep (EE ticks, DR flushes),
+ * always run first.</li>
+ * <li>TRANSACTION_LANE: transaction work, single-part procedures and
+ * multi-part fragments alike. They have to share one FIFO lane because the
+ * TransactionTaskQueue's release order is the serialization order.</li>
+ * <li>BACKGROUND_LANE: snapshot work (SnapshotTask). It only runs when no
+ * transaction work is queued, or when its oldest task has waited longer
+ * than the background delay so it is never starved.</li>
+ * </ul>
+ */
 public class SiteTaskerQueue
 {
-    private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
+    public static final int PRIORITY_LANE = 0;
+    public static final int TRANSACTION_LANE = 1;
+    public static final int BACKGROUND_LANE = 2;
+    static final int LANE_COUNT = 3;
+
+    // Longest background work waits behind queued transaction work
+    static final long BACKGROUND_MAX_DELAY_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(Integer.getInteger("siteBackgroundTaskMaxDelayMs", 10));
+
+    private static final class Node {
+        SiteTasker m_task;
+        final int m_lane;
+        final long m_offerTime;
+        volatile Node m_next;
+
+        Node(SiteTasker task, int lane, long offerTime) {
+            m_task = task;
+            m_lane = lane;
+            m_offerTime = offerTime;
+        }
+    }
+
+    /*
+     * Intrusive MPSC linked queue. Producers swap themselves in as the tail
+     * and then link the previous tail to them. The consumer owns m_head, which
+     * is always a stub node whose successor is the next task.
+     */
+    private static final class Lane {
+        private Node m_head;
+        private final AtomicReference<Node> m_tail;
+
+        Lane() {
+            Node stub = new Node(null, -1, 0);
+            m_head = stub;
+            m_tail = new AtomicReference<Node>(stub);
+        }
+
+        void offer(Node node) {
+            Node prev = m_tail.getAndSet(node);
+            prev.m_next = node;
+        }
+
+        Node peek() {
+            return m_head.m_next;
+        }
+
+        Node poll() {
+            Node next = m_head.m_next;
+            if (next != null) {
+                m_head = next;
+            }
+            return next;
+        }
+    }
+
+    private final Lane m_lanes[] = new Lane[LANE_COUNT];
+    private final AtomicInteger m_depth = new AtomicInteger();
+    // The Site thread while it is parked waiting for work
+    private volatile Thread m_waiter = null;
+    private final long m_backgroundMaxDelay;
     private StarvationTracker m_starvationTracker;
 
+    public SiteTaskerQueue()
+    {
+        this(BACKGROUND_MAX_DELAY_NANOS);
+    }
+
+    SiteTaskerQueue(long backgroundMaxDelayNanos)
+    {
+        for (int i = 0; i < LANE_COUNT; i++) {
+            m_lanes[i] = new Lane();
+        }
+        m_backgroundMaxDelay = backgroundMaxDelayNanos;
+    }
+
     public boolean offer(SiteTasker task)
     {
-        return m_tasks.offer(task);
+        final int lane = task.getQueueLane();
+        m_depth.incrementAndGet();
+        m_lanes[lane].offer(new Node(task, lane, System.nanoTime()));
+        final Thread waiter = m_waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return true;
     }
 
     // Block on the site tasker queue.
     public SiteTasker take() throws InterruptedException
     {
-        SiteTasker task = m_tasks.poll();
+        SiteTasker task = poll();
+        if (task != null) {
+            return task;
+        }
+        return await(System.nanoTime());
+    }
+
+    /**
+     * Block until there is work and then drain up to batch.length tasks in
+     * lane order into batch, so the Site can run them without coming back to
+     * the queue for each one.
+     * @return the number of tasks placed in batch, at least 1
+     */
+    public int takeBatch(SiteTasker batch[]) throws InterruptedException
+    {
+        long now = System.nanoTime();
+        SiteTasker task = next(now);
         if (task == null) {
+            task = await(now);
+            now = System.nanoTime();
+        }
+        batch[0] = task;
+        int count = 1;
+        while (count < batch.length && (task = next(now)) != null) {
+            batch[count++] = task;
+        }
+        return count;
+    }
+
+    private SiteTasker await(long now) throws InterruptedException
+    {
+        SiteTasker task;
+        if (m_starvationTracker != null) {
             m_starvationTracker.beginStarvation();
-        } else {
-            return task;
         }
+        m_waiter = Thread.currentThread();
         try {
-            return m_tasks.take();
+            // The waiter is published before the lanes are checked again so
+            // that a producer either sees it and unparks us, or we see its task.
+            while ((task = next(now)) == null) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                now = System.nanoTime();
+            }
         } finally {
-            m_starvationTracker.endStarvation();
+            m_waiter = null;
+            if (m_starvationTracker != null) {
+                m_starvationTracker.endStarvation();
+            }
         }
+        return task;
     }
 
     // Non-blocking poll on the site tasker queue.
     public SiteTasker poll()
     {
-        return m_tasks.poll();
+        return next(System.nanoTime());
+    }
+
+    // Pick the next task by lane priority. Only called by the consumer.
+    private SiteTasker next(long now)
+    {
+        Node node = m_lanes[PRIORITY_LANE].poll();
+        if (node == null) {
+            final Lane background = m_lanes[BACKGROUND_LANE];
+            final Node waiting = background.peek();
+            if (waiting != null && (m_lanes[TRANSACTION_LANE].peek() == null ||
+                                    now - waiting.m_offerTime >= m_backgroundMaxDelay)) {
+                node = background.poll();
+            }
+            else {
+                node = m_lanes[TRANSACTION_LANE].poll();
+            }
+        }
+        if (node == null) {
+            return null;
+        }
+        final int depth = m_depth.getAndDecrement();
+        if (m_starvationTracker != null) {
+            m_starvationTracker.dequeued(node.m_lane, now - node.m_offerTime, depth);
+        }
+        final SiteTasker task = node.m_task;
+        // node is the new stub of its lane, don't keep the task reachable
+        node.m_task = null;
+        return task;
     }
 
     public boolean isEmpty() {
-        return m_tasks.isEmpty();
+        return m_depth.get() <= 0;
+    }
+
+    public int size() {
+        return Math.max(m_depth.get(), 0);
     }
 
     public void setStarvationTracker(StarvationTracker tracker) {
         m_starvationTracker = tracker;
     }
+
+    public StarvationTracker getStarvationTracker() {
+        return m_starvationTracker;
+    }
 }
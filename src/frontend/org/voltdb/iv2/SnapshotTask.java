@@ -37,4 +37,10 @@ public class SnapshotTask extends SiteTasker
     {
         throw new RuntimeException("Snapshot task attempted snapshot on partial rejoin state.");
     }
+
+    @Override
+    public int getQueueLane()
+    {
+        return SiteTaskerQueue.BACKGROUND_LANE;
+    }
 }
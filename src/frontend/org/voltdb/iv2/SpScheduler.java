@@ -38,6 +38,7 @@ import org.voltdb.ClientResponseImpl;
 import org.voltdb.CommandLog;
 import org.voltdb.CommandLog.DurabilityListener;
 import org.voltdb.PartitionDRGateway;
+import org.voltdb.ResultDigestStats;
 import org.voltdb.SnapshotCompletionInterest;
 import org.voltdb.SnapshotCompletionMonitor;
 import org.voltdb.SystemProcedureCatalog;
@@ -57,6 +58,21 @@ import org.voltdb.messaging.MultiPartitionParticipantMessage;
 
 public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 {
+    /**
+     * Load balance read-only single partition procedures across all replicas of
+     * the partition instead of running them at the master. Replication is synchronous,
+     * so a replica has already executed every write that was acknowledged to a client.
+     */
+    public static final boolean REPLICA_READS = Boolean.getBoolean("replicaReads");
+
+    /**
+     * A replica only serves reads while it has heard from the master's host within this
+     * many milliseconds, and forwards them to the master otherwise. Keep it well below the
+     * dead host timeout so a replica that has been cut off stops serving reads before the
+     * survivors drop it from the replica set and commit writes without it.
+     */
+    static final long REPLICA_READ_MAX_STALENESS_MS = Long.getLong("replicaReadMaxStalenessMs", 1000);
+
     static class DuplicateCounterKey implements Comparable<DuplicateCounterKey>
     {
         private final long m_txnId;
@@ -401,12 +417,18 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
              * it does looser tracking of client handles since it can't be
              * partitioned from the local replica.
              */
-            if (!m_isLeader &&
+            if (!m_isLeader && !REPLICA_READS &&
                     CoreUtils.getHostIdFromHSId(msg.getInitiatorHSId()) !=
                     CoreUtils.getHostIdFromHSId(m_mailbox.getHSId())) {
                 VoltDB.crashLocalVoltDB("Only allowed to do short circuit reads locally", true, null);
                     }
 
+            if (!m_isLeader && REPLICA_READS && !canServeReplicaRead()) {
+                // The master replies to the client interface directly
+                m_mailbox.send(((InitiatorMailbox)m_mailbox).getMasterHsId(m_partitionId), message);
+                return;
+            }
+
             /*
              * If this is for CL replay or DR, update the unique ID generator
              */
@@ -503,7 +525,8 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 m_mailbox.send(m_sendToHSIds, replmsg);
                 DuplicateCounter counter = new DuplicateCounter(
                         msg.getInitiatorHSId(),
-                        msg.getTxnId(), m_replicaHSIds, msg.getStoredProcedureName());
+                        msg.getTxnId(), m_replicaHSIds, msg.getStoredProcedureName(),
+                        digestStatsFor(msg));
                 m_duplicateCounters.put(new DuplicateCounterKey(msg.getTxnId(), newSpHandle), counter);
             }
         }
@@ -557,6 +580,43 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         }
     }
 
+    /*
+     * A replica can serve a read if it isn't still rejoining and the master's host
+     * has been heard from recently enough that the replica can't have been dropped
+     * from the replica set without noticing.
+     */
+    private boolean canServeReplicaRead()
+    {
+        if (!(m_mailbox instanceof InitiatorMailbox)) {
+            return true;
+        }
+        InitiatorMailbox mailbox = (InitiatorMailbox)m_mailbox;
+        if (!mailbox.acceptPromotion()) {
+            return false;
+        }
+        int masterHostId = CoreUtils.getHostIdFromHSId(mailbox.getMasterHsId(m_partitionId));
+        return VoltDB.instance().getHostMessenger().getMillisSinceLastMessage(masterHostId) <=
+            REPLICA_READ_MAX_STALENESS_MS;
+    }
+
+    /*
+     * Result digests are only compared for user procedures and their fragments.
+     * System procedures may legitimately return different results from each
+     * replica, e.g. per-host statistics.
+     */
+    private ResultDigestStats digestStatsFor(Iv2InitiateTaskMessage message)
+    {
+        if (SystemProcedureCatalog.listing.get(message.getStoredProcedureName()) != null) {
+            return null;
+        }
+        return m_resultDigestStats;
+    }
+
+    private ResultDigestStats digestStatsFor(FragmentTaskMessage message)
+    {
+        return message.isSysProcTask() ? null : m_resultDigestStats;
+    }
+
     private void handleIv2InitiateTaskMessageRepair(List<Long> needsRepair, Iv2InitiateTaskMessage message)
     {
         if (!message.isSinglePartition()) {
@@ -574,7 +634,8 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         List<Long> expectedHSIds = new ArrayList<Long>(needsRepair);
         DuplicateCounter counter = new DuplicateCounter(
                 HostMessenger.VALHALLA,
-                message.getTxnId(), expectedHSIds, message.getStoredProcedureName());
+                message.getTxnId(), expectedHSIds, message.getStoredProcedureName(),
+                digestStatsFor(message));
         m_duplicateCounters.put(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()), counter);
 
         m_uniqueIdGenerator.updateMostRecentlyGeneratedUniqueId(message.getUniqueId());
@@ -604,7 +665,8 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
         List<Long> expectedHSIds = new ArrayList<Long>(needsRepair);
         DuplicateCounter counter = new DuplicateCounter(
                 message.getCoordinatorHSId(), // Assume that the MPI's HSID hasn't changed
-                message.getTxnId(), expectedHSIds, "MP_DETERMINISM_ERROR");
+                message.getTxnId(), expectedHSIds, "MP_DETERMINISM_ERROR",
+                digestStatsFor(message));
         m_duplicateCounters.put(new DuplicateCounterKey(message.getTxnId(), message.getSpHandle()), counter);
 
         // is local repair necessary?
@@ -754,7 +816,8 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
                 if (message.getFragmentTaskType() != FragmentTaskMessage.SYS_PROC_PER_SITE) {
                     counter = new DuplicateCounter(
                             msg.getCoordinatorHSId(),
-                            msg.getTxnId(), m_replicaHSIds, "MP_DETERMINISM_ERROR");
+                            msg.getTxnId(), m_replicaHSIds, "MP_DETERMINISM_ERROR",
+                            digestStatsFor(msg));
                 }
                 else {
                     counter = new SysProcDuplicateCounter(
@@ -67,5 +67,11 @@ public class TickProducer extends SiteTasker implements Runnable
     {
         siteConnection.tick();
     }
+
+    @Override
+    public int getQueueLane()
+    {
+        return SiteTaskerQueue.PRIORITY_LANE;
+    }
 }
 
@@ -32,7 +32,7 @@ public class TransactionTaskQueue
 {
     protected static final VoltLogger hostLog = new VoltLogger("HOST");
 
-    final private SiteTaskerQueue m_taskQueue;
+    final protected SiteTaskerQueue m_taskQueue;
 
     /*
      * Multi-part transactions create a backlog of tasks behind them. A queue is
@@ -134,7 +134,7 @@ public class TransactionTaskQueue
 
     // Add a local method to offer to the SiteTaskerQueue so we have
     // a single point we can log through.
-    private void taskQueueOffer(TransactionTask task)
+    void taskQueueOffer(TransactionTask task)
     {
         Iv2Trace.logSiteTaskerQueueOffer(task);
         m_taskQueue.offer(task);
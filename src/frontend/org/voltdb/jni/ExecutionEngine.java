@@ -84,6 +84,18 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
     private int m_cacheMisses = 0;
     private int m_eeCacheSize = 0;
 
+    // Time spent in fragment execution, table loads and table streaming,
+    // the calls that do the bulk of the work in the EE
+    private long m_executionNanos = 0;
+
+    /**
+     * @return Nanoseconds the site thread has spent executing plan fragments,
+     * loading tables and streaming tables out of this engine.
+     */
+    public long getExecutionNanos() {
+        return m_executionNanos;
+    }
+
     /** Make the EE clean and ready to do new transactional work. */
     public void resetDirtyStatus() {
         m_dirty = false;
@@ -328,8 +340,20 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
      * @return A positive number indicating the number of bytes serialized or 0 if there is no more data.
      *        -1 is returned if there is an error (such as the table not having the specified stream type activated).
      */
-    public abstract int[] tableStreamSerializeMore(int tableId, TableStreamType type,
-                                                   List<DBBPool.BBContainer> outputBuffers);
+    public int[] tableStreamSerializeMore(int tableId, TableStreamType type,
+                                          List<DBBPool.BBContainer> outputBuffers)
+    {
+        final long start = System.nanoTime();
+        try {
+            return coreTableStreamSerializeMore(tableId, type, outputBuffers);
+        }
+        finally {
+            m_executionNanos += System.nanoTime() - start;
+        }
+    }
+
+    protected abstract int[] coreTableStreamSerializeMore(int tableId, TableStreamType type,
+                                                          List<DBBPool.BBContainer> outputBuffers);
 
     public abstract void processRecoveryMessage( ByteBuffer buffer, long pointer);
 
@@ -352,6 +376,7 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
                                             long uniqueId,
                                             long undoQuantumToken) throws EEException
     {
+        final long start = System.nanoTime();
         try {
             VoltTable[] results = coreExecutePlanFragments(numFragmentIds, planFragmentIds, inputDepIds,
                     parameterSets, spHandle, lastCommittedSpHandle, uniqueId, undoQuantumToken);
@@ -364,6 +389,7 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
             // will still be used to estimate the cache size, but it's hard to count cache hits
             // during an exception, so we don't count cache misses either to get the right ratio.
             m_cacheMisses = 0;
+            m_executionNanos += System.nanoTime() - start;
         }
     }
 
@@ -381,7 +407,22 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
 
     abstract public long getThreadLocalPoolAllocations();
 
-    abstract public byte[] loadTable(
+    public byte[] loadTable(
+        int tableId, VoltTable table, long spHandle,
+        long lastCommittedSpHandle, boolean returnUniqueViolations,
+        long undoToken) throws EEException
+    {
+        final long start = System.nanoTime();
+        try {
+            return coreLoadTable(tableId, table, spHandle, lastCommittedSpHandle,
+                    returnUniqueViolations, undoToken);
+        }
+        finally {
+            m_executionNanos += System.nanoTime() - start;
+        }
+    }
+
+    abstract protected byte[] coreLoadTable(
         int tableId, VoltTable table, long spHandle,
         long lastCommittedSpHandle, boolean returnUniqueViolations,
         long undoToken) throws EEException;
@@ -833,7 +833,7 @@ public class ExecutionEngineIPC extends ExecutionEngine {
 
 
     @Override
-    public byte[] loadTable(final int tableId, final VoltTable table, final long spHandle,
+    protected byte[] coreLoadTable(final int tableId, final VoltTable table, final long spHandle,
             final long lastCommittedSpHandle, boolean returnUniqueViolations, long undoToken)
     throws EEException
     {
@@ -1116,8 +1116,8 @@ public class ExecutionEngineIPC extends ExecutionEngine {
     }
 
     @Override
-    public int[] tableStreamSerializeMore(int tableId, TableStreamType streamType,
-                                          List<BBContainer> outputBuffers) {
+    protected int[] coreTableStreamSerializeMore(int tableId, TableStreamType streamType,
+                                                 List<BBContainer> outputBuffers) {
         try {
             m_data.clear();
             m_data.putInt(Commands.TableStreamSerializeMore.m_id);
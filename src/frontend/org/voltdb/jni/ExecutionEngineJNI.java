@@ -342,7 +342,7 @@ public class ExecutionEngineJNI extends ExecutionEngine {
     }
 
     @Override
-    public byte[] loadTable(final int tableId, final VoltTable table,
+    protected byte[] coreLoadTable(final int tableId, final VoltTable table,
         final long txnId, final long lastCommittedTxnId, boolean returnUniqueViolations,
         long undoToken) throws EEException
     {
@@ -462,9 +462,9 @@ public class ExecutionEngineJNI extends ExecutionEngine {
     }
 
     @Override
-    public int[] tableStreamSerializeMore(int tableId,
-                                          TableStreamType streamType,
-                                          List<BBContainer> outputBuffers) {
+    protected int[] coreTableStreamSerializeMore(int tableId,
+                                                 TableStreamType streamType,
+                                                 List<BBContainer> outputBuffers) {
         //Clear is destructive, do it before the native call
         deserializer.clear();
         long remaining = nativeTableStreamSerializeMore(pointer,
@@ -134,7 +134,7 @@ public class MockExecutionEngine extends ExecutionEngine {
     }
 
     @Override
-    public byte[] loadTable(final int tableId, final VoltTable table, final long txnId,
+    protected byte[] coreLoadTable(final int tableId, final VoltTable table, final long txnId,
         final long lastCommittedTxnId, boolean returnUniqueViolations, long undoToken)
     throws EEException
     {
@@ -185,8 +185,8 @@ public class MockExecutionEngine extends ExecutionEngine {
     }
 
     @Override
-    public int[] tableStreamSerializeMore(int tableId, TableStreamType type,
-                                          List<DBBPool.BBContainer> outputBuffers) {
+    protected int[] coreTableStreamSerializeMore(int tableId, TableStreamType type,
+                                                 List<DBBPool.BBContainer> outputBuffers) {
         return new int[] {0};
     }
 
@@ -135,19 +135,22 @@ public class SnapshotRegistry {
             public final String name;
             public final String filename;
             public final long size;
+            public final long writeTimeNanos;
             public final Throwable error;
 
             private Table(String name, String filename) {
                 this.name = name;
                 this.filename = filename;
                 size = 0;
+                writeTimeNanos = 0;
                 error = null;
             }
 
-            public Table(Table t, long size, Throwable error) {
+            public Table(Table t, long size, long writeTimeNanos, Throwable error) {
                 this.name = t.name;
                 this.filename = t.filename;
                 this.size = size;
+                this.writeTimeNanos = writeTimeNanos;
                 this.error = error;
             }
         }
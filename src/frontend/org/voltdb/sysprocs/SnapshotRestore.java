@@ -20,7 +20,6 @@ package org.voltdb.sysprocs;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -190,13 +189,20 @@ public class SnapshotRestore extends VoltSystemProcedure
             relevantPartitionSet.add(part_id);
         }
 
+        // All the files are read concurrently, so split the read ahead between them
+        HashSet<Integer> distinctHostIds = new HashSet<Integer>();
+        for (int originalHostId : originalHostIds) {
+            distinctHostIds.add(originalHostId);
+        }
+        final int readAheadChunks = Math.max(2, st.getLocalSites().length * 4 / distinctHostIds.size());
+
         for (int originalHostId : originalHostIds) {
             final File f = getSaveFileForPartitionedTable(filePath, fileNonce,
                     tableName,
                     originalHostId);
             TableSaveFile savefile = getTableSaveFile(
                     f,
-                    st.getLocalSites().length * 4,
+                    readAheadChunks,
                     relevantPartitionSet.toArray(new Integer[relevantPartitionSet.size()]));
 
             m_saveFiles.offer(savefile);
@@ -214,21 +220,42 @@ public class SnapshotRestore extends VoltSystemProcedure
 
     private static synchronized boolean hasMoreChunks() throws IOException {
         boolean hasMoreChunks = false;
-        while (!hasMoreChunks && m_saveFiles.peek() != null) {
-            TableSaveFile f = m_saveFiles.peek();
-            hasMoreChunks = f.hasMoreChunks();
-            if (!hasMoreChunks) {
+        Iterator<TableSaveFile> iter = m_saveFiles.iterator();
+        while (iter.hasNext()) {
+            TableSaveFile f = iter.next();
+            if (f.hasMoreChunks()) {
+                hasMoreChunks = true;
+            } else {
                 try {
                     f.close();
                 } catch (IOException e) {
                 }
-                m_saveFiles.poll();
+                iter.remove();
             }
         }
         return hasMoreChunks;
     }
 
     private static synchronized BBContainer getNextChunk() throws IOException {
+        /*
+         * Take a chunk from whichever file already has one read ahead, rotating through
+         * the files so that the files of all the original hosts are read from disk
+         * concurrently rather than one after another.
+         */
+        for (int ii = m_saveFiles.size(); ii > 0; ii--) {
+            TableSaveFile f = m_saveFiles.poll();
+            BBContainer c = f.pollNextChunk();
+            if (c != null || f.hasMoreChunks()) {
+                m_saveFiles.offer(f);
+            } else {
+                f.close();
+            }
+            if (c != null) {
+                return c;
+            }
+        }
+
+        // Nothing has been read ahead yet, wait on the first file that has more
         BBContainer c = null;
         while (c == null && m_saveFiles.peek() != null) {
             TableSaveFile f = m_saveFiles.peek();
@@ -1110,7 +1137,7 @@ public class SnapshotRestore extends VoltSystemProcedure
             startAction == StartAction.CREATE && mode != org.voltdb.OperationMode.INITIALIZING;
 
         final boolean isCLEnabled =
-            VoltDB.instance().getCommandLog().getClass().getSimpleName().equals("CommandLogImpl");
+            VoltDB.instance().getCommandLog().isEnabled();
 
         final boolean isStartedWithCreateAction = startAction == StartAction.CREATE;
 
@@ -1212,13 +1239,12 @@ public class SnapshotRestore extends VoltSystemProcedure
             int readAheadChunks,
             Integer relevantPartitionIds[]) throws IOException
             {
-        @SuppressWarnings("resource")
-        FileInputStream savefile_input = new FileInputStream(saveFile);
         TableSaveFile savefile =
                 new TableSaveFile(
-                        savefile_input.getChannel(),
+                        saveFile,
                         readAheadChunks,
-                        relevantPartitionIds);
+                        relevantPartitionIds,
+                        false);
         return savefile;
             }
 
@@ -1637,11 +1663,23 @@ public class SnapshotRestore extends VoltSystemProcedure
                     SiteTracker tracker = ctx.getSiteTrackerForSnapshot();
                     sites_to_partitions.putAll(tracker.getSitesToPartitions());
 
-                    int[] dependencyIds = new int[sites_to_partitions.size()];
-                    pfs = new SynthesizedPlanFragment[sites_to_partitions.size() + 1];
+                    // Only the sites owning a partition with rows in this chunk get a load fragment
+                    List<Long> target_sites = new ArrayList<Long>();
+                    for (Map.Entry<Long, Integer> e : sites_to_partitions.entrySet()) {
+                        if (partitioned_tables[e.getValue()] != null) {
+                            target_sites.add(e.getKey());
+                        }
+                    }
+                    if (target_sites.isEmpty()) {
+                        c.discard();
+                        continue;
+                    }
+
+                    int[] dependencyIds = new int[target_sites.size()];
+                    pfs = new SynthesizedPlanFragment[target_sites.size() + 1];
                     int pfs_index = 0;
 
-                    for (long site_id : sites_to_partitions.keySet()) {
+                    for (long site_id : target_sites) {
                         int partition_id = sites_to_partitions.get(site_id);
                         dependencyIds[pfs_index] = TableSaveFileState
                                 .getNextDependencyId();
@@ -1670,7 +1708,7 @@ public class SnapshotRestore extends VoltSystemProcedure
                     aggregatorFragment.parameters = ParameterSet.fromArrayNoCopy(
                             result_dependency_id,
                             "Received confirmation of successful partitioned-to-replicated table load");
-                    pfs[sites_to_partitions.size()] = aggregatorFragment;
+                    pfs[target_sites.size()] = aggregatorFragment;
                 } else {
                     byte compressedTable[] = table.getCompressedBytes();
                     pfs = new SynthesizedPlanFragment[2];
@@ -1792,10 +1830,24 @@ public class SnapshotRestore extends VoltSystemProcedure
                     c.discard();
                 }
 
-                int[] dependencyIds = new int[sites_to_partitions.size()];
-                SynthesizedPlanFragment[] pfs = new SynthesizedPlanFragment[sites_to_partitions.size() + 1];
+                /*
+                 * Rows were already hashed to their partitions here, so only the sites
+                 * owning a partition with rows in this chunk need a load fragment.
+                 */
+                List<Long> target_sites = new ArrayList<Long>();
+                for (Map.Entry<Long, Integer> e : sites_to_partitions.entrySet()) {
+                    if (asReplicated || partitioned_tables[e.getValue()] != null) {
+                        target_sites.add(e.getKey());
+                    }
+                }
+                if (target_sites.isEmpty()) {
+                    continue;
+                }
+
+                int[] dependencyIds = new int[target_sites.size()];
+                SynthesizedPlanFragment[] pfs = new SynthesizedPlanFragment[target_sites.size() + 1];
                 int pfs_index = 0;
-                for (long site_id : sites_to_partitions.keySet())
+                for (long site_id : target_sites)
                 {
                     dependencyIds[pfs_index] = TableSaveFileState.getNextDependencyId();
                     SynthesizedPlanFragment loadFragment = new SynthesizedPlanFragment();
@@ -1839,7 +1891,7 @@ public class SnapshotRestore extends VoltSystemProcedure
                             result_dependency_id,
                             "Received confirmation of successful partitioned-to-partitioned table load");
                 }
-                pfs[sites_to_partitions.size()] = aggregatorFragment;
+                pfs[target_sites.size()] = aggregatorFragment;
                 results = executeSysProcPlanFragments(pfs, m_mbox);
             }
         } catch (Exception e) {
@@ -1892,9 +1944,12 @@ public class SnapshotRestore extends VoltSystemProcedure
             partitioned_tables[partition].add(loadedTable);
         }
 
+        // Partitions without any rows from this chunk are left null and aren't sent anywhere
         byte compressedTables[][] = new byte[number_of_partitions][];
         for (int ii = 0; ii < compressedTables.length; ii++) {
-            compressedTables[ii] = partitioned_tables[ii].getCompressedBytes();
+            if (partitioned_tables[ii].getRowCount() > 0) {
+                compressedTables[ii] = partitioned_tables[ii].getCompressedBytes();
+            }
         }
         return compressedTables;
     }
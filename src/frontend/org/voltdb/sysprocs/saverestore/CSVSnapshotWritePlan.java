@@ -95,7 +95,7 @@ public class CSVSnapshotWritePlan extends SnapshotWritePlan
 
         NativeSnapshotWritePlan.createFileBasedCompletionTasks(file_path, file_nonce,
                 txnId, partitionTransactionIds, context, exportSequenceNumbers, timestamp,
-                context.getNumberOfPartitions());
+                context.getNumberOfPartitions(), null);
 
         final List<Table> tables = SnapshotUtil.getTablesToSave(context.getDatabase());
         final AtomicInteger numTables = new AtomicInteger(tables.size());
@@ -0,0 +1,311 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.VoltTable;
+
+import com.google.common.util.concurrent.Callables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Keeps track, for this host, of the chain of incremental native snapshots. Each snapshot in
+ * the chain is a delta of the last one completed in the same path. Its table files hold the
+ * tuple blocks written since the base snapshot and only reference the ids of the others, so
+ * restore rebuilds a table from the delta and the chain of base files.
+ *
+ * Once a chain reaches the requested length the table files of its newest snapshot are
+ * rewritten in the background to hold every block, which ends the chain there. The block ids
+ * stay the same so the next delta can still be taken against the rewritten snapshot, and the
+ * older snapshots of the chain can be deleted once nothing references them.
+ *
+ * The state is in memory only. The EE only leaves out blocks when it took part in the base
+ * snapshot itself, so after a restart, rejoin, catalog change or repartitioning the next
+ * snapshot holds every block and starts a new chain.
+ */
+public class IncrementalSnapshotTracker
+{
+    private static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
+
+    /**
+     * One snapshot of the chain on this host.
+     */
+    public static class Generation
+    {
+        final String m_path;
+        final String m_nonce;
+        final long m_txnId;
+        final long m_catalogCRC;
+        final List<Integer> m_partitions;
+        final int m_numPartitions;
+        final int m_consolidate;
+        final String m_baseNonce;
+        final long m_baseEpoch;
+        // Number of snapshots whose files a restore of this snapshot reads
+        volatile int m_chainLength;
+        final List<File> m_deltaFiles = new ArrayList<File>();
+        boolean m_failed = false;
+
+        Generation(String path, String nonce, long txnId, long catalogCRC,
+                List<Integer> partitions, int numPartitions, int consolidate, Generation base) {
+            m_path = canonicalPath(path);
+            m_nonce = nonce;
+            m_txnId = txnId;
+            m_catalogCRC = catalogCRC;
+            m_partitions = new ArrayList<Integer>(partitions);
+            Collections.sort(m_partitions);
+            m_numPartitions = numPartitions;
+            m_consolidate = consolidate;
+            m_baseNonce = base == null ? null : base.m_nonce;
+            m_baseEpoch = base == null ? 0 : base.m_txnId;
+            m_chainLength = base == null ? 1 : base.m_chainLength + 1;
+        }
+
+        /**
+         * Nonce of the snapshot this one is a delta of, null if it starts a new chain.
+         */
+        public String getBaseNonce() {
+            return m_baseNonce;
+        }
+
+        /**
+         * Epoch (transaction id) of the snapshot this one is a delta of, 0 if it starts a new chain.
+         */
+        public long getBaseEpoch() {
+            return m_baseEpoch;
+        }
+
+        public int getChainLength() {
+            return m_chainLength;
+        }
+
+        /**
+         * Remember a table file that has a base file, it is rewritten when the chain is consolidated.
+         */
+        public synchronized void addDeltaFile(File tableFile) {
+            m_deltaFiles.add(tableFile);
+        }
+
+        public synchronized void fail() {
+            m_failed = true;
+        }
+
+        private String describeMismatch(Generation other) {
+            if (!m_path.equals(other.m_path)) {
+                return "was written to " + m_path;
+            } else if (m_catalogCRC != other.m_catalogCRC) {
+                return "has a different catalog";
+            } else if (!m_partitions.equals(other.m_partitions) || m_numPartitions != other.m_numPartitions) {
+                return "has different partitions";
+            }
+            return null;
+        }
+    }
+
+    private static Generation m_lastCompleted = null;
+
+    private static final ListeningExecutorService m_consolidator =
+            CoreUtils.getCachedSingleThreadExecutor("Snapshot Consolidator", 15000);
+
+    /**
+     * Start tracking an incremental snapshot about to be written to the given path. It is a
+     * delta of the last completed snapshot if that one is in the same path with the same
+     * catalog and partitions, otherwise it starts a new chain. A chain is consolidated once it
+     * is consolidate snapshots long, 0 never consolidates.
+     */
+    public static synchronized Generation startGeneration(String path, String nonce, long txnId,
+            long catalogCRC, List<Integer> partitions, int numPartitions, int consolidate) {
+        Generation generation =
+                new Generation(path, nonce, txnId, catalogCRC, partitions, numPartitions, consolidate, null);
+        if (m_lastCompleted != null) {
+            final String mismatch = m_lastCompleted.describeMismatch(generation);
+            if (mismatch == null) {
+                generation = new Generation(path, nonce, txnId, catalogCRC, partitions, numPartitions,
+                        consolidate, m_lastCompleted);
+            } else {
+                SNAP_LOG.info("Snapshot " + nonce + " starts a new incremental snapshot chain, the last " +
+                        "snapshot " + m_lastCompleted.m_nonce + " " + mismatch);
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Called once every table file of the snapshot has been closed. Failed snapshots leave the
+     * previously completed generation in place since its table files are still valid bases.
+     */
+    public static synchronized void completeGeneration(final Generation generation) {
+        synchronized (generation) {
+            if (generation.m_failed) {
+                return;
+            }
+        }
+        m_lastCompleted = generation;
+        if (generation.m_consolidate > 0 && generation.m_chainLength >= generation.m_consolidate) {
+            final int chainLength = generation.m_chainLength;
+            // Deltas taken while the files are rewritten are counted from the consolidated snapshot
+            generation.m_chainLength = 1;
+            m_consolidator.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!consolidate(generation)) {
+                        generation.m_chainLength = chainLength;
+                    }
+                }
+            });
+        }
+    }
+
+    private static boolean consolidate(Generation generation) {
+        final List<File> deltaFiles;
+        synchronized (generation) {
+            deltaFiles = new ArrayList<File>(generation.m_deltaFiles);
+        }
+        SNAP_LOG.info("Consolidating the incremental snapshot chain ending with snapshot " + generation.m_nonce);
+        try {
+            for (File deltaFile : deltaFiles) {
+                consolidateTableFile(deltaFile);
+            }
+        } catch (Exception e) {
+            SNAP_LOG.warn("Unable to consolidate the incremental snapshot chain ending with snapshot " +
+                    generation.m_nonce + ", the chain will be consolidated with a later snapshot", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rewrite a block tagged table file that has a base file to hold every block, read through
+     * its chain of base files. The rewritten file keeps the block ids and replaces the original
+     * only once it is complete.
+     */
+    public static void consolidateTableFile(File tableFile) throws IOException, InterruptedException {
+        final TableSaveFile saveFile = new TableSaveFile(tableFile, 3, null, false);
+        final File consolidated = new File(tableFile.getParentFile(), tableFile.getName() + ".consolidating");
+        boolean success = false;
+        try {
+            if (saveFile.getBaseFileName() == null) {
+                success = true;
+                return;
+            }
+            if (!saveFile.getCompleted()) {
+                throw new IOException("Table file " + tableFile + " or one of its base files is not complete");
+            }
+
+            final ByteBuffer tableHeader = saveFile.getTableHeader().duplicate();
+            tableHeader.position(0);
+            final ByteBuffer schemaBuffer = ByteBuffer.allocate(tableHeader.remaining() + 4);
+            schemaBuffer.put(tableHeader);
+            schemaBuffer.putInt(0);
+            schemaBuffer.flip();
+            final VoltTable schemaTable = PrivateVoltTableFactory.createVoltTableFromBuffer(schemaBuffer, true);
+
+            final List<Integer> partitionIds = new ArrayList<Integer>();
+            for (int partitionId : saveFile.getPartitionIds()) {
+                partitionIds.add(partitionId);
+            }
+
+            final DefaultSnapshotDataTarget target =
+                    new DefaultSnapshotDataTarget(consolidated,
+                            saveFile.getHostId(),
+                            saveFile.getClusterName(),
+                            saveFile.getDatabaseName(),
+                            saveFile.getTableName(),
+                            saveFile.getTotalPartitions(),
+                            saveFile.isReplicated(),
+                            partitionIds,
+                            schemaTable,
+                            saveFile.getTxnId(),
+                            saveFile.getTimestamp(),
+                            true,
+                            null);
+            try {
+                while (saveFile.hasMoreChunks()) {
+                    final TableSaveFile.Container c = (TableSaveFile.Container)saveFile.getNextChunk();
+                    if (c == null) {
+                        continue;
+                    }
+                    final BBContainer chunk;
+                    try {
+                        chunk = toBlockTaggedChunk(c, schemaBuffer.capacity() - 4);
+                    } finally {
+                        c.discard();
+                    }
+                    final ListenableFuture<?> writeFuture = target.write(Callables.returning(chunk), null);
+                    if (writeFuture == null) {
+                        break;
+                    }
+                    writeFuture.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                target.close();
+            }
+            if (target.getLastWriteException() != null) {
+                throw target.getLastWriteException();
+            }
+            if (!consolidated.renameTo(tableFile)) {
+                throw new IOException("Unable to replace " + tableFile + " with " + consolidated);
+            }
+            success = true;
+        } finally {
+            saveFile.close();
+            if (!success) {
+                consolidated.delete();
+            }
+        }
+    }
+
+    /*
+     * Lay out a chunk read from a table file the way the EE serializes a block tagged chunk,
+     * the partition id and block id followed by the row count and the rows.
+     */
+    private static BBContainer toBlockTaggedChunk(TableSaveFile.Container c, int tableHeaderLength) {
+        final ByteBuffer rows = c.b.duplicate();
+        rows.position(tableHeaderLength);
+        final BBContainer chunk = DBBPool.allocateDirect(4 + 8 + rows.remaining());
+        chunk.b.putInt(c.partitionId);
+        chunk.b.putLong(c.blockId);
+        chunk.b.put(rows);
+        chunk.b.flip();
+        return chunk;
+    }
+
+    private static String canonicalPath(String path) {
+        try {
+            return new File(path).getCanonicalPath();
+        } catch (IOException e) {
+            return new File(path).getAbsolutePath();
+        }
+    }
+}
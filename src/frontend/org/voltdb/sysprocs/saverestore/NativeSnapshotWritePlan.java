@@ -81,9 +81,24 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
     {
         assert(SnapshotSiteProcessor.ExecutionSitesCurrentlySnapshotting.isEmpty());
 
+        /*
+         * Incremental snapshots tag the rows with the id of the tuple block they come from.
+         * Each is a delta of the last incremental snapshot completed in the same path and the
+         * EE only references the blocks that weren't written since.
+         */
+        final IncrementalSnapshotTracker.Generation generation;
+        if (jsData != null && jsData.optBoolean("incremental", false) &&
+                newPartitionCount == context.getNumberOfPartitions()) {
+            generation = IncrementalSnapshotTracker.startGeneration(file_path, file_nonce, txnId,
+                    context.getCatalogCRC(), tracker.getPartitionsForHost(context.getHostId()),
+                    newPartitionCount, jsData.optInt("consolidate", 0));
+        } else {
+            generation = null;
+        }
+
         NativeSnapshotWritePlan.createFileBasedCompletionTasks(file_path, file_nonce,
                 txnId, partitionTransactionIds, context, exportSequenceNumbers, timestamp,
-                newPartitionCount);
+                newPartitionCount, generation != null ? generation.getBaseNonce() : null);
 
         final List<Table> tables = SnapshotUtil.getTablesToSave(context.getDatabase());
         final AtomicInteger numTables = new AtomicInteger(tables.size());
@@ -115,6 +130,22 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                         SnapshotFormat.NATIVE,
                         context.getHostId());
 
+                String baseFile = null;
+                long baseEpoch = 0;
+                if (generation != null && generation.getBaseNonce() != null) {
+                    final File baseFilePath = SnapshotUtil.constructFileForTable(
+                            table,
+                            file_path,
+                            generation.getBaseNonce(),
+                            SnapshotFormat.NATIVE,
+                            context.getHostId());
+                    if (baseFilePath.exists()) {
+                        baseFile = baseFilePath.getName();
+                        baseEpoch = generation.getBaseEpoch();
+                        generation.addDeltaFile(saveFilePath);
+                    }
+                }
+
                 sdt =
                     constructSnapshotDataTargetForTable(
                             context,
@@ -124,7 +155,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                             context.getNumberOfPartitions(),
                             txnId,
                             timestamp,
-                            tracker.getPartitionsForHost(context.getHostId()));
+                            tracker.getPartitionsForHost(context.getHostId()),
+                            generation != null,
+                            baseFile);
 
                 if (sdt == null) {
                     throw new IOException("Unable to create snapshot target");
@@ -141,7 +174,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                             sdt,
                             new SnapshotDataFilter[0],
                             null,
-                            false);
+                            false,
+                            generation != null ? txnId : 0,
+                            baseEpoch);
 
                 SNAP_LOG.debug("ADDING TASK: " + task);
 
@@ -158,6 +193,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                         "SUCCESS",
                         "");
             } catch (IOException ex) {
+                if (generation != null) {
+                    generation.fail();
+                }
                 handleTargetCreationError(sdt, context, file_nonce, hostname, table.getTypeName(),
                         ex, result);
             }
@@ -165,6 +203,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
 
         if (noTargetsCreated) {
             SnapshotRegistry.discardSnapshot(snapshotRecord);
+        } else if (generation != null) {
+            SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(
+                    createGenerationCompletionTask(generation, new ArrayList<SnapshotDataTarget>(m_targets)));
         }
 
         // Native snapshots place the partitioned tasks on every site and round-robin the
@@ -182,7 +223,9 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
             int numPartitions,
             long txnId,
             long timestamp,
-            List<Integer> partitionsForHost)
+            List<Integer> partitionsForHost,
+            boolean blockTagged,
+            String baseFile)
         throws IOException
     {
         return new DefaultSnapshotDataTarget(f,
@@ -195,7 +238,31 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 partitionsForHost,
                 CatalogUtil.getVoltTable(table),
                 txnId,
-                timestamp);
+                timestamp,
+                blockTagged,
+                baseFile);
+    }
+
+    /**
+     * Once every table file has been closed, make this snapshot the base for the next
+     * incremental snapshot unless a table failed to be written, and consolidate the chain
+     * if it is long enough.
+     */
+    private static Runnable createGenerationCompletionTask(
+            final IncrementalSnapshotTracker.Generation generation,
+            final List<SnapshotDataTarget> targets)
+    {
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (SnapshotDataTarget target : targets) {
+                    if (target.getLastWriteException() != null) {
+                        generation.fail();
+                    }
+                }
+                IncrementalSnapshotTracker.completeGeneration(generation);
+            }
+        };
     }
 
     static void createFileBasedCompletionTasks(
@@ -203,7 +270,7 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
             long txnId, Map<Integer, Long> partitionTransactionIds,
             SystemProcedureExecutionContext context,
             Map<String, Map<Integer, Pair<Long, Long>>> exportSequenceNumbers,
-            long timestamp, int newPartitionCount) throws IOException
+            long timestamp, int newPartitionCount, String incrementalBase) throws IOException
     {
         final List<Table> tables = SnapshotUtil.getTablesToSave(context.getDatabase());
         Runnable completionTask = SnapshotUtil.writeSnapshotDigest(
@@ -217,7 +284,8 @@ public class NativeSnapshotWritePlan extends SnapshotWritePlan
                 partitionTransactionIds,
                 VoltDB.instance().getHostMessenger().getInstanceId(),
                 timestamp,
-                newPartitionCount);
+                newPartitionCount,
+                incrementalBase);
         if (completionTask != null) {
             SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(completionTask);
         }
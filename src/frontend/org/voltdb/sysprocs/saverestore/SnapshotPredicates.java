@@ -34,12 +34,25 @@ import com.google.common.base.Charsets;
 public class SnapshotPredicates {
     private final List<Pair<AbstractExpression, Boolean>> m_predicates =
             new ArrayList<Pair<AbstractExpression, Boolean>>();
+    private long m_snapshotEpoch = 0;
+    private long m_baseEpoch = 0;
 
     public void addPredicate(AbstractExpression predicate, boolean deleteTuples)
     {
         m_predicates.add(Pair.of(predicate, deleteTuples));
     }
 
+    /**
+     * Ask the EE to tag the rows it serializes with the id of the tuple block they came from.
+     * If the table took part in the snapshot identified by baseEpoch, blocks that weren't written
+     * since are only referenced by id. Pass 0 as the base epoch to write every block.
+     */
+    public void setBlockEpochs(long snapshotEpoch, long baseEpoch)
+    {
+        m_snapshotEpoch = snapshotEpoch;
+        m_baseEpoch = baseEpoch;
+    }
+
     public byte[] toBytes()
     {
         byte[][] predicates = new byte[m_predicates.size()][];
@@ -69,15 +82,21 @@ public class SnapshotPredicates {
             VoltDB.crashLocalVoltDB("Failed to serialize snapshot predicates", true, e);
         }
 
+        final boolean blockTagged = m_snapshotEpoch > 0;
         ByteBuffer buf = ByteBuffer.allocate(4 + // predicate count
                                              4 * predicates.length + // predicate byte lengths
-                                             size); // predicate bytes
+                                             size + // predicate bytes
+                                             (blockTagged ? 16 : 0)); // block epochs
 
         buf.putInt(m_predicates.size());
         for (byte[] predicate : predicates) {
             buf.putInt(predicate.length);
             buf.put(predicate);
         }
+        if (blockTagged) {
+            buf.putLong(m_snapshotEpoch);
+            buf.putLong(m_baseEpoch);
+        }
 
         return buf.array();
     }
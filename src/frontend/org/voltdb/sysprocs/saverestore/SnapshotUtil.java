@@ -97,7 +97,8 @@ public class SnapshotUtil {
         Map<Integer, Long> partitionTransactionIds,
         InstanceId instanceId,
         long timestamp,
-        int newPartitionCount)
+        int newPartitionCount,
+        String incrementalBase)
     throws IOException
     {
         final File f = new VoltFile(path, constructDigestFilenameForNonce(nonce, hostId));
@@ -151,6 +152,10 @@ public class SnapshotUtil {
                 }
                 stringer.key("catalogCRC").value(catalogCRC);
                 stringer.key("instanceId").value(instanceId.serializeToJSONObject());
+                if (incrementalBase != null) {
+                    // The table files are deltas of the snapshot with this nonce
+                    stringer.key("incrementalBase").value(incrementalBase);
+                }
                 stringer.endObject();
             } catch (JSONException e) {
                 throw new IOException(e);
@@ -228,6 +233,33 @@ public class SnapshotUtil {
         throw new IllegalArgumentException("Bad snapshot filename: " + filename);
     }
 
+    /**
+     * Read the transaction id of the snapshot that wrote a table file and the name of the
+     * table file it is a delta of, null if it stands on its own. Returns null if the file
+     * can't be read.
+     */
+    public static Pair<Long, String> parseTxnIdAndBaseFileFromTableFile(File tableFile)
+    {
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(tableFile);
+            TableSaveFile saveFile = new TableSaveFile(fis.getChannel(), 1, null);
+            try {
+                return Pair.of(saveFile.getTxnId(), saveFile.getBaseFileName());
+            } finally {
+                saveFile.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            try {
+                if (fis != null) {
+                    fis.close();
+                }
+            } catch (IOException e) {}
+        }
+    }
+
     public static List<JSONObject> retrieveDigests(String path,
             String nonce, VoltLogger logger) throws Exception {
         VoltFile directoryWithDigest = new VoltFile(path);
@@ -587,7 +619,7 @@ public class SnapshotUtil {
                     named_s.m_catalogFile = f;
                 } else {
                     HashSet<Integer> partitionIds = new HashSet<Integer>();
-                    TableSaveFile saveFile = new TableSaveFile(fis.getChannel(), 1, null, true);
+                    TableSaveFile saveFile = new TableSaveFile(f, 1, null, true);
                     try {
                         for (Integer partitionId : saveFile.getPartitionIds()) {
                             partitionIds.add(partitionId);
@@ -109,6 +109,7 @@ public abstract class SnapshotWritePlan
                             return m_snapshotRecord.new Table(
                                 registryTable,
                                 m_sdt.getBytesWritten(),
+                                m_sdt.getWriteTimeNanos(),
                                 m_sdt.getLastWriteException());
                             }
                     });
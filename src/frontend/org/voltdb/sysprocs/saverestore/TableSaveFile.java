@@ -18,13 +18,17 @@
 package org.voltdb.sysprocs.saverestore;
 
 import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
@@ -38,6 +42,7 @@ import org.json_voltpatches.JSONObject;
 import org.voltcore.TransactionIdManager;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.Pair;
 import org.voltdb.EELibraryLoader;
 import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.CompressionService;
@@ -58,11 +63,16 @@ public class TableSaveFile
 
     public class Container extends BBContainer {
         public final int partitionId;
+        /**
+         * Id of the tuple block the rows were read from if the file is block tagged, -1 otherwise
+         */
+        public final long blockId;
         private final BBContainer m_origin;
-        Container(ByteBuffer b, long pointer, BBContainer origin, int partitionId) {
+        Container(ByteBuffer b, long pointer, BBContainer origin, int partitionId, long blockId) {
             super(b, pointer);
             m_origin = origin;
             this.partitionId = partitionId;
+            this.blockId = blockId;
         }
 
         @Override
@@ -89,6 +99,48 @@ public class TableSaveFile
         this(dataIn, readAheadChunks, relevantPartitionIds, false);
     }
 
+    /**
+     * Open a table file by name. A table file written by an incremental snapshot is a delta
+     * of an older table file in the same directory, which may be a delta itself. The whole
+     * chain of base files is opened and the chunks of the blocks the delta only references
+     * are read from the base files.
+     */
+    public TableSaveFile(
+            File saveFile,
+            int readAheadChunks,
+            Integer[] relevantPartitionIds,
+            boolean continueOnCorruptedChunk) throws IOException {
+        this(new FileInputStream(saveFile).getChannel(), readAheadChunks, relevantPartitionIds,
+             continueOnCorruptedChunk);
+        m_ownsSaveFile = true;
+        try {
+            final Set<String> chainFiles = new HashSet<String>();
+            chainFiles.add(saveFile.getName());
+            String baseFileName = m_baseFileName;
+            while (baseFileName != null) {
+                if (!chainFiles.add(baseFileName)) {
+                    throw new IOException("Table file " + saveFile + " has a cycle in its base files at " +
+                            baseFileName);
+                }
+                final File baseFile = new File(saveFile.getParentFile(), baseFileName);
+                final TableSaveFile base =
+                        new TableSaveFile(new FileInputStream(baseFile).getChannel(), readAheadChunks,
+                                relevantPartitionIds, continueOnCorruptedChunk);
+                base.m_ownsSaveFile = true;
+                m_baseFiles.add(base);
+                if (!base.getTableName().equals(m_tableName) || !base.m_blockTagged) {
+                    throw new IOException("Table file " + saveFile + " for table " + m_tableName +
+                            " has base file " + baseFile + " of table " + base.getTableName() +
+                            (base.m_blockTagged ? "" : " that isn't block tagged"));
+                }
+                baseFileName = base.m_baseFileName;
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
     // XXX maybe consider an IOException subclass at some point
     public TableSaveFile(
             FileChannel dataIn,
@@ -278,6 +330,11 @@ public class TableSaveFile
                 m_tableName = obj.getString("tableName");
                 m_isReplicated = obj.getBoolean("isReplicated");
                 m_isCompressed = obj.optBoolean("isCompressed", false);
+                m_blockTagged = obj.optBoolean("blockTagged", false);
+                m_baseFileName = obj.optString("baseFile", null);
+                if (m_baseFileName != null && !m_blockTagged) {
+                    throw new IOException("Table file has a base file but isn't block tagged");
+                }
                 m_checksumType = ChecksumType.valueOf(obj.optString("checksumType", "CRC32"));
                 if (!m_isReplicated) {
                     JSONArray partitionIds = obj.getJSONArray("partitionIds");
@@ -363,7 +420,25 @@ public class TableSaveFile
     }
 
     public boolean getCompleted() {
-        return m_completed;
+        boolean completed = m_completed;
+        for (TableSaveFile base : m_baseFiles) {
+            completed &= base.m_completed;
+        }
+        return completed;
+    }
+
+    /**
+     * Whether the chunks are tagged with the id of the tuple block their rows came from.
+     */
+    public boolean isBlockTagged() {
+        return m_blockTagged;
+    }
+
+    /**
+     * Name of the table file this file is a delta of, null if the file stands on its own.
+     */
+    public String getBaseFileName() {
+        return m_baseFileName;
     }
 
     public long getTxnId() {
@@ -375,6 +450,9 @@ public class TableSaveFile
     }
 
     public void close() throws IOException {
+        for (TableSaveFile base : m_baseFiles) {
+            base.close();
+        }
         if (m_chunkReaderThread != null) {
             m_chunkReaderThread.interrupt();
             try {
@@ -397,9 +475,20 @@ public class TableSaveFile
         while ((cont = m_buffers.poll()) != null) {
             cont.discard();
         }
+
+        if (m_ownsSaveFile) {
+            m_saveFile.close();
+        }
     }
 
     public Set<Integer> getCorruptedPartitionIds() {
+        if (!m_baseFiles.isEmpty()) {
+            Set<Integer> corruptedPartitions = new HashSet<Integer>(m_corruptedPartitions);
+            for (TableSaveFile base : m_baseFiles) {
+                corruptedPartitions.addAll(base.m_corruptedPartitions);
+            }
+            return corruptedPartitions;
+        }
         return m_corruptedPartitions;
     }
 
@@ -408,7 +497,109 @@ public class TableSaveFile
     }
 
     // Will get the next chunk of the table that is just over the chunk size
-    public synchronized BBContainer getNextChunk() throws IOException
+    public BBContainer getNextChunk() throws IOException
+    {
+        if (m_blockTagged) {
+            return getNextChainChunk(true);
+        }
+        return getNextChunkFromFile();
+    }
+
+    /**
+     * Like getNextChunk() except that it returns null instead of waiting when no chunk
+     * has been read ahead yet. The first call starts reading in the background so that
+     * a caller can poll several files and have them all read from disk at once.
+     */
+    public BBContainer pollNextChunk() throws IOException
+    {
+        if (m_blockTagged) {
+            return getNextChainChunk(false);
+        }
+        return pollNextChunkFromFile();
+    }
+
+    public boolean hasMoreChunks() throws IOException
+    {
+        if (m_blockTagged) {
+            synchronized (this) {
+                advanceChain();
+                return m_chainFile != null;
+            }
+        }
+        return hasMoreChunksInFile();
+    }
+
+    /*
+     * The chunks of a block tagged file come first, then the chunks of its base files
+     * that hold blocks the newer files only reference. Reference chunks are never returned.
+     */
+    private synchronized BBContainer getNextChainChunk(boolean wait) throws IOException
+    {
+        while (true) {
+            advanceChain();
+            if (m_chainFile == null) {
+                return null;
+            }
+            final Container c = (Container)(wait ? m_chainFile.getNextChunkFromFile() :
+                                                    m_chainFile.pollNextChunkFromFile());
+            if (c == null) {
+                if (wait) {
+                    continue;
+                }
+                return null;
+            }
+            if (m_chainFile == this) {
+                return c;
+            }
+            final Pair<Integer, Long> block = Pair.of(c.partitionId, c.blockId);
+            if (m_neededBlocks.contains(block)) {
+                m_foundBlocks.add(block);
+                return c;
+            }
+            c.discard();
+        }
+    }
+
+    /*
+     * Move on to the next base file once the current file has no more chunks. The blocks
+     * needed from a base file are the ones the newer files referenced and didn't find yet.
+     * A block a base file neither holds nor references is missing from the chain.
+     */
+    private void advanceChain() throws IOException
+    {
+        while (m_chainFile != null && !m_chainFile.hasMoreChunksInFile()) {
+            final Set<Pair<Integer, Long>> referenced = m_chainFile.getReferencedBlocks();
+            if (m_neededBlocks == null) {
+                m_neededBlocks = new HashSet<Pair<Integer, Long>>(referenced);
+            } else {
+                m_neededBlocks.removeAll(m_foundBlocks);
+                for (Pair<Integer, Long> block : m_neededBlocks) {
+                    if (!referenced.contains(block)) {
+                        throw new IOException("Block " + block.getSecond() + " of partition " +
+                                block.getFirst() + " of table " + m_tableName +
+                                " is missing from the chain of base files");
+                    }
+                }
+            }
+            m_foundBlocks.clear();
+            if (m_neededBlocks.isEmpty()) {
+                m_chainFile = null;
+            } else if (m_chainIndex < m_baseFiles.size()) {
+                m_chainFile = m_baseFiles.get(m_chainIndex++);
+            } else {
+                throw new IOException("Table file for " + m_tableName + " references " +
+                        m_neededBlocks.size() + " blocks of a base file that wasn't opened. " +
+                        "Block tagged table files have to be opened by name to read them");
+            }
+        }
+    }
+
+    private synchronized Set<Pair<Integer, Long>> getReferencedBlocks()
+    {
+        return m_referencedBlocks;
+    }
+
+    private synchronized BBContainer getNextChunkFromFile() throws IOException
     {
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
@@ -417,11 +608,7 @@ public class TableSaveFile
             return m_availableChunks.poll();
         }
 
-        if (m_chunkReader == null) {
-            m_chunkReader = new ChunkReader();
-            m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
-            m_chunkReaderThread.start();
-        }
+        startChunkReader();
 
         Container c = null;
         while (c == null && (m_hasMoreChunks || !m_availableChunks.isEmpty())) {
@@ -443,7 +630,30 @@ public class TableSaveFile
         return c;
     }
 
-    public synchronized boolean hasMoreChunks() throws IOException
+    private synchronized BBContainer pollNextChunkFromFile() throws IOException
+    {
+        if (m_chunkReaderException != null) {
+            throw m_chunkReaderException;
+        }
+        if (m_hasMoreChunks) {
+            startChunkReader();
+        }
+        Container c = m_availableChunks.poll();
+        if (c != null) {
+            m_chunkReads.release();
+        }
+        return c;
+    }
+
+    private void startChunkReader() {
+        if (m_chunkReader == null) {
+            m_chunkReader = new ChunkReader();
+            m_chunkReaderThread = new Thread(m_chunkReader, "ChunkReader");
+            m_chunkReaderThread.start();
+        }
+    }
+
+    private synchronized boolean hasMoreChunksInFile() throws IOException
     {
         if (m_chunkReaderException != null) {
             throw m_chunkReaderException;
@@ -499,6 +709,26 @@ public class TableSaveFile
     private Thread m_chunkReaderThread = null;
     private IOException m_chunkReaderException = null;
 
+    /**
+     * Chunks of a block tagged file start with the id of the tuple block the rows came from.
+     * Chunks with a block id of -1 list the ids of blocks left out because they weren't
+     * written since the snapshot that wrote the base file.
+     */
+    private boolean m_blockTagged = false;
+    private String m_baseFileName = null;
+    private final Set<Pair<Integer, Long>> m_referencedBlocks = new HashSet<Pair<Integer, Long>>();
+    private boolean m_ownsSaveFile = false;
+
+    /*
+     * The base files, newest first, when the file was opened by name. The file being read,
+     * null once the chain is finished, and the blocks needed from it and found so far.
+     */
+    private final List<TableSaveFile> m_baseFiles = new ArrayList<TableSaveFile>();
+    private TableSaveFile m_chainFile = this;
+    private int m_chainIndex = 0;
+    private Set<Pair<Integer, Long>> m_neededBlocks = null;
+    private final Set<Pair<Integer, Long>> m_foundBlocks = new HashSet<Pair<Integer, Long>>();
+
     /**
      * Thread to read chunks from the disk
      */
@@ -629,6 +859,7 @@ public class TableSaveFile
                      * propagating the error and closing the file.
                      */
                     boolean completedRead = false;
+                    long blockId = -1;
                     try {
                         /*
                          * Assemble a VoltTable out of the chunk of tuples.
@@ -636,11 +867,27 @@ public class TableSaveFile
                          * then copy the tuple data.
                          */
                         c.b.clear();
-                        c.b.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        c.b.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, c.b);
+                        if (m_blockTagged) {
+                            /*
+                             * The block id precedes the row count. Decompress it into the
+                             * end of the space for the header and read it before the
+                             * header is copied over it.
+                             */
+                            final int blockIdPosition = m_tableHeader.capacity() - 8;
+                            c.b.position(blockIdPosition);
+                            c.b.limit(blockIdPosition + nextChunkLength);
+                            CompressionService.decompressBuffer(fileInputBuffer, c.b);
+                            blockId = c.b.getLong(blockIdPosition);
+                            c.b.position(0);
+                            m_tableHeader.position(0);
+                            c.b.put(m_tableHeader);
+                        } else {
+                            c.b.limit(nextChunkLength  + m_tableHeader.capacity());
+                            m_tableHeader.position(0);
+                            c.b.put(m_tableHeader);
+                            //Doesn't move buffer position, does change the limit
+                            CompressionService.decompressBuffer(fileInputBuffer, c.b);
+                        }
                         completedRead = true;
                     } finally {
                         if (!completedRead) {
@@ -662,6 +909,26 @@ public class TableSaveFile
                         }
                     }
 
+                    if (m_blockTagged) {
+                        if (blockId == -1) {
+                            /*
+                             * The row count of a reference chunk is the number of block ids
+                             */
+                            final int idsPosition = m_tableHeader.capacity();
+                            final int count = c.b.getInt(idsPosition);
+                            synchronized (TableSaveFile.this) {
+                                for (int ii = 0; ii < count; ii++) {
+                                    m_referencedBlocks.add(Pair.of(nextChunkPartitionId,
+                                            c.b.getLong(idsPosition + 4 + ii * 8)));
+                                }
+                            }
+                            c.discard();
+                            m_chunkReads.release();
+                            continue;
+                        }
+                        c = new Container(c.b, c.address, c.m_origin, nextChunkPartitionId, blockId);
+                    }
+
                     /*
                      * VoltTable wants the buffer at the home position 0
                      */
@@ -974,14 +1241,14 @@ public class TableSaveFile
                 final BBContainer originContainer = DBBPool.allocateDirect(DEFAULT_CHUNKSIZE);
                 final ByteBuffer b = originContainer.b;
                 final long pointer = org.voltcore.utils.DBBPool.getBufferAddress(b);
-                c = new Container(b, pointer, originContainer, nextChunkPartitionId);
+                c = new Container(b, pointer, originContainer, nextChunkPartitionId, -1);
             }
             /*
              * Need to reconstruct the container with the partition id of the next
              * chunk so it can be a final public field. The buffer, address, and origin
              * container remain the same.
              */
-            c = new Container(c.b, c.address, c.m_origin, nextChunkPartitionId);
+            c = new Container(c.b, c.address, c.m_origin, nextChunkPartitionId, -1);
             return c;
         }
 
@@ -30,7 +30,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.supercsv.exception.SuperCsvException;
 import org.supercsv.io.CsvListReader;
@@ -39,6 +43,9 @@ import org.supercsv.prefs.CsvPreference;
 import org.supercsv_voltpatches.tokenizer.Tokenizer;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.CLIConfig;
+import org.voltdb.ParameterConverter;
+import org.voltdb.TheHashinator;
+import org.voltdb.TheHashinator.HashinatorType;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.Client;
@@ -51,6 +58,13 @@ import org.voltdb.client.ProcedureCallback;
  * CSVLoader is a simple utility to load data from a CSV formatted file to a
  * table (or pass it to any stored proc, but ignoring any result other than the
  * success code.).
+ *
+ * One thread reads and tokenizes the input and hands the rows to a pool of parser
+ * threads. When loading a table the parsers convert the values, hash each row to
+ * its partition and send a batch of rows per partition with a single
+ * @LoadSinglepartitionTable (or @LoadMultipartitionTable for replicated tables)
+ * invocation. A batch that fails is retried one row at a time so that the rows
+ * that can't be inserted are reported individually.
  */
 public class CSVLoader {
     public static String pathInvalidrowfile = "";
@@ -63,6 +77,7 @@ public class CSVLoader {
     private static final AtomicLong outCount = new AtomicLong(0);
     private static final AtomicLong totalLineCount = new AtomicLong(0);
     private static final AtomicLong totalRowCount = new AtomicLong(0);
+    private static final AtomicLong waits = new AtomicLong(0);
     private static final int reportEveryNRows = 10000;
     private static final int waitSeconds = 10;
     private static CSVConfig config = null;
@@ -76,6 +91,13 @@ public class CSVLoader {
     private static Map<Long, String[]> errorInfo = new TreeMap<Long, String[]>();
     private static CsvPreference csvPreference = null;
 
+    // Set when rows are sent in batches, null when they are inserted one at a time
+    private static VoltTable.ColumnInfo[] bulkColumns = null;
+    private static String bulkProcedure = null;
+    private static String bulkTableName = null;
+    // Index of the partitioning column of the table, -1 if the table is replicated
+    private static int partitionColumn = -1;
+
     public static final char DEFAULT_SEPARATOR = ',';
     public static final char DEFAULT_QUOTE_CHARACTER = '\"';
     public static final char DEFAULT_ESCAPE_CHARACTER = '\\';
@@ -83,6 +105,7 @@ public class CSVLoader {
     public static final int DEFAULT_SKIP_LINES = 0;
     public static final boolean DEFAULT_NO_WHITESPACE = false;
     public static final long DEFAULT_COLUMN_LIMIT_SIZE = 16777216;
+    public static final int DEFAULT_BATCH_SIZE = 200;
 
 
     private static Map <VoltType, String> blankValues = new HashMap<VoltType, String>();
@@ -128,6 +151,191 @@ public class CSVLoader {
         }
     }
 
+    /**
+     * A line read from the input along with the line number it started at
+     */
+    private static final class CSVLine {
+        private final long m_lineNum;
+        private final List<String> m_rowdata;
+
+        CSVLine(long lineNumber, List<String> rowdata) {
+            m_lineNum = lineNumber;
+            m_rowdata = rowdata;
+        }
+    }
+
+    // Tells a parser thread that there are no more lines
+    private static final CSVLine END_OF_INPUT = new CSVLine(-1, null);
+
+    // First failure of a parser thread, the reader stops handing over lines once it is set
+    private static final AtomicReference<Throwable> parserFailure = new AtomicReference<Throwable>();
+
+    /**
+     * Rows of one partition (or of a replicated table) waiting to be sent together
+     */
+    private static final class RowBatch {
+        private final Object m_partitionValue;
+        private final VoltTable m_table = new VoltTable(bulkColumns);
+        private final List<Long> m_lineNums = new ArrayList<Long>();
+        private final List<Object[]> m_rows = new ArrayList<Object[]>();
+        private final List<List<String>> m_rowdata = new ArrayList<List<String>>();
+
+        RowBatch(Object partitionValue) {
+            m_partitionValue = partitionValue;
+        }
+
+        void add(long lineNumber, Object[] row, List<String> rowdata) {
+            m_table.addRow(row);
+            m_lineNums.add(lineNumber);
+            m_rows.add(row);
+            m_rowdata.add(rowdata);
+        }
+
+        int size() {
+            return m_rows.size();
+        }
+    }
+
+    private static final class BatchCallback implements ProcedureCallback {
+        private final Client m_client;
+        private final RowBatch m_batch;
+
+        BatchCallback(Client client, RowBatch batch) {
+            m_client = client;
+            m_batch = batch;
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+            if (response.getStatus() != ClientResponse.SUCCESS) {
+                // Find out which rows are bad by inserting them one at a time
+                for (int i = 0; i < m_batch.size(); i++) {
+                    m_client.callProcedure(
+                            new MyCallback(m_batch.m_lineNums.get(i), config, m_batch.m_rowdata.get(i)),
+                            insertProcedure, m_batch.m_rows.get(i));
+                }
+                return;
+            }
+
+            long currentCount = inCount.addAndGet(m_batch.size());
+            if (currentCount / reportEveryNRows != (currentCount - m_batch.size()) / reportEveryNRows) {
+                m_log.info( "Inserted " + currentCount + " rows" );
+            }
+        }
+    }
+
+    /**
+     * Validates the lines handed over by the reader and inserts them, either one
+     * at a time or in per-partition batches
+     */
+    private static final class CSVParser implements Runnable {
+        private final Client m_client;
+        private final BlockingQueue<CSVLine> m_lines;
+        private final int m_columnCnt;
+        private final Map<Integer, RowBatch> m_batches = new HashMap<Integer, RowBatch>();
+
+        CSVParser(Client client, BlockingQueue<CSVLine> lines, int columnCnt) {
+            m_client = client;
+            m_lines = lines;
+            m_columnCnt = columnCnt;
+        }
+
+        @Override
+        public void run() {
+            try {
+                CSVLine line;
+                while ((line = m_lines.take()) != END_OF_INPUT) {
+                    parse(line);
+                }
+                for (RowBatch batch : m_batches.values()) {
+                    send(batch);
+                }
+                m_batches.clear();
+            } catch (Exception e) {
+                m_log.error(e.getMessage(), e);
+                parserFailure.compareAndSet(null, e);
+            }
+        }
+
+        private void parse(CSVLine line) throws Exception {
+            String[] correctedLine = line.m_rowdata.toArray(new String[0]);
+            String lineCheckResult;
+            if ((lineCheckResult = checkparams_trimspace(correctedLine, m_columnCnt)) != null) {
+                String[] info = { line.m_rowdata.toString(), lineCheckResult };
+                synchronizeErrorInfo( line.m_lineNum, info );
+                return;
+            }
+
+            if (bulkColumns == null) {
+                boolean queued = false;
+                while (queued == false) {
+                    queued = m_client.callProcedure(new MyCallback(line.m_lineNum, config, line.m_rowdata),
+                            insertProcedure, (Object[]) correctedLine);
+                    if (queued == false) {
+                        waits.incrementAndGet();
+                        Thread.sleep(waitSeconds);
+                    }
+                }
+                outCount.incrementAndGet();
+                return;
+            }
+
+            // Convert the values here, the same way the server would convert the procedure parameters
+            Object[] row = new Object[correctedLine.length];
+            int partition = 0;
+            try {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = ParameterConverter.tryToMakeCompatible(
+                            typeList.get(i).classFromType(), correctedLine[i]);
+                }
+                if (partitionColumn >= 0) {
+                    partition = TheHashinator.getPartitionForParameter(
+                            typeList.get(partitionColumn).getValue(), row[partitionColumn]);
+                }
+            } catch (Exception e) {
+                String[] info = { line.m_rowdata.toString(), e.getMessage() };
+                synchronizeErrorInfo( line.m_lineNum, info );
+                return;
+            }
+
+            RowBatch batch = m_batches.get(partition);
+            if (batch == null) {
+                batch = new RowBatch(partitionColumn >= 0 ? row[partitionColumn] : null);
+                m_batches.put(partition, batch);
+            }
+            try {
+                batch.add(line.m_lineNum, row, line.m_rowdata);
+            } catch (RuntimeException e) {
+                String[] info = { line.m_rowdata.toString(), e.getMessage() };
+                synchronizeErrorInfo( line.m_lineNum, info );
+                return;
+            }
+            if (batch.size() >= config.batch) {
+                m_batches.remove(partition);
+                send(batch);
+            }
+        }
+
+        private void send(RowBatch batch) throws Exception {
+            BatchCallback cb = new BatchCallback(m_client, batch);
+            boolean queued = false;
+            while (queued == false) {
+                if (partitionColumn >= 0) {
+                    // All the rows hash to the partition of the first one
+                    queued = m_client.callProcedure(cb, bulkProcedure,
+                            TheHashinator.valueToBytes(batch.m_partitionValue), bulkTableName, batch.m_table);
+                } else {
+                    queued = m_client.callProcedure(cb, bulkProcedure, bulkTableName, batch.m_table);
+                }
+                if (queued == false) {
+                    waits.incrementAndGet();
+                    Thread.sleep(waitSeconds);
+                }
+            }
+            outCount.addAndGet(batch.size());
+        }
+    }
+
     private static class CSVConfig extends CLIConfig {
         @Option(shortOpt = "f", desc = "location of CSV input file")
         String file = "";
@@ -180,6 +388,12 @@ public class CSVLoader {
         @Option(desc = "port to use when connecting to database (default: 21212)")
         int port = Client.VOLTDB_SERVER_PORT;
 
+        @Option(desc = "number of threads validating and sending rows (default: number of processors)")
+        int parsers = Runtime.getRuntime().availableProcessors();
+
+        @Option(desc = "rows per partition sent to a table in one bulk insert, 1 inserts rows one at a time (default: 200)")
+        int batch = DEFAULT_BATCH_SIZE;
+
         @AdditionalArgs(desc = "insert the data into database by TABLENAME.insert procedure by default")
         String table = "";
 
@@ -198,6 +412,10 @@ public class CSVLoader {
                         + Integer.MAX_VALUE);
             if (port < 0)
                 exitWithMessageAndUsage("port number must be >= 0");
+            if (parsers < 1)
+                exitWithMessageAndUsage("parsers must be >= 1");
+            if (batch < 1)
+                exitWithMessageAndUsage("batch must be >= 1");
             if ((blank.equalsIgnoreCase("error") ||
                     blank.equalsIgnoreCase("null") ||
                     blank.equalsIgnoreCase("empty")) == false)
@@ -233,17 +451,91 @@ public class CSVLoader {
     }
 
 
-    public static void main(String[] args) throws IOException,
-            InterruptedException {
+    // Parses the command line and opens the report files
+    static void configure(String[] args) {
         start = System.currentTimeMillis();
-        int waits = 0;
-        int shortWaits = 0;
 
         CSVConfig cfg = new CSVConfig();
         cfg.parse(CSVLoader.class.getName(), args);
 
         config = cfg;
         configuration();
+    }
+
+    /**
+     * Reads the input, hands the lines over to the parser threads and waits for them to finish.
+     * Reading stops as soon as a parser fails, nothing would take the lines from a full queue.
+     * @return The first failure of a parser, or null if all of them went through the input
+     */
+    static Throwable loadLines(ICsvListReader listReader, Client csvClient, int columnCnt)
+        throws IOException, InterruptedException
+    {
+        parserFailure.set(null);
+        BlockingQueue<CSVLine> lines = new ArrayBlockingQueue<CSVLine>(config.parsers * 1000);
+        List<Thread> parsers = new ArrayList<Thread>();
+        for (int i = 0; i < config.parsers; i++) {
+            Thread parser = new Thread(new CSVParser(csvClient, lines, columnCnt), "CSV Parser - " + i);
+            parser.start();
+            parsers.add(parser);
+        }
+
+        List<String> lineList = new ArrayList<String>();
+
+        while ((config.limitrows-- > 0)) {
+            try{
+                //Initial setting of totalLineCount
+                if( listReader.getLineNumber() == 0  )
+                    totalLineCount.set(config.skip);
+                else
+                    totalLineCount.set( listReader.getLineNumber() );
+                lineList = listReader.read();
+                //EOF
+                if(lineList == null) {
+                    if( totalLineCount.get() > listReader.getLineNumber() )
+                        totalLineCount.set( listReader.getLineNumber() );
+                    break;
+                }
+                totalRowCount.getAndIncrement();
+                if (!handOver(lines, new CSVLine(totalLineCount.get()+1, lineList))) {
+                    break;
+                }
+            }
+            catch (SuperCsvException e){
+                //Catch rows that can not be read by superCSV listReader. E.g. items without quotes when strictquotes is enabled.
+                totalRowCount.getAndIncrement();
+                String[] info = { e.getMessage(), "" };
+                synchronizeErrorInfo( totalLineCount.get()+1, info );
+            }
+        }
+        if (parserFailure.get() != null) {
+            // Abandon the lines still queued and make room for the end markers
+            lines.clear();
+        }
+        for (int i = 0; i < parsers.size(); i++) {
+            lines.put(END_OF_INPUT);
+        }
+        for (Thread parser : parsers) {
+            parser.join();
+        }
+        return parserFailure.get();
+    }
+
+    /**
+     * Waits for room in the queue for as long as none of the parsers failed
+     * @return false if a parser failed and the line was not handed over
+     */
+    private static boolean handOver(BlockingQueue<CSVLine> lines, CSVLine line) throws InterruptedException {
+        while (parserFailure.get() == null) {
+            if (lines.offer(line, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws IOException,
+            InterruptedException {
+        configure(args);
         Tokenizer tokenizer = null;
         ICsvListReader listReader = null;
 
@@ -284,37 +576,24 @@ public class CSVLoader {
         assert(csvClient != null);
 
         try {
-            ProcedureCallback cb = null;
-
-            boolean lastOK = true;
-
             int columnCnt = 0;
-            VoltTable procInfo = null;
-            boolean isProcExist = false;
             try {
-                procInfo = csvClient.callProcedure("@SystemCatalog",
-                        "PROCEDURECOLUMNS").getResults()[0];
-                while (procInfo.advanceRow()) {
-                    if (insertProcedure.matches((String) procInfo.get(
-                            "PROCEDURE_NAME", VoltType.STRING))) {
-                        columnCnt++;
-                        isProcExist = true;
-                        String typeStr = (String)procInfo.get("TYPE_NAME", VoltType.STRING);
-                        typeList.add(VoltType.typeFromString(typeStr));
-                    }
-                }
+                columnCnt = findProcedureColumns(csvClient);
             } catch (Exception e) {
                 m_log.error(e.getMessage(), e);
                 close_cleanup();
                 System.exit(-1);
             }
-            if (isProcExist == false) {
+            if (columnCnt == 0) {
                 m_log.error("No matching insert procedure available");
                 close_cleanup();
                 System.exit(-1);
             }
             try {
-                if (isProcedureMp(csvClient)) {
+                if (!config.table.equals("") && config.batch > 1) {
+                    setupBulkLoad(csvClient);
+                }
+                if (bulkColumns == null && isProcedureMp(csvClient)) {
                     m_log.warn("Using a multi-partitioned procedure to load data will be slow. " +
                             "If loading a partitioned table, use a single-partitioned procedure " +
                             "for best performance.");
@@ -325,57 +604,10 @@ public class CSVLoader {
                 System.exit(-1);
             }
 
-            List<String> lineList = new ArrayList<String>();
-
-            while ((config.limitrows-- > 0)) {
-                try{
-                    //Initial setting of totalLineCount
-                    if( listReader.getLineNumber() == 0  )
-                        totalLineCount.set(cfg.skip);
-                    else
-                        totalLineCount.set( listReader.getLineNumber() );
-                    lineList = listReader.read();
-                    //EOF
-                    if(lineList == null) {
-                        if( totalLineCount.get() > listReader.getLineNumber() )
-                            totalLineCount.set( listReader.getLineNumber() );
-                        break;
-                    }
-                    totalRowCount.getAndIncrement();
-                    boolean queued = false;
-                    while (queued == false) {
-                        String[] correctedLine = lineList.toArray(new String[0]);
-                        cb = new MyCallback(totalLineCount.get()+1, config,
-                                lineList);
-                        String lineCheckResult;
-
-                        if ((lineCheckResult = checkparams_trimspace(correctedLine,
-                                columnCnt)) != null) {
-                            String[] info = { lineList.toString(), lineCheckResult };
-                            synchronizeErrorInfo( totalLineCount.get()+1, info );
-                            break;
-                        }
-
-                        queued = csvClient.callProcedure(cb, insertProcedure,
-                                (Object[]) correctedLine);
-                        outCount.incrementAndGet();
-
-                        if (queued == false) {
-                            ++waits;
-                            if (lastOK == false) {
-                                ++shortWaits;
-                            }
-                            Thread.sleep(waitSeconds);
-                        }
-                        lastOK = queued;
-                    }
-                }
-                catch (SuperCsvException e){
-                    //Catch rows that can not be read by superCSV listReader. E.g. items without quotes when strictquotes is enabled.
-                    totalRowCount.getAndIncrement();
-                    String[] info = { e.getMessage(), "" };
-                    synchronizeErrorInfo( totalLineCount.get()+1, info );
-                }
+            Throwable failure = loadLines(listReader, csvClient, columnCnt);
+            if (failure != null) {
+                m_log.error("Stopped reading at line " + totalLineCount.get() +
+                        ", a parser failed: " + failure.getMessage());
             }
             csvClient.drain();
         } catch (Exception e) {
@@ -384,12 +616,8 @@ public class CSVLoader {
 
         m_log.info("Inserted " + outCount.get() + " and acknowledged "
                 + inCount.get() + " rows (final)");
-        if (waits > 0) {
-            m_log.info("Waited " + waits + " times");
-            if (shortWaits > 0) {
-                m_log.info( "Waited too briefly? " + shortWaits
-                        + " times" );
-            }
+        if (waits.get() > 0) {
+            m_log.info("Waited " + waits.get() + " times");
         }
 
         produceFiles();
@@ -398,6 +626,93 @@ public class CSVLoader {
         csvClient.close();
     }
 
+    /**
+     * Find the parameter types of the insert procedure.
+     * @return The number of parameters, 0 if there is no such procedure
+     */
+    static int findProcedureColumns(Client csvClient) throws Exception {
+        int columnCnt = 0;
+        VoltTable procInfo = csvClient.callProcedure("@SystemCatalog",
+                "PROCEDURECOLUMNS").getResults()[0];
+        while (procInfo.advanceRow()) {
+            if (insertProcedure.matches((String) procInfo.get(
+                    "PROCEDURE_NAME", VoltType.STRING))) {
+                columnCnt++;
+                String typeStr = (String)procInfo.get("TYPE_NAME", VoltType.STRING);
+                typeList.add(VoltType.typeFromString(typeStr));
+            }
+        }
+        return columnCnt;
+    }
+
+    /**
+     * Find the columns and partitioning of the target table so rows can be sent in batches.
+     * Stays with one insert per row if the table can't be bulk loaded by this user.
+     */
+    static void setupBulkLoad(Client csvClient) throws Exception {
+        List<String> columnNames = new ArrayList<String>();
+        int partitionCol = -1;
+        String tableName = null;
+        VoltTable columns = csvClient.callProcedure("@SystemCatalog", "COLUMNS").getResults()[0];
+        while (columns.advanceRow()) {
+            if (!columns.getString("TABLE_NAME").equalsIgnoreCase(config.table)) {
+                continue;
+            }
+            tableName = columns.getString("TABLE_NAME");
+            int position = (int) columns.getLong("ORDINAL_POSITION") - 1;
+            while (columnNames.size() <= position) {
+                columnNames.add(null);
+            }
+            columnNames.set(position, columns.getString("COLUMN_NAME"));
+            if ("PARTITION_COLUMN".equals(columns.getString("REMARKS"))) {
+                partitionCol = position;
+            }
+        }
+        if (tableName == null || columnNames.size() != typeList.size()) {
+            return;
+        }
+
+        if (partitionCol >= 0) {
+            // Rows are hashed here, so use the same hash function as the cluster
+            VoltTable[] topo = csvClient.callProcedure("@Statistics", "TOPO", 0).getResults();
+            if (topo.length < 2 || !topo[1].advanceRow()) {
+                return;
+            }
+            TheHashinator.initialize(
+                    HashinatorType.valueOf(topo[1].getString("HASHTYPE")).hashinatorClass,
+                    topo[1].getVarbinary("HASHCONFIG"));
+        }
+
+        VoltTable.ColumnInfo[] columnInfo = new VoltTable.ColumnInfo[columnNames.size()];
+        for (int i = 0; i < columnInfo.length; i++) {
+            columnInfo[i] = new VoltTable.ColumnInfo(columnNames.get(i), typeList.get(i));
+        }
+        String procedure = partitionCol >= 0 ? "@LoadSinglepartitionTable" : "@LoadMultipartitionTable";
+
+        // Loading an empty table checks that this user may invoke the bulk load procedure
+        ClientResponse response;
+        try {
+            if (partitionCol >= 0) {
+                response = csvClient.callProcedure(procedure, TheHashinator.valueToBytes(0L),
+                        tableName, new VoltTable(columnInfo));
+            } else {
+                response = csvClient.callProcedure(procedure, tableName, new VoltTable(columnInfo));
+            }
+        } catch (org.voltdb.client.ProcCallException e) {
+            response = e.getClientResponse();
+        }
+        if (response.getStatus() != ClientResponse.SUCCESS) {
+            m_log.info("Inserting one row at a time, " + procedure + " is not available: " +
+                    response.getStatusString());
+            return;
+        }
+
+        bulkColumns = columnInfo;
+        bulkProcedure = procedure;
+        bulkTableName = tableName;
+        partitionColumn = partitionCol;
+    }
+
     private static void synchronizeErrorInfo( long errLineNum, String[] info ) throws IOException, InterruptedException {
         synchronized (errorInfo) {
             if (!errorInfo.containsKey(errLineNum)) {
@@ -563,12 +878,18 @@ public class CSVLoader {
 
     }
 
-    private static void close_cleanup() throws IOException,
+    static void close_cleanup() throws IOException,
             InterruptedException {
         inCount.set(0);
         outCount.set(0);
+        waits.set(0);
         errorInfo.clear();
 
+        bulkColumns = null;
+        bulkProcedure = null;
+        bulkTableName = null;
+        partitionColumn = -1;
+
         typeList.clear();
 
         out_invaliderowfile.close();
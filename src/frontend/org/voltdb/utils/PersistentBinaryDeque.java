@@ -24,7 +24,9 @@ import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.StringWriter;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -32,6 +34,7 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
 
+import org.apache.hadoop_voltpatches.hbase.utils.DirectMemoryUtils;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.DBBPool.BBContainer;
 
@@ -46,6 +49,12 @@ import com.google.common.base.Joiner;
  * once all objects from the segment have been polled and all the containers returned by poll have been discarded.
  * Push is implemented by creating new segments at the head of the queue containing the objects to be pushed.
  *
+ * Segments can optionally be memory mapped. The segment being written is mapped at its full size and
+ * truncated to the data actually written once it is finished, and finished segments are mapped read only
+ * when they are first polled so that the returned containers are slices of the mapping rather than copies.
+ * Either way the head (poll side) and the tail (offer side) are guarded by separate locks so a reader
+ * draining old segments doesn't block a writer appending to the current one.
+ *
  */
 public class PersistentBinaryDeque implements BinaryDeque {
 
@@ -54,8 +63,14 @@ public class PersistentBinaryDeque implements BinaryDeque {
      */
     private static final VoltLogger exportLog = new VoltLogger("EXPORT");
 
+    /**
+     * Default for whether segments are memory mapped instead of read and written through the channel
+     */
+    public static final boolean MAP_SEGMENTS = Boolean.getBoolean("pbdMapSegments");
+
     private final File m_path;
     private final String m_nonce;
+    private final boolean m_mapSegments;
     private java.util.concurrent.atomic.AtomicLong m_sizeInBytes =
         new java.util.concurrent.atomic.AtomicLong(0);
 
@@ -73,6 +88,12 @@ public class PersistentBinaryDeque implements BinaryDeque {
         private RandomAccessFile m_ras;
         private FileChannel m_fc;
 
+        //Mappings used instead of channel reads and writes when segments are mapped.
+        //The write mapping covers the whole chunk and is only used while the segment is
+        //the tail, the read mapping covers the finished file and backs the polled containers.
+        private MappedByteBuffer m_writeBuf;
+        private MappedByteBuffer m_readBuf;
+
         //Index of the next object to read, not an offset into the file
         //The offset is maintained by the ByteBuffer. Used to determine if there is another object
         private int m_objectReadIndex = 0;
@@ -96,6 +117,12 @@ public class PersistentBinaryDeque implements BinaryDeque {
             if (m_fc == null) {
                 open();
             }
+            if (m_writeBuf != null) {
+                return m_writeBuf.getInt(0);
+            }
+            if (m_readBuf != null) {
+                return m_readBuf.getInt(0);
+            }
             if (m_fc.size() > 0) {
                 m_bufferForNumEntries.clear();
                 while (m_bufferForNumEntries.hasRemaining()) {
@@ -112,6 +139,13 @@ public class PersistentBinaryDeque implements BinaryDeque {
         }
 
         private void initNumEntries() throws IOException {
+            if (m_mapSegments) {
+                m_writeBuf = m_fc.map(MapMode.READ_WRITE, 0, m_chunkSize);
+                m_writeBuf.putInt(0, 0);
+                m_writeBuf.position(4);
+                m_syncedSinceLastEdit = false;
+                return;
+            }
             m_bufferForNumEntries.clear();
             m_bufferForNumEntries.putInt(0).flip();
             while (m_bufferForNumEntries.hasRemaining()) {
@@ -121,6 +155,12 @@ public class PersistentBinaryDeque implements BinaryDeque {
         }
 
         private void incrementNumEntries() throws IOException {
+            if (m_writeBuf != null) {
+                m_writeBuf.putInt(0, m_writeBuf.getInt(0) + 1);
+                m_syncedSinceLastEdit = false;
+                m_discardsUntilDeletion++;
+                return;
+            }
             //First read the existing amount
             m_bufferForNumEntries.clear();
             while (m_bufferForNumEntries.hasRemaining()) {
@@ -151,9 +191,33 @@ public class PersistentBinaryDeque implements BinaryDeque {
          */
         private int remaining() throws IOException {
             //Subtract 4 for the length prefix
+            if (m_writeBuf != null) {
+                return m_writeBuf.remaining() - 4;
+            }
             return (int)(m_chunkSize - m_fc.position()) - 4;
         }
 
+        /**
+         * Done appending to this segment, prepare it to be polled from the start.
+         * A mapped segment is unmapped and truncated to the bytes actually written.
+         */
+        private void finishWriting() throws IOException {
+            if (m_writeBuf != null) {
+                int written = m_writeBuf.position();
+                unmap(m_writeBuf);
+                m_writeBuf = null;
+                m_fc.truncate(written);
+            }
+            m_fc.position(4);
+        }
+
+        /**
+         * Containers returned by poll that haven't been discarded yet
+         */
+        private int outstanding() throws IOException {
+            return m_objectReadIndex - (getNumEntries() - m_discardsUntilDeletion);
+        }
+
         private void open() throws IOException {
             if (!m_file.exists()) {
                 m_syncedSinceLastEdit = false;
@@ -176,6 +240,17 @@ public class PersistentBinaryDeque implements BinaryDeque {
         }
 
         private void close() throws IOException {
+            if (m_writeBuf != null) {
+                finishWriting();
+            }
+            if (m_readBuf != null) {
+                //Polled containers that are still live are slices of the mapping,
+                //leave it to the GC to unmap once they are gone
+                if (outstanding() == 0) {
+                    unmap(m_readBuf);
+                }
+                m_readBuf = null;
+            }
             if (m_fc != null) {
                 m_fc.close();
                 m_ras = null;
@@ -185,6 +260,9 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
         private void sync() throws IOException {
             if (!m_syncedSinceLastEdit) {
+                if (m_writeBuf != null) {
+                    m_writeBuf.force();
+                }
                 m_fc.force(true);
             }
             m_syncedSinceLastEdit = true;
@@ -194,6 +272,10 @@ public class PersistentBinaryDeque implements BinaryDeque {
             if (m_fc == null) {
                 open();
             }
+            if (m_mapSegments && m_readBuf == null) {
+                m_readBuf = m_fc.map(MapMode.READ_ONLY, 0, m_fc.size());
+                m_readBuf.position(4);
+            }
 
             //No more entries to read
             if (m_objectReadIndex >= getNumEntries()) {
@@ -209,28 +291,20 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 m_currentPollSegmentIndex++;
             }
 
-            //Get the length prefix and then read the object
-            m_bufferForNumEntries.clear();
-            while (m_bufferForNumEntries.hasRemaining()) {
-                int read = m_fc.read(m_bufferForNumEntries);
-                if (read == -1) {
-                    throw new EOFException();
-                }
-            }
-            m_bufferForNumEntries.flip();
-            int length = m_bufferForNumEntries.getInt();
-            if (length < 1) {
-                throw new IOException("Read an invalid length");
-            }
-
-            ByteBuffer resultBuffer = ByteBuffer.allocate(length);
-            while (resultBuffer.hasRemaining()) {
-                int read = m_fc.read(resultBuffer);
-                if (read == -1) {
-                    throw new EOFException();
+            ByteBuffer resultBuffer;
+            if (m_readBuf != null) {
+                //Hand out a slice of the mapping, no copy
+                int length = m_readBuf.getInt();
+                if (length < 1 || length > m_readBuf.remaining()) {
+                    throw new IOException("Read an invalid length");
                 }
+                ByteBuffer view = m_readBuf.duplicate();
+                view.limit(view.position() + length);
+                resultBuffer = view.slice();
+                m_readBuf.position(m_readBuf.position() + length);
+            } else {
+                resultBuffer = readObject();
             }
-            resultBuffer.flip();
 
             return new BBContainer( resultBuffer, 0L) {
                 private boolean discarded = false;
@@ -238,19 +312,21 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 private final Throwable t = new Throwable();
                 @Override
                 public void discard() {
-                    if (!discarded) {
-                        discarded = true;
-                        m_discardsUntilDeletion--;
-                        if (m_discardsUntilDeletion == 0) {
-                            m_finishedSegments.remove(m_index);
-                            try {
-                                closeAndDelete();
-                            } catch (IOException e) {
-                                exportLog.error("Error closing and deleting binary deque segment", e);
+                    synchronized (m_headLock) {
+                        if (!discarded) {
+                            discarded = true;
+                            m_discardsUntilDeletion--;
+                            if (m_discardsUntilDeletion == 0) {
+                                m_finishedSegments.remove(m_index);
+                                try {
+                                    closeAndDelete();
+                                } catch (IOException e) {
+                                    exportLog.error("Error closing and deleting binary deque segment", e);
+                                }
                             }
+                        } else {
+                            exportLog.error("An export buffer was discarded multiple times");
                         }
-                    } else {
-                        exportLog.error("An export buffer was discarded multiple times");
                     }
                 }
 
@@ -268,6 +344,32 @@ public class PersistentBinaryDeque implements BinaryDeque {
             };
         }
 
+        private ByteBuffer readObject() throws IOException {
+            //Get the length prefix and then read the object
+            m_bufferForNumEntries.clear();
+            while (m_bufferForNumEntries.hasRemaining()) {
+                int read = m_fc.read(m_bufferForNumEntries);
+                if (read == -1) {
+                    throw new EOFException();
+                }
+            }
+            m_bufferForNumEntries.flip();
+            int length = m_bufferForNumEntries.getInt();
+            if (length < 1) {
+                throw new IOException("Read an invalid length");
+            }
+
+            ByteBuffer resultBuffer = ByteBuffer.allocate(length);
+            while (resultBuffer.hasRemaining()) {
+                int read = m_fc.read(resultBuffer);
+                if (read == -1) {
+                    throw new EOFException();
+                }
+            }
+            resultBuffer.flip();
+            return resultBuffer;
+        }
+
         private void offer(BBContainer objects[]) throws IOException {
             int length = 0;
             for (BBContainer obj : objects ) {
@@ -278,18 +380,26 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 throw new IOException(m_file + " has insufficient space");
             }
 
-            m_bufferForNumEntries.clear();
-            m_bufferForNumEntries.putInt(length).flip();
-            while (m_bufferForNumEntries.hasRemaining()) {
-                m_fc.write(m_bufferForNumEntries);
+            if (m_writeBuf != null) {
+                m_writeBuf.putInt(length);
+            } else {
+                m_bufferForNumEntries.clear();
+                m_bufferForNumEntries.putInt(length).flip();
+                while (m_bufferForNumEntries.hasRemaining()) {
+                    m_fc.write(m_bufferForNumEntries);
+                }
             }
 
             int objectIndex = 0;
             for (BBContainer obj : objects ) {
                 boolean success = false;
                 try {
-                    while (obj.b.hasRemaining()) {
-                        m_fc.write(obj.b);
+                    if (m_writeBuf != null) {
+                        m_writeBuf.put(obj.b);
+                    } else {
+                        while (obj.b.hasRemaining()) {
+                            m_fc.write(obj.b);
+                        }
                     }
                     obj.discard();
                     success = true;
@@ -313,6 +423,36 @@ public class PersistentBinaryDeque implements BinaryDeque {
         }
     }
 
+    private static void unmap(MappedByteBuffer buf) {
+        try {
+            DirectMemoryUtils.destroyDirectByteBuffer(buf);
+        } catch (Exception e) {
+            //The mapping will go away when the buffer is collected
+            exportLog.debug("Unable to unmap binary deque segment", e);
+        }
+    }
+
+    /**
+     * Number of objects recorded in a segment file's header, -1 if it can't be read.
+     * A mapped tail segment is full size on disk until it is finished so length alone
+     * doesn't say whether a segment left behind by a crash has anything in it.
+     */
+    private static int readNumEntries(File file) {
+        RandomAccessFile ras = null;
+        try {
+            ras = new RandomAccessFile(file, "r");
+            return ras.readInt();
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            if (ras != null) {
+                try {
+                    ras.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
     //Segments that are no longer being written to and can be polled
     //These segments are "immutable". They will not be modified until deletion
     private final TreeMap<Long, DequeSegment> m_finishedSegments = new TreeMap<Long, DequeSegment>();
@@ -325,6 +465,12 @@ public class PersistentBinaryDeque implements BinaryDeque {
 
     private volatile boolean m_closed = false;
 
+    //Guards the poll side (finished segments and the poll index) and the offer side (the write segment).
+    //Anything that needs both takes the head lock first. The write segment reference is only
+    //replaced with both held so it can be read under either one.
+    private final Object m_headLock = new Object();
+    private final Object m_tailLock = new Object();
+
     /**
      * Create a persistent binary deque with the specified nonce and storage back at the specified path.
      * Existing files will
@@ -333,8 +479,21 @@ public class PersistentBinaryDeque implements BinaryDeque {
      * @throws IOException
      */
     public PersistentBinaryDeque(final String nonce, final File path) throws IOException {
+        this(nonce, path, MAP_SEGMENTS);
+    }
+
+    /**
+     * Create a persistent binary deque, choosing whether segments are memory mapped.
+     * The files are the same either way.
+     * @param nonce
+     * @param path
+     * @param mapSegments
+     * @throws IOException
+     */
+    public PersistentBinaryDeque(final String nonce, final File path, boolean mapSegments) throws IOException {
         m_path = path;
         m_nonce = nonce;
+        m_mapSegments = mapSegments;
 
         if (!path.exists() || !path.canRead() || !path.canWrite() || !path.canExecute() || !path.isDirectory()) {
             throw new IOException(path + " is not usable ( !exists || !readable " +
@@ -367,7 +526,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 }
 
                 if (nonce.equals(parsedNonce) && "pbd".equals(extension)) {
-                    if (pathname.length() == 4) {
+                    if (pathname.length() <= 4 || readNumEntries(pathname) == 0) {
                         //Doesn't have any objects, just the object count
                         pathname.delete();
                         return false;
@@ -411,10 +570,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     @Override
-    public synchronized void offer(BBContainer[] objects) throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
+    public void offer(BBContainer[] objects) throws IOException {
         int needed = 0;
         for (BBContainer b : objects) {
             needed +=  b.b.remaining();
@@ -424,15 +580,40 @@ public class PersistentBinaryDeque implements BinaryDeque {
             throw new IOException("Maxiumum object size is " + (DequeSegment.m_chunkSize - 4));
         }
 
-        if (m_writeSegment.remaining() < needed) {
-            openNewWriteSegment();
+        synchronized (m_tailLock) {
+            if (m_writeSegment == null) {
+                throw new IOException("Closed");
+            }
+            if (m_writeSegment.remaining() >= needed) {
+                m_writeSegment.offer(objects);
+                return;
+            }
         }
 
-        m_writeSegment.offer(objects);
+        //Finishing the write segment hands it to the poll side, take the locks in order
+        synchronized (m_headLock) {
+            synchronized (m_tailLock) {
+                if (m_writeSegment == null) {
+                    throw new IOException("Closed");
+                }
+                if (m_writeSegment.remaining() < needed) {
+                    openNewWriteSegment();
+                }
+                m_writeSegment.offer(objects);
+            }
+        }
     }
 
     @Override
-    public synchronized void push(BBContainer[][] objects) throws IOException {
+    public void push(BBContainer[][] objects) throws IOException {
+        synchronized (m_headLock) {
+            synchronized (m_tailLock) {
+                pushLocked(objects);
+            }
+        }
+    }
+
+    private void pushLocked(BBContainer[][] objects) throws IOException {
         if (m_writeSegment == null) {
             throw new IOException("Closed");
         }
@@ -491,7 +672,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
                 writeSegment.offer(currentSegmentContents.pollFirst());
             }
 
-            writeSegment.m_fc.position(4);
+            writeSegment.finishWriting();
             m_finishedSegments.put(writeSegment.m_index, writeSegment);
         }
     }
@@ -500,7 +681,7 @@ public class PersistentBinaryDeque implements BinaryDeque {
         if (m_writeSegment == null) {
             throw new IOException("Closed");
         }
-        m_writeSegment.m_fc.position(4);
+        m_writeSegment.finishWriting();
         m_finishedSegments.put(m_writeSegment.m_index, m_writeSegment);
         Long nextIndex = m_writeSegment.m_index + 1;
         m_writeSegment =
@@ -512,68 +693,80 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     @Override
-    public synchronized BBContainer poll() throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
-        DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
-        if (segment == null) {
-            assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
-            //See if we can steal the write segment, otherwise return null
-            if (m_writeSegment.getNumEntries() > 0) {
-                openNewWriteSegment();
+    public BBContainer poll() throws IOException {
+        synchronized (m_headLock) {
+            if (m_writeSegment == null) {
+                throw new IOException("Closed");
+            }
+            DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
+            if (segment == null) {
+                assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
+                //See if we can steal the write segment, otherwise return null
+                synchronized (m_tailLock) {
+                    if (m_writeSegment.getNumEntries() > 0) {
+                        openNewWriteSegment();
+                    } else {
+                        return null;
+                    }
+                }
                 return poll();
-            } else {
-                return null;
             }
+            return segment.poll();
         }
-        return segment.poll();
     }
 
     @Override
-    public synchronized void sync() throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
-        m_writeSegment.sync();
-        for (DequeSegment segment : m_finishedSegments.values()) {
-            segment.sync();
+    public void sync() throws IOException {
+        synchronized (m_headLock) {
+            synchronized (m_tailLock) {
+                if (m_writeSegment == null) {
+                    throw new IOException("Closed");
+                }
+                m_writeSegment.sync();
+            }
+            for (DequeSegment segment : m_finishedSegments.values()) {
+                segment.sync();
+            }
         }
     }
 
     @Override
-    public synchronized void close() throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
-        if (m_writeSegment.getNumEntries() > 0) {
-            m_finishedSegments.put(m_writeSegment.m_index, m_writeSegment);
-        } else {
-            m_writeSegment.closeAndDelete();
-        }
-        m_writeSegment = null;
-        for (DequeSegment segment : m_finishedSegments.values()) {
-            segment.close();
+    public void close() throws IOException {
+        synchronized (m_headLock) {
+            synchronized (m_tailLock) {
+                if (m_writeSegment == null) {
+                    throw new IOException("Closed");
+                }
+                if (m_writeSegment.getNumEntries() > 0) {
+                    m_finishedSegments.put(m_writeSegment.m_index, m_writeSegment);
+                } else {
+                    m_writeSegment.closeAndDelete();
+                }
+                m_writeSegment = null;
+                for (DequeSegment segment : m_finishedSegments.values()) {
+                    segment.close();
+                }
+                m_closed = true;
+            }
         }
-        m_closed = true;
     }
 
     @Override
-    public synchronized boolean isEmpty() throws IOException {
-        if (m_writeSegment == null) {
-            throw new IOException("Closed");
-        }
-        DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
-        if (segment == null) {
-            assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
-            //See if we can steal the write segment, otherwise return null
-            if (m_writeSegment.getNumEntries() > 0) {
-                return false;
-            } else {
-                return true;
+    public boolean isEmpty() throws IOException {
+        synchronized (m_headLock) {
+            if (m_writeSegment == null) {
+                throw new IOException("Closed");
             }
+            DequeSegment segment = m_finishedSegments.get(m_currentPollSegmentIndex);
+            if (segment == null) {
+                assert(m_writeSegment.m_index.equals(m_currentPollSegmentIndex));
+                //See if we can steal the write segment, otherwise return null
+                synchronized (m_tailLock) {
+                    return m_writeSegment.getNumEntries() == 0;
+                }
+            }
+            return segment.m_objectReadIndex >= segment.getNumEntries();
         }
-        return segment.m_objectReadIndex >= segment.getNumEntries();
     }
 
     @Override
@@ -582,15 +775,27 @@ public class PersistentBinaryDeque implements BinaryDeque {
     }
 
     @Override
-    public synchronized void closeAndDelete() throws IOException {
-        m_writeSegment.closeAndDelete();
-        for (DequeSegment ds : m_finishedSegments.values()) {
-            ds.closeAndDelete();
+    public void closeAndDelete() throws IOException {
+        synchronized (m_headLock) {
+            synchronized (m_tailLock) {
+                m_writeSegment.closeAndDelete();
+                for (DequeSegment ds : m_finishedSegments.values()) {
+                    ds.closeAndDelete();
+                }
+            }
         }
     }
 
     @Override
-    public synchronized void parseAndTruncate(BinaryDequeTruncator truncator) throws IOException {
+    public void parseAndTruncate(BinaryDequeTruncator truncator) throws IOException {
+        synchronized (m_headLock) {
+            synchronized (m_tailLock) {
+                parseAndTruncateLocked(truncator);
+            }
+        }
+    }
+
+    private void parseAndTruncateLocked(BinaryDequeTruncator truncator) throws IOException {
         if (m_finishedSegments.isEmpty()) {
             exportLog.debug("PBD " + m_nonce + " has no finished segments");
             return;
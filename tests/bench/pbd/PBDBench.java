@@ -0,0 +1,132 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.utils.PersistentBinaryDeque;
+import org.voltdb.utils.VoltFile;
+
+/**
+ * Compare PersistentBinaryDeque with channel and memory mapped segments.
+ * Each mode is run as an offer-everything-then-drain backlog and with a writer
+ * and a reader going at the same time.
+ *
+ * Usage: PBDBench [directory] [megabytes] [object size in bytes]
+ * Run with the VoltDB jar and its dependencies on the classpath.
+ */
+public class PBDBench {
+
+    static long m_checksum = 0;
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : "/tmp/" + System.getProperty("user.name") + "/pbdbench");
+        long megabytes = args.length > 1 ? Long.parseLong(args[1]) : 1024;
+        int objectSize = args.length > 2 ? Integer.parseInt(args[2]) : 512 * 1024;
+        int objects = (int)(megabytes * 1024 * 1024 / objectSize);
+        dir.mkdirs();
+
+        for (int round = 0; round < 3; round++) {
+            for (boolean mapped : new boolean[] { false, true }) {
+                clean(dir);
+                backlog(dir, mapped, objects, objectSize);
+                clean(dir);
+                concurrent(dir, mapped, objects, objectSize);
+            }
+        }
+        clean(dir);
+        System.out.println("checksum " + m_checksum);
+    }
+
+    static void backlog(File dir, boolean mapped, int objects, int objectSize) throws Exception {
+        PersistentBinaryDeque pbd = new PersistentBinaryDeque("bench", dir, mapped);
+        ByteBuffer buf = ByteBuffer.allocateDirect(objectSize);
+        long start = System.nanoTime();
+        for (int ii = 0; ii < objects; ii++) {
+            buf.clear();
+            buf.putLong(0, ii);
+            pbd.offer(new BBContainer[] { DBBPool.wrapBB(buf) });
+        }
+        long offered = System.nanoTime();
+        drain(pbd, objects);
+        long drained = System.nanoTime();
+        pbd.closeAndDelete();
+        report(mapped ? "mapped " : "channel", "backlog offer", objects, objectSize, offered - start);
+        report(mapped ? "mapped " : "channel", "backlog poll ", objects, objectSize, drained - offered);
+    }
+
+    static void concurrent(File dir, boolean mapped, final int objects, final int objectSize) throws Exception {
+        final PersistentBinaryDeque pbd = new PersistentBinaryDeque("bench", dir, mapped);
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                ByteBuffer buf = ByteBuffer.allocateDirect(objectSize);
+                try {
+                    for (int ii = 0; ii < objects; ii++) {
+                        buf.clear();
+                        buf.putLong(0, ii);
+                        pbd.offer(new BBContainer[] { DBBPool.wrapBB(buf) });
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    System.exit(-1);
+                }
+            }
+        };
+        long start = System.nanoTime();
+        writer.start();
+        drain(pbd, objects);
+        writer.join();
+        long end = System.nanoTime();
+        pbd.closeAndDelete();
+        report(mapped ? "mapped " : "channel", "concurrent   ", objects, objectSize, end - start);
+    }
+
+    static void drain(PersistentBinaryDeque pbd, int objects) throws Exception {
+        int polled = 0;
+        while (polled < objects) {
+            BBContainer cont = pbd.poll();
+            if (cont == null) {
+                Thread.yield();
+                continue;
+            }
+            m_checksum += cont.b.getLong(cont.b.position());
+            cont.discard();
+            polled++;
+        }
+    }
+
+    static void report(String mode, String phase, int objects, int objectSize, long nanos) {
+        double seconds = nanos / 1000000000.0;
+        System.out.printf("%s %s %8.1f MB/s %10.0f objects/s%n",
+                mode, phase, objects * (double)objectSize / (1024 * 1024) / seconds, objects / seconds);
+    }
+
+    static void clean(File dir) throws Exception {
+        for (File f : dir.listFiles()) {
+            VoltFile.recursivelyDelete(f);
+        }
+    }
+}
@@ -44,6 +44,8 @@
 #include "common/DefaultTupleSerializer.h"
 #include "jsoncpp/jsoncpp.h"
 #include <vector>
+#include <map>
+#include <set>
 #include <string>
 #include <iostream>
 #include <stdint.h>
@@ -377,6 +379,57 @@ public:
         }
     }
 
+    /*
+     * Stream a block tagged snapshot of the table, collecting the rows of each block and
+     * the ids of the blocks that are only referenced. Optionally mutate the table between
+     * chunks.
+     */
+    void streamBlockSnapshot(int64_t epoch, int64_t baseEpoch,
+                             std::map<int64_t, T_ValueSet> &blocks,
+                             std::set<int64_t> &references,
+                             bool mutate) {
+        char config[20];
+        ReferenceSerializeOutput configOutput(config, sizeof(config));
+        configOutput.writeInt(0);
+        configOutput.writeLong(epoch);
+        configOutput.writeLong(baseEpoch);
+        ReferenceSerializeInput input(config, sizeof(config));
+        m_table->activateStream(m_serializer, TABLE_STREAM_SNAPSHOT, 0, m_tableId, input);
+
+        char serializationBuffer[BUFFER_SIZE];
+        while (true) {
+            TupleOutputStreamProcessor outputStreams(serializationBuffer, sizeof(serializationBuffer));
+            std::vector<int> retPositions;
+            m_table->streamMore(outputStreams, retPositions);
+            const int serialized = static_cast<int>(outputStreams.at(0).position());
+            if (serialized == 0) {
+                break;
+            }
+            ReferenceSerializeInput chunk(serializationBuffer, serialized);
+            chunk.readInt(); // partition id
+            const int64_t blockId = chunk.readLong();
+            const int32_t rowCount = chunk.readInt();
+            for (int32_t ii = 0; ii < rowCount; ii++) {
+                if (blockId == -1) {
+                    ASSERT_TRUE(references.insert(chunk.readLong()).second);
+                    continue;
+                }
+                const int32_t length = chunk.readInt();
+                int32_t values[2];
+                values[0] = chunk.readInt();
+                values[1] = chunk.readInt();
+                chunk.getRawPointer(length - 2 * sizeof(int32_t));
+                void *valuesVoid = reinterpret_cast<void*>(values);
+                ASSERT_TRUE(blocks[blockId].insert(*reinterpret_cast<int64_t*>(valuesVoid)).second);
+            }
+            if (mutate) {
+                for (size_t jj = 0; jj < NUM_MUTATIONS; jj++) {
+                    doRandomTableMutation(m_table);
+                }
+            }
+        }
+    }
+
     // Avoid the need to make each individual test a friend by exposing
     // PersistentTable privates from here. Tests should call these methods
     // instead of adding them as friends.
@@ -1125,6 +1178,61 @@ TEST_F(CopyOnWriteTest, BufferBoundaryCondition) {
     ASSERT_EQ(origPendingCount, curPendingCount);
 }
 
+/**
+ * A block tagged delta only writes the blocks written since its base snapshot and
+ * references the others. The referenced blocks of the base plus the rows of the delta
+ * have to add up to the table as of the delta's activation.
+ */
+TEST_F(CopyOnWriteTest, BlockTaggedDeltaTest) {
+    const int tuplesPerBlock = 100;
+    initTable(true, static_cast<int>(m_tupleWidth * (tuplesPerBlock + sizeof(int32_t))));
+    addRandomUniqueTuples(m_table, tuplesPerBlock * 50);
+
+    // The first snapshot of the chain writes every block
+    T_ValueSet baseTuples;
+    getTableValueSet(baseTuples);
+    std::map<int64_t, T_ValueSet> baseBlocks;
+    std::set<int64_t> references;
+    streamBlockSnapshot(100, 0, baseBlocks, references, false);
+    ASSERT_TRUE(references.empty());
+    T_ValueSet received;
+    for (std::map<int64_t, T_ValueSet>::iterator i = baseBlocks.begin(); i != baseBlocks.end(); ++i) {
+        received.insert(i->second.begin(), i->second.end());
+    }
+    ASSERT_TRUE(baseTuples == received);
+
+    for (int ii = 0; ii < 20; ii++) {
+        doRandomTableMutation(m_table);
+    }
+
+    // The delta leaves out the untouched blocks, even with writes during the scan
+    T_ValueSet deltaTuples;
+    getTableValueSet(deltaTuples);
+    std::map<int64_t, T_ValueSet> deltaBlocks;
+    streamBlockSnapshot(200, 100, deltaBlocks, references, true);
+    ASSERT_FALSE(references.empty());
+    T_ValueSet resolved;
+    for (std::map<int64_t, T_ValueSet>::iterator i = deltaBlocks.begin(); i != deltaBlocks.end(); ++i) {
+        for (T_ValueSet::iterator j = i->second.begin(); j != i->second.end(); ++j) {
+            ASSERT_TRUE(resolved.insert(*j).second);
+        }
+    }
+    for (std::set<int64_t>::iterator i = references.begin(); i != references.end(); ++i) {
+        ASSERT_TRUE(baseBlocks.find(*i) != baseBlocks.end());
+        ASSERT_TRUE(deltaBlocks.find(*i) == deltaBlocks.end());
+        for (T_ValueSet::iterator j = baseBlocks[*i].begin(); j != baseBlocks[*i].end(); ++j) {
+            ASSERT_TRUE(resolved.insert(*j).second);
+        }
+    }
+    ASSERT_TRUE(deltaTuples == resolved);
+
+    // A base the table didn't take part in can't be used, every block is written
+    std::map<int64_t, T_ValueSet> fullBlocks;
+    references.clear();
+    streamBlockSnapshot(300, 250, fullBlocks, references, false);
+    ASSERT_TRUE(references.empty());
+}
+
 static void dumpValueSet(const std::string &tag, const T_ValueSet &set) {
     std:: cout << "::: " << tag << " :::" << std::endl;
     if (set.size() >= 10) {
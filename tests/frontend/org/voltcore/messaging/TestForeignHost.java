@@ -0,0 +1,94 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.messaging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.voltcore.utils.CoreUtils;
+
+public class TestForeignHost {
+
+    VoltMessageFactory factory = new VoltMessageFactory();
+
+    @Test
+    public void testMessageWriteIntoSharedBuffer() throws Exception {
+        HeartbeatMessage first = new HeartbeatMessage(5L, 100L, 99L);
+        first.m_sourceHSId = 5L;
+        HeartbeatMessage second = new HeartbeatMessage(6L, 200L, 199L);
+        second.m_sourceHSId = 6L;
+        ForeignHost.MessageWrite firstWrite = new ForeignHost.MessageWrite(new long[] { 1L, 2L }, first);
+        ForeignHost.MessageWrite secondWrite = new ForeignHost.MessageWrite(new long[] { 3L }, second);
+
+        // messages set the limit of the buffer they are given, make sure that doesn't leak
+        // into the buffer shared by both messages
+        ByteBuffer shared = ByteBuffer.allocateDirect(1024);
+        firstWrite.serialize(shared);
+        secondWrite.serialize(shared);
+        assertEquals(firstWrite.getSerializedSize() + secondWrite.getSerializedSize(), shared.position());
+        assertEquals(1024, shared.limit());
+        shared.flip();
+
+        // same bytes as the heap copy path
+        for (ForeignHost.MessageWrite write : new ForeignHost.MessageWrite[] { firstWrite, secondWrite }) {
+            ByteBuffer heap = write.serialize()[0];
+            byte expected[] = new byte[heap.remaining()];
+            heap.get(expected);
+            byte actual[] = new byte[expected.length];
+            shared.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+
+        // and the framing can be read back
+        shared.flip();
+        assertEquals(firstWrite.getSerializedSize() - 4, shared.getInt());
+        assertEquals(5L, shared.getLong());
+        assertEquals(2, shared.getInt());
+        assertEquals(1L, shared.getLong());
+        assertEquals(2L, shared.getLong());
+        ByteBuffer body = shared.duplicate();
+        body.limit(body.position() + first.getSerializedSize());
+        body = body.slice();
+        HeartbeatMessage read = (HeartbeatMessage)factory.createMessageFromBuffer(body, 5L);
+        assertEquals(99L, read.getLastSafeTxnId());
+        assertEquals(100L, read.getTxnId());
+    }
+
+    @Test
+    public void testConnectionIndexFor() throws Exception {
+        // sites are spread across the connections by site id
+        for (int site = 0; site < 12; site++) {
+            assertEquals(site % 4, ForeignHost.connectionIndexFor(CoreUtils.getHSIdFromHostAndSite(3, site), 4));
+            assertEquals(0, ForeignHost.connectionIndexFor(CoreUtils.getHSIdFromHostAndSite(3, site), 1));
+        }
+        // system mailboxes stay on the primary connection
+        assertEquals(0, ForeignHost.connectionIndexFor(
+                CoreUtils.getHSIdFromHostAndSite(3, HostMessenger.AGREEMENT_SITE_ID), 4));
+        assertEquals(0, ForeignHost.connectionIndexFor(
+                CoreUtils.getHSIdFromHostAndSite(3, HostMessenger.CLIENT_INTERFACE_SITE_ID), 4));
+    }
+}
@@ -56,7 +56,12 @@ public class TestHostMessenger {
     }
 
     private HostMessenger createHostMessenger(int index, boolean start) throws Exception {
+        return createHostMessenger(index, start, 1);
+    }
+
+    private HostMessenger createHostMessenger(int index, boolean start, int connectionsPerHost) throws Exception {
         HostMessenger.Config config = new HostMessenger.Config();
+        config.connectionsPerHost = connectionsPerHost;
         config.internalPort = config.internalPort + index;
         config.zkInterface = "127.0.0.1:" + (2181 + index);
         HostMessenger hm = new HostMessenger(config);
@@ -166,4 +171,70 @@ public class TestHostMessenger {
         hm3.waitForGroupJoin(2);
     }
 
+    private static void waitForConnections(HostMessenger hm, int connections) throws Exception {
+        for (int ii = 0; ii < 1000; ii++) {
+            boolean connected = true;
+            for (ForeignHost fh : hm.m_foreignHosts.values()) {
+                assertEquals(connections, fh.getConnectionCount());
+                if (fh.getConnectedCount() != connections) {
+                    connected = false;
+                }
+            }
+            if (connected) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        fail("Auxiliary connections were not established");
+    }
+
+    @Test
+    public void testMultipleConnectionsPerHost() throws Exception {
+        HostMessenger hm1 = createHostMessenger(0, true, 3);
+        HostMessenger hm2 = createHostMessenger(1, true, 3);
+        HostMessenger hm3 = createHostMessenger(2, true, 3);
+        hm1.waitForGroupJoin(3);
+
+        assertEquals(2, hm1.countForeignHosts());
+        assertEquals(2, hm2.countForeignHosts());
+        assertEquals(2, hm3.countForeignHosts());
+        waitForConnections(hm1, 3);
+        waitForConnections(hm2, 3);
+        waitForConnections(hm3, 3);
+
+        // enough mailboxes on each receiving host to use every connection
+        Mailbox sender = hm2.createMailbox();
+        List<Mailbox> receivers = new ArrayList<Mailbox>();
+        for (int ii = 0; ii < 4; ii++) {
+            receivers.add(hm1.createMailbox());
+            receivers.add(hm3.createMailbox());
+        }
+        long receiverHSIds[] = new long[receivers.size()];
+        for (int ii = 0; ii < receiverHSIds.length; ii++) {
+            receiverHSIds[ii] = receivers.get(ii).getHSId();
+        }
+
+        // alternate single and multi destination sends, every mailbox must see them in order
+        final int messageCount = 200;
+        for (int ii = 0; ii < messageCount; ii++) {
+            HeartbeatMessage msg = new HeartbeatMessage(sender.getHSId(), ii, ii);
+            if (ii % 2 == 0) {
+                sender.send(receiverHSIds, msg);
+            } else {
+                for (long hsId : receiverHSIds) {
+                    sender.send(hsId, msg);
+                }
+            }
+        }
+
+        for (Mailbox receiver : receivers) {
+            for (int ii = 0; ii < messageCount; ii++) {
+                HeartbeatMessage msg = (HeartbeatMessage)receiver.recvBlocking(10000);
+                assertNotNull(msg);
+                assertEquals(sender.getHSId(), msg.m_sourceHSId);
+                assertEquals(ii, msg.getTxnId());
+            }
+        }
+    }
+
 }
@@ -52,6 +52,9 @@ package org.voltcore.network;
 
 import java.nio.channels.ReadableByteChannel;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.voltcore.network.NIOReadStream;
 import junit.framework.TestCase;
 import java.io.IOException;
@@ -212,6 +215,92 @@ public class TestNIOReadStream extends TestCase {
         assertEquals(-1, stream.fillFrom(channel, 42));
     }*/
 
+    public void testReadIntSpanningBuffers() throws IOException {
+        // the pool buffers are 32k, put an int across the boundary
+        final int SIZE = 1024 * 32 + 2;
+        channel.nextRead = new byte[SIZE];
+        channel.nextRead[SIZE - 4] = 1;
+        channel.nextRead[SIZE - 3] = 2;
+        channel.nextRead[SIZE - 2] = 3;
+        channel.nextRead[SIZE - 1] = 4;
+        assertEquals(SIZE, stream.read(channel, SIZE, pool));
+        stream.getBytes(new byte[SIZE - 4]);
+        assertEquals(0x01020304, stream.getInt());
+        assertStreamIsEmpty();
+    }
+
+    private static class BatchHandler extends VoltProtocolHandler {
+        final List<Integer> m_batchSizes = new ArrayList<Integer>();
+        final List<ByteBuffer> m_messages = new ArrayList<ByteBuffer>();
+        final List<Integer> m_values = new ArrayList<Integer>();
+
+        @Override
+        public void handleMessages(List<ByteBuffer> messages, Connection c) throws IOException {
+            m_batchSizes.add(messages.size());
+            super.handleMessages(messages, c);
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) {
+            assertEquals(0, message.position());
+            assertEquals(message.capacity(), message.remaining());
+            m_values.add(message.getInt(0));
+            m_messages.add(message);
+        }
+
+        @Override
+        public int getMaxRead() { return Integer.MAX_VALUE; }
+        @Override
+        public Runnable offBackPressure() { return null; }
+        @Override
+        public Runnable onBackPressure() { return null; }
+        @Override
+        public QueueMonitor writestreamMonitor() { return null; }
+    }
+
+    public void testHandlerBatches() throws IOException {
+        // 100 length prefixed messages carrying their index plus padding, and half of another
+        ByteBuffer data = ByteBuffer.allocate(100 * 12 + 6);
+        for (int ii = 0; ii < 100; ii++) {
+            data.putInt(8);
+            data.putInt(ii);
+            data.putInt(-1);
+        }
+        data.putInt(8);
+        data.putShort((short)0);
+        channel.nextRead = data.array();
+        stream.read(channel, Integer.MAX_VALUE, pool);
+
+        BatchHandler handler = new BatchHandler();
+        Connection c = new MockConnection() {
+            @Override
+            public NIOReadStream readStream() {
+                return stream;
+            }
+        };
+        assertEquals(100, handler.handleInput(c));
+        assertEquals(1, handler.m_batchSizes.size());
+        assertEquals(100, handler.m_batchSizes.get(0).intValue());
+        for (int ii = 0; ii < 100; ii++) {
+            assertEquals(ii, handler.m_values.get(ii).intValue());
+        }
+        // small messages are copied into one shared block
+        assertSame(handler.m_messages.get(0).array(), handler.m_messages.get(99).array());
+        assertEquals(8, handler.m_messages.get(1).arrayOffset());
+        assertEquals(100, handler.sequenceId());
+        // the length of the partial message has been consumed
+        assertEquals(2, stream.dataAvailable());
+
+        // finish the partial message
+        channel.nextRead = new byte[] { 0, 100, -1, -1, -1, -1 };
+        stream.read(channel, Integer.MAX_VALUE, pool);
+        assertEquals(1, handler.handleInput(c));
+        assertEquals(100, handler.m_values.get(100).intValue());
+        assertEquals(0, handler.handleInput(c));
+        assertEquals(2, handler.m_batchSizes.size());
+        assertFalse(stream.holdsBuffers());
+    }
+
     private void assertStreamIsEmpty() throws IOException {
         assertEquals(0, stream.read(channel, Integer.MAX_VALUE, pool));
         assertEquals(0, stream.dataAvailable());
@@ -50,6 +50,7 @@
 
 package org.voltcore.network;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
@@ -60,6 +61,7 @@ import junit.framework.TestCase;
 
 import org.voltcore.utils.EstTime;
 import org.voltcore.utils.EstTimeUpdater;
+import org.voltcore.utils.SizedDeferredSerialization;
 
 public class TestNIOWriteStream extends TestCase {
 
@@ -152,28 +154,7 @@ public class TestNIOWriteStream extends TestCase {
 
         @Override
         public long write(ByteBuffer src[]) throws IOException {
-            if (!m_open) throw new IOException();
-
-            if (m_behavior == SINK) {
-                int remaining = src[0].remaining();
-                src[0].position(src[0].limit());
-                return remaining;
-            }
-            else if (m_behavior == FULL) {
-                return 0;
-            }
-            else if (m_behavior == PARTIAL) {
-                if (wrotePartial) {
-                    return 0;
-                } else {
-                    wrotePartial = true;
-                }
-                ByteBuffer copy = ByteBuffer.allocate(src[0].remaining());
-                src[0].get(copy.array(), 0, src[0].remaining()/2);
-                return src[0].remaining();
-            }
-            assert(false);
-            return -1;
+            return write(src, 0, src.length);
         }
 
         @Override
@@ -192,11 +173,20 @@ public class TestNIOWriteStream extends TestCase {
         public static int SINK = 0;     // accept all data
         public static int FULL = 1;     // accept no data
         public static int PARTIAL = 2;  // accept some data
+        public int m_gatheringWrites = 0;
+
         @Override
         public long write(ByteBuffer[] srcs, int offset, int length)
                 throws IOException {
-            // TODO Auto-generated method stub
-            return 0;
+            m_gatheringWrites++;
+            long written = 0;
+            for (int ii = offset; ii < offset + length; ii++) {
+                written += write(srcs[ii]);
+                if (srcs[ii].hasRemaining()) {
+                    break;
+                }
+            }
+            return written;
         }
     }
 
@@ -338,6 +328,140 @@ public class TestNIOWriteStream extends TestCase {
         wstream.shutdown();
     }
 
+    private static class SizedMessage implements SizedDeferredSerialization {
+        final int m_size;
+        final byte m_fill;
+        int m_directWrites = 0;
+        int m_copiedWrites = 0;
+
+        SizedMessage(int size, byte fill) {
+            m_size = size;
+            m_fill = fill;
+        }
+
+        @Override
+        public int getSerializedSize() {
+            return m_size;
+        }
+
+        @Override
+        public void serialize(ByteBuffer buf) {
+            m_directWrites++;
+            for (int ii = 0; ii < m_size; ii++) {
+                buf.put(m_fill);
+            }
+        }
+
+        @Override
+        public ByteBuffer[] serialize() {
+            m_copiedWrites++;
+            ByteBuffer buf = ByteBuffer.allocate(m_size);
+            serialize(buf);
+            m_directWrites--;
+            return new ByteBuffer[] { buf };
+        }
+
+        @Override
+        public void cancel() {}
+    }
+
+    public void testSizedDeferredSerialization() throws IOException {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        GatheringByteChannel channel = new MockChannel(MockChannel.SINK) {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                int count = 0;
+                while (src.hasRemaining()) {
+                    written.write(src.get());
+                    count++;
+                }
+                return count;
+            }
+        };
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port);
+
+        ByteBuffer tmp = ByteBuffer.allocate(3);
+        tmp.put(new byte[] { 1, 1, 1 });
+        tmp.flip();
+        wstream.enqueue(tmp);
+        SizedMessage small = new SizedMessage(10, (byte)2);
+        wstream.enqueue(small);
+        // doesn't fit in what is left of the first pool buffer
+        SizedMessage fresh = new SizedMessage(1024 * 32 - 5, (byte)3);
+        wstream.enqueue(fresh);
+        // larger than a pool buffer
+        SizedMessage large = new SizedMessage(1024 * 40, (byte)4);
+        wstream.enqueue(large);
+        wstream.swapAndSerializeQueuedWrites(pool);
+        while (!wstream.isEmpty()) {
+            wstream.drainTo(channel);
+        }
+
+        assertEquals(1, small.m_directWrites);
+        assertEquals(1, fresh.m_directWrites);
+        assertEquals(0, large.m_directWrites);
+        assertEquals(1, large.m_copiedWrites);
+
+        byte bytes[] = written.toByteArray();
+        assertEquals(3 + 10 + 1024 * 32 - 5 + 1024 * 40, bytes.length);
+        int offset = 0;
+        int lengths[] = new int[] { 3, 10, 1024 * 32 - 5, 1024 * 40 };
+        for (int msg = 0; msg < lengths.length; msg++) {
+            for (int ii = 0; ii < lengths[msg]; ii++) {
+                assertEquals(msg + 1, bytes[offset++]);
+            }
+        }
+        wstream.shutdown();
+    }
+
+    public void testGatheringWrite() throws IOException {
+        MockChannel channel = new MockChannel(MockChannel.SINK);
+        MockPort port = new MockPort();
+        NIOWriteStream wstream = new NIOWriteStream(port);
+
+        // three pool buffers worth of small messages go out in one gathering write
+        for (int ii = 0; ii < 3 * 32; ii++) {
+            wstream.enqueue(new SizedMessage(1000, (byte)ii));
+        }
+        wstream.swapAndSerializeQueuedWrites(pool);
+        assertEquals(3 * 32 * 1000, wstream.drainTo(channel));
+        assertTrue(wstream.isEmpty());
+        assertEquals(1, channel.m_gatheringWrites);
+        long stats[] = wstream.getBytesAndMessagesWritten(false);
+        assertEquals(3 * 32 * 1000, stats[0]);
+        assertEquals(1, stats[2]);
+        assertEquals(0, stats[3]);
+
+        // a message too large for a pool buffer is copied from the heap
+        wstream.enqueue(new SizedMessage(1024 * 40, (byte)1));
+        wstream.swapAndSerializeQueuedWrites(pool);
+        wstream.drainTo(channel);
+        stats = wstream.getBytesAndMessagesWritten(true);
+        assertEquals(3 * 32 * 1000 + 1024 * 40, stats[0]);
+        assertEquals(2, stats[2]);
+        assertEquals(1, stats[3]);
+        stats = wstream.getBytesAndMessagesWritten(true);
+        assertEquals(0, stats[0]);
+        assertEquals(0, stats[2]);
+        assertEquals(0, stats[3]);
+
+        // a partial gathering write leaves the rest queued in order
+        channel.m_behavior = MockChannel.FULL;
+        for (int ii = 0; ii < 2 * 32; ii++) {
+            wstream.enqueue(new SizedMessage(1000, (byte)ii));
+        }
+        wstream.swapAndSerializeQueuedWrites(pool);
+        assertEquals(0, wstream.drainTo(channel));
+        assertFalse(wstream.isEmpty());
+        assertTrue(wstream.hadBackPressure());
+        channel.m_behavior = MockChannel.SINK;
+        assertEquals(2 * 32 * 1000, wstream.drainTo(channel));
+        assertTrue(wstream.isEmpty());
+        assertFalse(wstream.hadBackPressure());
+        wstream.shutdown();
+    }
+
     public void testLastWriteDelta() throws Exception {
         final MockChannel channel = new MockChannel(MockChannel.SINK);
         MockPort port = new MockPort();
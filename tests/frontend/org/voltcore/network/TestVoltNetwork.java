@@ -69,6 +69,11 @@ public class TestVoltNetwork extends TestCase {
             return null;
         }
 
+        @Override
+        public int handleInput(Connection c) {
+            return 0;
+        }
+
         @Override
         public void started(Connection c) {
             // TODO Auto-generated method stub
@@ -0,0 +1,212 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltcore.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestVoltNetworkPool extends TestCase {
+
+    /** Echoes every message back to the sender */
+    private static class EchoHandler extends VoltProtocolHandler {
+        volatile int m_messages = 0;
+
+        @Override
+        public int getMaxRead() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void handleMessage(ByteBuffer message, Connection c) throws IOException {
+            m_messages++;
+            ByteBuffer echo = ByteBuffer.allocate(4 + message.remaining());
+            echo.putInt(message.remaining());
+            echo.put(message);
+            echo.flip();
+            c.writeStream().enqueue(echo);
+        }
+
+        @Override
+        public void stopping(Connection c) {}
+
+        @Override
+        public Runnable offBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public Runnable onBackPressure() {
+            return new Runnable() {
+                @Override
+                public void run() {}
+            };
+        }
+
+        @Override
+        public QueueMonitor writestreamMonitor() {
+            return null;
+        }
+    }
+
+    private ServerSocketChannel m_server;
+    private final List<SocketChannel> m_channels = new ArrayList<SocketChannel>();
+    private VoltNetworkPool m_pool;
+
+    @Override
+    public void setUp() throws Exception {
+        m_server = ServerSocketChannel.open();
+        m_server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        if (m_pool != null) {
+            m_pool.shutdown();
+        }
+        for (SocketChannel sc : m_channels) {
+            sc.close();
+        }
+        m_channels.clear();
+        m_server.close();
+    }
+
+    /*
+     * Connect to the test server and return the server side of the connection,
+     * the client side is kept in m_channels
+     */
+    private SocketChannel connect() throws Exception {
+        SocketChannel client = SocketChannel.open(m_server.socket().getLocalSocketAddress());
+        m_channels.add(client);
+        SocketChannel server = m_server.accept();
+        m_channels.add(server);
+        return client;
+    }
+
+    private SocketChannel acceptedFor(SocketChannel client) {
+        return m_channels.get(m_channels.indexOf(client) + 1);
+    }
+
+    private static void echo(SocketChannel client, int value) throws Exception {
+        ByteBuffer out = ByteBuffer.allocate(8);
+        out.putInt(4);
+        out.putInt(value);
+        out.flip();
+        while (out.hasRemaining()) {
+            client.write(out);
+        }
+        ByteBuffer in = ByteBuffer.allocate(8);
+        while (in.hasRemaining()) {
+            if (client.read(in) == -1) {
+                fail("Connection closed");
+            }
+        }
+        in.flip();
+        assertEquals(4, in.getInt());
+        assertEquals(value, in.getInt());
+    }
+
+    public void testIdleNetworksShareConnections() throws Exception {
+        m_pool = new VoltNetworkPool(3, null);
+        m_pool.start();
+        for (int ii = 0; ii < 6; ii++) {
+            SocketChannel client = connect();
+            m_pool.registerChannel(acceptedFor(client), new EchoHandler());
+        }
+        for (VoltNetwork vn : m_pool.getNetworks()) {
+            assertEquals(2, vn.getPortCount());
+        }
+    }
+
+    public void testLeastLoadedNetworkSelection() throws Exception {
+        // not started, so the loads are never resampled
+        m_pool = new VoltNetworkPool(3, null);
+        VoltNetwork networks[] = m_pool.getNetworks();
+        networks[0].addEstimatedLoad(100);
+        networks[1].addEstimatedLoad(50);
+        networks[2].addEstimatedLoad(200);
+        for (int ii = 0; ii < 5; ii++) {
+            assertSame(networks[1], m_pool.getLeastLoadedNetwork());
+        }
+        networks[0].addEstimatedLoad(-100);
+        for (int ii = 0; ii < 5; ii++) {
+            assertSame(networks[0], m_pool.getLeastLoadedNetwork());
+        }
+        m_pool = null;
+    }
+
+    public void testMigrateConnection() throws Exception {
+        m_pool = new VoltNetworkPool(2, null);
+        m_pool.start();
+        SocketChannel client = connect();
+        EchoHandler handler = new EchoHandler();
+        final Connection c = m_pool.registerChannel(acceptedFor(client), handler);
+        echo(client, 1);
+
+        final VoltNetwork source = m_pool.getNetwork(c);
+        final VoltNetwork target = m_pool.getNetworks()[0] == source ?
+                m_pool.getNetworks()[1] : m_pool.getNetworks()[0];
+        final CountDownLatch migrated = new CountDownLatch(1);
+        c.queueTask(new Runnable() {
+            @Override
+            public void run() {
+                VoltPort port = (VoltPort)c;
+                assertTrue(port.canMigrate());
+                source.migrate(port, target);
+                migrated.countDown();
+            }
+        });
+        assertTrue(migrated.await(10, TimeUnit.SECONDS));
+
+        // the connection keeps working, now on the other network
+        for (int ii = 2; ii < 100; ii++) {
+            echo(client, ii);
+        }
+        assertSame(target, m_pool.getNetwork(c));
+        assertEquals(0, source.getPortCount());
+        assertEquals(1, target.getPortCount());
+        assertEquals(1, source.getMigratedPorts());
+        assertEquals(99, handler.m_messages);
+
+        // and is unregistered by its new network
+        c.unregister().get();
+        assertEquals(0, target.getPortCount());
+        assertEquals(-1, client.read(ByteBuffer.allocate(1)));
+    }
+}
@@ -0,0 +1,119 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltcore.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestLongObjectHashMap extends TestCase {
+
+    private static void assertSameContents(Map<Long, String> expected, LongObjectHashMap<String> map) {
+        assertEquals(expected.size(), map.size());
+        int found = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            String value = map.valueAt(slot);
+            if (value != null) {
+                found++;
+                assertEquals(expected.get(map.keyAt(slot)), value);
+            }
+        }
+        assertEquals(expected.size(), found);
+        for (Map.Entry<Long, String> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+    }
+
+    public void testBasics() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(5, "five"));
+        assertEquals("five", map.put(5, "cinq"));
+        assertEquals(1, map.size());
+        assertTrue(map.containsKey(5));
+        assertFalse(map.containsKey(6));
+        assertNull(map.get(6));
+        assertNull(map.remove(6));
+        assertEquals("cinq", map.remove(5));
+        assertTrue(map.isEmpty());
+
+        // negative and extreme keys are just keys
+        map.put(-1, "minus one");
+        map.put(Long.MAX_VALUE, "max");
+        map.put(0, "zero");
+        assertEquals("minus one", map.get(-1));
+        assertEquals("max", map.get(Long.MAX_VALUE));
+        assertEquals("zero", map.get(0));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+
+        try {
+            map.put(1, null);
+            fail();
+        } catch (NullPointerException expected) {}
+    }
+
+    public void testRandomAgainstHashMap() {
+        Random r = new Random(42);
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+        Map<Long, String> expected = new HashMap<Long, String>();
+        for (int ii = 0; ii < 200000; ii++) {
+            // a small key range forces plenty of collisions and removals
+            long key = r.nextInt(2000) - 1000;
+            if (r.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                String value = Integer.toString(ii);
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertSameContents(expected, map);
+    }
+
+    public void testRemoveWhileIterating() {
+        Random r = new Random(7);
+        LongObjectHashMap<String> map = new LongObjectHashMap<String>(4);
+        Map<Long, String> expected = new HashMap<Long, String>();
+        // sequential keys like client handles
+        for (long key = 0; key < 5000; key++) {
+            String value = r.nextBoolean() ? "drop" : "keep";
+            map.put(key, value);
+            expected.put(key, value);
+        }
+
+        int slot = 0;
+        while (slot < map.capacity()) {
+            String value = map.valueAt(slot);
+            if (value != null && value.equals("drop")) {
+                assertEquals(value, expected.remove(map.keyAt(slot)));
+                map.removeAt(slot);
+            } else {
+                slot++;
+            }
+        }
+        assertSameContents(expected, map);
+    }
+}
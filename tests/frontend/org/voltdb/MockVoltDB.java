@@ -51,6 +51,7 @@ import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.fault.FaultDistributorInterface;
+import org.voltdb.iv2.Cartographer;
 import org.voltdb.licensetool.LicenseApi;
 
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -405,6 +406,11 @@ public class MockVoltDB implements VoltDBInterface
         return new DummyCommandLog();
     }
 
+    @Override
+    public Cartographer getCartographer() {
+        return null;
+    }
+
     @Override
     public boolean rejoining() {
         return false;
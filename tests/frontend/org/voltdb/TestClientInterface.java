@@ -37,6 +37,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -59,6 +60,7 @@ import org.voltcore.messaging.HostMessenger;
 import org.voltcore.messaging.LocalObjectMessage;
 import org.voltcore.network.Connection;
 import org.voltcore.network.VoltNetworkPool;
+import org.voltcore.network.WriteStream;
 import org.voltdb.ClientInterface.ClientInputHandler;
 import org.voltdb.VoltDB.Configuration;
 import org.voltdb.VoltTable.ColumnInfo;
@@ -560,4 +562,49 @@ public class TestClientInterface {
             logConfig.setEnabled(wasEnabled);
         }
     }
+
+    private static Connection mockRunningConnection(long connectionId) {
+        Connection c = mock(Connection.class);
+        doReturn(connectionId).when(c).connectionId();
+        doReturn(mock(WriteStream.class)).when(c).writeStream();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((Runnable)invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(c).queueTask(any(Runnable.class));
+        return c;
+    }
+
+    @Test
+    public void testExportBackPressureSkipsAdminConnections() throws Exception {
+        doReturn(true).when(m_volt).isIV2Enabled();
+        ClientInterface ci = new ClientInterface(null, VoltDB.DEFAULT_PORT, VoltDB.DEFAULT_ADMIN_PORT,
+                                                 m_context, m_messenger, ReplicationRole.NONE,
+                                                 m_cartographer, m_allPartitions);
+        Connection userCxn = mockRunningConnection(1);
+        Connection adminCxn = mockRunningConnection(2);
+        ci.new ClientInputHandler("user", false).started(userCxn);
+        ci.new ClientInputHandler("admin", true).started(adminCxn);
+        verify(userCxn).enableReadSelection();
+        verify(adminCxn).enableReadSelection();
+
+        ci.onExportBackPressure();
+        verify(userCxn).disableReadSelection();
+        verify(adminCxn, never()).disableReadSelection();
+
+        // An admin connection that shows up while export is backed up can still be read
+        Connection lateAdminCxn = mockRunningConnection(3);
+        Connection lateUserCxn = mockRunningConnection(4);
+        ci.new ClientInputHandler("admin", true).started(lateAdminCxn);
+        ci.new ClientInputHandler("user", false).started(lateUserCxn);
+        verify(lateAdminCxn).enableReadSelection();
+        verify(lateUserCxn, never()).enableReadSelection();
+
+        ci.offExportBackPressure();
+        verify(userCxn, times(2)).enableReadSelection();
+        verify(lateUserCxn).enableReadSelection();
+        verify(adminCxn).enableReadSelection();
+    }
 }
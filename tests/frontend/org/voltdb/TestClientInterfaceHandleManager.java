@@ -28,10 +28,13 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import org.junit.Test;
 import org.voltcore.network.Connection;
+import org.voltcore.utils.CoreUtils;
 
 public class TestClientInterfaceHandleManager {
 
@@ -113,4 +116,88 @@ public class TestClientInterfaceHandleManager {
             assertEquals(31337 + i, inf.m_clientHandle);
         }
     }
+
+    @Test
+    public void testReplicaReadsCompleteOutOfOrder() throws Exception
+    {
+        Connection mockConnection = mock(Connection.class);
+        doReturn(mock(org.voltcore.network.WriteStream.class)).when(mockConnection).writeStream();
+        ClientInterfaceHandleManager dut =
+                new ClientInterfaceHandleManager(
+                        false,
+                        mockConnection,
+                        AdmissionControlGroup.getDummy());
+        long replicaA = CoreUtils.getHSIdFromHostAndSite(0, 1);
+        long replicaB = CoreUtils.getHSIdFromHostAndSite(1, 1);
+        long ordered = dut.getHandle(true, 7, 1, 10, 10l, "yankeefoo", replicaA, true, false);
+        long first = dut.getReplicaReadHandle(7, 2, 10, 10l, "yankeefoo", replicaA);
+        long second = dut.getReplicaReadHandle(7, 3, 10, 10l, "yankeefoo", replicaB);
+        assertEquals(3, dut.getOutstandingTxns());
+
+        // a later replica read finishing first doesn't drop anything before it
+        assertEquals(3, dut.findHandle(second).m_clientHandle);
+        assertEquals(1, dut.findHandle(ordered).m_clientHandle);
+        assertEquals(2, dut.findHandle(first).m_clientHandle);
+        assertEquals(0, dut.getOutstandingTxns());
+    }
+
+    @Test
+    public void testMpReadsCompleteOutOfOrder() throws Exception
+    {
+        Connection mockConnection = mock(Connection.class);
+        doReturn(mock(org.voltcore.network.WriteStream.class)).when(mockConnection).writeStream();
+        ClientInterfaceHandleManager dut =
+                new ClientInterfaceHandleManager(
+                        false,
+                        mockConnection,
+                        AdmissionControlGroup.getDummy());
+        long first = dut.getHandle(false, 0, 1, 10, 10l, "yankeefoo", 0, true, false);
+        long second = dut.getHandle(false, 0, 2, 10, 10l, "yankeefoo", 0, true, false);
+        long third = dut.getHandle(false, 0, 3, 10, 10l, "yankeefoo", 0, true, false);
+
+        // pipelined MP reads finishing early don't drop the ones before them
+        assertEquals(3, dut.findHandle(third).m_clientHandle);
+        assertEquals(1, dut.findHandle(first).m_clientHandle);
+        assertEquals(1, dut.getOutstandingTxns());
+
+        // they are still dropped when the MPI fails over
+        List<ClientInterfaceHandleManager.Iv2InFlight> dropped =
+                dut.removeHandlesForPartitionAndInitiator(ClientInterfaceHandleManager.MP_PART_ID, 1L);
+        assertEquals(1, dropped.size());
+        assertEquals(2, dropped.get(0).m_clientHandle);
+        assertNull(dut.findHandle(second));
+        assertEquals(0, dut.getOutstandingTxns());
+    }
+
+    @Test
+    public void testReplicaReadFailures() throws Exception
+    {
+        Connection mockConnection = mock(Connection.class);
+        doReturn(mock(org.voltcore.network.WriteStream.class)).when(mockConnection).writeStream();
+        ClientInterfaceHandleManager dut =
+                new ClientInterfaceHandleManager(
+                        false,
+                        mockConnection,
+                        AdmissionControlGroup.getDummy());
+        long master = CoreUtils.getHSIdFromHostAndSite(0, 1);
+        long replica = CoreUtils.getHSIdFromHostAndSite(1, 1);
+        long atMaster = dut.getReplicaReadHandle(7, 1, 10, 10l, "yankeefoo", master);
+        long atReplica = dut.getReplicaReadHandle(7, 2, 10, 10l, "yankeefoo", replica);
+        dut.getReplicaReadHandle(8, 3, 10, 10l, "yankeefoo", replica);
+
+        // losing the host of a replica drops the reads sent to it
+        List<ClientInterfaceHandleManager.Iv2InFlight> dropped =
+                dut.removeReplicaReadsForFailedHosts(new HashSet<Integer>(Arrays.asList(0)));
+        assertEquals(2, dropped.size());
+        assertNull(dut.findHandle(atReplica));
+        assertEquals(1, dut.getOutstandingTxns());
+
+        // a new master drops the reads at the old one
+        long newMaster = CoreUtils.getHSIdFromHostAndSite(2, 1);
+        dropped = dut.removeHandlesForPartitionAndInitiator(7, newMaster);
+        assertEquals(1, dropped.size());
+        assertEquals(1, dropped.get(0).m_clientHandle);
+        assertNull(dut.findHandle(atMaster));
+        assertEquals(0, dut.getOutstandingTxns());
+    }
 }
@@ -0,0 +1,110 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Callables;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class TestDefaultSnapshotDataTarget {
+
+    private static final int VERSION[] = { 0, 0, 0, 2 };
+
+    private static DefaultSnapshotDataTarget createTarget(File dir, String table) throws Exception {
+        VoltTable schema = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.BIGINT));
+        return new DefaultSnapshotDataTarget(new File(dir, table + ".vpt"), 0, "cluster", "database",
+                table, 2, false, Arrays.asList(0, 1), schema, 1, System.currentTimeMillis(), VERSION);
+    }
+
+    private static ListenableFuture<?> writeBlock(DefaultSnapshotDataTarget target, int size) throws Exception {
+        BBContainer block = DBBPool.allocateDirectWithAddress(size);
+        block.b.putInt(0);
+        while (block.b.hasRemaining()) {
+            block.b.put((byte)block.b.position());
+        }
+        block.b.flip();
+        return target.write(Callables.returning(block), null);
+    }
+
+    @Test
+    public void testVolumeWritersReleasedOnClose() throws Exception {
+        File first = Files.createTempDir();
+        File second = Files.createTempDir();
+        final int before = DefaultSnapshotDataTarget.getVolumeWritersCount();
+
+        // targets in one directory share a pool
+        DefaultSnapshotDataTarget a = createTarget(first, "A");
+        DefaultSnapshotDataTarget b = createTarget(first, "B");
+        DefaultSnapshotDataTarget c = createTarget(second, "C");
+        assertEquals(before + 2, DefaultSnapshotDataTarget.getVolumeWritersCount());
+
+        a.close();
+        assertEquals(before + 2, DefaultSnapshotDataTarget.getVolumeWritersCount());
+        b.close();
+        c.close();
+        assertEquals(before, DefaultSnapshotDataTarget.getVolumeWritersCount());
+
+        // and the directory gets a new pool the next time it is used
+        DefaultSnapshotDataTarget d = createTarget(first, "D");
+        writeBlock(d, 1024 * 64).get(10, TimeUnit.SECONDS);
+        assertEquals(before + 1, DefaultSnapshotDataTarget.getVolumeWritersCount());
+        d.close();
+        assertEquals(before, DefaultSnapshotDataTarget.getVolumeWritersCount());
+    }
+
+    @Test
+    public void testConcurrentTargetsFinish() throws Exception {
+        File dir = Files.createTempDir();
+        List<DefaultSnapshotDataTarget> targets = new ArrayList<DefaultSnapshotDataTarget>();
+        List<ListenableFuture<?>> writes = new ArrayList<ListenableFuture<?>>();
+        for (int ii = 0; ii < 4; ii++) {
+            targets.add(createTarget(dir, "T" + ii));
+        }
+        for (int block = 0; block < 32; block++) {
+            for (DefaultSnapshotDataTarget target : targets) {
+                writes.add(writeBlock(target, 1024 * 512));
+            }
+        }
+        for (ListenableFuture<?> write : writes) {
+            write.get(60, TimeUnit.SECONDS);
+        }
+        for (DefaultSnapshotDataTarget target : targets) {
+            assertTrue(target.getBytesWritten() > 0);
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.json_voltpatches.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.voltcore.utils.InstanceId;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.utils.VoltFile;
+
+public class TestGroupCommitCommandLog {
+
+    private final static File TEST_DIR =
+        new File("/tmp/" + System.getProperty("user.name") + "/group_commit_cl");
+
+    private GroupCommitCommandLog m_log;
+
+    private static class RecordingListener implements CommandLog.DurabilityListener {
+        final List<Object> m_handles = new ArrayList<Object>();
+        int m_calls = 0;
+
+        @Override
+        public synchronized void onDurability(ArrayList<Object> durableThings) {
+            m_calls++;
+            m_handles.addAll(durableThings);
+            notifyAll();
+        }
+
+        synchronized void waitForHandles(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (m_handles.size() < count && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+        }
+    }
+
+    private static class CollectingHandler implements GroupCommitCommandLog.LogEntryHandler {
+        final List<JSONObject> m_headers = new ArrayList<JSONObject>();
+        final List<Long> m_spHandles = new ArrayList<Long>();
+        final List<Iv2InitiateTaskMessage> m_messages = new ArrayList<Iv2InitiateTaskMessage>();
+        int m_faults = 0;
+
+        @Override
+        public void handleHeader(long generation, JSONObject header) {
+            m_headers.add(header);
+        }
+
+        @Override
+        public void handleInitiate(long spHandle, Iv2InitiateTaskMessage message) {
+            m_spHandles.add(spHandle);
+            m_messages.add(message);
+        }
+
+        @Override
+        public void handleFault(long writerHSId, Set<Long> survivors, int partitionId, long spHandle) {
+            m_faults++;
+        }
+    }
+
+    private static Iv2InitiateTaskMessage makeInitiate(long spHandle, boolean isSinglePartition, String procName) {
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setClientHandle(25);
+        spi.setProcName(procName);
+        spi.setParams(57, "gooniestoo");
+        Iv2InitiateTaskMessage msg =
+            new Iv2InitiateTaskMessage(23, 8, 10L, spHandle, 99, false, isSinglePartition, spi, 2101, 3101, false);
+        msg.setSpHandle(spHandle);
+        return msg;
+    }
+
+    private void start(boolean synchronous, Map<Integer, Long> txnIds) throws Exception {
+        m_log = new GroupCommitCommandLog();
+        m_log.start(TEST_DIR, synchronous, 5, 1000, 0, new InstanceId(1, 12345), txnIds);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        tearDown();
+        TEST_DIR.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (m_log != null && !m_log.needsInitialization()) {
+            m_log.stop();
+        }
+        m_log = null;
+        if (TEST_DIR.exists()) {
+            for (File f : TEST_DIR.listFiles()) {
+                VoltFile.recursivelyDelete(f);
+            }
+            TEST_DIR.delete();
+        }
+    }
+
+    @Test
+    public void testSynchronousNotifiesAfterSync() throws Exception {
+        start(true, new HashMap<Integer, Long>());
+        RecordingListener listener = new RecordingListener();
+        long spHandle = TxnEgo.makeZero(0).getTxnId();
+        for (int ii = 0; ii < 100; ii++) {
+            spHandle = new TxnEgo(spHandle).makeNext().getTxnId();
+            assertTrue(m_log.log(makeInitiate(spHandle, true, "Insert"), spHandle, listener, ii));
+        }
+        listener.waitForHandles(100);
+        assertEquals(100, listener.m_handles.size());
+        for (int ii = 0; ii < 100; ii++) {
+            assertEquals(ii, listener.m_handles.get(ii));
+        }
+        // Group commit, not one callback per transaction
+        assertTrue(listener.m_calls < 100);
+    }
+
+    @Test
+    public void testAsynchronousDoesNotNotify() throws Exception {
+        start(false, new HashMap<Integer, Long>());
+        RecordingListener listener = new RecordingListener();
+        long spHandle = new TxnEgo(TxnEgo.makeZero(1).getTxnId()).makeNext().getTxnId();
+        assertFalse(m_log.log(makeInitiate(spHandle, true, "Insert"), spHandle, listener, 1));
+        m_log.stop();
+        assertEquals(0, listener.m_calls);
+
+        CollectingHandler handler = new CollectingHandler();
+        GroupCommitCommandLog.scanLog(TEST_DIR, handler);
+        assertEquals(1, handler.m_messages.size());
+    }
+
+    @Test
+    public void testScanAndHeader() throws Exception {
+        Map<Integer, Long> txnIds = new HashMap<Integer, Long>();
+        txnIds.put(0, TxnEgo.makeZero(0).getTxnId());
+        txnIds.put(MpInitiator.MP_INIT_PID, TxnEgo.makeZero(MpInitiator.MP_INIT_PID).getTxnId());
+        start(true, txnIds);
+
+        RecordingListener listener = new RecordingListener();
+        long spHandle = TxnEgo.makeZero(0).getTxnId();
+        List<Long> logged = new ArrayList<Long>();
+        for (int ii = 0; ii < 10; ii++) {
+            spHandle = new TxnEgo(spHandle).makeNext().getTxnId();
+            logged.add(spHandle);
+            m_log.log(makeInitiate(spHandle, ii % 2 == 0, "Proc" + ii), spHandle, listener, ii);
+        }
+        Set<Long> survivors = new TreeSet<Long>();
+        survivors.add(1L);
+        m_log.logIv2Fault(2L, survivors, 0, spHandle);
+        listener.waitForHandles(10);
+        m_log.stop();
+
+        CollectingHandler handler = new CollectingHandler();
+        GroupCommitCommandLog.scanLog(TEST_DIR, handler);
+        assertEquals(1, handler.m_headers.size());
+        assertEquals(logged, handler.m_spHandles);
+        assertEquals(1, handler.m_faults);
+        for (int ii = 0; ii < 10; ii++) {
+            assertEquals("Proc" + ii, handler.m_messages.get(ii).getStoredProcedureName());
+            assertEquals(ii % 2 == 0, handler.m_messages.get(ii).isSinglePartition());
+        }
+
+        JSONObject header = GroupCommitCommandLog.readOldestHeader(TEST_DIR);
+        assertEquals(new InstanceId(1, 12345), new InstanceId(header.getJSONObject("instanceId")));
+        assertEquals(txnIds, GroupCommitCommandLog.txnIdsFromHeader(header));
+    }
+
+    @Test
+    public void testTruncationRollsGenerations() throws Exception {
+        start(true, new HashMap<Integer, Long>());
+        RecordingListener listener = new RecordingListener();
+        long spHandle = TxnEgo.makeZero(0).getTxnId();
+        long firstGenMax = 0;
+        for (int gen = 0; gen < 3; gen++) {
+            spHandle = new TxnEgo(spHandle).makeNext().getTxnId();
+            m_log.log(makeInitiate(spHandle, true, "Insert"), spHandle, listener, gen);
+            listener.waitForHandles(gen + 1);
+            if (gen == 0) {
+                firstGenMax = spHandle;
+            }
+            m_log.snapshotCompleted(new SnapshotCompletionInterest.SnapshotCompletionEvent(
+                        "", "", 0, new HashMap<Integer, Long>(), true, null, null));
+            // Wait for the writer to roll over to the next generation
+            long deadline = System.currentTimeMillis() + 10000;
+            while (GroupCommitCommandLog.findGenerations(TEST_DIR).last() != gen + 1 &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+        m_log.stop();
+
+        // Only the generation closed by the last truncation and the current one are kept
+        assertEquals(2, GroupCommitCommandLog.findGenerations(TEST_DIR).size());
+        JSONObject header = GroupCommitCommandLog.readOldestHeader(TEST_DIR);
+        Map<Integer, Long> txnIds = GroupCommitCommandLog.txnIdsFromHeader(header);
+        assertTrue(txnIds.get(0) > firstGenMax);
+        assertNull(txnIds.get(1));
+
+        CollectingHandler handler = new CollectingHandler();
+        GroupCommitCommandLog.scanLog(TEST_DIR, handler);
+        assertEquals(1, handler.m_messages.size());
+        assertEquals(spHandle, (long) handler.m_spHandles.get(0));
+    }
+}
@@ -0,0 +1,142 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+    @Test
+    public void testIndexing() {
+        // every value maps to a bucket that contains it and buckets are contiguous
+        long expectedLow = 0;
+        for (int i = 0; i < LatencyHistogram.indexFor(Long.MAX_VALUE); i++) {
+            assertEquals(expectedLow, LatencyHistogram.lowestEquivalentValue(i));
+            long high = LatencyHistogram.highestEquivalentValue(i);
+            assertEquals(i, LatencyHistogram.indexFor(expectedLow));
+            assertEquals(i, LatencyHistogram.indexFor(high));
+            expectedLow = high + 1;
+        }
+        assertEquals(Long.MAX_VALUE,
+                LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexFor(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getValueAtPercentile(.99));
+        assertEquals(0, h.getMax());
+
+        // 1..10000us, so the k-percentile is 10000 * k
+        for (int i = 1; i <= 10000; i++) {
+            h.recordValue(i);
+        }
+        assertEquals(10000, h.getTotalCount());
+        assertEquals(1, h.getMin());
+        assertEquals(10000, h.getMax());
+        assertEquals(5000.5, h.getMean(), 0.001);
+        assertEquals(1, h.getValueAtPercentile(0.0));
+        assertEquals(10000, h.getValueAtPercentile(1.0));
+        double percentiles[] = new double[] { .5, .9, .99, .999 };
+        for (double p : percentiles) {
+            long expected = (long)(10000 * p);
+            long actual = h.getValueAtPercentile(p);
+            assertTrue(p + " " + actual, Math.abs(actual - expected) <= expected / 128 + 1);
+        }
+
+        // exact below 256us
+        h = new LatencyHistogram();
+        h.recordValue(-5);
+        h.recordValue(17);
+        h.recordValue(255);
+        assertEquals(0, h.getValueAtPercentile(0.0));
+        assertEquals(17, h.getValueAtPercentile(.5));
+        assertEquals(255, h.getValueAtPercentile(1.0));
+    }
+
+    @Test
+    public void testLongTail() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 9999; i++) {
+            h.recordValue(300);
+        }
+        // one 45 second outlier is still counted, nothing overflows
+        h.recordValue(45 * 1000 * 1000);
+        assertEquals(10000, h.getTotalCount());
+        assertTrue(Math.abs(h.getValueAtPercentile(.999) - 300) <= 2);
+        assertEquals(45 * 1000 * 1000, h.getValueAtPercentile(1.0));
+        long ms[] = h.getLinearCounts(1000, 50);
+        assertEquals(9999, ms[0]);
+        assertEquals(9999, sum(ms));
+    }
+
+    @Test
+    public void testMergeDiffAndSerialize() {
+        Random r = new Random(42);
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        LatencyHistogram all = new LatencyHistogram();
+        for (int i = 0; i < 100000; i++) {
+            long v = (long)Math.exp(r.nextDouble() * 20);
+            (i % 2 == 0 ? a : b).recordValue(v);
+            all.recordValue(v);
+        }
+
+        LatencyHistogram merged = a.copy();
+        merged.add(LatencyHistogram.fromBytes(b.toBytes()));
+        assertEquals(all.getTotalCount(), merged.getTotalCount());
+        assertEquals(all.getMin(), merged.getMin());
+        assertEquals(all.getMax(), merged.getMax());
+        assertEquals(all.getMean(), merged.getMean(), 0.001);
+        assertEquals(all.toString(), merged.toString());
+        assertTrue(Arrays.equals(all.toBytes(), merged.toBytes()));
+
+        LatencyHistogram diff = LatencyHistogram.diff(merged, a);
+        assertEquals(b.getTotalCount(), diff.getTotalCount());
+        assertEquals(b.getMean(), diff.getMean(), 0.001);
+        for (double p = 0.0; p <= 1.0; p += 0.05) {
+            long expected = b.getValueAtPercentile(p);
+            assertTrue(Math.abs(diff.getValueAtPercentile(p) - expected) <= expected / 128 + 1);
+        }
+
+        // an empty histogram round trips too
+        LatencyHistogram empty = LatencyHistogram.fromBytes(new LatencyHistogram().toBytes());
+        assertEquals(0, empty.getTotalCount());
+        empty.add(a);
+        assertEquals(a.toString(), empty.toString());
+    }
+
+    private static long sum(long counts[]) {
+        long sum = 0;
+        for (long c : counts) {
+            sum += c;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,66 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.voltdb.PlannerStatsCollector.CacheUse;
+
+public class TestPlannerStatsCollector {
+
+    private static long[] evictions(PlannerStatsCollector stats, boolean interval) {
+        VoltTable table = new VoltTable(stats.getColumnSchema().toArray(new VoltTable.ColumnInfo[0]));
+        for (Object[] row : stats.getStatsRows(interval, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        table.advanceRow();
+        return new long[] { table.getLong("CACHE1_EVICTIONS"), table.getLong("CACHE2_EVICTIONS") };
+    }
+
+    @Test
+    public void testEvictionsAcrossCatalogVersions() {
+        PlannerStatsCollector stats = new PlannerStatsCollector(0);
+        stats.endStatsCollection(10, 10, 5, 2, CacheUse.MISS, -1);
+        assertEquals(5, evictions(stats, true)[0]);
+
+        // planners on the old and the new catalog version report in turn
+        stats.endStatsCollection(10, 10, 1, 0, CacheUse.MISS, -1);
+        stats.endStatsCollection(10, 10, 3, 1, CacheUse.HIT1, -1);
+        stats.endStatsCollection(10, 10, 0, 0, CacheUse.HIT1, -1);
+        long[] interval = evictions(stats, true);
+        assertEquals(4, interval[0]);
+        assertEquals(1, interval[1]);
+
+        // callers that don't track evictions leave the totals alone
+        stats.endStatsCollection(10, 10, CacheUse.HIT2, -1);
+        interval = evictions(stats, true);
+        assertEquals(0, interval[0]);
+        assertEquals(0, interval[1]);
+
+        long[] total = evictions(stats, false);
+        assertEquals(9, total[0]);
+        assertEquals(3, total[1]);
+    }
+}
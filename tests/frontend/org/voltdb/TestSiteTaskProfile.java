@@ -0,0 +1,106 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestSiteTaskProfile {
+
+    static class FirstTask {}
+    static class SecondTask {}
+
+    private static Map<String, Object[]> rows(SiteTaskProfile profile, boolean interval) {
+        VoltTable table = new VoltTable(profile.getColumnSchema().toArray(new VoltTable.ColumnInfo[0]));
+        for (Object[] row : profile.getStatsRows(interval, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        Map<String, Object[]> rows = new HashMap<String, Object[]>();
+        while (table.advanceRow()) {
+            rows.put(table.getString("TASK"), new Object[] {
+                    table.getLong("COUNT"), table.getLong("TOTAL_TIME"), table.getLong("MAX"),
+                    table.getLong("EE_TIME"), table.getDouble("EE_PERCENT") });
+        }
+        return rows;
+    }
+
+    @Test
+    public void testTaskBreakdown() {
+        StarvationTracker tracker = new StarvationTracker(0);
+        SiteTaskProfile profile = tracker.getTaskProfile();
+        profile.taskRan(FirstTask.class, 4000, 1000);
+        profile.taskRan(FirstTask.class, 6000, 2000);
+        profile.taskRan(SecondTask.class, 2000, 2000);
+        // anonymous tasks are reported under their enclosing class
+        profile.taskRan(new Object() {}.getClass(), 1000, 0);
+
+        Map<String, Object[]> rows = rows(profile, false);
+        assertEquals(4, rows.size());
+        Object[] first = rows.get("FirstTask");
+        assertEquals(2L, first[0]);
+        assertEquals(10L, first[1]);
+        assertEquals(6L, first[2]);
+        assertEquals(3L, first[3]);
+        assertEquals(30.0, (Double)first[4], 0.01);
+        assertEquals(100.0, (Double)rows.get("SecondTask")[4], 0.01);
+        assertEquals(1L, rows.get("TestSiteTaskProfile")[0]);
+        assertTrue(rows.containsKey(SiteTaskProfile.IDLE));
+    }
+
+    @Test
+    public void testInterval() {
+        StarvationTracker tracker = new StarvationTracker(0);
+        SiteTaskProfile profile = tracker.getTaskProfile();
+        profile.taskRan(FirstTask.class, 8000, 0);
+        assertEquals(1L, rows(profile, true).get("FirstTask")[0]);
+
+        profile.taskRan(FirstTask.class, 2000, 0);
+        Object[] first = rows(profile, true).get("FirstTask");
+        assertEquals(1L, first[0]);
+        assertEquals(2L, first[1]);
+        // the max only covers the interval
+        assertEquals(2L, first[2]);
+
+        first = rows(profile, false).get("FirstTask");
+        assertEquals(2L, first[0]);
+        assertEquals(8L, first[2]);
+    }
+
+    @Test
+    public void testIdle() throws Exception {
+        StarvationTracker tracker = new StarvationTracker(0);
+        tracker.beginStarvation();
+        Thread.sleep(5);
+        tracker.endStarvation();
+        Object[] idle = rows(tracker.getTaskProfile(), false).get(SiteTaskProfile.IDLE);
+        assertEquals(1L, idle[0]);
+        assertTrue((Long)idle[1] >= 5000);
+    }
+}
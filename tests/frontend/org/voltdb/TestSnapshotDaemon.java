@@ -998,4 +998,38 @@ public class TestSnapshotDaemon {
         assertNotNull(m_initiator.procedureName);
         assertTrue("@SnapshotDelete".equals(m_initiator.procedureName));
     }
+    @Test
+    public void testIncrementalSnapshots() throws Exception {
+        final SnapshotSchedule schedule = new SnapshotSchedule();
+        schedule.setFrequencyunit("s");
+        schedule.setFrequencyvalue(1);
+        schedule.setPath("/tmp");
+        schedule.setPrefix("woobie");
+        schedule.setRetain(2);
+        schedule.setEnabled(true);
+        schedule.setIncremental(true);
+        schedule.setConsolidate(2);
+        SnapshotDaemon daemon = getSnapshotDaemon();
+        daemon.mayGoActiveOrInactive(schedule);
+        checkForSnapshotScan(m_initiator);
+
+        long handle = m_initiator.clientData;
+        m_initiator.clear();
+        daemon.processClientResponse(getSuccessfulScanOneResult(handle)).get();
+
+        // Every snapshot is incremental, the hosts consolidate chains of the requested length
+        for (int snapshot = 0; snapshot < 3; snapshot++) {
+            for (int ii = 0; ii < 30 && m_initiator.procedureName == null; ii++) {
+                Thread.sleep(100);
+            }
+            assertEquals("@SnapshotSave", m_initiator.procedureName);
+            JSONObject jsObj = new JSONObject((String)m_initiator.params[0]);
+            JSONObject jsData = new JSONObject(jsObj.getString("data"));
+            assertTrue(jsData.getBoolean("incremental"));
+            assertEquals(2, jsData.getInt("consolidate"));
+            handle = m_initiator.clientData;
+            m_initiator.clear();
+            daemon.processClientResponse(getErrMsgResponse(handle)).get();
+        }
+    }
 }
@@ -0,0 +1,155 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.client;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import org.voltcore.utils.LongObjectHashMap;
+
+/**
+ * Measures the bytes allocated and the time per call for the client side send path:
+ * serializing an invocation for the write stream and keeping its callback bookkeeping.
+ * The old path allocated a heap buffer, a buffer array and a boxed handle in a HashMap.
+ * Run with -XX:+UseTLAB (the default) on a HotSpot JVM, allocation is read from
+ * com.sun.management.ThreadMXBean.
+ */
+public class InvocationSerializationMicrobench {
+
+    static final int CALLS = 2000000;
+    static final int OUTSTANDING = 1000;
+
+    static class Bookkeeping {
+        long timestamp;
+        ProcedureCallback callback;
+        String name;
+    }
+
+    static final ProcedureCallback CALLBACK = new NullCallback();
+
+    static abstract class Path {
+        final String m_name;
+        Path(String name) {
+            m_name = name;
+        }
+        abstract void call(long handle, ByteBuffer out) throws Exception;
+    }
+
+    static class HeapBufferPath extends Path {
+        final HashMap<Long, Bookkeeping> m_callbacks = new HashMap<Long, Bookkeeping>();
+
+        HeapBufferPath() {
+            super("heap buffer + HashMap");
+        }
+
+        @Override
+        void call(long handle, ByteBuffer out) throws Exception {
+            ProcedureInvocation invocation = new ProcedureInvocation(handle, "Insert", handle, "some string", 3.5);
+            ByteBuffer buf = ByteBuffer.allocate(4 + invocation.getSerializedSize());
+            buf.putInt(buf.capacity() - 4);
+            invocation.flattenToBuffer(buf);
+            buf.flip();
+            // what NIOWriteStream.enqueue(ByteBuffer) wraps the buffer in
+            ByteBuffer wrapped[] = new ByteBuffer[] { buf };
+            out.put(wrapped[0]);
+
+            Bookkeeping b = new Bookkeeping();
+            b.timestamp = handle;
+            b.callback = CALLBACK;
+            b.name = "Insert";
+            m_callbacks.put(handle, b);
+            m_callbacks.remove(handle - OUTSTANDING);
+        }
+    }
+
+    static class PooledPath extends Path {
+        final LongObjectHashMap<Bookkeeping> m_callbacks = new LongObjectHashMap<Bookkeeping>(1024);
+        Bookkeeping m_free = null;
+
+        PooledPath() {
+            super("sized serialization + LongObjectHashMap");
+        }
+
+        @Override
+        void call(long handle, ByteBuffer out) throws Exception {
+            ProcedureInvocation invocation = new ProcedureInvocation(handle, "Insert", handle, "some string", 3.5);
+            Distributer.InvocationWrite write = new Distributer.InvocationWrite(invocation);
+            write.serialize(out);
+
+            Bookkeeping b = m_free;
+            if (b == null) {
+                b = new Bookkeeping();
+            } else {
+                m_free = null;
+            }
+            b.timestamp = handle;
+            b.callback = CALLBACK;
+            b.name = "Insert";
+            m_callbacks.put(handle, b);
+            Bookkeeping done = m_callbacks.remove(handle - OUTSTANDING);
+            if (done != null) {
+                done.callback = null;
+                m_free = done;
+            }
+        }
+    }
+
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static void run(Path path, boolean report) throws Exception {
+        // stands in for the network thread's pooled direct buffer
+        ByteBuffer out = ByteBuffer.allocateDirect(1024 * 32);
+        final long startBytes = allocatedBytes();
+        final long start = System.nanoTime();
+        for (long handle = 0; handle < CALLS; handle++) {
+            if (out.remaining() < 256) {
+                out.clear();
+            }
+            path.call(handle, out);
+        }
+        final long nanos = System.nanoTime() - start;
+        final long bytes = allocatedBytes() - startBytes;
+        if (report) {
+            System.out.printf("%-45s %8.1f bytes/call %8.1f ns/call\n",
+                    path.m_name, bytes / (double)CALLS, nanos / (double)CALLS);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path paths[] = new Path[] { new HeapBufferPath(), new PooledPath() };
+        // warm up
+        for (Path p : paths) {
+            run(p, false);
+        }
+        for (int ii = 0; ii < 3; ii++) {
+            for (Path p : paths) {
+                run(p, true);
+            }
+        }
+    }
+}
@@ -155,6 +155,25 @@ public class MockVoltClient implements Client, ReplicaProcCaller{
         return false;
     }
 
+    @Override
+    public ProcedureFuture callProcedureAsync(String procName, Object... parameters)
+            throws NoConnectionsException {
+        return callProcedureAsync(0, procName, parameters);
+    }
+
+    @Override
+    public ProcedureFuture callProcedureAsync(long timeoutMS, String procName, Object... parameters)
+            throws NoConnectionsException {
+        ProcedureFuture future =
+            new ProcedureFuture(new ProcedureInvocation(0, procName, parameters), timeoutMS);
+        try {
+            future.clientCallback(callProcedure(procName, parameters));
+        } catch (ProcCallException e) {
+            future.clientCallback(e.getClientResponse());
+        }
+        return future;
+    }
+
     @Override
     public void drain() {
         // TODO Auto-generated method stub
@@ -28,7 +28,12 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -571,6 +576,147 @@ public class TestDistributer extends TestCase {
         finally {
             if (clientPtr != null) clientPtr.close();
             volt0.shutdown();
+            volt0.join();
+        }
+    }
+
+    @Test
+    public void testSerializationPaths() throws Exception {
+        MockVolt volt = new MockVolt(20000);
+        Client client = null;
+        try {
+            volt.start();
+            client = ClientFactory.createClient();
+            client.createConnection("localhost", 20000);
+
+            // serialized by the network thread into a pooled buffer
+            assertEquals(ClientResponse.SUCCESS,
+                    client.callProcedure("Foo", 1L, "short").getStatus());
+            // too large for a pooled buffer
+            StringBuilder sb = new StringBuilder();
+            for (int ii = 0; ii < 50000; ii++) {
+                sb.append('x');
+            }
+            assertEquals(ClientResponse.SUCCESS,
+                    client.callProcedure("Foo", 1L, sb.toString()).getStatus());
+            // serialized right away since the caller may reuse the array
+            byte bytes[] = new byte[100];
+            assertTrue(client.callProcedure(new ProcCallback(), "Foo", bytes));
+            bytes[0] = 1;
+            client.drain();
+            assertEquals(ClientResponse.SUCCESS,
+                    client.callProcedure("Foo", new long[] { 1, 2, 3 }).getStatus());
+        }
+        finally {
+            if (client != null) client.close();
+            volt.shutdown();
+            volt.join();
+        }
+    }
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable r) {
+            r.run();
+        }
+    };
+
+    @Test
+    public void testAsyncFuture() throws Exception {
+        MockVolt volt = new MockVolt(20000);
+        Client client = null;
+        try {
+            volt.start();
+            client = ClientFactory.createClient();
+            client.createConnection("localhost", 20000);
+
+            final ProcedureFuture future = client.callProcedureAsync("Foo", new Integer(1));
+            final CountDownLatch listenerRan = new CountDownLatch(1);
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(future.isDone());
+                    listenerRan.countDown();
+                }
+            }, DIRECT_EXECUTOR);
+            ClientResponse response = future.get(10, TimeUnit.SECONDS);
+            assertEquals(ClientResponse.SUCCESS, response.getStatus());
+            assertTrue(listenerRan.await(10, TimeUnit.SECONDS));
+            assertFalse(future.cancel(true));
+
+            // the response to the second call is withheld, it times out on its own timeout
+            // and the third is cancelled while it is outstanding
+            volt.handler.sendResponses.set(false);
+            ProcedureFuture timesOut = client.callProcedureAsync(500, "Foo", new Integer(2));
+            ProcedureFuture cancelled = client.callProcedureAsync("Bar", new Integer(3));
+            assertTrue(cancelled.cancel(true));
+            assertTrue(cancelled.isCancelled());
+            assertTrue(cancelled.isDone());
+            try {
+                cancelled.get();
+                fail();
+            } catch (CancellationException expected) {}
+
+            response = timesOut.get(10, TimeUnit.SECONDS);
+            assertEquals(ClientResponse.CONNECTION_TIMEOUT, response.getStatus());
+
+            // nothing outstanding is left behind
+            client.drain();
+        }
+        finally {
+            if (client != null) client.close();
+            volt.shutdown();
+            volt.join();
+        }
+    }
+
+    @Test
+    public void testAsyncDoesNotBlockOnMaxOutstanding() throws Exception {
+        // a server that never responds
+        MockVolt volt = new MockVolt(20000);
+        volt.handleConnection = false;
+
+        Client client = null;
+        try {
+            volt.start();
+
+            ClientConfig config = new ClientConfig();
+            config.setMaxOutstandingTxns(5);
+            client = ClientFactory.createClient(config);
+            client.createConnection("localhost", 20000);
+
+            // the blocking API would stop after 5 calls, the next 5 are held back instead
+            // and the ones past that fail right away
+            List<ProcedureFuture> futures = new ArrayList<ProcedureFuture>();
+            final long start = System.currentTimeMillis();
+            for (int ii = 0; ii < 20; ii++) {
+                futures.add(client.callProcedureAsync("foo", ii));
+            }
+            assertTrue(System.currentTimeMillis() - start < 1000);
+            // the client's own invocations on connecting may take some of the outstanding slots
+            int notDone = 0;
+            while (!futures.get(notDone).isDone()) {
+                notDone++;
+            }
+            assertTrue(notDone >= 5 && notDone <= 10);
+            for (ProcedureFuture future : futures.subList(notDone, 20)) {
+                assertTrue(future.isDone());
+                assertEquals(ClientResponse.GRACEFUL_FAILURE, future.get().getStatus());
+            }
+
+            // a held back invocation can be cancelled before it is ever sent
+            assertTrue(futures.get(notDone - 1).cancel(false));
+
+            client.close();
+            client = null;
+            for (ProcedureFuture future : futures.subList(0, notDone - 1)) {
+                assertEquals(ClientResponse.CONNECTION_LOST, future.get(10, TimeUnit.SECONDS).getStatus());
+            }
+        }
+        finally {
+            if (client != null) client.close();
+            volt.shutdown();
+            volt.join();
         }
     }
 
@@ -0,0 +1,149 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.voltdb.ParameterSet;
+import org.voltdb.VoltType;
+import org.voltdb.common.Constants;
+import org.voltdb.planner.BoundPlan;
+import org.voltdb.planner.CorePlan;
+
+public class TestAdHocCompilerCache {
+
+    private static AdHocPlannedStatement makePlan(String sql, String fragment) {
+        CorePlan core = new CorePlan(fragment.getBytes(Constants.UTF8ENCODING), null,
+                                     new byte[20], null, false, false, true, new VoltType[0], 0);
+        return new AdHocPlannedStatement(sql.getBytes(Constants.UTF8ENCODING), core,
+                                         ParameterSet.emptyParameterSet(), null, null, null);
+    }
+
+    private static long literalSize(String sql) {
+        return 2L * sql.length() + makePlan(sql, "frag00").getSerializedSize();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        AdHocCompilerCache cache = new AdHocCompilerCache(1 << 20, 1 << 20);
+        AdHocPlannedStatement plan = makePlan("select * from t;", "frag");
+        cache.put("select * from t;", "select * from t;", plan);
+        assertSame(plan, cache.getWithSQL("select * from t;"));
+        List<BoundPlan> variants = cache.getWithParsedToken("select * from t;");
+        assertNotNull(variants);
+        assertEquals(1, variants.size());
+        assertSame(plan.core, variants.get(0).core);
+
+        // a second literal with an equal plan shares the cached core
+        AdHocPlannedStatement other = makePlan("select * from t ;", "frag");
+        cache.put("select * from t ;", "select * from t;", other);
+        assertSame(plan.core, cache.getWithSQL("select * from t ;").core);
+        assertEquals(1, cache.getWithParsedToken("select * from t;").size());
+        assertEquals(2, cache.getLiteralCacheSize());
+        assertEquals(1, cache.getCoreCacheSize());
+        assertEquals(0, cache.getLiteralCacheEvictions());
+    }
+
+    @Test
+    public void testClockEvictionBoundsBytes() {
+        // room for roughly four literal plans
+        long budget = 4 * literalSize("select * from t where a = 00;") + 1;
+        AdHocCompilerCache cache = new AdHocCompilerCache(budget, 1 << 20);
+        for (int i = 10; i < 14; i++) {
+            String sql = "select * from t where a = " + i + ";";
+            cache.put(sql, "token" + i, makePlan(sql, "frag" + i));
+        }
+        assertEquals(4, cache.getLiteralCacheSize());
+        assertEquals(0, cache.getLiteralCacheEvictions());
+
+        // touch the first entry so the sweep gives it a second chance
+        assertNotNull(cache.getWithSQL("select * from t where a = 10;"));
+        String sql = "select * from t where a = 14;";
+        cache.put(sql, "token14", makePlan(sql, "frag14"));
+
+        assertEquals(1, cache.getLiteralCacheEvictions());
+        // each eviction is taken for the stats once, the total stays
+        assertEquals(1, cache.takeLiteralCacheEvictions());
+        assertEquals(0, cache.takeLiteralCacheEvictions());
+        assertEquals(1, cache.getLiteralCacheEvictions());
+        assertEquals(4, cache.getLiteralCacheSize());
+        assertNotNull(cache.getWithSQL("select * from t where a = 10;"));
+        assertNotNull(cache.getWithSQL(sql));
+        assertTrue(cache.m_literalCache.m_bytes.get() <= budget);
+        assertEquals(0, cache.getCoreCacheEvictions());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final AdHocCompilerCache cache = new AdHocCompilerCache(64 * 1024, 64 * 1024);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 5000; i++) {
+                            int key = (i * 7 + offset) % 500;
+                            String sql = "select * from t where a = " + key + ";";
+                            AdHocPlannedStatement cached = cache.getWithSQL(sql);
+                            if (cached == null) {
+                                cache.put(sql, "token" + (key % 50), makePlan(sql, "frag" + key));
+                            }
+                            else {
+                                assertEquals(sql, new String(cached.sql, Constants.UTF8ENCODING));
+                            }
+                            List<BoundPlan> variants = cache.getWithParsedToken("token" + (key % 50));
+                            if (variants != null) {
+                                for (BoundPlan variant : variants) {
+                                    assertNotNull(variant.core);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertTrue(cache.getLiteralCacheEvictions() > 0);
+        assertTrue(cache.m_literalCache.m_bytes.get() <= 64 * 1024);
+        assertTrue(cache.m_coreCache.m_bytes.get() <= 64 * 1024);
+    }
+}
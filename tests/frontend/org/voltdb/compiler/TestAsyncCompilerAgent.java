@@ -25,6 +25,7 @@ package org.voltdb.compiler;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -32,6 +33,7 @@ import static org.mockito.Mockito.spy;
 
 import java.util.Arrays;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -90,15 +92,16 @@ public class TestAsyncCompilerAgent {
         m_agent.m_mailbox = spy(m_agent.m_mailbox);
 
         /*
-         * send max + 2 messages to the agent. The first one will be executed
-         * immediately so it doesn't consume queue capacity, the next max number
-         * of messages will use up all the capacity, the last one will be
-         * rejected.
+         * send max + threads + 1 messages to the agent. The first one on each
+         * planner thread will be executed immediately so it doesn't consume
+         * queue capacity, the next max number of messages will use up all the
+         * capacity, the last one will be rejected.
          */
         final AtomicInteger completedRequests = new AtomicInteger();
         final AtomicReference<AsyncCompilerResult> result = new AtomicReference<AsyncCompilerResult>();
         final long threadId = Thread.currentThread().getId();
-        for (int i = 0; i < AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2; ++i) {
+        final int requests = AsyncCompilerAgent.MAX_QUEUE_DEPTH + AsyncCompilerAgent.PLANNER_THREADS + 1;
+        for (int i = 0; i < requests; ++i) {
             AdHocPlannerWork work =
                     new AdHocPlannerWork(100l, false, 0, 0, "localhost", false, null,
                             "select * from a", Arrays.asList(new String[] {"select * from a"}), 0, null, false, true,
@@ -124,14 +127,56 @@ public class TestAsyncCompilerAgent {
             m_agent.m_mailbox.deliver(msg);
         }
 
-        // check for one rejected request
+        // check for one rejected request, once all the planner threads picked up their first request
         assertNotNull(result.get().errorMsg);
 
         // let all requests return
-        blockingAnswer.flag.release(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 5);
+        blockingAnswer.flag.release(requests + 5);
 
         // check if all previous requests finish
         m_agent.shutdown();
-        assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2, completedRequests.get());
+        assertEquals(requests, completedRequests.get());
+    }
+
+    /**
+     * Checks that every planner thread plans at the same time.
+     */
+    @Test
+    public void testConcurrentPlanning() throws InterruptedException {
+        final Semaphore started = new Semaphore(0);
+        final BlockingAnswer blockingAnswer = new BlockingAnswer() {
+            @Override
+            public AsyncCompilerResult answer(InvocationOnMock invocation) throws Throwable {
+                started.release();
+                return super.answer(invocation);
+            }
+        };
+        doAnswer(blockingAnswer).when(m_agent).compileAdHocPlan(any(AdHocPlannerWork.class));
+        m_agent.createMailbox(mock(HostMessenger.class), 100);
+
+        final AtomicInteger completedRequests = new AtomicInteger();
+        for (int i = 0; i < AsyncCompilerAgent.PLANNER_THREADS; ++i) {
+            AdHocPlannerWork work =
+                    new AdHocPlannerWork(100l, false, 0, 0, "localhost", false, null,
+                            "select * from a", Arrays.asList(new String[] {"select * from a"}), 0, null, false, true,
+                            ProcedureInvocationType.ORIGINAL, 0, 0,
+                            new AsyncCompilerWorkCompletionHandler() {
+                                @Override
+                                public void onCompletion(AsyncCompilerResult compilerResult) {
+                                    completedRequests.incrementAndGet();
+                                }
+                            });
+            LocalObjectMessage msg = new LocalObjectMessage(work);
+            msg.m_sourceHSId = 100;
+            m_agent.m_mailbox.deliver(msg);
+        }
+
+        // none of them can finish before all of them started
+        assertTrue(started.tryAcquire(AsyncCompilerAgent.PLANNER_THREADS, 60, TimeUnit.SECONDS));
+        assertEquals(0, completedRequests.get());
+
+        blockingAnswer.flag.release(AsyncCompilerAgent.PLANNER_THREADS);
+        m_agent.shutdown();
+        assertEquals(AsyncCompilerAgent.PLANNER_THREADS, completedRequests.get());
     }
 }
@@ -34,6 +34,11 @@ import static org.voltdb.export.ExportMatchers.ackPayloadIs;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -618,6 +623,97 @@ public class TestExportDataSource extends TestCase {
         assertEquals(m.m_data.getInt(), MAGIC_TUPLE_SIZE * 10);
     }
 
+    private static ByteBuffer rowsBuffer(int rows) {
+        ByteBuffer buf = ByteBuffer.allocate(MAGIC_TUPLE_SIZE * rows);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < rows; i++) {
+            buf.putInt(i * MAGIC_TUPLE_SIZE, MAGIC_TUPLE_SIZE - 4);
+        }
+        return buf;
+    }
+
+    /**
+     * Test that pending data above the high water mark turns on backpressure and
+     * acking it back below 80% of the mark turns it off
+     */
+    public void testHighWaterMark() throws Exception
+    {
+        VoltDB.replaceVoltDBInstanceForTest(m_mockVoltDB);
+        Table table = m_mockVoltDB.getCatalogContext().database.getTables().get("TableName");
+        ExportDataSource s = new ExportDataSource(
+                                            Mockito.mock(Runnable.class),
+                                            "database",
+                                            table.getTypeName(),
+                                            m_part,
+                                            m_site,
+                                            table.getSignature(),
+                                            0,
+                                            table.getColumns(),
+                                            "/tmp");
+
+        final List<Boolean> events = Collections.synchronizedList(new ArrayList<Boolean>());
+        s.setHighWaterMark(MAGIC_TUPLE_SIZE * 15, new ExportDataSource.BackpressureListener() {
+            @Override
+            public void onBackpressure(ExportDataSource source, boolean hasBackpressure) {
+                events.add(hasBackpressure);
+            }
+        });
+
+        ExportProtoMessage m = new ExportProtoMessage( 0, m_part, table.getSignature());
+        final AtomicReference<ExportProtoMessage> ref = new AtomicReference<ExportProtoMessage>();
+        ExportStateBlock esb = new ExportStateBlock() {
+            @Override
+            public void event(ExportProtoMessage m) {
+                ref.set(m);
+            }
+        };
+
+        s.pushExportBuffer(0, 0, rowsBuffer(9), false, false);
+        s.exportAction(new ExportInternalMessage(esb, m)).get();
+        assertEquals(MAGIC_TUPLE_SIZE * 15, s.getHighWaterMark());
+        assertEquals(9, s.getPendingRows());
+        assertTrue(s.getPendingBytes() >= MAGIC_TUPLE_SIZE * 9);
+        assertFalse(s.hasBackpressure());
+        assertTrue(events.isEmpty());
+
+        s.pushExportBuffer(MAGIC_TUPLE_SIZE * 9, 0, rowsBuffer(10), false, false);
+        s.exportAction(new ExportInternalMessage(esb, m)).get();
+        assertEquals(19, s.getPendingRows());
+        assertTrue(s.getPendingBytes() > MAGIC_TUPLE_SIZE * 15);
+        assertTrue(s.hasBackpressure());
+        assertEquals(Arrays.asList(true), events);
+
+        // ack the first buffer, what's left is below 80% of the mark
+        m.ack(MAGIC_TUPLE_SIZE * 9);
+        m.poll();
+        s.exportAction(new ExportInternalMessage(esb, m)).get();
+        assertEquals(10, s.getPendingRows());
+        assertFalse(s.hasBackpressure());
+        assertEquals(Arrays.asList(true, false), events);
+
+        // ack everything, nothing is pending
+        m = ref.get();
+        m.ack(MAGIC_TUPLE_SIZE * 19);
+        s.exportAction(new ExportInternalMessage(esb, m)).get();
+        assertEquals(0, s.getPendingRows());
+        assertEquals(0, s.getPendingBytes());
+        assertEquals(0, s.getOldestPendingAge(System.currentTimeMillis()));
+        s.close();
+    }
+
+    public void testGetHighWaterMark() throws Exception
+    {
+        Properties props = new Properties();
+        assertEquals(0, ExportManager.getHighWaterMark(props, "TableName"));
+        props.setProperty(ExportManager.HIGH_WATER_MARK, "2");
+        assertEquals(2L * 1024 * 1024, ExportManager.getHighWaterMark(props, "TableName"));
+        props.setProperty(ExportManager.HIGH_WATER_MARK + ".tablename", "5");
+        assertEquals(5L * 1024 * 1024, ExportManager.getHighWaterMark(props, "TableName"));
+        assertEquals(2L * 1024 * 1024, ExportManager.getHighWaterMark(props, "RepTableName"));
+        props.setProperty(ExportManager.HIGH_WATER_MARK, "lots");
+        assertEquals(0, ExportManager.getHighWaterMark(props, "RepTableName"));
+    }
+
 //    /**
 //     * Test that releasing everything in steps and then polling results in
 //     * the right StreamBlock
@@ -0,0 +1,250 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.voltdb.exportclient;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
+import org.voltdb.types.TimestampType;
+
+public class TestExportRowView extends TestCase
+{
+    static final VoltType[] COLUMN_TYPES =
+    {VoltType.TINYINT, VoltType.SMALLINT, VoltType.INTEGER,
+     VoltType.BIGINT, VoltType.FLOAT, VoltType.TIMESTAMP,
+     VoltType.STRING, VoltType.VARBINARY, VoltType.DECIMAL};
+
+    static VoltTable makeTable()
+    {
+        VoltTable.ColumnInfo[] columns = new VoltTable.ColumnInfo[COLUMN_TYPES.length];
+        for (int i = 0; i < COLUMN_TYPES.length; i++) {
+            columns[i] = new VoltTable.ColumnInfo("c" + i, COLUMN_TYPES[i]);
+        }
+        return new VoltTable(columns);
+    }
+
+    // the rows of an encoded table, positioned past the block length prefix
+    static ByteBuffer encode(VoltTable table) throws IOException
+    {
+        ByteBuffer block = ExportEncoder.getEncodedTable(table);
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.getInt();
+        return block;
+    }
+
+    static ExportRowView makeView()
+    {
+        return new ExportRowView(Arrays.asList(COLUMN_TYPES));
+    }
+
+    public void testTypedAccessors() throws IOException
+    {
+        VoltTable t = makeTable();
+        t.addRow(-3, 1000, 100000, 10000000000L, 2.5, new TimestampType(123456789L),
+                 "yankee doodle", new byte[] {1, 2, 3}, new BigDecimal("3.141592653590"));
+        t.addRow(4, -1000, -100000, -10000000000L, -0.5, new TimestampType(-1L),
+                 "", new byte[0], new BigDecimal("-1.000000000000"));
+        ByteBuffer block = encode(t);
+        ExportRowView view = makeView();
+
+        t.resetRowPosition();
+        while (t.advanceRow()) {
+            assertTrue(view.next(block));
+            assertEquals(COLUMN_TYPES.length, view.getColumnCount());
+            for (int i = 0; i < COLUMN_TYPES.length; i++) {
+                assertFalse(view.isNull(i));
+            }
+            assertEquals(t.getLong(0), view.getLong(0));
+            assertEquals(t.getLong(1), view.getLong(1));
+            assertEquals(t.getLong(2), view.getLong(2));
+            assertEquals(t.getLong(3), view.getLong(3));
+            assertEquals(t.getDouble(4), view.getDouble(4));
+            assertEquals(t.getTimestampAsLong(5), view.getLong(5));
+            assertEquals(t.getString(6), view.getString(6).toString());
+            assertTrue(Arrays.equals(t.getVarbinary(7), view.getBytes(7)));
+            assertEquals(t.getDecimalAsBigDecimal(8), view.getDecimal(8));
+        }
+        assertFalse(view.next(block));
+    }
+
+    public void testNulls() throws IOException
+    {
+        VoltTable t = makeTable();
+        t.addRow(null, 1, null, 2, null, null, "not null", null, null);
+        ByteBuffer block = encode(t);
+        ExportRowView view = makeView();
+
+        assertTrue(view.next(block));
+        boolean[] expected = {true, false, true, false, true, true, false, true, true};
+        for (int i = 0; i < COLUMN_TYPES.length; i++) {
+            assertEquals(expected[i], view.isNull(i));
+        }
+        // the columns after the nulls are found in the right place
+        assertEquals(1, view.getLong(1));
+        assertEquals(2, view.getLong(3));
+        assertEquals("not null", view.getString(6).toString());
+        assertFalse(view.next(block));
+    }
+
+    public void testMatchesDecodeRow() throws IOException
+    {
+        VoltTable t = makeTable();
+        t.addRow(1, 2, 3, 4, 5.5, new TimestampType(6L), "seven", new byte[] {8},
+                 new BigDecimal("9.000000000000"));
+        t.addRow(null, 2, null, 4, null, new TimestampType(6L), null, new byte[] {8}, null);
+        ArrayList<String> names = new ArrayList<String>();
+        for (int i = 0; i < COLUMN_TYPES.length; i++) {
+            names.add("c" + i);
+        }
+        AdvertisedDataSource source =
+            new AdvertisedDataSource(0, "foo", "yankeelover", 0, 32, names,
+                                     new ArrayList<VoltType>(Arrays.asList(COLUMN_TYPES)),
+                                     Arrays.asList(0, 0, 0, 0, 0, 0, 64, 64, 0));
+        final ArrayList<Object[]> decoded = new ArrayList<Object[]>();
+        ExportDecoderBase decoder = new ExportDecoderBase(source) {
+            @Override
+            public boolean processRow(int rowSize, byte[] rowData) {
+                try {
+                    decoded.add(decodeRow(rowData));
+                } catch (IOException e) {
+                    fail(e.getMessage());
+                }
+                return true;
+            }
+
+            @Override
+            public void sourceNoLongerAdvertised(AdvertisedDataSource source) {
+            }
+        };
+        try {
+            decoder.processBlock(encode(t));
+        } catch (ExportDecoderBase.RestartBlockException e) {
+            fail();
+        }
+        assertEquals(2, decoded.size());
+
+        ByteBuffer block = encode(t);
+        ExportRowView view = makeView();
+        for (Object[] row : decoded) {
+            assertTrue(view.next(block));
+            for (int i = 0; i < COLUMN_TYPES.length; i++) {
+                assertEquals(row[i] == null, view.isNull(i));
+            }
+            if (row[0] != null) {
+                assertEquals(((Byte)row[0]).longValue(), view.getLong(0));
+                assertEquals(((Integer)row[2]).longValue(), view.getLong(2));
+                assertEquals(row[4], view.getDouble(4));
+                assertEquals(row[6], view.getString(6).toString());
+                assertEquals(row[8], view.getDecimal(8));
+            }
+            assertEquals(((Short)row[1]).longValue(), view.getLong(1));
+            assertEquals(((Long)row[3]).longValue(), view.getLong(3));
+            assertEquals(row[5], new TimestampType(view.getLong(5)));
+            assertTrue(Arrays.equals((byte[])row[7], view.getBytes(7)));
+        }
+        assertFalse(view.next(block));
+    }
+
+    public void testStringDecoding() throws IOException
+    {
+        String[] strings = {"plain", "h\u00e9llo", "\u65e5\u672c\u8a9e", "smile \ud83d\ude00 please"};
+        ExportRowView view = new ExportRowView(Arrays.asList(VoltType.STRING));
+        VoltTable t = new VoltTable(new VoltTable.ColumnInfo("s", VoltType.STRING));
+        for (String s : strings) {
+            t.addRow(s);
+        }
+        ByteBuffer block = encode(t);
+        CharSequence previous = null;
+        for (String s : strings) {
+            assertTrue(view.next(block));
+            CharSequence chars = view.getString(0);
+            assertEquals(s, chars.toString());
+            // the same sequence is handed out for every row
+            if (previous != null) {
+                assertSame(previous, chars);
+            }
+            previous = chars;
+        }
+    }
+
+    public void testLargeBlock() throws IOException
+    {
+        ExportRowView view = new ExportRowView(Arrays.asList(VoltType.BIGINT, VoltType.STRING));
+        VoltTable t = new VoltTable(new VoltTable.ColumnInfo("l", VoltType.BIGINT),
+                                    new VoltTable.ColumnInfo("s", VoltType.STRING));
+        for (int i = 0; i < 5000; i++) {
+            t.addRow(i, i % 7 == 0 ? null : "row number " + i);
+        }
+        ByteBuffer block = encode(t);
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(view.next(block));
+            assertEquals(i, view.getLong(0));
+            if (i % 7 == 0) {
+                assertTrue(view.isNull(1));
+            } else {
+                assertEquals("row number " + i, view.getString(1).toString());
+            }
+        }
+        assertFalse(view.next(block));
+    }
+
+    public void testMalformedRows() throws IOException
+    {
+        ExportRowView view = new ExportRowView(Arrays.asList(VoltType.BIGINT, VoltType.STRING));
+        VoltTable t = new VoltTable(new VoltTable.ColumnInfo("l", VoltType.BIGINT),
+                                    new VoltTable.ColumnInfo("s", VoltType.STRING));
+        t.addRow(1, "one");
+        t.addRow(2, "two");
+        ByteBuffer block = encode(t);
+
+        // claim the first row's string is longer than the row
+        int firstRow = block.position();
+        block.putInt(firstRow + 4 + 1 + 8, 100);
+        try {
+            view.next(block);
+            fail("Row overrun should have been detected");
+        } catch (IOException expected) {}
+        // the bad row is skipped
+        assertTrue(view.next(block));
+        assertEquals(2, view.getLong(0));
+        assertEquals("two", view.getString(1).toString());
+
+        // a bad row length gives up on the rest of the block
+        block.position(firstRow);
+        block.putInt(firstRow, 1000);
+        try {
+            view.next(block);
+            fail("Row overrun should have been detected");
+        } catch (IOException expected) {}
+        assertFalse(block.hasRemaining());
+    }
+}
@@ -23,26 +23,201 @@
 
 package org.voltdb.exportclient;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
 
 import junit.framework.TestCase;
 
 import org.voltdb.BackendTarget;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientFactory;
 import org.voltdb.compiler.VoltProjectBuilder;
 import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
+import org.voltdb.exportclient.ExportToFileClient.Compression;
 import org.voltdb.exportclient.ExportToFileClient.ExportToFileDecoder;
 import org.voltdb.regressionsuites.LocalCluster;
 import org.voltdb.utils.VoltFile;
+import org.xerial.snappy.SnappyInputStream;
 
 public class TestExportToFileClient extends TestCase {
 
+    File m_outdir;
+
+    @Override
+    public void setUp() throws Exception {
+        m_outdir = new VoltFile("/tmp/" + System.getProperty("user.name") + "/" + getName());
+        if (m_outdir.exists()) {
+            for (File f : m_outdir.listFiles()) {
+                f.delete();
+            }
+        }
+        m_outdir.mkdirs();
+    }
+
+    ExportToFileClient makeClient(String nonce, String dateformat, boolean binary,
+                                  Compression compression, long rollSize) {
+        return new ExportToFileClient(
+                ',',
+                nonce,
+                m_outdir,
+                60,
+                dateformat,
+                null,
+                0,
+                false,
+                false,
+                false,
+                0,
+                false,
+                VoltDB.GMT_TIMEZONE,
+                ExportToFileClient.BinaryEncoding.HEX,
+                binary,
+                compression,
+                rollSize);
+    }
+
+    static AdvertisedDataSource constructSource() {
+        ArrayList<String> names = new ArrayList<String>(Arrays.asList("ID", "NAME", "DATA"));
+        ArrayList<VoltType> types =
+            new ArrayList<VoltType>(Arrays.asList(VoltType.BIGINT, VoltType.STRING, VoltType.VARBINARY));
+        return new AdvertisedDataSource(0, "foo", "ROWS", 0, 7, names, types, Arrays.asList(0, 64, 64));
+    }
+
+    static ByteBuffer makeBlock(int firstId, int rows) throws IOException {
+        VoltTable t = new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                                    new VoltTable.ColumnInfo("NAME", VoltType.STRING),
+                                    new VoltTable.ColumnInfo("DATA", VoltType.VARBINARY));
+        for (int i = firstId; i < firstId + rows; i++) {
+            t.addRow(i, i % 3 == 0 ? null : "name, \"" + i + "\"", new byte[] {(byte)i, 1});
+        }
+        return TestExportRowView.encode(t);
+    }
+
+    static void writeBlock(ExportToFileDecoder decoder, ByteBuffer block) throws Exception {
+        decoder.onBlockStart();
+        decoder.processBlock(block);
+        decoder.onBlockCompletion();
+    }
+
+    // the files the client has finished with
+    File[] finishedFiles(final String nonce, final String extension) {
+        File[] files = m_outdir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File pathname) {
+                return pathname.getName().startsWith(nonce) && pathname.getName().endsWith(extension);
+            }
+        });
+        Arrays.sort(files);
+        return files;
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    public void testCompressedMatchesPlain() throws Exception {
+        ExportToFileClient plain = makeClient("plain", "yyyyMMddHHmmss", false, Compression.NONE, 0);
+        ExportToFileClient gzip = makeClient("gzip", "yyyyMMddHHmmss", false, Compression.GZIP, 0);
+        ExportToFileClient snappy = makeClient("snappy", "yyyyMMddHHmmss", false, Compression.SNAPPY, 0);
+        writeBlock(plain.constructExportDecoder(constructSource()), makeBlock(0, 100));
+        writeBlock(gzip.constructExportDecoder(constructSource()), makeBlock(0, 100));
+        writeBlock(snappy.constructExportDecoder(constructSource()), makeBlock(0, 100));
+        plain.shutdown();
+        gzip.shutdown();
+        snappy.shutdown();
+
+        File[] plainFiles = finishedFiles("plain", ".csv");
+        File[] gzipFiles = finishedFiles("gzip", ".csv.gz");
+        File[] snappyFiles = finishedFiles("snappy", ".csv.snappy");
+        assertEquals(1, plainFiles.length);
+        assertEquals(1, gzipFiles.length);
+        assertEquals(1, snappyFiles.length);
+        byte[] expected = readFully(new FileInputStream(plainFiles[0]));
+        assertTrue(expected.length > 0);
+        assertTrue(Arrays.equals(expected, readFully(new GZIPInputStream(new FileInputStream(gzipFiles[0])))));
+        assertTrue(Arrays.equals(expected, readFully(new SnappyInputStream(new FileInputStream(snappyFiles[0])))));
+    }
+
+    public void testBinaryOutput() throws Exception {
+        ExportToFileClient client = makeClient("bin", "yyyyMMddHHmmss", true, Compression.NONE, 0);
+        ExportToFileDecoder decoder = client.constructExportDecoder(constructSource());
+        writeBlock(decoder, makeBlock(0, 10));
+        // rows handed over one at a time end up the same way
+        ByteBuffer block = makeBlock(10, 5);
+        decoder.onBlockStart();
+        while (block.hasRemaining()) {
+            byte[] row = new byte[block.getInt()];
+            block.get(row);
+            decoder.processRow(row.length, row);
+        }
+        decoder.onBlockCompletion();
+        client.shutdown();
+
+        File[] files = finishedFiles("bin", ".bin");
+        assertEquals(1, files.length);
+        // binary output always comes with its schema
+        assertEquals(1, finishedFiles("bin", "-schema.json").length);
+
+        ByteBuffer rows = ByteBuffer.wrap(readFully(new FileInputStream(files[0])));
+        rows.order(ByteOrder.LITTLE_ENDIAN);
+        ExportRowView view = new ExportRowView(constructSource().columnTypes);
+        for (int i = 0; i < 15; i++) {
+            assertTrue(view.next(rows));
+            assertEquals(i, view.getLong(0));
+            if (i % 3 == 0) {
+                assertTrue(view.isNull(1));
+            } else {
+                assertEquals("name, \"" + i + "\"", view.getString(1).toString());
+            }
+            assertTrue(Arrays.equals(new byte[] {(byte)i, 1}, view.getBytes(2)));
+        }
+        assertFalse(view.next(rows));
+    }
+
+    public void testSizeBasedRolling() throws Exception {
+        // any block fills a file
+        ExportToFileClient client = makeClient("roll", "yyyyMMddHHmmssSSS", false, Compression.NONE, 1);
+        ExportToFileDecoder decoder = client.constructExportDecoder(constructSource());
+        writeBlock(decoder, makeBlock(0, 10));
+
+        // the roll happens in the background
+        long deadline = System.currentTimeMillis() + 10000;
+        while (finishedFiles("roll", ".csv").length == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, finishedFiles("roll", ".csv").length);
+
+        writeBlock(decoder, makeBlock(10, 10));
+        client.shutdown();
+        File[] files = finishedFiles("roll", ".csv");
+        assertEquals(2, files.length);
+        for (File f : files) {
+            String contents = new String(readFully(new FileInputStream(f)), "UTF-8");
+            assertEquals(10, contents.split("\n").length);
+        }
+    }
+
     public void testEng1088() throws Exception {
         ExportToFileClient exportClient =
             new ExportToFileClient(
@@ -0,0 +1,189 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.exportclient;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.export.ExportProtoMessage.AdvertisedDataSource;
+import org.voltdb.exportclient.ExportDecoderBase.RestartBlockException;
+
+public class TestPostgreSQLExportClient extends TestCase
+{
+    Connection m_conn;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        // HSQL stands in for PostgreSQL, it gets the batched INSERT path
+        Class.forName("org.hsqldb_voltpatches.jdbcDriver");
+        m_conn = DriverManager.getConnection("jdbc:hsqldb:mem:pgexport" + getName(), "sa", "");
+        m_conn.setAutoCommit(false);
+        Statement stmt = m_conn.createStatement();
+        stmt.execute("CREATE SCHEMA EXPORT_0 AUTHORIZATION DBA");
+        stmt.execute("CREATE TABLE EXPORT_0.EXPORTED (C_INT INTEGER PRIMARY KEY, C_STR VARCHAR(64), C_BIG BIGINT)");
+        stmt.close();
+        m_conn.commit();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        m_conn.createStatement().execute("SHUTDOWN");
+        m_conn.close();
+    }
+
+    static AdvertisedDataSource constructSource()
+    {
+        ArrayList<String> names = new ArrayList<String>(Arrays.asList("C_INT", "C_STR", "C_BIG"));
+        ArrayList<VoltType> types =
+            new ArrayList<VoltType>(Arrays.asList(VoltType.INTEGER, VoltType.STRING, VoltType.BIGINT));
+        return new AdvertisedDataSource(0, "foo", "EXPORTED", 0, 0, names, types, Arrays.asList(0, 64, 0));
+    }
+
+    // a row in the export encoding, with a null string when str is null
+    static byte[] exportRow(int i, String str, long big)
+    {
+        byte[] strBytes = str == null ? new byte[0] : str.getBytes();
+        ByteBuffer buf = ByteBuffer.allocate(1 + 8 + (str == null ? 0 : 4 + strBytes.length) + 8);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.put((byte)(str == null ? 0x40 : 0));
+        buf.putLong(i);
+        if (str != null) {
+            buf.putInt(strBytes.length);
+            buf.put(strBytes);
+        }
+        buf.putLong(big);
+        return buf.array();
+    }
+
+    int countRows() throws Exception
+    {
+        ResultSet rs = m_conn.createStatement().executeQuery("SELECT COUNT(*) FROM EXPORT_0.EXPORTED");
+        rs.next();
+        int count = rs.getInt(1);
+        rs.close();
+        return count;
+    }
+
+    public void testRowsAreBatchedAndCommittedPerBlock() throws Exception
+    {
+        PostgreSQLExportClient.PostgresDecoder dut =
+            new PostgreSQLExportClient.PostgresDecoder(constructSource(), m_conn, "EXPORT_", 2);
+
+        dut.onBlockStart();
+        for (int i = 0; i < 5; i++) {
+            byte[] row = exportRow(i, i == 3 ? null : "row" + i, i * 10L);
+            assertTrue(dut.processRow(row.length, row));
+        }
+        assertEquals(0, dut.m_commits);
+        dut.onBlockCompletion();
+        assertEquals(1, dut.m_commits);
+        assertEquals(5, dut.m_rowsCommitted);
+
+        ResultSet rs = m_conn.createStatement().executeQuery(
+                "SELECT C_INT, C_STR, C_BIG FROM EXPORT_0.EXPORTED ORDER BY C_INT");
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals(i == 3 ? null : "row" + i, rs.getString(2));
+            assertEquals(i * 10L, rs.getLong(3));
+        }
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    public void testFailedBlockRollsBackAndRestarts() throws Exception
+    {
+        PostgreSQLExportClient.PostgresDecoder dut =
+            new PostgreSQLExportClient.PostgresDecoder(constructSource(), m_conn, "EXPORT_", 2);
+
+        // the last row of the block collides with one already there
+        m_conn.createStatement().execute("INSERT INTO EXPORT_0.EXPORTED VALUES (2, 'old', 0)");
+        m_conn.commit();
+
+        dut.onBlockStart();
+        for (int i = 0; i < 3; i++) {
+            byte[] row = exportRow(i, "row" + i, i);
+            dut.processRow(row.length, row);
+        }
+        try {
+            dut.onBlockCompletion();
+            fail("Block should have been restarted");
+        } catch (RestartBlockException e) {
+            assertTrue(e.requestBackoff);
+        }
+        assertEquals(0, dut.m_commits);
+        // the rows already sent for the block were rolled back
+        assertEquals(1, countRows());
+
+        // the retry loads the whole block once
+        m_conn.createStatement().execute("DELETE FROM EXPORT_0.EXPORTED");
+        m_conn.commit();
+        dut.onBlockStart();
+        for (int i = 0; i < 3; i++) {
+            byte[] row = exportRow(i, "row" + i, i);
+            dut.processRow(row.length, row);
+        }
+        dut.onBlockCompletion();
+        assertEquals(1, dut.m_commits);
+        assertEquals(3, countRows());
+    }
+
+    public void testCopyRowFormat() throws Exception
+    {
+        VoltTable t = new VoltTable(
+                new VoltTable.ColumnInfo("C_INT", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("C_STR", VoltType.STRING),
+                new VoltTable.ColumnInfo("C_NULL", VoltType.STRING),
+                new VoltTable.ColumnInfo("C_BIN", VoltType.VARBINARY),
+                new VoltTable.ColumnInfo("C_DEC", VoltType.DECIMAL),
+                new VoltTable.ColumnInfo("C_FLOAT", VoltType.FLOAT));
+        t.addRow(7, "say \"hi\", bye", null, new byte[] {1, (byte)0xAB},
+                 new BigDecimal("1.500000000000"), 2.5);
+        t.addRow(8, "", null, new byte[0], new BigDecimal("-2.000000000000"), -0.5);
+        ByteBuffer block = TestExportRowView.encode(t);
+        ExportRowView row = new ExportRowView(
+                Arrays.asList(VoltType.INTEGER, VoltType.STRING, VoltType.STRING,
+                              VoltType.VARBINARY, VoltType.DECIMAL, VoltType.FLOAT));
+
+        StringBuilder sb = new StringBuilder();
+        while (row.next(block)) {
+            PostgreSQLExportClient.appendCopyRow(sb, row);
+        }
+        assertEquals("7,\"say \"\"hi\"\", bye\",,\\x01AB,1.500000000000,2.5\n" +
+                     "8,\"\",,\\x,-2.000000000000,-0.5\n", sb.toString());
+    }
+}
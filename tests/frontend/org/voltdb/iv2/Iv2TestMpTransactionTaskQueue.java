@@ -0,0 +1,214 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.iv2;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.messaging.FragmentResponseMessage;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.rejoin.TaskLog;
+
+public class Iv2TestMpTransactionTaskQueue extends TestCase
+{
+    SiteTaskerQueue m_siteQueue;
+    MpRoSitePool m_pool;
+    MpTransactionTaskQueue m_dut;
+    long m_txnId = 0;
+
+    @Override
+    public void setUp()
+    {
+        m_siteQueue = new SiteTaskerQueue();
+        m_siteQueue.setStarvationTracker(new StarvationTracker(0));
+        m_pool = mock(MpRoSitePool.class);
+        when(m_pool.canAcceptWork()).thenReturn(true);
+        m_dut = new MpTransactionTaskQueue(m_siteQueue);
+        m_dut.setMpRoSitePool(m_pool);
+    }
+
+    private MpProcedureTask createMp(boolean readOnly, String procName)
+    {
+        Iv2InitiateTaskMessage msg = mock(Iv2InitiateTaskMessage.class);
+        when(msg.getTxnId()).thenReturn(m_txnId++);
+        when(msg.isReadOnly()).thenReturn(readOnly);
+        when(msg.getStoredProcedureName()).thenReturn(procName);
+        InitiatorMailbox mbox = mock(InitiatorMailbox.class);
+        when(mbox.getHSId()).thenReturn(1337l);
+        List<Long> masters = new ArrayList<Long>();
+        masters.add(1l);
+        return new MpProcedureTask(mbox, procName, m_dut, msg, masters, 2l, false);
+    }
+
+    private void complete(TransactionTask task)
+    {
+        task.getTransactionState().setDone();
+        m_dut.flush();
+    }
+
+    private static MpTransactionState txnState(TransactionTask task)
+    {
+        return (MpTransactionState)task.getTransactionState();
+    }
+
+    @Test
+    public void testReadsPipelineOnceFinalWorkIsSent()
+    {
+        MpProcedureTask read1 = createMp(true, "ReadProc");
+        MpProcedureTask read2 = createMp(true, "ReadProc");
+        MpProcedureTask read3 = createMp(true, "ReadProc");
+        assertFalse(m_dut.offer(read1));
+        assertTrue(m_dut.offer(read2));
+        assertTrue(m_dut.offer(read3));
+        verify(m_pool).doWork(read1.getTxnId(), read1);
+        verify(m_pool, never()).doWork(read2.getTxnId(), read2);
+        assertEquals(2, m_dut.size());
+
+        // read1 has sent its last fragments; read2 may go, read3 waits on read2
+        txnState(read1).m_haveSentFinalWork = true;
+        assertEquals(1, m_dut.flush());
+        verify(m_pool).doWork(read2.getTxnId(), read2);
+        verify(m_pool, never()).doWork(read3.getTxnId(), read3);
+
+        // reads complete out of order
+        complete(read2);
+        verify(m_pool).completeWork(read2.getTxnId());
+        verify(m_pool).doWork(read3.getTxnId(), read3);
+        complete(read1);
+        verify(m_pool).completeWork(read1.getTxnId());
+        assertEquals(0, m_dut.size());
+        assertTrue(m_siteQueue.isEmpty());
+    }
+
+    @Test
+    public void testWritesRunAlone() throws InterruptedException
+    {
+        MpProcedureTask read1 = createMp(true, "ReadProc");
+        MpProcedureTask write = createMp(false, "WriteProc");
+        MpProcedureTask sysproc = createMp(true, "@Statistics");
+        MpProcedureTask read2 = createMp(true, "ReadProc");
+        m_dut.offer(read1);
+        m_dut.offer(write);
+        m_dut.offer(sysproc);
+        m_dut.offer(read2);
+        txnState(read1).m_haveSentFinalWork = true;
+        m_dut.flush();
+        // the write waits for the read to finish, not just to send its work
+        assertTrue(m_siteQueue.isEmpty());
+        assertEquals(3, m_dut.size());
+
+        complete(read1);
+        assertEquals(write, m_siteQueue.poll());
+        assertTrue(m_siteQueue.isEmpty());
+
+        // read-only sysprocs aren't pipelined either
+        complete(write);
+        assertEquals(sysproc, m_siteQueue.poll());
+        verify(m_pool, never()).doWork(read2.getTxnId(), read2);
+
+        complete(sysproc);
+        verify(m_pool).doWork(read2.getTxnId(), read2);
+        assertEquals(0, m_dut.size());
+    }
+
+    @Test
+    public void testWithoutPoolEverythingIsSerial()
+    {
+        m_dut = new MpTransactionTaskQueue(m_siteQueue);
+        MpProcedureTask read1 = createMp(true, "ReadProc");
+        MpProcedureTask read2 = createMp(true, "ReadProc");
+        m_dut.offer(read1);
+        m_dut.offer(read2);
+        assertEquals(read1, m_siteQueue.poll());
+        assertTrue(m_siteQueue.isEmpty());
+        txnState(read1).m_haveSentFinalWork = true;
+        m_dut.flush();
+        assertTrue(m_siteQueue.isEmpty());
+        complete(read1);
+        assertEquals(read2, m_siteQueue.poll());
+        verify(m_pool, never()).doWork(anyLong(), any(TransactionTask.class));
+    }
+
+    @Test
+    public void testRepairWaitsForPoisonedReads()
+    {
+        MpProcedureTask read1 = createMp(true, "ReadProc");
+        MpProcedureTask read2 = createMp(true, "ReadProc");
+        MpProcedureTask read3 = createMp(true, "ReadProc");
+        m_dut.offer(read1);
+        txnState(read1).m_haveSentFinalWork = true;
+        m_dut.offer(read2);
+        m_dut.offer(read3);
+        verify(m_pool).doWork(read2.getTxnId(), read2);
+
+        final boolean[] ran = new boolean[] { false };
+        SiteTasker repair = new SiteTasker() {
+            @Override
+            public void run(SiteProcedureConnection siteConnection) {
+                ran[0] = true;
+            }
+
+            @Override
+            public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog) {}
+        };
+        List<Long> newMasters = new ArrayList<Long>();
+        newMasters.add(3l);
+        m_dut.repair(repair, newMasters);
+
+        // both reads in flight got poisoned
+        FragmentResponseMessage poison = txnState(read1).m_newDeps.poll();
+        assertEquals(FragmentResponseMessage.UNEXPECTED_ERROR, poison.getStatusCode());
+        poison = txnState(read2).m_newDeps.poll();
+        assertEquals(FragmentResponseMessage.UNEXPECTED_ERROR, poison.getStatusCode());
+        // and the waiting read will use the new masters
+        assertEquals(newMasters, read3.m_initiatorHSIds);
+
+        // the repair runs on the MPI's site once the reads drain
+        complete(read1);
+        assertTrue(m_siteQueue.isEmpty());
+        complete(read2);
+        SiteTasker task = m_siteQueue.poll();
+        assertNotNull(task);
+        verify(m_pool, never()).doWork(read3.getTxnId(), read3);
+
+        // and nothing else starts until it has finished
+        task.run(null);
+        assertTrue(ran[0]);
+        verify(m_pool).doWork(eq(read3.getTxnId()), eq(read3));
+    }
+}
@@ -23,9 +23,8 @@
 
 package org.voltdb.iv2;
 
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
-
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import org.voltcore.messaging.TransactionInfoBaseMessage;
@@ -57,19 +56,33 @@ public class RandomMsgGenerator
 
     private Iv2InitiateTaskMessage makeIv2InitiateTaskMsg(boolean readOnly)
     {
-        StoredProcedureInvocation spi = mock(StoredProcedureInvocation.class);
-        ParameterSet ps = mock(ParameterSet.class);
-        when(spi.getParams()).thenReturn(ps);
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setProcName("dummy");
+        spi.setParams();
         Iv2InitiateTaskMessage msg =
             new Iv2InitiateTaskMessage(0l, 0l, 0l, Long.MIN_VALUE, 0l, readOnly, true, spi,
                     0l, 0l, false);
         return msg;
     }
 
+    static ByteBuffer emptyParams()
+    {
+        ParameterSet params = ParameterSet.emptyParameterSet();
+        ByteBuffer buf = ByteBuffer.allocate(params.getSerializedSize());
+        try {
+            params.flattenToBuffer(buf);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        buf.flip();
+        return buf;
+    }
+
     private FragmentTaskMessage makeFragmentTaskMsg(boolean readOnly, boolean isFinal)
     {
         FragmentTaskMessage msg =
             new FragmentTaskMessage(0l, 0l, m_mpiTxnEgo.getTxnId(), 0l, readOnly, isFinal, false);
+        msg.addFragment(new byte[20], 1, emptyParams());
         return msg;
     }
 
@@ -92,7 +105,7 @@ public class RandomMsgGenerator
         else if (!m_mpInProgress) {
             m_currentMpReadOnly = (m_rand.nextDouble() < READCHANCE);
             FragmentTaskMessage msg = makeFragmentTaskMsg(m_currentMpReadOnly, false);
-            msg.setInitiateTask(mock(Iv2InitiateTaskMessage.class));
+            msg.setInitiateTask(makeIv2InitiateTaskMsg(m_currentMpReadOnly));
             m_mpInProgress = true;
             return msg;
         }
@@ -0,0 +1,152 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.ResultDigestStats;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.messaging.FragmentResponseMessage;
+import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.messaging.InitiateResponseMessage;
+
+public class TestDuplicateCounter extends TestCase
+{
+    static final String MockSPName = "MOCKSP";
+
+    private static List<Long> replicas(long... hsIds)
+    {
+        List<Long> list = new ArrayList<Long>();
+        for (long hsId : hsIds) {
+            list.add(hsId);
+        }
+        return list;
+    }
+
+    private static VoltTable result(long... values)
+    {
+        VoltTable table = new VoltTable(new VoltTable.ColumnInfo("VAL", VoltType.BIGINT));
+        for (long value : values) {
+            table.addRow(value);
+        }
+        return table;
+    }
+
+    private static InitiateResponseMessage initiateResponse(long sourceHSId, VoltTable... results)
+    {
+        InitiateResponseMessage resp = new InitiateResponseMessage();
+        resp.setResults(new ClientResponseImpl(ClientResponse.SUCCESS, results, null));
+        resp.m_sourceHSId = sourceHSId;
+        return resp;
+    }
+
+    private static FragmentResponseMessage fragmentResponse(long sourceHSId, VoltTable result)
+    {
+        FragmentTaskMessage task = new FragmentTaskMessage(0, 0, 0, 0, false, false, false);
+        FragmentResponseMessage resp = new FragmentResponseMessage(task, sourceHSId);
+        resp.addDependency(1, result);
+        resp.m_sourceHSId = sourceHSId;
+        return resp;
+    }
+
+    public void testMatchingResults()
+    {
+        ResultDigestStats stats = new ResultDigestStats(0);
+        DuplicateCounter counter = new DuplicateCounter(0, 1, replicas(1, 2, 3), MockSPName, stats);
+        assertEquals(DuplicateCounter.WAITING, counter.offer(initiateResponse(1, result(1, 2, 3))));
+        // the first response is only digested once there is something to compare it with
+        assertNull(counter.m_responseDigest);
+        assertEquals(DuplicateCounter.WAITING, counter.offer(initiateResponse(2, result(1, 2, 3))));
+        assertNotNull(counter.m_responseDigest);
+        assertEquals(DuplicateCounter.DONE, counter.offer(initiateResponse(3, result(1, 2, 3))));
+    }
+
+    public void testMismatchedResults()
+    {
+        ResultDigestStats stats = new ResultDigestStats(0);
+        DuplicateCounter counter = new DuplicateCounter(0, 1, replicas(1, 2), MockSPName, stats);
+        assertEquals(DuplicateCounter.WAITING, counter.offer(initiateResponse(1, result(1, 2, 3))));
+        assertEquals(DuplicateCounter.MISMATCH, counter.offer(initiateResponse(2, result(1, 2, 4))));
+
+        counter = new DuplicateCounter(0, 1, replicas(1, 2), MockSPName, stats);
+        assertEquals(DuplicateCounter.WAITING, counter.offer(fragmentResponse(1, result(1))));
+        assertEquals(DuplicateCounter.MISMATCH, counter.offer(fragmentResponse(2, result(2))));
+
+        VoltTable table = new VoltTable(stats.getColumnSchema().toArray(new VoltTable.ColumnInfo[0]));
+        for (Object[] row : stats.getStatsRows(false, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        assertEquals(1, table.getRowCount());
+        assertTrue(table.advanceRow());
+        assertEquals(MockSPName, table.getString("PROCEDURE"));
+        assertEquals(4, table.getLong("DIGESTS"));
+        assertEquals(2, table.getLong("MISMATCHES"));
+    }
+
+    public void testDigestsDisabled()
+    {
+        // without digest stats only the SQL hash is compared
+        DuplicateCounter counter = new DuplicateCounter(0, 1, replicas(1, 2), MockSPName);
+        assertEquals(DuplicateCounter.WAITING, counter.offer(initiateResponse(1, result(1, 2, 3))));
+        assertEquals(DuplicateCounter.DONE, counter.offer(initiateResponse(2, result(1, 2, 4))));
+        assertNull(counter.m_responseDigest);
+    }
+
+    public void testDigestIgnoresRowOrder()
+    {
+        assertEquals(DuplicateCounter.digest(result(1, 2, 3), 0),
+                     DuplicateCounter.digest(result(3, 1, 2), 0));
+        assertTrue(DuplicateCounter.digest(result(1, 2, 3), 0) !=
+                   DuplicateCounter.digest(result(1, 2, 4), 0));
+        assertTrue(DuplicateCounter.digest(result(1, 2), 0) !=
+                   DuplicateCounter.digest(result(1, 2, 2), 0));
+
+        // replicas returning the same rows in another order are not a mismatch
+        ResultDigestStats stats = new ResultDigestStats(0);
+        DuplicateCounter counter = new DuplicateCounter(0, 1, replicas(1, 2), MockSPName, stats);
+        assertEquals(DuplicateCounter.WAITING, counter.offer(initiateResponse(1, result(1, 2, 3))));
+        assertEquals(DuplicateCounter.DONE, counter.offer(initiateResponse(2, result(2, 3, 1))));
+    }
+
+    public void testDigestChainsTables()
+    {
+        VoltTable a = result(1);
+        VoltTable b = result(2);
+        long ab = DuplicateCounter.digest(b, DuplicateCounter.digest(a, 0));
+        long ba = DuplicateCounter.digest(a, DuplicateCounter.digest(b, 0));
+        assertTrue(ab != ba);
+        assertEquals(DuplicateCounter.digest(result(1), 0), DuplicateCounter.digest(a, 0));
+        // digesting doesn't disturb the table
+        assertEquals(1, a.getRowCount());
+        assertTrue(a.advanceRow());
+        assertEquals(1, a.getLong(0));
+    }
+}
@@ -407,7 +407,7 @@ public class TestMpPromoteAlgo extends TestCase
         MpPromoteAlgo dut = new MpPromoteAlgo(survivors, mbox, "bleh ");
         Future<Pair<Boolean, Long>> result = dut.start();
         for (int i = 0; i < 3; i++) {
-            List<Iv2RepairLogResponseMessage> stuff = logs[i].contents(dut.getRequestId(), true);
+            List<Iv2RepairLogResponseMessage> stuff = TestRepairLog.contents(logs[i], dut.getRequestId(), true);
             System.out.println("Repair log size from: " + i + ": " + stuff.size());
             for (Iv2RepairLogResponseMessage msg : stuff) {
                 msg.m_sourceHSId = (long)i;
@@ -23,11 +23,10 @@
 
 package org.voltdb.iv2;
 
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
-
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import junit.framework.TestCase;
@@ -35,6 +34,7 @@ import junit.framework.TestCase;
 import org.junit.Test;
 import org.voltcore.messaging.TransactionInfoBaseMessage;
 import org.voltcore.messaging.VoltMessage;
+import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.messaging.CompleteTransactionMessage;
 import org.voltdb.messaging.FragmentTaskMessage;
 import org.voltdb.messaging.Iv2InitiateTaskMessage;
@@ -44,9 +44,13 @@ public class TestRepairLog extends TestCase
 {
     VoltMessage truncInitMsg(long truncPt, long handle)
     {
-        Iv2InitiateTaskMessage msg = mock(Iv2InitiateTaskMessage.class);
-        when(msg.getTruncationHandle()).thenReturn(truncPt);
-        when(msg.getSpHandle()).thenReturn(handle);
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.setProcName("dummy");
+        spi.setParams(handle);
+        Iv2InitiateTaskMessage msg =
+            new Iv2InitiateTaskMessage(0l, 0l, truncPt, Long.MIN_VALUE, 0l, false, true, spi,
+                    0l, 0l, false);
+        msg.setSpHandle(handle);
         return msg;
     }
 
@@ -57,20 +61,48 @@ public class TestRepairLog extends TestCase
 
     VoltMessage truncFragMsg(long truncPt, long mpTxnId)
     {
-        FragmentTaskMessage msg = mock(FragmentTaskMessage.class);
-        when(msg.getTxnId()).thenReturn(mpTxnId);
-        when(msg.getTruncationHandle()).thenReturn(truncPt);
+        FragmentTaskMessage msg = new FragmentTaskMessage(0l, 0l, mpTxnId, 0l, false, false, false);
+        msg.addFragment(new byte[20], 1, RandomMsgGenerator.emptyParams());
+        msg.setTruncationHandle(truncPt);
         return msg;
     }
 
     VoltMessage truncCompleteMsg(long truncPt, long mpTxnId)
     {
-        CompleteTransactionMessage msg = mock(CompleteTransactionMessage.class);
-        when(msg.getTxnId()).thenReturn(mpTxnId);
-        when(msg.getTruncationHandle()).thenReturn(truncPt);
+        CompleteTransactionMessage msg =
+            new CompleteTransactionMessage(0l, 0l, mpTxnId, false, 0, false, false, false, false);
+        msg.setTruncationHandle(truncPt);
         return msg;
     }
 
+    // the log hands back copies, compare them by their serialized form
+    static void assertSameMessage(VoltMessage expected, VoltMessage actual)
+    {
+        assertEquals(serialize(expected), serialize(actual));
+    }
+
+    static ByteBuffer serialize(VoltMessage msg)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(msg.getSerializedSize());
+        try {
+            msg.flattenToBuffer(buf);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    static List<Iv2RepairLogResponseMessage> contents(RepairLog rl, long requestId, boolean forMPI)
+    {
+        List<Iv2RepairLogResponseMessage> responses = new ArrayList<Iv2RepairLogResponseMessage>();
+        Iterator<Iv2RepairLogResponseMessage> it = rl.contents(requestId, forMPI);
+        while (it.hasNext()) {
+            responses.add(it.next());
+        }
+        return responses;
+    }
+
     // a message that should never be logged.
     private static class FooMessage extends VoltMessage
     {
@@ -95,10 +127,10 @@ public class TestRepairLog extends TestCase
         rl.deliver(m1);
         rl.deliver(m2);
 
-        List<Iv2RepairLogResponseMessage> contents = rl.contents(1l, false);
+        List<Iv2RepairLogResponseMessage> contents = contents(rl, 1l, false);
         assertEquals(3, contents.size());
-        assertEquals(m1, contents.get(1).getPayload());
-        assertEquals(m2, contents.get(2).getPayload());
+        assertSameMessage(m1, contents.get(1).getPayload());
+        assertSameMessage(m2, contents.get(2).getPayload());
     }
 
     @Test
@@ -109,21 +141,21 @@ public class TestRepairLog extends TestCase
         // add m1
         VoltMessage m1 = truncInitMsg(0L, 1L);
         rl.deliver(m1);
-        assertEquals(2, rl.contents(1L, false).size());
+        assertEquals(2, contents(rl, 1L, false).size());
 
         // add m2
         VoltMessage m2 = truncInitMsg(0L, 2L);
         rl.deliver(m2);
-        assertEquals(3, rl.contents(1L, false).size());
+        assertEquals(3, contents(rl, 1L, false).size());
 
         // trim m1. add m3
         VoltMessage m3 = truncInitMsg(1L, 3L);
         rl.deliver(m3);
-        assertEquals(3, rl.contents(1L, false).size());
-        assertEquals(m2, rl.contents(1L, false).get(1).getPayload());
-        assertEquals(2L, rl.contents(1L, false).get(1).getHandle());
-        assertEquals(m3, rl.contents(1L, false).get(2).getPayload());
-        assertEquals(3L, rl.contents(1L, false).get(2).getHandle());
+        assertEquals(3, contents(rl, 1L, false).size());
+        assertSameMessage(m2, contents(rl, 1L, false).get(1).getPayload());
+        assertEquals(2L, contents(rl, 1L, false).get(1).getHandle());
+        assertSameMessage(m3, contents(rl, 1L, false).get(2).getPayload());
+        assertEquals(3L, contents(rl, 1L, false).get(2).getHandle());
 
     }
 
@@ -137,9 +169,9 @@ public class TestRepairLog extends TestCase
         rl.deliver(new FooMessage());
         VoltMessage m2 = truncInitMsg(0L, 2L);
         rl.deliver(m2);
-        assertEquals(3, rl.contents(1L, false).size());
-        assertEquals(m1, rl.contents(1L, false).get(1).getPayload());
-        assertEquals(m2, rl.contents(1L, false).get(2).getPayload());
+        assertEquals(3, contents(rl, 1L, false).size());
+        assertSameMessage(m1, contents(rl, 1L, false).get(1).getPayload());
+        assertSameMessage(m2, contents(rl, 1L, false).get(2).getPayload());
     }
 
     @Test
@@ -150,25 +182,25 @@ public class TestRepairLog extends TestCase
         // trunc(trunc point, txnId).
         VoltMessage m1 = truncFragMsg(0L, 1L);
         rl.deliver(m1);
-        assertEquals(2, rl.contents(1L, false).size());
+        assertEquals(2, contents(rl, 1L, false).size());
 
         VoltMessage m2 = truncFragMsg(0L, 2L);
         rl.deliver(m2);
-        assertEquals(3, rl.contents(1L, false).size());
+        assertEquals(3, contents(rl, 1L, false).size());
 
         // only the first message for a transaction is logged.
         VoltMessage m2b = truncFragMsg(0L, 2L);
         rl.deliver(m2b);
-        assertEquals(3, rl.contents(1L, false).size());
+        assertEquals(3, contents(rl, 1L, false).size());
 
         // trim m1. add m3
         VoltMessage m3 = truncFragMsg(1L, 3L);
         rl.deliver(m3);
-        assertEquals(3, rl.contents(1L, false).size());
-        assertEquals(m2, rl.contents(1L, false).get(1).getPayload());
-        assertEquals(2L, rl.contents(1L, false).get(1).getTxnId());
-        assertEquals(m3, rl.contents(1L, false).get(2).getPayload());
-        assertEquals(3L, rl.contents(1L, false).get(2).getTxnId());
+        assertEquals(3, contents(rl, 1L, false).size());
+        assertSameMessage(m2, contents(rl, 1L, false).get(1).getPayload());
+        assertEquals(2L, contents(rl, 1L, false).get(1).getTxnId());
+        assertSameMessage(m3, contents(rl, 1L, false).get(2).getPayload());
+        assertEquals(3L, contents(rl, 1L, false).get(2).getTxnId());
     }
 
     @Test
@@ -179,20 +211,20 @@ public class TestRepairLog extends TestCase
         // trunc(trunc point, txnId).
         VoltMessage m1 = truncCompleteMsg(0L, 1L);
         rl.deliver(m1);
-        assertEquals(2, rl.contents(1L, false).size());
+        assertEquals(2, contents(rl, 1L, false).size());
 
         VoltMessage m2 = truncCompleteMsg(0L, 2L);
         rl.deliver(m2);
-        assertEquals(3, rl.contents(1L, false).size());
+        assertEquals(3, contents(rl, 1L, false).size());
 
         // trim m1. add m3
         VoltMessage m3 = truncCompleteMsg(1L, 3L);
         rl.deliver(m3);
-        assertEquals(3, rl.contents(1L, false).size());
-        assertEquals(m2, rl.contents(1L, false).get(1).getPayload());
-        assertEquals(2L, rl.contents(1L, false).get(1).getTxnId());
-        assertEquals(m3, rl.contents(1L, false).get(2).getPayload());
-        assertEquals(3L, rl.contents(1L, false).get(2).getTxnId());
+        assertEquals(3, contents(rl, 1L, false).size());
+        assertSameMessage(m2, contents(rl, 1L, false).get(1).getPayload());
+        assertEquals(2L, contents(rl, 1L, false).get(1).getTxnId());
+        assertSameMessage(m3, contents(rl, 1L, false).get(2).getPayload());
+        assertEquals(3L, contents(rl, 1L, false).get(2).getTxnId());
     }
 
 
@@ -204,9 +236,34 @@ public class TestRepairLog extends TestCase
         rl.deliver(m1);
         VoltMessage m2 = truncInitMsg(0L, 2L);
         rl.deliver(m2);
-        assertEquals(3, rl.contents(1L, false).size());
+        assertEquals(3, contents(rl, 1L, false).size());
         rl.setLeaderState(true);
-        assertEquals(1, rl.contents(1L, false).size());
+        assertEquals(1, contents(rl, 1L, false).size());
+    }
+
+    @Test
+    public void testOffHeapChunksAreFreed()
+    {
+        final long baseline = RepairLog.getBytesAllocatedGlobally();
+        RepairLog rl = new RepairLog();
+
+        // enough messages to fill several chunks
+        final int messageSize = truncInitMsg(0L, 1L).getSerializedSize();
+        final int count = (RepairLog.CHUNK_SIZE / messageSize) * 4;
+        for (long i = 1; i <= count; i++) {
+            rl.deliver(truncInitMsg(0L, i));
+        }
+        assertTrue(RepairLog.getBytesAllocatedGlobally() - baseline >= 4L * RepairLog.CHUNK_SIZE);
+        assertEquals(count + 1, contents(rl, 1L, false).size());
+
+        // truncating everything but the last message frees all but the write chunk
+        rl.deliver(truncInitMsg(count, count + 1));
+        assertEquals(2, contents(rl, 1L, false).size());
+        assertSameMessage(truncInitMsg(count, count + 1), contents(rl, 1L, false).get(1).getPayload());
+        assertEquals(RepairLog.CHUNK_SIZE, RepairLog.getBytesAllocatedGlobally() - baseline);
+
+        rl.shutdown();
+        assertEquals(baseline, RepairLog.getBytesAllocatedGlobally());
     }
 
     // validate the invariants on the RepairLog contents:
@@ -256,10 +313,10 @@ public class TestRepairLog extends TestCase
                 dut.deliver(msg);
             }
         }
-        List<Iv2RepairLogResponseMessage> stuff = dut.contents(1l, false);
+        List<Iv2RepairLogResponseMessage> stuff = contents(dut, 1l, false);
         validateRepairLog(stuff);
         // Also check the MP version
-        stuff = dut.contents(1l, true);
+        stuff = contents(dut, 1l, true);
         validateRepairLog(stuff);
     }
 }
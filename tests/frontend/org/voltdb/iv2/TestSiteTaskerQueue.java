@@ -0,0 +1,201 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2013 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.iv2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.VoltTable;
+import org.voltdb.rejoin.TaskLog;
+
+public class TestSiteTaskerQueue extends TestCase
+{
+    static class Task extends SiteTasker
+    {
+        final int m_lane;
+        final int m_producer;
+        final int m_seq;
+
+        Task(int lane, int producer, int seq)
+        {
+            m_lane = lane;
+            m_producer = producer;
+            m_seq = seq;
+        }
+
+        @Override
+        public void run(SiteProcedureConnection siteConnection) {}
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog rejoinTaskLog)
+        throws IOException {}
+
+        @Override
+        public int getQueueLane()
+        {
+            return m_lane;
+        }
+    }
+
+    private static SiteTaskerQueue getSiteTaskerQueue(long backgroundMaxDelayNanos)
+    {
+        SiteTaskerQueue queue = new SiteTaskerQueue(backgroundMaxDelayNanos);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        return queue;
+    }
+
+    public void testLaneOrder() throws Exception
+    {
+        SiteTaskerQueue queue = getSiteTaskerQueue(TimeUnit.HOURS.toNanos(1));
+        assertTrue(queue.isEmpty());
+        queue.offer(new Task(SiteTaskerQueue.BACKGROUND_LANE, 0, 0));
+        queue.offer(new Task(SiteTaskerQueue.TRANSACTION_LANE, 0, 1));
+        queue.offer(new Task(SiteTaskerQueue.TRANSACTION_LANE, 0, 2));
+        queue.offer(new Task(SiteTaskerQueue.PRIORITY_LANE, 0, 3));
+        assertEquals(4, queue.size());
+
+        // priority work first, then transactions in FIFO order, background last
+        assertEquals(3, ((Task)queue.take()).m_seq);
+        assertEquals(1, ((Task)queue.take()).m_seq);
+        assertEquals(2, ((Task)queue.take()).m_seq);
+        assertEquals(0, ((Task)queue.take()).m_seq);
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testBackgroundIsNotStarved() throws Exception
+    {
+        // background work that waited past the delay goes ahead of transactions
+        SiteTaskerQueue queue = getSiteTaskerQueue(TimeUnit.MILLISECONDS.toNanos(1));
+        queue.offer(new Task(SiteTaskerQueue.BACKGROUND_LANE, 0, 0));
+        queue.offer(new Task(SiteTaskerQueue.TRANSACTION_LANE, 0, 1));
+        Thread.sleep(5);
+        assertEquals(0, ((Task)queue.poll()).m_seq);
+        assertEquals(1, ((Task)queue.poll()).m_seq);
+    }
+
+    public void testTakeBatch() throws Exception
+    {
+        final SiteTaskerQueue queue = getSiteTaskerQueue(TimeUnit.HOURS.toNanos(1));
+        SiteTasker batch[] = new SiteTasker[4];
+        for (int i = 0; i < 6; i++) {
+            queue.offer(new Task(SiteTaskerQueue.TRANSACTION_LANE, 0, i));
+        }
+        assertEquals(4, queue.takeBatch(batch));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, ((Task)batch[i]).m_seq);
+        }
+        assertEquals(2, queue.takeBatch(batch));
+        assertEquals(5, ((Task)batch[1]).m_seq);
+
+        // an empty queue blocks until something is offered
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {}
+                queue.offer(new Task(SiteTaskerQueue.TRANSACTION_LANE, 0, 6));
+            }
+        };
+        producer.start();
+        assertEquals(1, queue.takeBatch(batch));
+        assertEquals(6, ((Task)batch[0]).m_seq);
+        producer.join();
+    }
+
+    public void testConcurrentProducers() throws Exception
+    {
+        final SiteTaskerQueue queue = getSiteTaskerQueue(SiteTaskerQueue.BACKGROUND_MAX_DELAY_NANOS);
+        final int producerCount = 4;
+        final int tasksPerProducer = 50000;
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int p = 0; p < producerCount; p++) {
+            final int producer = p;
+            producers.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < tasksPerProducer; i++) {
+                        queue.offer(new Task(i % SiteTaskerQueue.LANE_COUNT, producer, i));
+                    }
+                }
+            });
+        }
+        for (Thread t : producers) {
+            t.start();
+        }
+
+        // each producer's tasks come out in order within each lane
+        int lastSeq[][] = new int[producerCount][SiteTaskerQueue.LANE_COUNT];
+        for (int p = 0; p < producerCount; p++) {
+            for (int l = 0; l < SiteTaskerQueue.LANE_COUNT; l++) {
+                lastSeq[p][l] = -1;
+            }
+        }
+        SiteTasker batch[] = new SiteTasker[8];
+        int taken = 0;
+        while (taken < producerCount * tasksPerProducer) {
+            int count = queue.takeBatch(batch);
+            for (int i = 0; i < count; i++) {
+                Task task = (Task)batch[i];
+                assertTrue(task.m_seq > lastSeq[task.m_producer][task.m_lane]);
+                lastSeq[task.m_producer][task.m_lane] = task.m_seq;
+            }
+            taken += count;
+        }
+        for (Thread t : producers) {
+            t.join();
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testQueueStatistics() throws Exception
+    {
+        StarvationTracker tracker = new StarvationTracker(0);
+        SiteTaskerQueue queue = new SiteTaskerQueue(TimeUnit.HOURS.toNanos(1));
+        queue.setStarvationTracker(tracker);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(new Task(SiteTaskerQueue.TRANSACTION_LANE, 0, i));
+        }
+        while (queue.poll() != null) {}
+
+        VoltTable table = new VoltTable(tracker.getColumnSchema().toArray(new VoltTable.ColumnInfo[0]));
+        for (Object[] row : tracker.getStatsRows(false, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        assertTrue(table.advanceRow());
+        assertEquals(10, table.getLong("QUEUE_DEPTH_MAX"));
+        assertEquals(5.5, table.getDouble("QUEUE_DEPTH_AVG"), 0.01);
+        assertTrue(table.getLong("WAIT_MAX") >= table.getLong("WAIT_P50"));
+        assertEquals(0, table.getLong("BACKGROUND_WAIT_MAX"));
+    }
+}
@@ -330,7 +330,7 @@ public class TestSpPromoteAlgo extends TestCase
         SpPromoteAlgo dut = new SpPromoteAlgo(survivors, mbox, "bleh ", 0);
         Future<Pair<Boolean, Long>> result = dut.start();
         for (int i = 0; i < 3; i++) {
-            List<Iv2RepairLogResponseMessage> stuff = logs[i].contents(dut.getRequestId(), false);
+            List<Iv2RepairLogResponseMessage> stuff = TestRepairLog.contents(logs[i], dut.getRequestId(), false);
             System.out.println("Repair log size from: " + i + ": " + stuff.size());
             for (Iv2RepairLogResponseMessage msg : stuff) {
                 msg.m_sourceHSId = (long)i;
@@ -36,6 +36,7 @@ import org.voltdb_testprocs.regressionsuites.SaveRestoreBase;
 import junit.framework.Test;
 
 import org.voltdb.BackendTarget;
+import org.voltdb.LatencyHistogram;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.VoltType;
@@ -183,14 +184,21 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING LATENCY STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[7];
+        ColumnInfo[] expectedSchema = new ColumnInfo[14];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
         expectedSchema[3] = new ColumnInfo("SITE_ID", VoltType.INTEGER);
-        expectedSchema[4] = new ColumnInfo("BUCKET_MIN", VoltType.INTEGER);
-        expectedSchema[5] = new ColumnInfo("BUCKET_MAX", VoltType.INTEGER);
-        expectedSchema[6] = new ColumnInfo("INVOCATIONS", VoltType.BIGINT);
+        expectedSchema[4] = new ColumnInfo("INTERVAL", VoltType.BIGINT);
+        expectedSchema[5] = new ColumnInfo("COUNT", VoltType.BIGINT);
+        expectedSchema[6] = new ColumnInfo("AVG", VoltType.BIGINT);
+        expectedSchema[7] = new ColumnInfo("P50", VoltType.BIGINT);
+        expectedSchema[8] = new ColumnInfo("P95", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("P99", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("P99_9", VoltType.BIGINT);
+        expectedSchema[11] = new ColumnInfo("P99_99", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("MAX", VoltType.BIGINT);
+        expectedSchema[13] = new ColumnInfo("HISTOGRAM", VoltType.VARBINARY);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -208,15 +216,21 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         // should have at least one row from each host
         results[0].advanceRow();
         validateRowSeenAtAllHosts(results[0], "HOSTNAME", results[0].getString("HOSTNAME"), false);
-        // actually, there are 26 rows per host so:
-        assertEquals(26 * HOSTS, results[0].getRowCount());
-        // Check for non-zero invocations (ENG-4668)
+        // one row per host
+        assertEquals(HOSTS, results[0].getRowCount());
+        // Check for non-zero invocations (ENG-4668) and that the histograms merge
+        // into the cluster-wide count
         long invocations = 0;
+        LatencyHistogram cluster = new LatencyHistogram();
         results[0].resetRowPosition();
         while (results[0].advanceRow()) {
-            invocations += results[0].getLong("INVOCATIONS");
+            invocations += results[0].getLong("COUNT");
+            assertTrue(results[0].getLong("P50") <= results[0].getLong("P99"));
+            assertTrue(results[0].getLong("P99") <= results[0].getLong("MAX"));
+            cluster.add(LatencyHistogram.fromBytes(results[0].getVarbinary("HISTOGRAM")));
         }
         assertTrue(invocations > 0);
+        assertEquals(invocations, cluster.getTotalCount());
     }
 
     public void testInitiatorStatistics() throws Exception {
@@ -362,7 +376,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING MEMORY STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[12];
+        ColumnInfo[] expectedSchema = new ColumnInfo[13];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -375,6 +389,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[9] = new ColumnInfo("STRINGMEMORY", VoltType.INTEGER);
         expectedSchema[10] = new ColumnInfo("TUPLECOUNT", VoltType.BIGINT);
         expectedSchema[11] = new ColumnInfo("POOLEDMEMORY", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("REPAIRLOGMEMORY", VoltType.BIGINT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -534,7 +549,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         // Based on doc, not code
         // HOST_ID, SITE_ID, and PARTITION_ID all differ.  Fixed to match
         // reality so tests would pass, but, ugh.
-        ColumnInfo[] expectedSchema = new ColumnInfo[9];
+        ColumnInfo[] expectedSchema = new ColumnInfo[12];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -544,6 +559,9 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[6] = new ColumnInfo("MESSAGES_READ", VoltType.BIGINT);
         expectedSchema[7] = new ColumnInfo("BYTES_WRITTEN", VoltType.BIGINT);
         expectedSchema[8] = new ColumnInfo("MESSAGES_WRITTEN", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("WRITE_CALLS", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("BYTES_PER_WRITE_CALL", VoltType.BIGINT);
+        expectedSchema[11] = new ColumnInfo("HEAP_SERIALIZED_MESSAGES", VoltType.BIGINT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -606,7 +624,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING PLANNER STATS\n\n\n");
         Client client  = getClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[14];
+        ColumnInfo[] expectedSchema = new ColumnInfo[16];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -621,6 +639,8 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[11] = new ColumnInfo("PLAN_TIME_MAX", VoltType.BIGINT);
         expectedSchema[12] = new ColumnInfo("PLAN_TIME_AVG", VoltType.BIGINT);
         expectedSchema[13] = new ColumnInfo("FAILURES", VoltType.BIGINT);
+        expectedSchema[14] = new ColumnInfo("CACHE1_EVICTIONS", VoltType.BIGINT);
+        expectedSchema[15] = new ColumnInfo("CACHE2_EVICTIONS", VoltType.BIGINT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -861,7 +881,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         System.out.println("\n\nTESTING STARVATION STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[10];
+        ColumnInfo[] expectedSchema = new ColumnInfo[19];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -872,6 +892,15 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[7] = new ColumnInfo("MIN", VoltType.BIGINT);
         expectedSchema[8] = new ColumnInfo("MAX", VoltType.BIGINT);
         expectedSchema[9] = new ColumnInfo("STDDEV", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("QUEUE_DEPTH_AVG", VoltType.FLOAT);
+        expectedSchema[11] = new ColumnInfo("QUEUE_DEPTH_P99", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("QUEUE_DEPTH_MAX", VoltType.BIGINT);
+        expectedSchema[13] = new ColumnInfo("WAIT_AVG", VoltType.BIGINT);
+        expectedSchema[14] = new ColumnInfo("WAIT_P50", VoltType.BIGINT);
+        expectedSchema[15] = new ColumnInfo("WAIT_P99", VoltType.BIGINT);
+        expectedSchema[16] = new ColumnInfo("WAIT_MAX", VoltType.BIGINT);
+        expectedSchema[17] = new ColumnInfo("BACKGROUND_WAIT_P99", VoltType.BIGINT);
+        expectedSchema[18] = new ColumnInfo("BACKGROUND_WAIT_MAX", VoltType.BIGINT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -891,11 +920,60 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         validateRowSeenAtAllHosts(results[0], "HOSTNAME", results[0].getString("HOSTNAME"), false);
     }
 
+    public void testSiteProfileStatistics() throws Exception {
+        System.out.println("\n\nTESTING SITEPROFILE STATS\n\n\n");
+        Client client  = getFullyConnectedClient();
+
+        ColumnInfo[] expectedSchema = new ColumnInfo[12];
+        expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
+        expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
+        expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
+        expectedSchema[3] = new ColumnInfo("SITE_ID", VoltType.INTEGER);
+        expectedSchema[4] = new ColumnInfo("TASK", VoltType.STRING);
+        expectedSchema[5] = new ColumnInfo("COUNT", VoltType.BIGINT);
+        expectedSchema[6] = new ColumnInfo("PERCENT", VoltType.FLOAT);
+        expectedSchema[7] = new ColumnInfo("TOTAL_TIME", VoltType.BIGINT);
+        expectedSchema[8] = new ColumnInfo("AVG", VoltType.BIGINT);
+        expectedSchema[9] = new ColumnInfo("MAX", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("EE_TIME", VoltType.BIGINT);
+        expectedSchema[11] = new ColumnInfo("EE_PERCENT", VoltType.FLOAT);
+        VoltTable expectedTable = new VoltTable(expectedSchema);
+
+        // Run some single partition work so every partition has procedure tasks
+        for (int i = 0; i < PARTITIONS; i++) {
+            client.callProcedure("NEW_ORDER.insert", i);
+        }
+
+        VoltTable[] results = null;
+        //
+        // SITEPROFILE
+        //
+        results = client.callProcedure("@Statistics", "SITEPROFILE", 0).getResults();
+        // one aggregate table returned
+        assertEquals(1, results.length);
+        System.out.println("Test SITEPROFILE table: " + results[0].toString());
+        validateSchema(results[0], expectedTable);
+        // Every site, including the MPI, reports its idle time
+        int idleRows = 0;
+        int procedureRows = 0;
+        while (results[0].advanceRow()) {
+            if (results[0].getString("TASK").equals("IDLE")) {
+                idleRows++;
+            }
+            else if (results[0].getString("TASK").equals("SpProcedureTask")) {
+                procedureRows++;
+                assertTrue(results[0].getLong("COUNT") > 0);
+            }
+        }
+        assertEquals(HOSTS * (SITES + 1), idleRows);
+        assertTrue(procedureRows > 0);
+    }
+
     public void testSnapshotStatus() throws Exception {
         System.out.println("\n\nTESTING SNAPSHOTSTATUS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[14];
+        ColumnInfo[] expectedSchema = new ColumnInfo[15];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -910,6 +988,7 @@ public class TestStatisticsSuite extends SaveRestoreBase {
         expectedSchema[11] = new ColumnInfo("DURATION", VoltType.BIGINT);
         expectedSchema[12] = new ColumnInfo("THROUGHPUT", VoltType.FLOAT);
         expectedSchema[13] = new ColumnInfo("RESULT", VoltType.STRING);
+        expectedSchema[14] = new ColumnInfo("WRITE_THROUGHPUT", VoltType.FLOAT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         // Finagle a snapshot
@@ -25,8 +25,11 @@ package org.voltdb.sysprocs.saverestore;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -280,4 +283,231 @@ public class TestTableSaveFile extends TestCase {
         }
         assertEquals(table, reaggregate_table);
     }
+
+    public void testPollChunkTable() throws Exception {
+        Pair<VoltTable, File> generated = generateTestTable(100000);
+        VoltTable table = generated.getFirst();
+        File f = generated.getSecond();
+
+        FileInputStream fis = new FileInputStream(f);
+        TableSaveFile savefile = new TableSaveFile(fis.getChannel(), 3, null);
+
+        // Polling never waits for the reader but still returns every chunk in order
+        int expectedPartitionId = 0;
+        VoltTable reaggregate_table = null;
+        while (savefile.hasMoreChunks()) {
+            final BBContainer c = savefile.pollNextChunk();
+            if (c == null) {
+                Thread.yield();
+                continue;
+            }
+            TableSaveFile.Container cont = (TableSaveFile.Container)c;
+            assertEquals(expectedPartitionId, cont.partitionId);
+            expectedPartitionId++;
+            try {
+                VoltTable test_table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b, false);
+                if (reaggregate_table == null) {
+                    reaggregate_table = test_table.clone(10000);
+                }
+                while (test_table.advanceRow()) {
+                    reaggregate_table.add(test_table);
+                }
+            } finally {
+                c.discard();
+            }
+        }
+        assertNull(savefile.pollNextChunk());
+        savefile.close();
+        assertEquals(table, reaggregate_table);
+    }
+
+    private static final ColumnInfo BLOCK_COLUMNS[] = new ColumnInfo[] {
+            new ColumnInfo("RT_ID", VoltType.INTEGER),
+            new ColumnInfo("RT_NAME", VoltType.STRING) };
+
+    private void serializeBlockChunk(DefaultSnapshotDataTarget target, int partitionId,
+            long blockId, int firstId, int rows) throws Exception {
+        VoltTable chunk = new VoltTable(BLOCK_COLUMNS);
+        for (int ii = firstId; ii < firstId + rows; ii++) {
+            chunk.addRow(ii, "name_" + ii);
+        }
+        FastSerializer fs = new FastSerializer();
+        chunk.writeExternal(fs);
+        ByteBuffer b = fs.getBBContainer().b;
+        b.getInt();
+        int headerLength = b.getInt();
+        b.position(b.position() + headerLength);// at row count
+        BBContainer container = DBBPool.allocateDirectWithAddress(b.remaining() + 12);
+        container.b.putInt(partitionId);
+        container.b.putLong(blockId);
+        container.b.put(b);
+        container.b.flip();
+        target.write(Callables.returning(container), null);
+    }
+
+    private void serializeBlockReferences(DefaultSnapshotDataTarget target, int partitionId,
+            long... blockIds) throws Exception {
+        BBContainer container = DBBPool.allocateDirectWithAddress(16 + blockIds.length * 8);
+        container.b.putInt(partitionId);
+        container.b.putLong(-1);
+        container.b.putInt(blockIds.length);
+        for (long blockId : blockIds) {
+            container.b.putLong(blockId);
+        }
+        container.b.flip();
+        target.write(Callables.returning(container), null);
+    }
+
+    private DefaultSnapshotDataTarget createBlockTaggedTarget(File f, long txnId, File base)
+            throws Exception {
+        ArrayList<Integer> partIds = new ArrayList<Integer>();
+        partIds.add(0);
+        partIds.add(1);
+        return new DefaultSnapshotDataTarget(f,
+                HOST_ID, CLUSTER_NAME, DATABASE_NAME, TABLE_NAME,
+                TOTAL_PARTITIONS, false, partIds, new VoltTable(BLOCK_COLUMNS),
+                txnId, TIMESTAMP, true, base == null ? null : base.getName());
+    }
+
+    private Set<Integer> readRowIds(File f, Integer partitionIds[]) throws Exception {
+        Set<Integer> ids = new HashSet<Integer>();
+        TableSaveFile savefile = new TableSaveFile(f, 3, partitionIds, false);
+        try {
+            assertTrue(savefile.getCompleted());
+            while (savefile.hasMoreChunks()) {
+                final BBContainer c = savefile.getNextChunk();
+                if (c == null) {
+                    continue;
+                }
+                try {
+                    VoltTable table = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b, false);
+                    while (table.advanceRow()) {
+                        assertTrue(ids.add((int)table.getLong(0)));
+                    }
+                } finally {
+                    c.discard();
+                }
+            }
+        } finally {
+            savefile.close();
+        }
+        return ids;
+    }
+
+    private static Set<Integer> idRange(Set<Integer> ids, int firstId, int rows) {
+        for (int ii = firstId; ii < firstId + rows; ii++) {
+            ids.add(ii);
+        }
+        return ids;
+    }
+
+    /*
+     * A chain of a full snapshot and two deltas. Block ids are per partition, so both
+     * partitions use the same ids for different blocks.
+     */
+    private File[] generateBlockChain() throws Exception {
+        final File base = File.createTempFile("base", ".vpt");
+        base.deleteOnExit();
+        final File delta1 = File.createTempFile("delta1", ".vpt", base.getParentFile());
+        delta1.deleteOnExit();
+        final File delta2 = File.createTempFile("delta2", ".vpt", base.getParentFile());
+        delta2.deleteOnExit();
+
+        DefaultSnapshotDataTarget target = createBlockTaggedTarget(base, TXN_ID, null);
+        serializeBlockChunk(target, 0, 1, 0, 100);
+        serializeBlockChunk(target, 0, 2, 100, 50);
+        serializeBlockChunk(target, 0, 2, 150, 50);
+        serializeBlockChunk(target, 0, 3, 200, 100);
+        serializeBlockChunk(target, 1, 1, 1000, 100);
+        serializeBlockChunk(target, 1, 2, 1100, 100);
+        target.close();
+
+        // Block 2 of partition 0 changed, block 2 of partition 1 was emptied and block 4 is new
+        target = createBlockTaggedTarget(delta1, TXN_ID + 1, base);
+        serializeBlockChunk(target, 0, 2, 2100, 80);
+        serializeBlockChunk(target, 1, 4, 2400, 30);
+        serializeBlockReferences(target, 0, 1, 3);
+        serializeBlockReferences(target, 1, 1);
+        target.close();
+
+        // Only block 3 of partition 0 changed
+        target = createBlockTaggedTarget(delta2, TXN_ID + 2, delta1);
+        serializeBlockChunk(target, 0, 3, 3300, 60);
+        serializeBlockReferences(target, 0, 1, 2);
+        serializeBlockReferences(target, 1, 1, 4);
+        target.close();
+
+        return new File[] { base, delta1, delta2 };
+    }
+
+    public void testBlockTaggedChainIsResolved() throws Exception {
+        File chain[] = generateBlockChain();
+
+        Set<Integer> expectedPartition0 = idRange(idRange(idRange(new HashSet<Integer>(), 0, 100), 2100, 80), 3300, 60);
+        Set<Integer> expectedPartition1 = idRange(idRange(new HashSet<Integer>(), 1000, 100), 2400, 30);
+        Set<Integer> expected = new HashSet<Integer>(expectedPartition0);
+        expected.addAll(expectedPartition1);
+
+        assertEquals(expected, readRowIds(chain[2], null));
+        assertEquals(expectedPartition1, readRowIds(chain[2], new Integer[] { 1 }));
+
+        Set<Integer> expectedDelta1 = idRange(idRange(idRange(idRange(new HashSet<Integer>(),
+                0, 100), 2100, 80), 200, 100), 1000, 100);
+        expectedDelta1 = idRange(expectedDelta1, 2400, 30);
+        assertEquals(expectedDelta1, readRowIds(chain[1], null));
+
+        // Headers can be read from the channel, the base files are only opened by name
+        FileInputStream fis = new FileInputStream(chain[2]);
+        TableSaveFile headerOnly = new TableSaveFile(fis.getChannel(), 3, null);
+        assertTrue(headerOnly.isBlockTagged());
+        assertEquals(chain[1].getName(), headerOnly.getBaseFileName());
+        assertEquals(TXN_ID + 2, headerOnly.getTxnId());
+        try {
+            while (headerOnly.hasMoreChunks()) {
+                BBContainer c = headerOnly.getNextChunk();
+                if (c != null) {
+                    c.discard();
+                }
+            }
+            fail();
+        } catch (IOException expectedException) {}
+        headerOnly.close();
+        fis.close();
+    }
+
+    public void testBlockMissingFromChainFails() throws Exception {
+        File chain[] = generateBlockChain();
+
+        // Block 5 of partition 0 is neither in the first delta nor referenced by it
+        final File delta3 = File.createTempFile("delta3", ".vpt", chain[2].getParentFile());
+        delta3.deleteOnExit();
+        DefaultSnapshotDataTarget target = createBlockTaggedTarget(delta3, TXN_ID + 3, chain[2]);
+        serializeBlockReferences(target, 0, 1, 5);
+        target.close();
+        try {
+            readRowIds(delta3, null);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("missing"));
+        }
+    }
+
+    public void testConsolidatedTableFileStandsOnItsOwn() throws Exception {
+        File chain[] = generateBlockChain();
+        Set<Integer> expected = readRowIds(chain[2], null);
+
+        IncrementalSnapshotTracker.consolidateTableFile(chain[2]);
+        assertTrue(chain[0].delete());
+        assertTrue(chain[1].delete());
+
+        FileInputStream fis = new FileInputStream(chain[2]);
+        TableSaveFile header = new TableSaveFile(fis.getChannel(), 3, null);
+        assertTrue(header.isBlockTagged());
+        assertNull(header.getBaseFileName());
+        assertEquals(TXN_ID + 2, header.getTxnId());
+        header.close();
+        fis.close();
+
+        assertEquals(expected, readRowIds(chain[2], null));
+    }
 }
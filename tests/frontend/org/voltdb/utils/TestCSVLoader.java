@@ -28,16 +28,29 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
+import org.supercsv.prefs.CsvPreference;
+import org.supercsv_voltpatches.tokenizer.Tokenizer;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.ServerThread;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltDB.Configuration;
 import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
 import org.voltdb.client.Client;
 import org.voltdb.client.ClientFactory;
+import org.voltdb.client.MockVoltClient;
+import org.voltdb.client.NoConnectionsException;
+import org.voltdb.client.ProcedureCallback;
 import org.voltdb.compiler.VoltProjectBuilder;
 import org.voltdb.types.TimestampType;
 
@@ -749,6 +762,124 @@ public class TestCSVLoader extends TestCase {
         test_Interface( mySchema, myOptions, myData, invalidLineCnt, validLineCnt );
     }
 
+    public void testBatchWithDuplicateKeys() throws Exception
+    {
+        String mySchema =
+                "create table BLAH (" +
+                        "clm_integer integer default 0 not null, " + // column that is partitioned on
+                        "clm_string varchar(20), " +
+                        "PRIMARY KEY(clm_integer)" +
+                        "); ";
+        String []myOptions = {
+                "-f" + path_csv,
+                "--reportdir=" + reportDir,
+                "--batch=3",
+                "--parsers=2",
+                "BLAH"
+        };
+
+        // Batches holding a duplicate fail and are retried one row at a time
+        String []myData = new String[100];
+        for (int i = 0; i < myData.length; i++) {
+            myData[i] = (i % 10 == 9 ? i - 1 : i) + ",row" + i;
+        }
+        int invalidLineCnt = 10;
+        int validLineCnt = myData.length - invalidLineCnt;
+        test_Interface( mySchema, myOptions, myData, invalidLineCnt, validLineCnt );
+    }
+
+    public void testParserFailureStopsReader() throws Exception
+    {
+        prepare();
+        CSVLoader.configure(new String[] {
+                "--reportdir=" + reportDir,
+                "--parsers=1",
+                "--batch=1",
+                "BLAH"
+        });
+        // More lines than the queue to the parser holds
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            data.append(i).append(",row").append(i).append("\n");
+        }
+        final ICsvListReader listReader = new CsvListReader(
+                new Tokenizer(new StringReader(data.toString()), CsvPreference.STANDARD_PREFERENCE,
+                        false, CSVLoader.DEFAULT_ESCAPE_CHARACTER, CSVLoader.DEFAULT_COLUMN_LIMIT_SIZE, 0),
+                CsvPreference.STANDARD_PREFERENCE);
+        // Not connected, the parser fails on its first insert
+        final Client unconnected = ClientFactory.createClient();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    failure.set(CSVLoader.loadLines(listReader, unconnected, 2));
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            }
+        };
+        reader.start();
+        reader.join(60000);
+        assertFalse("Reader is stuck handing over lines to a failed parser", reader.isAlive());
+        assertTrue(failure.get() instanceof NoConnectionsException);
+        assertTrue(listReader.getLineNumber() < 5000);
+        listReader.close();
+        unconnected.close();
+    }
+
+    public void testRejectedBatchIsRetried() throws Exception
+    {
+        prepare();
+        CSVLoader.configure(new String[] {
+                "--reportdir=" + reportDir,
+                "--parsers=1",
+                "--batch=2",
+                "BLAH"
+        });
+        final List<Object[]> calls = Collections.synchronizedList(new ArrayList<Object[]>());
+        MockVoltClient mock = new MockVoltClient() {
+            @Override
+            public boolean callProcedure(ProcedureCallback callback, String procName,
+                    Object... parameters) {
+                calls.add(parameters);
+                // The queue is full the first time around
+                return calls.size() > 1;
+            }
+        };
+        VoltTable procColumns = new VoltTable(
+                new VoltTable.ColumnInfo("PROCEDURE_NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("TYPE_NAME", VoltType.STRING));
+        procColumns.addRow("BLAH.insert", "BIGINT");
+        procColumns.addRow("BLAH.insert", "VARCHAR");
+        VoltTable tableColumns = new VoltTable(
+                new VoltTable.ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("ORDINAL_POSITION", VoltType.INTEGER),
+                new VoltTable.ColumnInfo("COLUMN_NAME", VoltType.STRING),
+                new VoltTable.ColumnInfo("REMARKS", VoltType.STRING));
+        tableColumns.addRow("BLAH", 1, "CLM_INTEGER", null);
+        tableColumns.addRow("BLAH", 2, "CLM_STRING", null);
+        mock.nextResults.add(new VoltTable[] { procColumns });
+        mock.nextResults.add(new VoltTable[] { tableColumns });
+        assertEquals(2, CSVLoader.findProcedureColumns(mock));
+        CSVLoader.setupBulkLoad(mock);
+
+        final ICsvListReader listReader = new CsvListReader(
+                new Tokenizer(new StringReader("1,one\n2,two\n"), CsvPreference.STANDARD_PREFERENCE,
+                        false, CSVLoader.DEFAULT_ESCAPE_CHARACTER, CSVLoader.DEFAULT_COLUMN_LIMIT_SIZE, 0),
+                CsvPreference.STANDARD_PREFERENCE);
+        assertNull(CSVLoader.loadLines(listReader, mock, 2));
+        listReader.close();
+        CSVLoader.close_cleanup();
+
+        // The rejected batch went out again, not just once
+        assertEquals(2, calls.size());
+        for (Object[] params : calls) {
+            assertEquals("BLAH", params[0]);
+            assertEquals(2, ((VoltTable) params[1]).getRowCount());
+        }
+    }
+
     public void test_Interface( String my_schema, String[] my_options, String[] my_data, int invalidLineCnt,
             int validLineCnt) throws Exception {
         try{
@@ -541,6 +541,113 @@ public class TestPersistentBinaryDeque {
         pbd.close();
     }
 
+    @Test
+    public void testMappedOfferCloseThenReopen() throws Exception {
+        m_pbd.close();
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, true );
+        for (int ii = 0; ii < 64; ii++) {
+            defaultBuffer.clear();
+            m_pbd.offer(defaultContainer);
+        }
+        assertEquals(((1024 * 1024 * 2) + 4) * 64, m_pbd.sizeInBytes());
+        m_pbd.sync();
+        m_pbd.close();
+
+        //Finished mapped segments are truncated to what was written
+        //and read back the same through the channel
+        long totalLength = 0;
+        File files[] = TEST_DIR.listFiles();
+        assertEquals( 3, files.length);
+        for (File f : files) {
+            totalLength += f.length();
+        }
+        assertEquals(3 * 4 + ((1024 * 1024 * 2) + 4) * 64, totalLength);
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, false );
+        assertEquals(((1024 * 1024 * 2) + 4) * 64, m_pbd.sizeInBytes());
+        for (int ii = 0; ii < 64; ii++) {
+            defaultBuffer.clear();
+            BBContainer retval = m_pbd.poll();
+            assertTrue(defaultBuffer.equals(retval.b));
+            retval.discard();
+        }
+        assertEquals(0, m_pbd.sizeInBytes());
+        TreeSet<String> names = getSortedDirectoryListing();
+        assertEquals( 1, names.size());
+        assertTrue(names.first().equals("pbd_nonce.3.pbd"));
+    }
+
+    @Test
+    public void testMappedPollReturnsSlices() throws Exception {
+        for (int ii = 0; ii < 3; ii++) {
+            defaultBuffer.clear();
+            m_pbd.offer(defaultContainer);
+        }
+        m_pbd.close();
+
+        m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, true );
+        BBContainer first = m_pbd.poll();
+        BBContainer second = m_pbd.poll();
+        assertTrue(first.b.isDirect());
+        defaultBuffer.clear();
+        assertEquals(defaultBuffer, first.b);
+        assertEquals(defaultBuffer, second.b);
+        first.discard();
+        second.discard();
+
+        //The segment goes away with the last discard
+        BBContainer third = m_pbd.poll();
+        assertEquals(defaultBuffer, third.b);
+        assertNull(m_pbd.poll());
+        third.discard();
+        assertTrue(m_pbd.isEmpty());
+        TreeSet<String> names = getSortedDirectoryListing();
+        assertEquals( 1, names.size());
+        assertEquals("pbd_nonce.1.pbd", names.first());
+    }
+
+    @Test
+    public void testConcurrentOfferAndPoll() throws Exception {
+        for (boolean mapped : new boolean[] { false, true }) {
+            m_pbd.closeAndDelete();
+            m_pbd = new PersistentBinaryDeque( TEST_NONCE, TEST_DIR, mapped );
+            final int count = 20000;
+            final PersistentBinaryDeque pbd = m_pbd;
+            final Throwable failure[] = new Throwable[1];
+            Thread writer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int ii = 0; ii < count; ii++) {
+                            ByteBuffer buf = ByteBuffer.allocate(8 + (ii % 4096));
+                            buf.putLong(0, ii);
+                            pbd.offer(new BBContainer[] { DBBPool.wrapBB(buf) });
+                        }
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    }
+                }
+            };
+            writer.start();
+
+            int next = 0;
+            while (next < count) {
+                BBContainer cont = m_pbd.poll();
+                if (cont == null) {
+                    assertTrue(writer.isAlive() || failure[0] == null);
+                    continue;
+                }
+                assertEquals(8 + (next % 4096), cont.b.remaining());
+                assertEquals(next, cont.b.getLong(cont.b.position()));
+                cont.discard();
+                next++;
+            }
+            writer.join();
+            assertNull(failure[0]);
+            assertTrue(m_pbd.isEmpty());
+            assertEquals(0, m_pbd.sizeInBytes());
+        }
+    }
+
     @Before
     public void setUp() throws Exception {
         if (TEST_DIR.exists()) {